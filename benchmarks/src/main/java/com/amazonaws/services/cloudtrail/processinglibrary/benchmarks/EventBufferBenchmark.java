@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailLog;
+import com.amazonaws.services.cloudtrail.processinglibrary.serializer.DefaultEventSerializer;
+import com.amazonaws.services.cloudtrail.processinglibrary.serializer.EventSerializer;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.EventBuffer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Measures batching events with an {@link EventBuffer}, as the library does between parsing and
+ * <code>EventsProcessor.process()</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventBufferBenchmark {
+    static final int EVENTS_PER_INVOCATION = 1000;
+
+    @Param({"1", "10", "100"})
+    public int maxEventsPerEmit;
+
+    private List<CloudTrailEvent> events;
+
+    @Setup
+    public void setUp() throws IOException {
+        LogGenerator generator = new LogGenerator.Builder(42)
+                .withEventMix(LogGenerator.EventMix.mixed)
+                .withEventsPerFile(EVENTS_PER_INVOCATION)
+                .build();
+        CloudTrailLog ctLog = new CloudTrailLog(generator.getBucketName(), generator.nextObjectKey());
+        byte[] logFile = generator.nextLogFile();
+
+        this.events = new ArrayList<CloudTrailEvent>(EVENTS_PER_INVOCATION);
+        try (EventSerializer serializer = new DefaultEventSerializer(ctLog, new ObjectMapper().getFactory().createParser(logFile))) {
+            while (serializer.hasNextEvent()) {
+                this.events.add(serializer.getNextEvent());
+            }
+        }
+    }
+
+    /**
+     * Buffer every event and emit each full batch, then the remainder.
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_INVOCATION)
+    public void bufferAndEmit(Blackhole blackhole) {
+        EventBuffer<CloudTrailEvent> eventBuffer = new EventBuffer<CloudTrailEvent>(this.maxEventsPerEmit);
+        for (CloudTrailEvent event : this.events) {
+            eventBuffer.addEvent(event);
+            if (eventBuffer.isBufferFull()) {
+                blackhole.consume(eventBuffer.getEvents());
+            }
+        }
+        blackhole.consume(eventBuffer.getEvents());
+    }
+}
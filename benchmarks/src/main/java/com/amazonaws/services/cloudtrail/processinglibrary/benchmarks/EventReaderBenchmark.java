@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.configuration.ClientConfiguration;
+import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.ProcessingLibraryException;
+import com.amazonaws.services.cloudtrail.processinglibrary.impl.DefaultEventFilter;
+import com.amazonaws.services.cloudtrail.processinglibrary.impl.DefaultSourceFilter;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventsProcessor;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ExceptionHandler;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ProgressReporter;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.SelectiveProgressReporter;
+import com.amazonaws.services.cloudtrail.processinglibrary.manager.S3Manager;
+import com.amazonaws.services.cloudtrail.processinglibrary.manager.SqsManager;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailLog;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailSource;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.SQSBasedSource;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressState;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressStatus;
+import com.amazonaws.services.cloudtrail.processinglibrary.reader.EventReader;
+import com.amazonaws.services.sqs.model.Message;
+
+/**
+ * Measures the whole path of one source through {@link EventReader#processSource(CloudTrailSource)}: downloading its
+ * gzipped log files from an in-memory S3, decompressing, parsing, batching, emitting and deleting the SQS message.
+ * <p>
+ * Each invocation processes a source whose log files hold {@value #EVENTS_PER_INVOCATION} events in total, so
+ * scores and allocation are per event.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventReaderBenchmark {
+    static final int EVENTS_PER_INVOCATION = 1000;
+
+    @Param({"100", "1000"})
+    public int eventsPerLog;
+
+    @Param({"simple", "mixed"})
+    public LogGenerator.EventMix mix;
+
+    @Param({"1", "100"})
+    public int maxEventsPerEmit;
+
+    private EventReader reader;
+    private CloudTrailSource source;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+
+        LogGenerator generator = new LogGenerator.Builder(42)
+                .withEventMix(this.mix)
+                .withEventsPerFile(this.eventsPerLog)
+                .build();
+        InMemoryS3Client s3Client = new InMemoryS3Client();
+        List<CloudTrailLog> ctLogs = new ArrayList<CloudTrailLog>();
+        List<String> objectKeys = new ArrayList<String>();
+        for (int i = 0; i < EVENTS_PER_INVOCATION / this.eventsPerLog; i++) {
+            String objectKey = generator.nextObjectKey();
+            s3Client.addObject(generator.getBucketName(), objectKey, generator.nextGzippedLogFile());
+            ctLogs.add(new CloudTrailLog(generator.getBucketName(), objectKey));
+            objectKeys.add(objectKey);
+        }
+
+        // Every invocation deletes the same message; only the first delete removes it from the queue.
+        String queueUrl = "https://sqs.us-east-1.amazonaws.com/" + generator.getAccountId() + "/benchmark";
+        InMemorySqsClient sqsClient = new InMemorySqsClient();
+        sqsClient.addMessage(queueUrl, generator.notificationBody(objectKeys));
+        Message message = sqsClient.receiveMessage(queueUrl).getMessages().get(0);
+        this.source = new SQSBasedSource(message, ctLogs);
+
+        ClientConfiguration config = new ClientConfiguration(queueUrl, null);
+        config.setMaxEventsPerEmit(this.maxEventsPerEmit);
+
+        ProgressReporter progressReporter = new SelectiveProgressReporter() {
+            @Override
+            public boolean isInterestedIn(ProgressState state) {
+                return false;
+            }
+
+            @Override
+            public Object reportStart(ProgressStatus status) {
+                return null;
+            }
+
+            @Override
+            public void reportEnd(ProgressStatus status, Object object) {
+            }
+        };
+        ExceptionHandler exceptionHandler = new ExceptionHandler() {
+            @Override
+            public void handleException(ProcessingLibraryException exception) {
+                throw new IllegalStateException("Benchmark source failed to process.", exception);
+            }
+        };
+        EventsProcessor eventsProcessor = new EventsProcessor() {
+            @Override
+            public void process(List<CloudTrailEvent> events) {
+                EventReaderBenchmark.this.blackhole.consume(events);
+            }
+        };
+
+        S3Manager s3Manager = new S3Manager(s3Client, config, exceptionHandler, progressReporter);
+        SqsManager sqsManager = new SqsManager(sqsClient, config, exceptionHandler, progressReporter);
+        this.reader = new EventReader(eventsProcessor, new DefaultSourceFilter(), new DefaultEventFilter(),
+                progressReporter, exceptionHandler, sqsManager, s3Manager, config, null, null, null);
+    }
+
+    /**
+     * Process the source from download to delete.
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_INVOCATION)
+    public boolean processSource() {
+        return this.reader.processSource(this.source);
+    }
+}
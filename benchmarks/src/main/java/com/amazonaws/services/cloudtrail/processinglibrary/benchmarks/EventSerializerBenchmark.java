@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailLog;
+import com.amazonaws.services.cloudtrail.processinglibrary.serializer.DefaultEventSerializer;
+import com.amazonaws.services.cloudtrail.processinglibrary.serializer.EventSerializer;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.PooledGzipInputStream;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Measures parsing CloudTrail log files into events with the {@link DefaultEventSerializer}.
+ * <p>
+ * Each invocation parses {@value #EVENTS_PER_INVOCATION} events, split into log files of <code>eventsPerLog</code>
+ * events, so scores and allocation are per event whatever the log file size.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventSerializerBenchmark {
+    static final int EVENTS_PER_INVOCATION = 1000;
+
+    @Param({"10", "100", "1000"})
+    public int eventsPerLog;
+
+    @Param({"simple", "mixed"})
+    public LogGenerator.EventMix mix;
+
+    private ObjectMapper mapper;
+    private CloudTrailLog ctLog;
+    private byte[][] logFiles;
+    private byte[][] gzippedLogFiles;
+
+    @Setup
+    public void setUp() {
+        this.mapper = new ObjectMapper();
+        LogGenerator generator = new LogGenerator.Builder(42)
+                .withEventMix(this.mix)
+                .withEventsPerFile(this.eventsPerLog)
+                .build();
+        this.ctLog = new CloudTrailLog(generator.getBucketName(), generator.nextObjectKey());
+
+        int logCount = EVENTS_PER_INVOCATION / this.eventsPerLog;
+        this.logFiles = new byte[logCount][];
+        this.gzippedLogFiles = new byte[logCount][];
+        for (int i = 0; i < logCount; i++) {
+            this.logFiles[i] = generator.nextLogFile();
+            this.gzippedLogFiles[i] = LogGenerator.gzip(this.logFiles[i]);
+        }
+    }
+
+    /**
+     * Parse uncompressed log files.
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_INVOCATION)
+    public void parse(Blackhole blackhole) throws IOException {
+        for (byte[] logFile : this.logFiles) {
+            try (EventSerializer serializer = new DefaultEventSerializer(this.ctLog, this.mapper.getFactory().createParser(logFile))) {
+                while (serializer.hasNextEvent()) {
+                    blackhole.consume(serializer.getNextEvent());
+                }
+            }
+        }
+    }
+
+    /**
+     * Decompress and parse log files, as the library does after a download.
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_INVOCATION)
+    public void decompressAndParse(Blackhole blackhole) throws IOException {
+        for (byte[] gzippedLogFile : this.gzippedLogFiles) {
+            try (PooledGzipInputStream inputStream = new PooledGzipInputStream(gzippedLogFile);
+                    EventSerializer serializer = new DefaultEventSerializer(this.ctLog, this.mapper.getFactory().createParser(inputStream))) {
+                while (serializer.hasNextEvent()) {
+                    blackhole.consume(serializer.getNextEvent());
+                }
+            }
+        }
+    }
+}
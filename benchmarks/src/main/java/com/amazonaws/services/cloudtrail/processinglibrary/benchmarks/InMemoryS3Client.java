@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+
+/**
+ * An <code>AmazonS3Client</code> that serves objects from memory, for the GET requests the library makes.
+ * <p>
+ * Byte ranges and ETag constraints are honored, so ranged and conditional downloads behave as they do against S3.
+ */
+public class InMemoryS3Client extends AmazonS3Client {
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<String, byte[]>();
+
+    /**
+     * Store an object.
+     *
+     * @param bucketName the bucket of the object.
+     * @param objectKey the key of the object.
+     * @param content the object content.
+     */
+    public void addObject(String bucketName, String objectKey, byte[] content) {
+        this.objects.put(bucketName + "/" + objectKey, content);
+    }
+
+    @Override
+    public S3Object getObject(String bucketName, String key) {
+        return this.getObject(new GetObjectRequest(bucketName, key));
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest request) {
+        byte[] content = this.objects.get(request.getBucketName() + "/" + request.getKey());
+        if (content == null) {
+            throw new IllegalArgumentException("No such object " + request.getKey());
+        }
+
+        String eTag = Integer.toHexString(System.identityHashCode(content));
+        if (request.getNonmatchingETagConstraints().contains(eTag)
+                || (!request.getMatchingETagConstraints().isEmpty() && !request.getMatchingETagConstraints().contains(eTag))) {
+            return null;
+        }
+
+        int start = 0;
+        int end = content.length - 1;
+        long[] range = request.getRange();
+        if (range != null) {
+            start = (int) range[0];
+            end = (int) Math.min(range[1], content.length - 1);
+        }
+
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(end - start + 1);
+        metadata.setHeader("ETag", eTag);
+        if (range != null) {
+            metadata.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+        }
+
+        S3Object s3Object = new S3Object();
+        s3Object.setBucketName(request.getBucketName());
+        s3Object.setKey(request.getKey());
+        s3Object.setObjectMetadata(metadata);
+        s3Object.setObjectContent(new ByteArrayInputStream(content, start, end - start + 1));
+        return s3Object;
+    }
+}
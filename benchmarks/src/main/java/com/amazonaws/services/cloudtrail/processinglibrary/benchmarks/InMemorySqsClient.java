@@ -0,0 +1,416 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityResult;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageResult;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageNotInflightException;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+import com.amazonaws.services.sqs.model.ReceiptHandleIsInvalidException;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+
+/**
+ * An <code>AmazonSQSClient</code> that keeps its queues in memory and follows SQS delivery semantics closely enough
+ * to measure at-least-once processing:
+ * <ul>
+ *   <li>A received message is invisible for the visibility timeout of the request, then redelivered unless it was
+ *   deleted.</li>
+ *   <li>Each receive issues a new receipt handle. Deleting with the most recent handle deletes the message; deleting
+ *   with an older one succeeds without deleting it, as SQS may do.</li>
+ *   <li>Receives long poll for up to the requested wait time, and return as soon as a message is visible.</li>
+ * </ul>
+ * Queues are created on first use of their URL. Messages are delivered in order of becoming visible; SQS standard
+ * queues make no ordering promise, so callers must not rely on it either.
+ */
+public class InMemorySqsClient extends AmazonSQSClient {
+    private static final String ALL_ATTRIBUTES = "All";
+    private static final String RECEIPT_HANDLE_SEPARATOR = "#";
+
+    private final Map<String, Queue> queues = new HashMap<String, Queue>();
+
+    private volatile boolean shutdown = false;
+
+    /**
+     * Send a message.
+     *
+     * @param queueUrl the queue to send to.
+     * @param body the message body.
+     * @return the ID of the message.
+     */
+    public String addMessage(String queueUrl, String body) {
+        return this.getQueue(queueUrl).send(body);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(SendMessageRequest request) {
+        return new SendMessageResult().withMessageId(this.addMessage(request.getQueueUrl(), request.getMessageBody()));
+    }
+
+    @Override
+    public SendMessageResult sendMessage(String queueUrl, String messageBody) {
+        return this.sendMessage(new SendMessageRequest(queueUrl, messageBody));
+    }
+
+    @Override
+    public ReceiveMessageResult receiveMessage(ReceiveMessageRequest request) {
+        return new ReceiveMessageResult().withMessages(this.getQueue(request.getQueueUrl()).receive(request));
+    }
+
+    @Override
+    public ReceiveMessageResult receiveMessage(String queueUrl) {
+        return this.receiveMessage(new ReceiveMessageRequest(queueUrl));
+    }
+
+    @Override
+    public DeleteMessageResult deleteMessage(DeleteMessageRequest request) {
+        this.getQueue(request.getQueueUrl()).delete(request.getReceiptHandle());
+        return new DeleteMessageResult();
+    }
+
+    @Override
+    public DeleteMessageResult deleteMessage(String queueUrl, String receiptHandle) {
+        return this.deleteMessage(new DeleteMessageRequest(queueUrl, receiptHandle));
+    }
+
+    @Override
+    public ChangeMessageVisibilityResult changeMessageVisibility(ChangeMessageVisibilityRequest request) {
+        this.getQueue(request.getQueueUrl()).changeVisibility(request.getReceiptHandle(), request.getVisibilityTimeout());
+        return new ChangeMessageVisibilityResult();
+    }
+
+    @Override
+    public GetQueueAttributesResult getQueueAttributes(GetQueueAttributesRequest request) {
+        Queue queue = this.getQueue(request.getQueueUrl());
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put(QueueAttributeName.ApproximateNumberOfMessages.toString(), Long.toString(queue.getVisibleCount()));
+        attributes.put(QueueAttributeName.ApproximateNumberOfMessagesNotVisible.toString(), Long.toString(queue.getInFlightCount()));
+        return new GetQueueAttributesResult().withAttributes(attributes);
+    }
+
+    /**
+     * Wake up and empty all long polls, and fail later receives fast. The queues keep their messages.
+     */
+    @Override
+    public void shutdown() {
+        this.shutdown = true;
+        synchronized (this.queues) {
+            for (Queue queue : this.queues.values()) {
+                queue.wakeUp();
+            }
+        }
+    }
+
+    /**
+     * @param queueUrl the queue.
+     * @return the delivery counters of the queue.
+     */
+    public QueueStatistics getStatistics(String queueUrl) {
+        return this.getQueue(queueUrl).getStatistics();
+    }
+
+    /**
+     * @return the delivery counters of all queues together.
+     */
+    public QueueStatistics getStatistics() {
+        List<QueueStatistics> statistics = new ArrayList<QueueStatistics>();
+        synchronized (this.queues) {
+            for (Queue queue : this.queues.values()) {
+                statistics.add(queue.getStatistics());
+            }
+        }
+
+        long sent = 0, received = 0, redelivered = 0, deleted = 0, staleDeletes = 0, visible = 0, inFlight = 0;
+        for (QueueStatistics queueStatistics : statistics) {
+            sent += queueStatistics.sentCount;
+            received += queueStatistics.receiveCount;
+            redelivered += queueStatistics.redeliveryCount;
+            deleted += queueStatistics.deleteCount;
+            staleDeletes += queueStatistics.staleDeleteCount;
+            visible += queueStatistics.visibleCount;
+            inFlight += queueStatistics.inFlightCount;
+        }
+        return new QueueStatistics(sent, received, redelivered, deleted, staleDeletes, visible, inFlight);
+    }
+
+    private Queue getQueue(String queueUrl) {
+        synchronized (this.queues) {
+            Queue queue = this.queues.get(queueUrl);
+            if (queue == null) {
+                queue = new Queue();
+                this.queues.put(queueUrl, queue);
+            }
+            return queue;
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Delivery counters of one queue, or of several queues together.
+     */
+    public static class QueueStatistics {
+        private final long sentCount;
+        private final long receiveCount;
+        private final long redeliveryCount;
+        private final long deleteCount;
+        private final long staleDeleteCount;
+        private final long visibleCount;
+        private final long inFlightCount;
+
+        QueueStatistics(long sentCount, long receiveCount, long redeliveryCount, long deleteCount, long staleDeleteCount,
+                long visibleCount, long inFlightCount) {
+            this.sentCount = sentCount;
+            this.receiveCount = receiveCount;
+            this.redeliveryCount = redeliveryCount;
+            this.deleteCount = deleteCount;
+            this.staleDeleteCount = staleDeleteCount;
+            this.visibleCount = visibleCount;
+            this.inFlightCount = inFlightCount;
+        }
+
+        /**
+         * @return the number of messages sent.
+         */
+        public long getSentCount() {
+            return this.sentCount;
+        }
+
+        /**
+         * @return the number of times any message was received.
+         */
+        public long getReceiveCount() {
+            return this.receiveCount;
+        }
+
+        /**
+         * @return the number of receives of a message that had been received before.
+         */
+        public long getRedeliveryCount() {
+            return this.redeliveryCount;
+        }
+
+        /**
+         * @return the number of messages deleted.
+         */
+        public long getDeleteCount() {
+            return this.deleteCount;
+        }
+
+        /**
+         * @return the number of deletes with a receipt handle that a later receive had replaced.
+         */
+        public long getStaleDeleteCount() {
+            return this.staleDeleteCount;
+        }
+
+        /**
+         * @return the number of messages waiting to be received.
+         */
+        public long getVisibleCount() {
+            return this.visibleCount;
+        }
+
+        /**
+         * @return the number of received messages that are neither deleted nor visible again.
+         */
+        public long getInFlightCount() {
+            return this.inFlightCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("sent=%d, received=%d, redelivered=%d, deleted=%d, staleDeletes=%d, visible=%d, inFlight=%d",
+                    this.sentCount, this.receiveCount, this.redeliveryCount, this.deleteCount, this.staleDeleteCount,
+                    this.visibleCount, this.inFlightCount);
+        }
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        final String messageId;
+        final String body;
+        final long sentTimestamp;
+        long firstReceiveTimestamp;
+        int receiveCount;
+        long visibleAt;
+
+        Entry(String messageId, String body, long visibleAt) {
+            this.messageId = messageId;
+            this.body = body;
+            this.sentTimestamp = System.currentTimeMillis();
+            this.visibleAt = visibleAt;
+        }
+
+        String receiptHandle() {
+            return this.messageId + RECEIPT_HANDLE_SEPARATOR + this.receiveCount;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Long.compare(this.visibleAt, other.visibleAt);
+        }
+    }
+
+    private class Queue {
+        /**
+         * Undeleted messages, by the time they become visible.
+         */
+        private final PriorityQueue<Entry> entries = new PriorityQueue<Entry>();
+        private final Map<String, Entry> entriesById = new HashMap<String, Entry>();
+
+        private long nextMessageId;
+        private long sentCount;
+        private long receiveCount;
+        private long redeliveryCount;
+        private long deleteCount;
+        private long staleDeleteCount;
+
+        synchronized String send(String body) {
+            Entry entry = new Entry(String.format("%016x", this.nextMessageId++), body, now());
+            this.entries.add(entry);
+            this.entriesById.put(entry.messageId, entry);
+            this.sentCount++;
+            this.notifyAll();
+            return entry.messageId;
+        }
+
+        synchronized List<Message> receive(ReceiveMessageRequest request) {
+            int maxMessages = request.getMaxNumberOfMessages() == null ? 1 : request.getMaxNumberOfMessages();
+            long visibilityMillis = TimeUnit.SECONDS.toMillis(request.getVisibilityTimeout() == null ? 30 : request.getVisibilityTimeout());
+            long deadline = now() + TimeUnit.SECONDS.toMillis(request.getWaitTimeSeconds() == null ? 0 : request.getWaitTimeSeconds());
+            boolean allAttributes = request.getAttributeNames().contains(ALL_ATTRIBUTES);
+
+            long now = now();
+            while (!shutdown && (this.entries.isEmpty() || this.entries.peek().visibleAt > now) && now < deadline) {
+                long wait = deadline - now;
+                if (!this.entries.isEmpty()) {
+                    wait = Math.min(wait, this.entries.peek().visibleAt - now);
+                }
+                try {
+                    this.wait(Math.max(1, wait));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                now = now();
+            }
+
+            List<Message> messages = new ArrayList<Message>();
+            while (!shutdown && messages.size() < maxMessages && !this.entries.isEmpty() && this.entries.peek().visibleAt <= now) {
+                Entry entry = this.entries.poll();
+                entry.receiveCount++;
+                entry.visibleAt = now + visibilityMillis;
+                this.entries.add(entry);
+
+                this.receiveCount++;
+                if (entry.receiveCount > 1) {
+                    this.redeliveryCount++;
+                } else {
+                    entry.firstReceiveTimestamp = System.currentTimeMillis();
+                }
+
+                Message message = new Message()
+                        .withMessageId(entry.messageId)
+                        .withReceiptHandle(entry.receiptHandle())
+                        .withBody(entry.body);
+                if (allAttributes) {
+                    message.addAttributesEntry("SentTimestamp", Long.toString(entry.sentTimestamp));
+                    message.addAttributesEntry("ApproximateReceiveCount", Integer.toString(entry.receiveCount));
+                    message.addAttributesEntry("ApproximateFirstReceiveTimestamp", Long.toString(entry.firstReceiveTimestamp));
+                }
+                messages.add(message);
+            }
+            return messages;
+        }
+
+        synchronized void delete(String receiptHandle) {
+            String messageId = this.parseMessageId(receiptHandle);
+            Entry entry = this.entriesById.get(messageId);
+            if (entry == null) {
+                return; // already deleted
+            }
+            if (!entry.receiptHandle().equals(receiptHandle)) {
+                this.staleDeleteCount++;
+                return;
+            }
+            this.entries.remove(entry);
+            this.entriesById.remove(messageId);
+            this.deleteCount++;
+        }
+
+        synchronized void changeVisibility(String receiptHandle, int visibilityTimeout) {
+            Entry entry = this.entriesById.get(this.parseMessageId(receiptHandle));
+            long now = now();
+            if (entry == null || !entry.receiptHandle().equals(receiptHandle) || entry.visibleAt <= now) {
+                throw new MessageNotInflightException("Message is not in flight: " + receiptHandle);
+            }
+            this.entries.remove(entry);
+            entry.visibleAt = now + TimeUnit.SECONDS.toMillis(visibilityTimeout);
+            this.entries.add(entry);
+            this.notifyAll();
+        }
+
+        synchronized void wakeUp() {
+            this.notifyAll();
+        }
+
+        synchronized long getVisibleCount() {
+            long now = now();
+            long visible = 0;
+            for (Entry entry : this.entries) {
+                if (entry.visibleAt <= now) {
+                    visible++;
+                }
+            }
+            return visible;
+        }
+
+        synchronized long getInFlightCount() {
+            return this.entries.size() - this.getVisibleCount();
+        }
+
+        synchronized QueueStatistics getStatistics() {
+            long visible = this.getVisibleCount();
+            return new QueueStatistics(this.sentCount, this.receiveCount, this.redeliveryCount, this.deleteCount,
+                    this.staleDeleteCount, visible, this.entries.size() - visible);
+        }
+
+        private String parseMessageId(String receiptHandle) {
+            int separator = receiptHandle == null ? -1 : receiptHandle.indexOf(RECEIPT_HANDLE_SEPARATOR);
+            if (separator < 0) {
+                throw new ReceiptHandleIsInvalidException("Receipt handle was not issued by this queue: " + receiptHandle);
+            }
+            return receiptHandle.substring(0, separator);
+        }
+    }
+}
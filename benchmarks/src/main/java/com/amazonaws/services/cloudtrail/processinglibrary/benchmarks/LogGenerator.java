@@ -0,0 +1,704 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Generates synthetic CloudTrail log files and the SQS notifications that announce them, for benchmarks and load
+ * tests that must not depend on real account data.
+ * <p>
+ * Log files are <code>{"Records":[...]}</code> documents with a configurable number of events. The
+ * <code>eventSource</code>/<code>eventName</code> pairs, the <code>userIdentity</code> types and the size of the
+ * nested <code>requestParameters</code> are drawn from configurable distributions. Assumed role and federated user
+ * identities carry a <code>sessionContext</code>. Notifications are SNS-wrapped, as CloudTrail delivers them to a
+ * subscribed SQS queue, and are accepted by
+ * {@link com.amazonaws.services.cloudtrail.processinglibrary.serializer.DefaultSourceSerializer}.
+ * <p>
+ * Output is deterministic for a given seed and configuration. A <code>LogGenerator</code> is not thread safe.
+ */
+public class LogGenerator {
+    public static final String DEFAULT_BUCKET_NAME = "benchmark-bucket";
+    public static final String DEFAULT_ACCOUNT_ID = "123456789012";
+    public static final String DEFAULT_REGION = "us-east-1";
+
+    /**
+     * 2016-10-05T12:00:00Z, the default time of the first generated log file.
+     */
+    public static final long DEFAULT_START_TIME = 1475668800000L;
+
+    /**
+     * The types of <code>userIdentity</code> CloudTrail records.
+     */
+    public enum UserIdentityType {
+        Root,
+        IAMUser,
+        AssumedRole,
+        FederatedUser,
+        AWSAccount,
+        AWSService
+    }
+
+    /**
+     * Preset distributions used by the benchmarks.
+     */
+    public enum EventMix {
+        /**
+         * Small read-only calls by IAM users.
+         */
+        simple,
+
+        /**
+         * A blend of IAM users, assumed roles with session context and AWS services making read and write calls, with
+         * resources and larger request parameters.
+         */
+        mixed
+    }
+
+    private static final String[] READ_ONLY_PREFIXES = {"Get", "List", "Describe", "Head", "Lookup", "Decrypt"};
+
+    /**
+     * Minutes between the log files CloudTrail delivers for one account and region.
+     */
+    private static final long DELIVERY_INTERVAL_MILLIS = 5 * 60 * 1000L;
+
+    private final Random random;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final SimpleDateFormat eventTimeFormat;
+    private final SimpleDateFormat keyDateFormat;
+    private final SimpleDateFormat keyTimeFormat;
+
+    private final int eventsPerFile;
+    private final WeightedChoice<String[]> eventTypes;
+    private final WeightedChoice<UserIdentityType> userIdentityTypes;
+    private final int minRequestParametersSize;
+    private final int maxRequestParametersSize;
+    private final String bucketName;
+    private final String accountId;
+    private final String region;
+
+    private long fileTime;
+    private int fileIndex;
+
+    private LogGenerator(Builder builder) {
+        this.random = new Random(builder.seed);
+        this.eventTimeFormat = utcFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        this.keyDateFormat = utcFormat("yyyy/MM/dd");
+        this.keyTimeFormat = utcFormat("yyyyMMdd'T'HHmm'Z'");
+
+        this.eventsPerFile = builder.eventsPerFile;
+        this.eventTypes = builder.eventTypes;
+        this.userIdentityTypes = builder.userIdentityTypes;
+        this.minRequestParametersSize = builder.minRequestParametersSize;
+        this.maxRequestParametersSize = builder.maxRequestParametersSize;
+        this.bucketName = builder.bucketName;
+        this.accountId = builder.accountId;
+        this.region = builder.region;
+        this.fileTime = builder.startTime;
+    }
+
+    /**
+     * @return the number of events in each generated log file.
+     */
+    public int getEventsPerFile() {
+        return this.eventsPerFile;
+    }
+
+    /**
+     * @return the bucket the generated notifications point to.
+     */
+    public String getBucketName() {
+        return this.bucketName;
+    }
+
+    /**
+     * @return the account the generated events and object keys belong to.
+     */
+    public String getAccountId() {
+        return this.accountId;
+    }
+
+    /**
+     * Generate the next log file, uncompressed.
+     *
+     * @return the log file, as UTF-8 JSON.
+     */
+    public byte[] nextLogFile() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(this.eventsPerFile * (512 + this.maxRequestParametersSize));
+        try (JsonGenerator generator = this.jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("Records");
+            for (int i = 0; i < this.eventsPerFile; i++) {
+                this.writeEvent(generator, out);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to generate log file.", e);
+        }
+        this.fileTime += DELIVERY_INTERVAL_MILLIS;
+        return out.toByteArray();
+    }
+
+    /**
+     * Generate the next log file, compressed the way CloudTrail delivers it.
+     *
+     * @return the gzipped log file.
+     */
+    public byte[] nextGzippedLogFile() {
+        return gzip(this.nextLogFile());
+    }
+
+    /**
+     * Generate a unique object key in the layout CloudTrail delivers log files to, dated with the time of the next log
+     * file.
+     *
+     * @return the S3 object key.
+     */
+    public String nextObjectKey() {
+        Date date = new Date(this.fileTime);
+        return String.format("AWSLogs/%s/CloudTrail/%s/%s/%s_CloudTrail_%s_%s_%08x.json.gz",
+                this.accountId, this.region, this.keyDateFormat.format(date), this.accountId, this.region,
+                this.keyTimeFormat.format(date), this.fileIndex++);
+    }
+
+    /**
+     * Build the body of the SQS message that CloudTrail sends through SNS when it delivers log files.
+     *
+     * @param objectKeys the delivered log files.
+     * @return the SQS message body.
+     */
+    public String notificationBody(List<String> objectKeys) {
+        try {
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            try (JsonGenerator generator = this.jsonFactory.createGenerator(message, JsonEncoding.UTF8)) {
+                generator.writeStartObject();
+                generator.writeStringField("s3Bucket", this.bucketName);
+                generator.writeArrayFieldStart("s3ObjectKey");
+                for (String objectKey : objectKeys) {
+                    generator.writeString(objectKey);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (JsonGenerator generator = this.jsonFactory.createGenerator(body, JsonEncoding.UTF8)) {
+                generator.writeStartObject();
+                generator.writeStringField("Type", "Notification");
+                generator.writeStringField("MessageId", this.uuid());
+                generator.writeStringField("TopicArn", "arn:aws:sns:" + this.region + ":" + this.accountId + ":cloudtrail-topic");
+                generator.writeStringField("Message", new String(message.toByteArray(), StandardCharsets.UTF_8));
+                generator.writeStringField("Timestamp", this.eventTimeFormat.format(new Date(this.fileTime)));
+                generator.writeStringField("SignatureVersion", "1");
+                generator.writeStringField("Signature", "EXAMPLE");
+                generator.writeStringField("SigningCertURL", "https://sns." + this.region + ".amazonaws.com/SimpleNotificationService.pem");
+                generator.writeStringField("UnsubscribeURL", "https://sns." + this.region + ".amazonaws.com/?Action=Unsubscribe");
+                generator.writeEndObject();
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to generate notification.", e);
+        }
+    }
+
+    /**
+     * Build the SQS message that CloudTrail sends through SNS when it delivers log files.
+     *
+     * @param objectKeys the delivered log files.
+     * @return the SQS message, with a message ID and receipt handle.
+     */
+    public Message notification(List<String> objectKeys) {
+        String messageId = this.uuid();
+        return new Message()
+                .withMessageId(messageId)
+                .withReceiptHandle(messageId)
+                .withBody(this.notificationBody(objectKeys));
+    }
+
+    /**
+     * @param logFile an uncompressed log file.
+     * @return the log file compressed the way CloudTrail delivers it.
+     */
+    public static byte[] gzip(byte[] logFile) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(logFile.length / 8);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(logFile);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Write gzipped log files and their notifications to a directory, for load tests outside the JVM.
+     * <p>
+     * Usage: <code>LogGenerator &lt;directory&gt; &lt;file count&gt; [events per file] [simple|mixed] [seed]</code>.
+     * Log files are written under their object keys, and each notification, announcing one log file, to
+     * <code>notifications/&lt;n&gt;.json</code>.
+     *
+     * @param args the command line arguments.
+     * @throws IOException if a file could not be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: LogGenerator <directory> <file count> [events per file] [simple|mixed] [seed]");
+            System.exit(1);
+        }
+        File directory = new File(args[0]);
+        int fileCount = Integer.parseInt(args[1]);
+        Builder builder = new Builder(args.length > 4 ? Long.parseLong(args[4]) : 0)
+                .withEventMix(args.length > 3 ? EventMix.valueOf(args[3]) : EventMix.mixed);
+        if (args.length > 2) {
+            builder.withEventsPerFile(Integer.parseInt(args[2]));
+        }
+        LogGenerator generator = builder.build();
+
+        for (int i = 0; i < fileCount; i++) {
+            String objectKey = generator.nextObjectKey();
+            write(new File(directory, objectKey), generator.nextGzippedLogFile());
+            write(new File(directory, "notifications/" + i + ".json"),
+                    generator.notificationBody(Arrays.asList(objectKey)).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+    }
+
+    private void writeEvent(JsonGenerator generator, ByteArrayOutputStream out) throws IOException {
+        String[] eventType = this.eventTypes.next(this.random);
+        String eventSource = eventType[0];
+        String eventName = eventType[1];
+        UserIdentityType userIdentityType = this.userIdentityTypes.next(this.random);
+        boolean readOnly = isReadOnly(eventName);
+
+        generator.writeStartObject();
+        generator.writeStringField("eventVersion", "1.05");
+        this.writeUserIdentity(generator, userIdentityType, eventSource);
+        generator.writeStringField("eventTime", this.eventTimeFormat.format(new Date(this.fileTime - this.random.nextInt((int) DELIVERY_INTERVAL_MILLIS))));
+        generator.writeStringField("eventSource", eventSource);
+        generator.writeStringField("eventName", eventName);
+        generator.writeStringField("awsRegion", this.region);
+        if (userIdentityType == UserIdentityType.AWSService) {
+            generator.writeStringField("sourceIPAddress", eventSource);
+            generator.writeStringField("userAgent", eventSource);
+        } else {
+            generator.writeStringField("sourceIPAddress", "10.0." + this.random.nextInt(256) + "." + this.random.nextInt(256));
+            generator.writeStringField("userAgent", "aws-sdk-java/1.11.39 Linux/4.4 OpenJDK_64-Bit_Server_VM/25.102-b14");
+        }
+        this.writeRequestParameters(generator, out);
+        if (readOnly) {
+            generator.writeNullField("responseElements");
+        } else {
+            generator.writeObjectFieldStart("responseElements");
+            generator.writeStringField("requestId", this.uuid());
+            generator.writeEndObject();
+        }
+        generator.writeStringField("requestID", this.uuid());
+        generator.writeStringField("eventID", this.uuid());
+        generator.writeBooleanField("readOnly", readOnly);
+        if (!readOnly) {
+            generator.writeArrayFieldStart("resources");
+            generator.writeStartObject();
+            generator.writeStringField("ARN", "arn:aws:" + serviceName(eventSource) + ":" + this.region + ":" + this.accountId
+                    + ":resource/" + Integer.toHexString(this.random.nextInt()));
+            generator.writeStringField("accountId", this.accountId);
+            generator.writeEndObject();
+            generator.writeEndArray();
+        }
+        generator.writeStringField("eventType", "AwsApiCall");
+        if (userIdentityType == UserIdentityType.AWSService || userIdentityType == UserIdentityType.AWSAccount) {
+            generator.writeStringField("sharedEventID", this.uuid());
+        }
+        generator.writeStringField("recipientAccountId", this.accountId);
+        generator.writeEndObject();
+    }
+
+    private void writeUserIdentity(JsonGenerator generator, UserIdentityType type, String eventSource) throws IOException {
+        String principal = "EXAMPLE" + this.random.nextInt(100);
+        generator.writeObjectFieldStart("userIdentity");
+        generator.writeStringField("type", type.name());
+
+        switch (type) {
+            case Root:
+                generator.writeStringField("principalId", this.accountId);
+                generator.writeStringField("arn", "arn:aws:iam::" + this.accountId + ":root");
+                generator.writeStringField("accountId", this.accountId);
+                generator.writeStringField("accessKeyId", "ASIA" + principal);
+                break;
+
+            case IAMUser:
+                generator.writeStringField("principalId", "AIDA" + principal);
+                generator.writeStringField("arn", "arn:aws:iam::" + this.accountId + ":user/user-" + principal);
+                generator.writeStringField("accountId", this.accountId);
+                generator.writeStringField("accessKeyId", "AKIA" + principal);
+                generator.writeStringField("userName", "user-" + principal);
+                break;
+
+            case AssumedRole:
+                generator.writeStringField("principalId", "AROA" + principal + ":session");
+                generator.writeStringField("arn", "arn:aws:sts::" + this.accountId + ":assumed-role/role-" + principal + "/session");
+                generator.writeStringField("accountId", this.accountId);
+                generator.writeStringField("accessKeyId", "ASIA" + principal);
+                this.writeSessionContext(generator, "Role", "AROA" + principal,
+                        "arn:aws:iam::" + this.accountId + ":role/role-" + principal, "role-" + principal);
+                break;
+
+            case FederatedUser:
+                generator.writeStringField("principalId", this.accountId + ":federated-" + principal);
+                generator.writeStringField("arn", "arn:aws:sts::" + this.accountId + ":federated-user/federated-" + principal);
+                generator.writeStringField("accountId", this.accountId);
+                generator.writeStringField("accessKeyId", "ASIA" + principal);
+                this.writeSessionContext(generator, "IAMUser", "AIDA" + principal,
+                        "arn:aws:iam::" + this.accountId + ":user/user-" + principal, "user-" + principal);
+                break;
+
+            case AWSAccount:
+                generator.writeStringField("principalId", "AIDA" + principal);
+                generator.writeStringField("accountId", "210987654321");
+                break;
+
+            case AWSService:
+                generator.writeStringField("invokedBy", eventSource);
+                break;
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeSessionContext(JsonGenerator generator, String issuerType, String issuerPrincipalId, String issuerArn,
+            String issuerUserName) throws IOException {
+        generator.writeObjectFieldStart("sessionContext");
+        generator.writeObjectFieldStart("attributes");
+        generator.writeStringField("mfaAuthenticated", Boolean.toString(this.random.nextBoolean()));
+        generator.writeStringField("creationDate", this.eventTimeFormat.format(new Date(this.fileTime - DELIVERY_INTERVAL_MILLIS * 12)));
+        generator.writeEndObject();
+        generator.writeObjectFieldStart("sessionIssuer");
+        generator.writeStringField("type", issuerType);
+        generator.writeStringField("principalId", issuerPrincipalId);
+        generator.writeStringField("arn", issuerArn);
+        generator.writeStringField("accountId", this.accountId);
+        generator.writeStringField("userName", issuerUserName);
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write <code>requestParameters</code> of roughly the drawn size, as a list of items that each nest tags and a
+     * filter object, the shape of the larger EC2 and S3 requests.
+     */
+    private void writeRequestParameters(JsonGenerator generator, ByteArrayOutputStream out) throws IOException {
+        int size = this.minRequestParametersSize
+                + this.random.nextInt(this.maxRequestParametersSize - this.minRequestParametersSize + 1);
+        if (size == 0) {
+            generator.writeNullField("requestParameters");
+            return;
+        }
+
+        generator.flush();
+        int end = out.size() + size;
+
+        generator.writeObjectFieldStart("requestParameters");
+        generator.writeNumberField("maxResults", this.random.nextInt(1000));
+        generator.writeObjectFieldStart("itemSet");
+        generator.writeArrayFieldStart("items");
+        generator.flush();
+        for (int i = 0; out.size() < end; i++) {
+            generator.writeStartObject();
+            generator.writeStringField("id", "item-" + Integer.toHexString(this.random.nextInt()));
+            generator.writeNumberField("index", i);
+            generator.writeArrayFieldStart("tags");
+            generator.writeStartObject();
+            generator.writeStringField("key", "team");
+            generator.writeStringField("value", "team-" + this.random.nextInt(16));
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeObjectFieldStart("filter");
+            generator.writeStringField("name", "state");
+            generator.writeBooleanField("enabled", this.random.nextBoolean());
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.flush();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private static boolean isReadOnly(String eventName) {
+        for (String prefix : READ_ONLY_PREFIXES) {
+            if (eventName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String serviceName(String eventSource) {
+        int dot = eventSource.indexOf('.');
+        return dot < 0 ? eventSource : eventSource.substring(0, dot);
+    }
+
+    private static SimpleDateFormat utcFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+    private String uuid() {
+        return new UUID(this.random.nextLong(), this.random.nextLong()).toString();
+    }
+
+    /**
+     * Picks values in proportion to their weights.
+     */
+    private static class WeightedChoice<T> {
+        private final List<T> values = new ArrayList<T>();
+        private double[] cumulativeWeights = new double[0];
+
+        void add(T value, double weight) {
+            LibraryUtils.checkCondition(weight <= 0, "Weight must be greater than 0.");
+            double total = this.isEmpty() ? 0 : this.cumulativeWeights[this.cumulativeWeights.length - 1];
+            this.values.add(value);
+            this.cumulativeWeights = Arrays.copyOf(this.cumulativeWeights, this.values.size());
+            this.cumulativeWeights[this.values.size() - 1] = total + weight;
+        }
+
+        boolean isEmpty() {
+            return this.values.isEmpty();
+        }
+
+        T next(Random random) {
+            double point = random.nextDouble() * this.cumulativeWeights[this.cumulativeWeights.length - 1];
+            int index = Arrays.binarySearch(this.cumulativeWeights, point);
+            index = index < 0 ? -index - 1 : index + 1;
+            return this.values.get(Math.min(index, this.values.size() - 1));
+        }
+    }
+
+    /**
+     * Builds a {@link LogGenerator}. Distributions left empty take the {@link EventMix#mixed} defaults.
+     */
+    public static class Builder {
+        private final long seed;
+        private int eventsPerFile = 100;
+        private WeightedChoice<String[]> eventTypes = new WeightedChoice<String[]>();
+        private WeightedChoice<UserIdentityType> userIdentityTypes = new WeightedChoice<UserIdentityType>();
+        private int minRequestParametersSize = -1;
+        private int maxRequestParametersSize = -1;
+        private String bucketName = DEFAULT_BUCKET_NAME;
+        private String accountId = DEFAULT_ACCOUNT_ID;
+        private String region = DEFAULT_REGION;
+        private long startTime = DEFAULT_START_TIME;
+
+        /**
+         * Builder for {@link LogGenerator}.
+         *
+         * @param seed the seed of the generated content.
+         */
+        public Builder(long seed) {
+            this.seed = seed;
+        }
+
+        /**
+         * Applies a preset, replacing the event type, user identity and request parameters distributions.
+         *
+         * @param mix the preset.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withEventMix(EventMix mix) {
+            this.eventTypes = new WeightedChoice<String[]>();
+            this.userIdentityTypes = new WeightedChoice<UserIdentityType>();
+            switch (mix) {
+                case simple:
+                    this.withEventType("ec2.amazonaws.com", "DescribeInstances", 1);
+                    this.withEventType("s3.amazonaws.com", "ListBuckets", 1);
+                    this.withEventType("s3.amazonaws.com", "GetBucketAcl", 1);
+                    this.withEventType("dynamodb.amazonaws.com", "DescribeTable", 1);
+                    this.withUserIdentityType(UserIdentityType.IAMUser, 1);
+                    this.withRequestParametersSize(16, 32);
+                    break;
+
+                case mixed:
+                    this.withEventType("ec2.amazonaws.com", "DescribeInstances", 20);
+                    this.withEventType("ec2.amazonaws.com", "RunInstances", 5);
+                    this.withEventType("s3.amazonaws.com", "GetBucketAcl", 15);
+                    this.withEventType("s3.amazonaws.com", "PutBucketPolicy", 2);
+                    this.withEventType("sts.amazonaws.com", "AssumeRole", 20);
+                    this.withEventType("kms.amazonaws.com", "Decrypt", 25);
+                    this.withEventType("dynamodb.amazonaws.com", "DescribeTable", 10);
+                    this.withEventType("dynamodb.amazonaws.com", "CreateTable", 3);
+                    this.withUserIdentityType(UserIdentityType.IAMUser, 30);
+                    this.withUserIdentityType(UserIdentityType.AssumedRole, 40);
+                    this.withUserIdentityType(UserIdentityType.FederatedUser, 5);
+                    this.withUserIdentityType(UserIdentityType.Root, 1);
+                    this.withUserIdentityType(UserIdentityType.AWSAccount, 4);
+                    this.withUserIdentityType(UserIdentityType.AWSService, 20);
+                    this.withRequestParametersSize(32, 2048);
+                    break;
+            }
+            return this;
+        }
+
+        /**
+         * @param eventsPerFile the number of events in each log file.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withEventsPerFile(int eventsPerFile) {
+            LibraryUtils.checkCondition(eventsPerFile < 0, "Events per file cannot be negative.");
+            this.eventsPerFile = eventsPerFile;
+            return this;
+        }
+
+        /**
+         * Adds an <code>eventSource</code> and <code>eventName</code> pair to the event type distribution. The weight
+         * of an event source is the sum of the weights of its event names.
+         * <p>
+         * Events whose name starts with <code>Get</code>, <code>List</code>, <code>Describe</code>, <code>Head</code>,
+         * <code>Lookup</code> or <code>Decrypt</code> are read-only, the others are written with response elements
+         * and a resource.
+         *
+         * @param eventSource the service, such as <code>ec2.amazonaws.com</code>.
+         * @param eventName the API call, such as <code>RunInstances</code>.
+         * @param weight the relative frequency of the pair.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withEventType(String eventSource, String eventName, double weight) {
+            LibraryUtils.checkArgumentNotNull(eventSource, "Event source is null.");
+            LibraryUtils.checkArgumentNotNull(eventName, "Event name is null.");
+            this.eventTypes.add(new String[] {eventSource, eventName}, weight);
+            return this;
+        }
+
+        /**
+         * Adds a <code>userIdentity</code> type to the user identity distribution.
+         *
+         * @param type the user identity type.
+         * @param weight the relative frequency of the type.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withUserIdentityType(UserIdentityType type, double weight) {
+            LibraryUtils.checkArgumentNotNull(type, "User identity type is null.");
+            this.userIdentityTypes.add(type, weight);
+            return this;
+        }
+
+        /**
+         * Sets the approximate size of the serialized <code>requestParameters</code>, drawn uniformly for each event.
+         * A size of 0 writes <code>null</code> request parameters.
+         *
+         * @param minBytes the smallest size, in bytes.
+         * @param maxBytes the largest size, in bytes.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withRequestParametersSize(int minBytes, int maxBytes) {
+            LibraryUtils.checkCondition(minBytes < 0 || maxBytes < minBytes, "Request parameters size range is invalid.");
+            this.minRequestParametersSize = minBytes;
+            this.maxRequestParametersSize = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param bucketName the bucket the notifications point to.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withBucketName(String bucketName) {
+            this.bucketName = bucketName;
+            return this;
+        }
+
+        /**
+         * @param accountId the account of the events and object keys.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withAccountId(String accountId) {
+            this.accountId = accountId;
+            return this;
+        }
+
+        /**
+         * @param region the region of the events and object keys.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withRegion(String region) {
+            this.region = region;
+            return this;
+        }
+
+        /**
+         * @param startTime the delivery time of the first log file, in milliseconds since the epoch. Each following
+         *     log file is delivered five minutes later, and its events happened in the five minutes before.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withStartTime(long startTime) {
+            this.startTime = startTime;
+            return this;
+        }
+
+        /**
+         * @return a new {@link LogGenerator}.
+         */
+        public LogGenerator build() {
+            LibraryUtils.checkArgumentNotNull(this.bucketName, "Bucket name is null.");
+            LibraryUtils.checkArgumentNotNull(this.accountId, "Account ID is null.");
+            LibraryUtils.checkArgumentNotNull(this.region, "Region is null.");
+
+            Builder defaults = null;
+            if (this.eventTypes.isEmpty() || this.userIdentityTypes.isEmpty() || this.minRequestParametersSize < 0) {
+                defaults = new Builder(this.seed).withEventMix(EventMix.mixed);
+            }
+            if (this.eventTypes.isEmpty()) {
+                this.eventTypes = defaults.eventTypes;
+            }
+            if (this.userIdentityTypes.isEmpty()) {
+                this.userIdentityTypes = defaults.userIdentityTypes;
+            }
+            if (this.minRequestParametersSize < 0) {
+                this.minRequestParametersSize = defaults.minRequestParametersSize;
+                this.maxRequestParametersSize = defaults.maxRequestParametersSize;
+            }
+            return new LogGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.CallbackException;
+import com.amazonaws.services.cloudtrail.processinglibrary.filter.FilterExpressions;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailLog;
+import com.amazonaws.services.cloudtrail.processinglibrary.rules.DetectionRule;
+import com.amazonaws.services.cloudtrail.processinglibrary.rules.RuleEngine;
+import com.amazonaws.services.cloudtrail.processinglibrary.rules.RuleMatch;
+import com.amazonaws.services.cloudtrail.processinglibrary.serializer.DefaultEventSerializer;
+import com.amazonaws.services.cloudtrail.processinglibrary.serializer.EventSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Measures matching events against detection rules with a {@link RuleEngine}, compared to evaluating every rule for
+ * every event.
+ * <p>
+ * Rules are generated like a large rule set: most name an event source and event name, a few of them ones the
+ * {@link LogGenerator.EventMix#mixed} events use, and half add a <code>userIdentity.type</code> condition. One rule in
+ * twenty matches any event source when the event has an error code.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleEngineBenchmark {
+    static final int EVENTS_PER_INVOCATION = 1000;
+
+    private static final String[][] EVENT_TYPES = {
+        {"ec2.amazonaws.com", "DescribeInstances", "RunInstances"},
+        {"s3.amazonaws.com", "GetBucketAcl", "PutBucketPolicy"},
+        {"sts.amazonaws.com", "AssumeRole"},
+        {"kms.amazonaws.com", "Decrypt"},
+        {"dynamodb.amazonaws.com", "DescribeTable", "CreateTable"}
+    };
+
+    @Param({"10", "200", "2000"})
+    public int ruleCount;
+
+    private List<CloudTrailEvent> events;
+    private List<DetectionRule> rules;
+    private RuleEngine ruleEngine;
+    private final List<RuleMatch> matches = new ArrayList<RuleMatch>();
+
+    @Setup
+    public void setUp() throws IOException, CallbackException {
+        LogGenerator generator = new LogGenerator.Builder(42)
+                .withEventMix(LogGenerator.EventMix.mixed)
+                .withEventsPerFile(EVENTS_PER_INVOCATION)
+                .build();
+        CloudTrailLog ctLog = new CloudTrailLog(generator.getBucketName(), generator.nextObjectKey());
+        byte[] logFile = generator.nextLogFile();
+
+        this.events = new ArrayList<CloudTrailEvent>(EVENTS_PER_INVOCATION);
+        try (EventSerializer serializer = new DefaultEventSerializer(ctLog, new ObjectMapper().getFactory().createParser(logFile))) {
+            while (serializer.hasNextEvent()) {
+                this.events.add(serializer.getNextEvent());
+            }
+        }
+
+        this.rules = generateRules(new Random(42), this.ruleCount);
+        this.ruleEngine = new RuleEngine(this.rules);
+
+        // both ways must find the same matches for the comparison to mean anything
+        if (this.indexed() != this.linearScan()) {
+            throw new IllegalStateException("Indexed and linear matching disagree.");
+        }
+    }
+
+    /**
+     * Match every event with the {@link RuleEngine} index.
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_INVOCATION)
+    public void indexed(Blackhole blackhole) throws CallbackException {
+        blackhole.consume(this.indexed());
+    }
+
+    /**
+     * Match every event by evaluating each rule in turn.
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_INVOCATION)
+    public void linearScan(Blackhole blackhole) throws CallbackException {
+        blackhole.consume(this.linearScan());
+    }
+
+    private int indexed() throws CallbackException {
+        int count = 0;
+        for (CloudTrailEvent event : this.events) {
+            count += this.ruleEngine.match(event, this.matches);
+            this.matches.clear();
+        }
+        return count;
+    }
+
+    private int linearScan() throws CallbackException {
+        int count = 0;
+        for (CloudTrailEvent event : this.events) {
+            for (DetectionRule rule : this.rules) {
+                if (rule.matches(event)) {
+                    this.matches.add(new RuleMatch(rule, event));
+                    count++;
+                }
+            }
+            this.matches.clear();
+        }
+        return count;
+    }
+
+    private static List<DetectionRule> generateRules(Random random, int count) {
+        LogGenerator.UserIdentityType[] identityTypes = LogGenerator.UserIdentityType.values();
+        List<DetectionRule> rules = new ArrayList<DetectionRule>(count);
+        for (int i = 0; i < count; i++) {
+            DetectionRule.Builder builder = new DetectionRule.Builder("rule-" + i);
+            if (random.nextInt(20) == 0) {
+                builder.withErrorCode(DetectionRule.ErrorCodeCondition.PRESENT);
+            } else if (random.nextInt(10) == 0) {
+                String[] eventType = EVENT_TYPES[random.nextInt(EVENT_TYPES.length)];
+                builder.withEventSource(eventType[0]).withEventName(eventType[1 + random.nextInt(eventType.length - 1)]);
+            } else {
+                builder.withEventSource("service" + random.nextInt(100) + ".amazonaws.com")
+                        .withEventName("Action" + random.nextInt(50));
+            }
+            if (random.nextBoolean()) {
+                LogGenerator.UserIdentityType type = identityTypes[random.nextInt(identityTypes.length)];
+                builder.withCondition(FilterExpressions.compile("userIdentity.type == \"" + type + "\""));
+            }
+            rules.add(builder.build());
+        }
+        return rules;
+    }
+}
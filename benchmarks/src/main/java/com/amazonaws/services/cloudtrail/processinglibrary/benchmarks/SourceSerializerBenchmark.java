@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailSource;
+import com.amazonaws.services.cloudtrail.processinglibrary.serializer.DefaultSourceSerializer;
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Measures decoding SNS-wrapped CloudTrail notifications into sources with the {@link DefaultSourceSerializer}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SourceSerializerBenchmark {
+    @Param({"1", "5"})
+    public int logsPerNotification;
+
+    private DefaultSourceSerializer serializer;
+    private String body;
+
+    @Setup
+    public void setUp() {
+        this.serializer = new DefaultSourceSerializer(new ObjectMapper());
+
+        LogGenerator generator = new LogGenerator.Builder(42).build();
+        List<String> objectKeys = new ArrayList<String>();
+        for (int i = 0; i < this.logsPerNotification; i++) {
+            objectKeys.add(generator.nextObjectKey());
+        }
+        this.body = generator.notificationBody(objectKeys);
+    }
+
+    /**
+     * Decode one notification. <code>getSource()</code> adds attributes to the message, so each call gets a new one.
+     */
+    @Benchmark
+    public CloudTrailSource getSource() throws IOException {
+        return this.serializer.getSource(new Message().withMessageId("benchmark").withBody(this.body));
+    }
+}
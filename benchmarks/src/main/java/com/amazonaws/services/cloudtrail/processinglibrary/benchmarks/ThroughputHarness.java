@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.cloudtrail.processinglibrary.AWSCloudTrailProcessingExecutor;
+import com.amazonaws.services.cloudtrail.processinglibrary.configuration.ClientConfiguration;
+import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.ProcessingLibraryException;
+import com.amazonaws.services.cloudtrail.processinglibrary.impl.MetricsProgressReporter;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventsProcessor;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ExceptionHandler;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressState;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LatencyHistogram;
+
+/**
+ * Drives a complete {@link AWSCloudTrailProcessingExecutor} against an {@link InMemoryS3Client} and an
+ * {@link InMemorySqsClient}, and reports end-to-end throughput for every combination of thread count, maximum events
+ * per emit and log file size.
+ * <p>
+ * Each run loads fresh queues with notifications for generated log files, spread evenly over the queues, starts the
+ * executor, and stops it once every message is deleted. It reports events and sources per second, the p50 and p99 latency of
+ * <code>processSource</code>, and the duplicate processing rate: the share of events handed to the
+ * <code>EventsProcessor</code> more than once, which grows when sources wait longer than the visibility timeout.
+ * <p>
+ * Usage: <code>ThroughputHarness [--name=v1,v2,...]...</code> with these options:
+ * <ul>
+ *   <li><code>threads</code>: thread counts, default <code>1,4,16</code>.</li>
+ *   <li><code>maxEventsPerEmit</code>: batch sizes, default <code>1,100</code>.</li>
+ *   <li><code>eventsPerFile</code>: log file sizes, default <code>100,1000</code>.</li>
+ *   <li><code>mix</code>: {@link LogGenerator.EventMix}, default <code>mixed</code>.</li>
+ *   <li><code>sources</code>: notifications per run, default <code>200</code>.</li>
+ *   <li><code>logsPerSource</code>: log files per notification, default <code>1</code>.</li>
+ *   <li><code>queues</code>: SQS queues polled by the executor, default <code>1</code>.</li>
+ *   <li><code>visibilityTimeout</code>: SQS visibility timeout in seconds, default <code>30</code>.</li>
+ *   <li><code>timeout</code>: seconds before a run is abandoned, default <code>600</code>.</li>
+ * </ul>
+ */
+public class ThroughputHarness {
+    private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/" + LogGenerator.DEFAULT_ACCOUNT_ID + "/cloudtrail";
+
+    /**
+     * Held so the level set on it is not lost when the logger is garbage collected.
+     */
+    private static final Logger SDK_LOGGER = Logger.getLogger("com.amazonaws");
+
+    private final LogGenerator.EventMix mix;
+    private final int sourceCount;
+    private final int logsPerSource;
+    private final int queueCount;
+    private final int visibilityTimeout;
+    private final long timeoutMillis;
+
+    /**
+     * Initialize a new <code>ThroughputHarness</code>.
+     *
+     * @param mix the events of the generated log files.
+     * @param sourceCount the number of notifications per run.
+     * @param logsPerSource the number of log files per notification.
+     * @param queueCount the number of SQS queues.
+     * @param visibilityTimeout the SQS visibility timeout, in seconds.
+     * @param timeoutSeconds the time after which a run is abandoned, in seconds.
+     */
+    public ThroughputHarness(LogGenerator.EventMix mix, int sourceCount, int logsPerSource, int queueCount,
+            int visibilityTimeout, int timeoutSeconds) {
+        this.mix = mix;
+        this.sourceCount = sourceCount;
+        this.logsPerSource = logsPerSource;
+        this.queueCount = queueCount;
+        this.visibilityTimeout = visibilityTimeout;
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+    }
+
+    /**
+     * Process freshly loaded queues.
+     *
+     * @param threadCount the thread count of the executor.
+     * @param maxEventsPerEmit the maximum number of events per <code>EventsProcessor.process()</code> call.
+     * @param eventsPerFile the number of events in each log file.
+     * @return the measurements of the run.
+     * @throws InterruptedException if interrupted while waiting for the run to finish.
+     */
+    public Result run(int threadCount, int maxEventsPerEmit, int eventsPerFile) throws InterruptedException {
+        LogGenerator generator = new LogGenerator.Builder(42)
+                .withEventMix(this.mix)
+                .withEventsPerFile(eventsPerFile)
+                .build();
+        InMemoryS3Client s3Client = new InMemoryS3Client();
+        InMemorySqsClient sqsClient = new InMemorySqsClient();
+        List<String> queueUrls = new ArrayList<String>();
+        for (int i = 0; i < this.queueCount; i++) {
+            queueUrls.add(QUEUE_URL + "-" + i);
+        }
+        for (int i = 0; i < this.sourceCount; i++) {
+            List<String> objectKeys = new ArrayList<String>();
+            for (int j = 0; j < this.logsPerSource; j++) {
+                String objectKey = generator.nextObjectKey();
+                s3Client.addObject(generator.getBucketName(), objectKey, generator.nextGzippedLogFile());
+                objectKeys.add(objectKey);
+            }
+            sqsClient.addMessage(queueUrls.get(i % this.queueCount), generator.notificationBody(objectKeys));
+        }
+
+        ClientConfiguration config = new ClientConfiguration(queueUrls.get(0),
+                new AWSStaticCredentialsProvider(new BasicAWSCredentials("access-key", "secret-key")));
+        for (String queueUrl : queueUrls.subList(1, this.queueCount)) {
+            config.addSqsUrl(queueUrl);
+        }
+        config.setThreadCount(threadCount);
+        config.setMaxEventsPerEmit(maxEventsPerEmit);
+        config.setVisibilityTimeout(this.visibilityTimeout);
+
+        final AtomicLong eventCount = new AtomicLong();
+        final Set<UUID> eventIds = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+        final AtomicLong failureCount = new AtomicLong();
+        MetricsProgressReporter progressReporter = new MetricsProgressReporter();
+
+        AWSCloudTrailProcessingExecutor executor = new AWSCloudTrailProcessingExecutor.Builder(new EventsProcessor() {
+            @Override
+            public void process(List<CloudTrailEvent> events) {
+                eventCount.addAndGet(events.size());
+                for (CloudTrailEvent event : events) {
+                    eventIds.add(event.getEventData().getEventId());
+                }
+            }
+        }, config)
+                .withS3Client(s3Client)
+                .withSQSClient(sqsClient)
+                .withProgressReporter(progressReporter)
+                .withExceptionHandler(new ExceptionHandler() {
+                    @Override
+                    public void handleException(ProcessingLibraryException exception) {
+                        failureCount.incrementAndGet();
+                    }
+                })
+                .build();
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(this.timeoutMillis);
+        executor.start();
+        while (sqsClient.getStatistics().getDeleteCount() < this.sourceCount && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        sqsClient.shutdown();
+        executor.stop();
+
+        return new Result(threadCount, maxEventsPerEmit, eventsPerFile, elapsedNanos, eventCount.get(), eventIds.size(),
+                sqsClient.getStatistics(), progressReporter.snapshot().getLatency(ProgressState.processSource),
+                failureCount.get());
+    }
+
+    /**
+     * Run every combination of the options and print one line per run.
+     *
+     * @param args the options, see the class documentation.
+     * @throws InterruptedException if interrupted while waiting for a run to finish.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        SDK_LOGGER.setLevel(Level.WARNING);
+
+        Map<String, String> options = new HashMap<String, String>();
+        options.put("threads", "1,4,16");
+        options.put("maxEventsPerEmit", "1,100");
+        options.put("eventsPerFile", "100,1000");
+        options.put("mix", LogGenerator.EventMix.mixed.name());
+        options.put("sources", "200");
+        options.put("logsPerSource", "1");
+        options.put("queues", "1");
+        options.put("visibilityTimeout", "30");
+        options.put("timeout", "600");
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0 || !options.containsKey(arg.substring(2, equals))) {
+                System.err.println("Unknown option " + arg + ", expected one of --" + options.keySet() + "=value");
+                System.exit(1);
+            }
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+
+        ThroughputHarness harness = new ThroughputHarness(LogGenerator.EventMix.valueOf(options.get("mix")),
+                Integer.parseInt(options.get("sources")), Integer.parseInt(options.get("logsPerSource")),
+                Integer.parseInt(options.get("queues")), Integer.parseInt(options.get("visibilityTimeout")), Integer.parseInt(options.get("timeout")));
+
+        System.out.println(Result.HEADER);
+        for (int threadCount : parseInts(options.get("threads"))) {
+            for (int maxEventsPerEmit : parseInts(options.get("maxEventsPerEmit"))) {
+                for (int eventsPerFile : parseInts(options.get("eventsPerFile"))) {
+                    System.out.println(harness.run(threadCount, maxEventsPerEmit, eventsPerFile));
+                }
+            }
+        }
+    }
+
+    private static int[] parseInts(String values) {
+        String[] parts = values.split(",");
+        int[] ints = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ints[i] = Integer.parseInt(parts[i].trim());
+        }
+        return ints;
+    }
+
+    /**
+     * The measurements of one run.
+     */
+    public static class Result {
+        static final String HEADER = String.format("%8s %10s %10s %12s %10s %9s %9s %10s %12s %9s",
+                "threads", "maxEmit", "events/log", "events/s", "sources/s", "p50 ms", "p99 ms", "duplicate", "redelivered", "failures");
+
+        private final int threadCount;
+        private final int maxEventsPerEmit;
+        private final int eventsPerFile;
+        private final long elapsedNanos;
+        private final long processedEventCount;
+        private final long uniqueEventCount;
+        private final InMemorySqsClient.QueueStatistics queueStatistics;
+        private final LatencyHistogram.Snapshot sourceLatency;
+        private final long failureCount;
+
+        Result(int threadCount, int maxEventsPerEmit, int eventsPerFile, long elapsedNanos, long processedEventCount,
+                long uniqueEventCount, InMemorySqsClient.QueueStatistics queueStatistics, LatencyHistogram.Snapshot sourceLatency,
+                long failureCount) {
+            this.threadCount = threadCount;
+            this.maxEventsPerEmit = maxEventsPerEmit;
+            this.eventsPerFile = eventsPerFile;
+            this.elapsedNanos = elapsedNanos;
+            this.processedEventCount = processedEventCount;
+            this.uniqueEventCount = uniqueEventCount;
+            this.queueStatistics = queueStatistics;
+            this.sourceLatency = sourceLatency;
+            this.failureCount = failureCount;
+        }
+
+        /**
+         * @return the events handed to the <code>EventsProcessor</code> per second, duplicates included.
+         */
+        public double getEventsPerSecond() {
+            return this.processedEventCount * 1e9 / this.elapsedNanos;
+        }
+
+        /**
+         * @return the SQS messages deleted per second.
+         */
+        public double getSourcesPerSecond() {
+            return this.queueStatistics.getDeleteCount() * 1e9 / this.elapsedNanos;
+        }
+
+        /**
+         * @return the share of processed events that had been processed before.
+         */
+        public double getDuplicateRate() {
+            return this.processedEventCount == 0 ? 0 : (double) (this.processedEventCount - this.uniqueEventCount) / this.processedEventCount;
+        }
+
+        /**
+         * @return the latency of <code>processSource</code>.
+         */
+        public LatencyHistogram.Snapshot getSourceLatency() {
+            return this.sourceLatency;
+        }
+
+        /**
+         * @return the SQS delivery counters at the end of the run.
+         */
+        public InMemorySqsClient.QueueStatistics getQueueStatistics() {
+            return this.queueStatistics;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8d %10d %10d %12.0f %10.1f %9.2f %9.2f %9.2f%% %12d %9d",
+                    this.threadCount, this.maxEventsPerEmit, this.eventsPerFile, this.getEventsPerSecond(),
+                    this.getSourcesPerSecond(), this.sourceLatency.getValueAtPercentile(50) / 1e6,
+                    this.sourceLatency.getValueAtPercentile(99) / 1e6, this.getDuplicateRate() * 100,
+                    this.queueStatistics.getRedeliveryCount(), this.failureCount);
+        }
+    }
+}
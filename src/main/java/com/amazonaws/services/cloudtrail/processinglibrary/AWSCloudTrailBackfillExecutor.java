@@ -0,0 +1,630 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.cloudtrail.processinglibrary.checkpoint.CheckpointStore;
+import com.amazonaws.services.cloudtrail.processinglibrary.configuration.BackfillConfiguration;
+import com.amazonaws.services.cloudtrail.processinglibrary.configuration.ProcessingConfiguration;
+import com.amazonaws.services.cloudtrail.processinglibrary.configuration.RangedGetConfiguration;
+import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.ProcessingLibraryException;
+import com.amazonaws.services.cloudtrail.processinglibrary.factory.ThreadPoolFactory;
+import com.amazonaws.services.cloudtrail.processinglibrary.impl.DefaultEventFilter;
+import com.amazonaws.services.cloudtrail.processinglibrary.impl.DefaultExceptionHandler;
+import com.amazonaws.services.cloudtrail.processinglibrary.impl.DefaultProgressReporter;
+import com.amazonaws.services.cloudtrail.processinglibrary.impl.DefaultSourceFilter;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventFilter;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventsProcessor;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ExceptionHandler;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ProgressReporter;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.SourceFilter;
+import com.amazonaws.services.cloudtrail.processinglibrary.manager.S3Manager;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailLog;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.S3BasedSource;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.SourceAttributeKeys;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.BasicProcessSourceInfo;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressState;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressStatus;
+import com.amazonaws.services.cloudtrail.processinglibrary.reader.EventReader;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.S3ClientRouter;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+/**
+ * Backfills AWS CloudTrail logs by listing them directly from S3 instead of polling SQS.
+ * <p>
+ * Listing fans out across account, region and day partitions in <code>listingThreadPool</code>, sized by
+ * {@link BackfillConfiguration#getListingThreadCount()}. Listed log files are streamed to <code>mainThreadPool</code>,
+ * sized by {@link ProcessingConfiguration#getThreadCount()}, and processed by the same {@link EventReader} pipeline as
+ * the {@link AWSCloudTrailProcessingExecutor}. Listing blocks once the main thread pool is saturated, so at most
+ * {@link BackfillConfiguration#getMaxPendingLogFiles()} log files are waiting to download at any time.
+ * <p>
+ * If a {@link CheckpointStore} is provided, log files are marked completed once processed successfully and skipped
+ * when listed again, so a restarted backfill resumes where it stopped.
+ */
+public class AWSCloudTrailBackfillExecutor {
+    private static final Log logger = LogFactory.getLog(AWSCloudTrailBackfillExecutor.class);
+
+    private static final String FORWARD_SLASH = "/";
+    private static final String AWS_LOGS = "AWSLogs/";
+    private static final String CLOUDTRAIL = "CloudTrail/";
+    private static final String LOG_FILE_SUFFIX = ".json.gz";
+    private static final String UTC_TIME_ZONE = "UTC";
+
+    private ProcessingConfiguration config;
+    private BackfillConfiguration backfillConfig;
+    private ExceptionHandler exceptionHandler;
+    private CheckpointStore checkpointStore;
+
+    private S3Manager s3Manager;
+    private EventReader reader;
+
+    /**
+     * The thread pool that lists S3 prefixes.
+     */
+    private ExecutorService listingThreadPool;
+
+    /**
+     * The thread pool that processes the log files.
+     */
+    private ExecutorService mainThreadPool;
+
+    /**
+     * The thread pool that downloads the byte ranges of large log files; <code>null</code> when ranged GETs are
+     * disabled.
+     */
+    private ExecutorService rangedGetThreadPool;
+
+    /**
+     * Limits the number of listed log files handed to <code>mainThreadPool</code> but not yet processed.
+     */
+    private Semaphore downloadPermits;
+
+    /**
+     * The number of listing jobs submitted but not yet finished; listing is complete when it drops to zero.
+     */
+    private final AtomicInteger pendingListingJobs = new AtomicInteger();
+    private final CountDownLatch listingComplete = new CountDownLatch(1);
+
+    private AWSCloudTrailBackfillExecutor(Builder builder) {
+        this.config = builder.config;
+        this.backfillConfig = builder.backfillConfig;
+        this.exceptionHandler = builder.exceptionHandler;
+        this.checkpointStore = builder.checkpointStore;
+
+        this.s3Manager = builder.s3Manager;
+        this.reader = builder.reader;
+        this.listingThreadPool = builder.listingThreadPool;
+        this.mainThreadPool = builder.mainThreadPool;
+        this.rangedGetThreadPool = builder.rangedGetThreadPool;
+        this.downloadPermits = new Semaphore(this.backfillConfig.getMaxPendingLogFiles(this.config.getThreadCount()));
+    }
+
+    /**
+     * Start backfilling AWS CloudTrail logs. This method returns immediately; call {@link #awaitCompletion()} to wait
+     * until every listed log file has been processed.
+     */
+    public void start() {
+        logger.info("Started AWSCloudTrailBackfillExecutor.");
+        this.backfillConfig.validate();
+
+        // hold a listing job open until every partition job has been submitted
+        this.pendingListingJobs.incrementAndGet();
+        try {
+            String logsPrefix = this.getLogsPrefix();
+            if (this.backfillConfig.getAccountIds().isEmpty()) {
+                this.submitListingJob(new ListAccountsJob(logsPrefix));
+            } else {
+                for (String accountId : this.backfillConfig.getAccountIds()) {
+                    this.submitListingJob(new ListRegionsJob(logsPrefix, accountId));
+                }
+            }
+        } finally {
+            this.finishListingJob();
+        }
+    }
+
+    /**
+     * Wait until every listed log file has been processed, then shut down the thread pools.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitCompletion() throws InterruptedException {
+        this.listingComplete.await();
+        this.listingThreadPool.shutdown();
+        this.mainThreadPool.shutdown();
+        this.mainThreadPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        if (this.rangedGetThreadPool != null) {
+            this.rangedGetThreadPool.shutdown();
+        }
+        logger.info("Completed AWSCloudTrailBackfillExecutor.");
+    }
+
+    /**
+     * Stop backfilling AWS CloudTrail logs. Log files that were listed but not yet processed are abandoned, and
+     * {@link #awaitCompletion()} returns once the log files already being processed are done.
+     */
+    public void stop() {
+        // listing jobs that never ran will not finish themselves
+        for (int i = this.listingThreadPool.shutdownNow().size(); i > 0; i--) {
+            this.finishListingJob();
+        }
+        this.listingComplete.countDown();
+        this.mainThreadPool.shutdown();
+
+        try { // Wait for shutdown
+            this.mainThreadPool.awaitTermination(this.config.getThreadTerminationDelaySeconds(), TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            logger.debug("Wait thread pool termination is interrupted.");
+        }
+
+        if (!this.mainThreadPool.isTerminated()) { // ShutdownNow after waiting
+            logger.debug(this.mainThreadPool.toString() + " is force to shutdown now.");
+            this.mainThreadPool.shutdownNow();
+        }
+        if (this.rangedGetThreadPool != null) {
+            this.rangedGetThreadPool.shutdownNow();
+        }
+        logger.info("Stopped AWSCloudTrailBackfillExecutor.");
+    }
+
+    /**
+     * @return the key prefix under which CloudTrail delivers logs for each account.
+     */
+    private String getLogsPrefix() {
+        StringBuilder prefix = new StringBuilder();
+        if (this.backfillConfig.getS3KeyPrefix() != null && !this.backfillConfig.getS3KeyPrefix().isEmpty()) {
+            prefix.append(this.backfillConfig.getS3KeyPrefix()).append(FORWARD_SLASH);
+        }
+        prefix.append(AWS_LOGS);
+        if (this.backfillConfig.getOrganizationId() != null) {
+            prefix.append(this.backfillConfig.getOrganizationId()).append(FORWARD_SLASH);
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Run a listing job in the listing thread pool, tracking it until it finishes.
+     *
+     * @param job the listing job.
+     */
+    private void submitListingJob(final Runnable job) {
+        this.pendingListingJobs.incrementAndGet();
+        try {
+            this.listingThreadPool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        job.run();
+                    } finally {
+                        finishListingJob();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Listing job rejected after the executor stopped.");
+            this.finishListingJob();
+        }
+    }
+
+    private void finishListingJob() {
+        if (this.pendingListingJobs.decrementAndGet() == 0) {
+            this.listingComplete.countDown();
+        }
+    }
+
+    /**
+     * List the child prefixes directly under a prefix, i.e. account IDs under <code>AWSLogs/</code>.
+     *
+     * @param prefix the prefix to list, ending in a forward slash.
+     * @return the names of the child prefixes, without the parent prefix or trailing slash.
+     */
+    private List<String> listChildPrefixes(String prefix) {
+        List<String> children = new ArrayList<String>();
+        ObjectListing listing = null;
+        do {
+            listing = this.s3Manager.listLogs(this.backfillConfig.getS3Bucket(), prefix, FORWARD_SLASH, listing);
+            if (listing == null) {
+                break;
+            }
+            for (String commonPrefix : listing.getCommonPrefixes()) {
+                children.add(commonPrefix.substring(prefix.length(), commonPrefix.length() - FORWARD_SLASH.length()));
+            }
+        } while (listing.isTruncated());
+        return children;
+    }
+
+    /**
+     * @return the start of each UTC day in the backfill time range.
+     */
+    private List<Calendar> getDays() {
+        List<Calendar> days = new ArrayList<Calendar>();
+        Calendar day = Calendar.getInstance(TimeZone.getTimeZone(UTC_TIME_ZONE));
+        day.setTime(this.backfillConfig.getStartTime());
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+
+        while (!day.getTime().after(this.backfillConfig.getEndTime())) {
+            days.add((Calendar) day.clone());
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return days;
+    }
+
+    /**
+     * Whether a listed object is a CloudTrail log delivered within the backfill time range. Log files whose names do not
+     * carry a timestamp are kept, since their day partition already matched.
+     *
+     * @param objectKey the listed S3 object key.
+     * @return <code>true</code> if the log file should be processed.
+     */
+    private boolean isInTimeRange(String objectKey) {
+        if (!objectKey.endsWith(LOG_FILE_SUFFIX)) {
+            return false;
+        }
+        Date timestamp = LibraryUtils.extractTimestampFromObjectKey(objectKey);
+        return timestamp == null ||
+                (!timestamp.before(this.backfillConfig.getStartTime()) && !timestamp.after(this.backfillConfig.getEndTime()));
+    }
+
+    /**
+     * Hand a listed log file to the main thread pool, blocking while too many are waiting.
+     *
+     * @param accountId the account the log file belongs to.
+     * @param objectKey the S3 object key of the log file.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void submitLog(String accountId, String objectKey) throws InterruptedException {
+        final String checkpointKey = this.backfillConfig.getS3Bucket() + FORWARD_SLASH + objectKey;
+        if (this.checkpointStore != null && this.checkpointStore.isCompleted(checkpointKey)) {
+            logger.debug("Log file " + checkpointKey + " is already completed.");
+            return;
+        }
+
+        Map<String, String> sourceAttributes = new HashMap<String, String>();
+        sourceAttributes.put(SourceAttributeKeys.ACCOUNT_ID.getAttributeKey(), accountId);
+        List<CloudTrailLog> logs = Collections.singletonList(new CloudTrailLog(this.backfillConfig.getS3Bucket(), objectKey));
+        final S3BasedSource source = new S3BasedSource(sourceAttributes, logs);
+
+        this.downloadPermits.acquire();
+        try {
+            this.mainThreadPool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (reader.processSource(source) && checkpointStore != null) {
+                            markCompleted(source, checkpointKey);
+                        }
+                    } finally {
+                        downloadPermits.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            this.downloadPermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Record a processed log file in the checkpoint store.
+     *
+     * @param source the processed source.
+     * @param checkpointKey the checkpoint key of its log file.
+     */
+    private void markCompleted(S3BasedSource source, String checkpointKey) {
+        try {
+            this.checkpointStore.markCompleted(checkpointKey);
+        } catch (IOException e) {
+            ProgressStatus status = new ProgressStatus(ProgressState.processSource, new BasicProcessSourceInfo(source, true));
+            this.exceptionHandler.handleException(new ProcessingLibraryException("Fail to save checkpoint.", e, status));
+        }
+    }
+
+    /**
+     * Discovers the accounts under <code>AWSLogs/</code>.
+     */
+    private class ListAccountsJob implements Runnable {
+        private final String logsPrefix;
+
+        public ListAccountsJob(String logsPrefix) {
+            this.logsPrefix = logsPrefix;
+        }
+
+        public void run() {
+            for (String accountId : listChildPrefixes(this.logsPrefix)) {
+                submitListingJob(new ListRegionsJob(this.logsPrefix, accountId));
+            }
+        }
+    }
+
+    /**
+     * Discovers the regions of an account, unless configured, and fans out one partition job per region and day.
+     */
+    private class ListRegionsJob implements Runnable {
+        private final String logsPrefix;
+        private final String accountId;
+
+        public ListRegionsJob(String logsPrefix, String accountId) {
+            this.logsPrefix = logsPrefix;
+            this.accountId = accountId;
+        }
+
+        public void run() {
+            String cloudTrailPrefix = this.logsPrefix + this.accountId + FORWARD_SLASH + CLOUDTRAIL;
+            List<String> regions = backfillConfig.getRegions().isEmpty() ?
+                    listChildPrefixes(cloudTrailPrefix) : backfillConfig.getRegions();
+
+            for (String region : regions) {
+                for (Calendar day : getDays()) {
+                    String partitionPrefix = String.format("%s%s/%04d/%02d/%02d/", cloudTrailPrefix, region,
+                            day.get(Calendar.YEAR), day.get(Calendar.MONTH) + 1, day.get(Calendar.DAY_OF_MONTH));
+                    submitListingJob(new ListPartitionJob(this.accountId, partitionPrefix));
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the log files of one account, region and day, streaming each page to the main thread pool.
+     */
+    private class ListPartitionJob implements Runnable {
+        private final String accountId;
+        private final String partitionPrefix;
+
+        public ListPartitionJob(String accountId, String partitionPrefix) {
+            this.accountId = accountId;
+            this.partitionPrefix = partitionPrefix;
+        }
+
+        public void run() {
+            ObjectListing listing = null;
+            try {
+                do {
+                    listing = s3Manager.listLogs(backfillConfig.getS3Bucket(), this.partitionPrefix, null, listing);
+                    if (listing == null) {
+                        break;
+                    }
+                    for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+                        if (isInTimeRange(summary.getKey())) {
+                            submitLog(this.accountId, summary.getKey());
+                        }
+                    }
+                } while (listing.isTruncated());
+
+            } catch (InterruptedException e) {
+                logger.debug("Listing " + this.partitionPrefix + " is interrupted.");
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A class that builds an {@link AWSCloudTrailBackfillExecutor} object.
+     */
+    public static class Builder {
+        private static final int SDK_TIME_OUT = 10000; // 10 seconds
+
+        private ProcessingConfiguration config;
+        private BackfillConfiguration backfillConfig;
+
+        //provide default implementation to AWSCloudTrailProcessingLibrary interfaces.
+        private SourceFilter sourceFilter = new DefaultSourceFilter();
+        private EventFilter eventFilter = new DefaultEventFilter();
+        private EventsProcessor eventsProcessor;
+        private ProgressReporter progressReporter = new DefaultProgressReporter();
+        private ExceptionHandler exceptionHandler = new DefaultExceptionHandler();
+
+        private ExecutorService listingThreadPool;
+        private ExecutorService mainThreadPool;
+        private ExecutorService rangedGetThreadPool;
+        private AmazonS3Client s3Client;
+        private S3ClientRouter s3ClientRouter;
+        private CheckpointStore checkpointStore;
+        private S3Manager s3Manager;
+        private EventReader reader;
+
+        /**
+         * Builder for {@link AWSCloudTrailBackfillExecutor}.
+         * <p>
+         * Only the credentials, S3 region, thread count, thread termination delay, maximum events per emit and raw event
+         * information settings of the <code>ProcessingConfiguration</code> are used; no SQS queue is polled.
+         *
+         * @param eventsProcessor The {@link EventsProcessor} instance that will process
+         *     {@link com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent}s.
+         * @param config A {@link ProcessingConfiguration} instance that provides the library's configuration details.
+         * @param backfillConfig A {@link BackfillConfiguration} instance that describes which log files to backfill.
+         */
+        public Builder(EventsProcessor eventsProcessor, ProcessingConfiguration config, BackfillConfiguration backfillConfig) {
+            this.eventsProcessor = eventsProcessor;
+            this.config = config;
+            this.backfillConfig = backfillConfig;
+        }
+
+        /**
+         * Applies a user-defined {@link SourceFilter} to this instance.
+         *
+         * @param sourceFilter The <code>SourceFilter</code> that will be used to filter sources.
+         * @return This <code>Builder</code> instance, using the specified <code>SourceFilter</code>.
+         */
+        public Builder withSourceFilter(SourceFilter sourceFilter) {
+            this.sourceFilter = sourceFilter;
+            return this;
+        }
+
+        /**
+         * Applies a user-defined {@link EventFilter} to this instance.
+         *
+         * @param eventFilter The <code>EventFilter</code> that will be used to filter events.
+         * @return This <code>Builder</code> instance, using the specified <code>EventFilter</code>.
+         */
+        public Builder withEventFilter(EventFilter eventFilter) {
+            this.eventFilter = eventFilter;
+            return this;
+        }
+
+        /**
+         * Applies a user-defined {@link ProgressReporter} to this instance.
+         *
+         * @param progressReporter The <code>ProgressReporter</code> that will report the state of the backfill.
+         * @return This <code>Builder</code> instance, using the specified <code>ProgressReporter</code>.
+         */
+        public Builder withProgressReporter(ProgressReporter progressReporter) {
+            this.progressReporter = progressReporter;
+            return this;
+        }
+
+        /**
+         * Applies a user-defined {@link ExceptionHandler} to this instance.
+         *
+         * @param exceptionHandler The <code>ExceptionHandler</code> that will handle exceptions for this instance.
+         * @return This <code>Builder</code> instance, using the specified <code>ExceptionHandler</code>.
+         */
+        public Builder withExceptionHandler(ExceptionHandler exceptionHandler) {
+            this.exceptionHandler = exceptionHandler;
+            return this;
+        }
+
+        /**
+         * Applies a user-defined <code>ExecutorService</code> thread pool used to process log files.
+         *
+         * @param mainThreadPool The <code>ExecutorService</code> thread pool that will be used to process log files.
+         * @return This <code>Builder</code> instance, using the specified thread pool.
+         */
+        public Builder withThreadPool(ExecutorService mainThreadPool) {
+            this.mainThreadPool = mainThreadPool;
+            return this;
+        }
+
+        /**
+         * Applies a user-defined <code>AmazonS3Client</code> to this instance.
+         *
+         * @param s3Client the <code>AmazonS3Client</code> object used to list and download CloudTrail log files.
+         * @return This <code>Builder</code> instance, using the specified <code>AmazonS3Client</code>.
+         */
+        public Builder withS3Client(AmazonS3Client s3Client) {
+            this.s3Client = s3Client;
+            return this;
+        }
+
+        /**
+         * Applies a {@link S3ClientRouter} to this instance to send the requests for each bucket to the bucket's region.
+         * <p>
+         * When no <code>AmazonS3Client</code> is applied, the library creates its client and a router for it, so this
+         * is only needed with a user-defined client.
+         *
+         * @param s3ClientRouter The <code>S3ClientRouter</code> choosing the client of each bucket.
+         *
+         * @return This <code>Builder</code> instance, using the specified <code>S3ClientRouter</code>.
+         */
+        public Builder withS3ClientRouter(S3ClientRouter s3ClientRouter) {
+            this.s3ClientRouter = s3ClientRouter;
+            return this;
+        }
+
+        /**
+         * Applies a {@link CheckpointStore} used to skip log files completed by a previous run.
+         *
+         * @param checkpointStore the <code>CheckpointStore</code> recording completed log files.
+         * @return This <code>Builder</code> instance, using the specified <code>CheckpointStore</code>.
+         */
+        public Builder withCheckpointStore(CheckpointStore checkpointStore) {
+            this.checkpointStore = checkpointStore;
+            return this;
+        }
+
+        /**
+         * Build an {@link AWSCloudTrailBackfillExecutor}.
+         *
+         * @return an AWSCloudTrailBackfillExecutor instance.
+         */
+        public AWSCloudTrailBackfillExecutor build() {
+            LibraryUtils.checkArgumentNotNull(this.config, "ProcessingConfiguration object is null.");
+            LibraryUtils.checkArgumentNotNull(this.backfillConfig, "BackfillConfiguration object is null.");
+            LibraryUtils.checkArgumentNotNull(this.config.getAwsCredentialsProvider(),
+                    "ProcessingConfiguration missing AWSCredentialsProvider attribute");
+            this.backfillConfig.validate();
+
+            LibraryUtils.checkArgumentNotNull(this.eventsProcessor, "eventsProcessor is null.");
+            LibraryUtils.checkArgumentNotNull(this.sourceFilter, "sourceFilter is null.");
+            LibraryUtils.checkArgumentNotNull(this.eventFilter, "eventFilter is null.");
+            LibraryUtils.checkArgumentNotNull(this.progressReporter, "progressReporter is null.");
+            LibraryUtils.checkArgumentNotNull(this.exceptionHandler, "exceptionHandler is null.");
+
+            if (this.s3Client == null) {
+                // override default timeout for S3Client
+                ClientConfiguration clientConfiguration = new ClientConfiguration();
+                clientConfiguration.setConnectionTimeout(SDK_TIME_OUT);
+                clientConfiguration.setSocketTimeout(SDK_TIME_OUT);
+
+                AmazonS3Client s3Client = new AmazonS3Client(this.config.getAwsCredentialsProvider(), clientConfiguration);
+                s3Client.setRegion(Region.getRegion(Regions.fromName(this.config.getS3Region())));
+                this.s3Client = s3Client;
+
+                if (this.s3ClientRouter == null) {
+                    this.s3ClientRouter = new S3ClientRouter(s3Client, this.config.getS3Region(),
+                            this.config.getAwsCredentialsProvider(), clientConfiguration);
+                }
+            }
+
+            ThreadPoolFactory threadFactory = new ThreadPoolFactory(this.config.getThreadCount(), this.exceptionHandler);
+            if (this.config instanceof RangedGetConfiguration
+                    && ((RangedGetConfiguration) this.config).getRangedGetPartSize() > 0) {
+                this.rangedGetThreadPool = threadFactory.createRangedGetThreadPool(
+                        ((RangedGetConfiguration) this.config).getRangedGetThreadCount());
+            }
+
+            this.s3Manager = new S3Manager(this.s3Client, this.config, this.exceptionHandler, this.progressReporter,
+                    null, this.rangedGetThreadPool, this.s3ClientRouter);
+            this.reader = new EventReader(this.eventsProcessor, this.sourceFilter, this.eventFilter, this.progressReporter,
+                    this.exceptionHandler, null, this.s3Manager, this.config, null, null, null);
+
+            this.listingThreadPool = threadFactory.createListingThreadPool(this.backfillConfig.getListingThreadCount());
+
+            if (this.mainThreadPool == null) {
+                this.mainThreadPool = threadFactory.createMainThreadPool();
+            }
+
+            LibraryUtils.checkArgumentNotNull(this.listingThreadPool, "listingThreadPool is null.");
+            LibraryUtils.checkArgumentNotNull(this.mainThreadPool, "mainThreadPool is null.");
+
+            return new AWSCloudTrailBackfillExecutor(this);
+        }
+    }
+}
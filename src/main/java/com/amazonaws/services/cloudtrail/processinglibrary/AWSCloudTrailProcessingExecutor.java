@@ -15,7 +15,12 @@
 
 package com.amazonaws.services.cloudtrail.processinglibrary;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -26,8 +31,11 @@ import org.apache.commons.logging.LogFactory;
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
+import com.amazonaws.services.cloudtrail.processinglibrary.configuration.MultiQueueConfiguration;
 import com.amazonaws.services.cloudtrail.processinglibrary.configuration.ProcessingConfiguration;
 import com.amazonaws.services.cloudtrail.processinglibrary.configuration.PropertiesFileConfiguration;
+import com.amazonaws.services.cloudtrail.processinglibrary.configuration.RangedGetConfiguration;
+import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.CallbackException;
 import com.amazonaws.services.cloudtrail.processinglibrary.factory.EventReaderFactory;
 import com.amazonaws.services.cloudtrail.processinglibrary.factory.ThreadPoolFactory;
 import com.amazonaws.services.cloudtrail.processinglibrary.impl.DefaultExceptionHandler;
@@ -35,6 +43,9 @@ import com.amazonaws.services.cloudtrail.processinglibrary.impl.DefaultProgressR
 import com.amazonaws.services.cloudtrail.processinglibrary.impl.DefaultEventFilter;
 import com.amazonaws.services.cloudtrail.processinglibrary.impl.DefaultEventsProcessor;
 import com.amazonaws.services.cloudtrail.processinglibrary.impl.DefaultSourceFilter;
+import com.amazonaws.services.cloudtrail.processinglibrary.impl.EventTimeOrderingEventsProcessor;
+import com.amazonaws.services.cloudtrail.processinglibrary.impl.KeyedLaneEventsProcessor;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventKeyExtractor;
 import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ExceptionHandler;
 import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ProgressReporter;
 import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventFilter;
@@ -44,7 +55,13 @@ import com.amazonaws.services.cloudtrail.processinglibrary.manager.S3Manager;
 import com.amazonaws.services.cloudtrail.processinglibrary.manager.SqsManager;
 import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailSource;
 import com.amazonaws.services.cloudtrail.processinglibrary.reader.EventReader;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.EventDeduplicator;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LagMonitor;
 import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LogFileCache;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.ProcessedLogCache;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.S3ClientRouter;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.SourceScheduler;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.sqs.AmazonSQSClient;
 
@@ -52,9 +69,12 @@ import com.amazonaws.services.sqs.AmazonSQSClient;
  * AWS CloudTrail Processing Library's main execution logic. This class loads a user's configuration and
  * creates an {@link EventReaderFactory} object which spawns a {@link EventReader} to process log files.
  * <p>
- * It has two thread pools: <code>scheduledThreadPool</code>, which is a single-threaded scheduled
- * thread pool used to poll SQS for messages, and <code>mainThreadPool</code>, which has a
- * configurable size and processes each {@link CloudTrailSource} in parallel.
+ * It has two thread pools: <code>scheduledThreadPool</code>, which is a scheduled thread pool used to poll
+ * SQS for messages, and <code>mainThreadPool</code>, which has a configurable size and processes each
+ * {@link CloudTrailSource} in parallel.
+ * <p>
+ * Each configured SQS queue has its own {@link EventReaderFactory} and as many polling threads as its weight, while
+ * the main thread pool and the S3 and SQS clients are shared by all queues.
  */
 public class AWSCloudTrailProcessingExecutor {
     private static final Log logger = LogFactory.getLog(AWSCloudTrailProcessingExecutor.class);
@@ -76,7 +96,19 @@ public class AWSCloudTrailProcessingExecutor {
     private ExceptionHandler exceptionHandler;
 
     /**
-     * Scheduled thread pool used to continuously poll queue and enqueue jobs
+     * The lanes that <code>eventsProcessor</code> runs on; <code>null</code> when events are processed on the threads
+     * that emit them.
+     */
+    private KeyedLaneEventsProcessor eventLanes;
+
+    /**
+     * The buffer putting events in event time order before <code>eventsProcessor</code>; <code>null</code> when
+     * events are processed in the order they are read.
+     */
+    private EventTimeOrderingEventsProcessor eventOrdering;
+
+    /**
+     * Scheduled thread pool used to continuously poll queues and enqueue jobs
      * into our main thread pool executorService.
      */
     private ScheduledExecutorService scheduledThreadPool;
@@ -86,7 +118,34 @@ public class AWSCloudTrailProcessingExecutor {
      */
     private ExecutorService mainThreadPool;
 
-    private EventReaderFactory readerFactory;
+    /**
+     * The thread pool that downloads the byte ranges of large log files; <code>null</code> when ranged GETs are
+     * disabled.
+     */
+    private ExecutorService rangedGetThreadPool;
+
+    /**
+     * Orders sources by a scheduling policy before they reach the main thread pool; <code>null</code> to process
+     * them in arrival order.
+     */
+    private SourceScheduler sourceScheduler;
+
+    /**
+     * The reader factory of each SQS queue, by queue URL.
+     */
+    private Map<String, EventReaderFactory> readerFactories;
+
+    /**
+     * Whether {@link #drain(long, TimeUnit)} was called, after which polled sources are released instead of processed.
+     */
+    private volatile boolean draining;
+
+    /**
+     * The sources handed to the main thread pool or the source scheduler that have not started, with the reader that
+     * polled them. Starting a source and releasing it both remove it from here first, so only one of them happens.
+     */
+    private final Map<CloudTrailSource, EventReader> unstartedSources =
+            Collections.synchronizedMap(new IdentityHashMap<CloudTrailSource, EventReader>());
 
     private AWSCloudTrailProcessingExecutor(Builder builder) {
         this.config = builder.config;
@@ -95,10 +154,14 @@ public class AWSCloudTrailProcessingExecutor {
         this.eventsProcessor = builder.eventsProcessor;
         this.progressReporter = builder.progressReporter;
         this.exceptionHandler = builder.exceptionHandler;
+        this.eventLanes = builder.eventLanes;
+        this.eventOrdering = builder.eventOrdering;
 
         this.scheduledThreadPool = builder.scheduledThreadPool;
         this.mainThreadPool = builder.mainThreadPool;
-        this.readerFactory = builder.readerFactory;
+        this.rangedGetThreadPool = builder.rangedGetThreadPool;
+        this.sourceScheduler = builder.sourceScheduler;
+        this.readerFactories = builder.readerFactories;
     }
 
     /**
@@ -107,7 +170,11 @@ public class AWSCloudTrailProcessingExecutor {
     public void start() {
         logger.info("Started AWSCloudTrailProcessingLibrary.");
         this.ValidateBeforeStart();
-        scheduledThreadPool.scheduleAtFixedRate(new ScheduledJob(this.readerFactory), 0L, EXECUTION_DELAY, TimeUnit.MICROSECONDS);
+        for (Map.Entry<String, EventReaderFactory> entry : this.readerFactories.entrySet()) {
+            for (int i = 0; i < getSqsQueueWeight(this.config, entry.getKey()); i++) {
+                scheduledThreadPool.scheduleAtFixedRate(new ScheduledJob(entry.getValue()), 0L, EXECUTION_DELAY, TimeUnit.MICROSECONDS);
+            }
+        }
     }
 
     /**
@@ -116,9 +183,131 @@ public class AWSCloudTrailProcessingExecutor {
     public void stop() {
         stopThreadPool(this.mainThreadPool);
         stopThreadPool(this.scheduledThreadPool);
+        if (this.rangedGetThreadPool != null) {
+            stopThreadPool(this.rangedGetThreadPool);
+        }
+        this.shutdownEventStages();
         logger.info("Stopped AWSCloudTrailProcessingLibrary.");
     }
 
+    /**
+     * Stop processing AWS CloudTrail logs, finishing the sources being processed and releasing the others.
+     * <p>
+     * Polling stops first, though a poll already waiting for messages still completes. Sources that were received but
+     * have not started are not processed: their messages are made visible in the queue again right away, so another
+     * consumer receives them without waiting for the visibility timeout. Sources being processed run to the end,
+     * emitting their buffered events and deleting their messages, unless the timeout expires first. They are then
+     * interrupted as by {@link #stop()}, and their messages become visible when the visibility timeout ends.
+     *
+     * @param timeout the maximum time to wait for polling to stop and sources being processed to finish.
+     * @param unit the unit of <code>timeout</code>.
+     * @return <code>true</code> if every source being processed finished before the timeout.
+     */
+    public boolean drain(long timeout, TimeUnit unit) {
+        logger.info("Draining AWSCloudTrailProcessingLibrary.");
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        this.draining = true;
+
+        this.scheduledThreadPool.shutdown();
+        this.releaseUnstartedSources();
+        boolean drained = awaitTermination(this.scheduledThreadPool, deadline);
+
+        // a poll running when draining started may have handed sources over before noticing
+        this.releaseUnstartedSources();
+        this.mainThreadPool.shutdown();
+        drained = awaitTermination(this.mainThreadPool, deadline) && drained;
+
+        if (!drained) {
+            logger.info("Sources were still being processed after the drain timeout.");
+            this.scheduledThreadPool.shutdownNow();
+            this.mainThreadPool.shutdownNow();
+            this.releaseUnstartedSources();
+        }
+        if (this.rangedGetThreadPool != null) {
+            stopThreadPool(this.rangedGetThreadPool);
+        }
+        this.shutdownEventStages();
+        logger.info("Drained AWSCloudTrailProcessingLibrary.");
+        return drained;
+    }
+
+    /**
+     * Release the events still held in event time order, then stop the event lanes.
+     */
+    private void shutdownEventStages() {
+        if (this.eventOrdering != null) {
+            try {
+                this.eventOrdering.flush();
+            } catch (CallbackException e) {
+                this.exceptionHandler.handleException(e);
+            }
+        }
+        if (this.eventLanes != null) {
+            this.eventLanes.shutdown();
+        }
+    }
+
+    /**
+     * Release the messages of all sources that have not started.
+     */
+    private void releaseUnstartedSources() {
+        List<Map.Entry<CloudTrailSource, EventReader>> sources;
+        synchronized (this.unstartedSources) {
+            sources = new ArrayList<Map.Entry<CloudTrailSource, EventReader>>(this.unstartedSources.entrySet());
+            this.unstartedSources.clear();
+        }
+        for (Map.Entry<CloudTrailSource, EventReader> source : sources) {
+            source.getValue().releaseSource(source.getKey());
+        }
+        if (!sources.isEmpty()) {
+            logger.info("Released " + sources.size() + " unstarted sources.");
+        }
+    }
+
+    /**
+     * Wait until a thread pool that was shut down terminates, or the deadline passes.
+     *
+     * @param threadPool the thread pool to wait for.
+     * @param deadline the deadline, in {@link System#nanoTime()} units.
+     * @return <code>true</code> if the thread pool terminated.
+     */
+    private static boolean awaitTermination(ExecutorService threadPool, long deadline) {
+        try {
+            return threadPool.awaitTermination(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            logger.debug("Wait thread pool termination is interrupted.");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Get the SQS queues to poll. A configuration that is not a {@link MultiQueueConfiguration} has a single queue.
+     *
+     * @param config the configuration to read.
+     * @return the SQS URLs of the queues.
+     */
+    private static List<String> getSqsUrls(ProcessingConfiguration config) {
+        if (config instanceof MultiQueueConfiguration) {
+            return ((MultiQueueConfiguration) config).getSqsUrls();
+        }
+        return Collections.singletonList(config.getSqsUrl());
+    }
+
+    /**
+     * Get the number of threads polling an SQS queue.
+     *
+     * @param config the configuration to read.
+     * @param sqsUrl one of the URLs returned by {@link #getSqsUrls(ProcessingConfiguration)}.
+     * @return the weight of the queue.
+     */
+    private static int getSqsQueueWeight(ProcessingConfiguration config, String sqsUrl) {
+        if (config instanceof MultiQueueConfiguration) {
+            return ((MultiQueueConfiguration) config).getSqsQueueWeight(sqsUrl);
+        }
+        return MultiQueueConfiguration.DEFAULT_SQS_QUEUE_WEIGHT;
+    }
+
     /**
      * Helper function to gracefully stop an {@link ExecutorService}.
      *
@@ -171,15 +360,31 @@ public class AWSCloudTrailProcessingExecutor {
                 final EventReader reader = eventReaderFactory.createReader();
                 List<CloudTrailSource> sources = reader.getSources();
                 for (final CloudTrailSource source : sources) {
-
-                    // process each CloudTrailSource in main thread pool
-                    mainThreadPool.execute(new Runnable() {
+                    if (draining) {
+                        reader.releaseSource(source);
+                        continue;
+                    }
+
+                    // process each CloudTrailSource in main thread pool, unless a drain has released it meanwhile
+                    unstartedSources.put(source, reader);
+                    Runnable task = new Runnable() {
                         public void run() {
-                            reader.processSource(source);
+                            if (unstartedSources.remove(source) != null) {
+                                reader.processSource(source);
+                            }
                         }
-                    });
+                    };
+                    if (sourceScheduler != null) {
+                        sourceScheduler.submit(source, task);
+                    } else {
+                        mainThreadPool.execute(task);
+                    }
                 }
 
+            } catch (InterruptedException e) {
+                logger.debug("Executor was interrupted while waiting for the source scheduler.");
+                Thread.currentThread().interrupt();
+
             } catch (Throwable t) {
                 logger.error("Executor failed to process a task. " + t.getMessage(), t);
             }
@@ -201,13 +406,27 @@ public class AWSCloudTrailProcessingExecutor {
         private ProgressReporter progressReporter = new DefaultProgressReporter();
         private ExceptionHandler exceptionHandler = new DefaultExceptionHandler();
 
+        private EventKeyExtractor eventLaneKey;
+        private int eventLaneCount;
+        private KeyedLaneEventsProcessor eventLanes;
+        private Long eventOrderingLatenessMillis;
+        private int eventOrderingMaxBufferedEvents;
+        private EventTimeOrderingEventsProcessor eventOrdering;
+
         private ScheduledExecutorService scheduledThreadPool;
         private ExecutorService mainThreadPool;
-        private EventReaderFactory readerFactory;
+        private ExecutorService rangedGetThreadPool;
+        private Map<String, EventReaderFactory> readerFactories;
 
         private String propertyFilePath;
         private AmazonS3Client s3Client;
+        private S3ClientRouter s3ClientRouter;
         private AmazonSQSClient sqsClient;
+        private ProcessedLogCache processedLogCache;
+        private EventDeduplicator eventDeduplicator;
+        private LogFileCache logFileCache;
+        private LagMonitor lagMonitor;
+        private SourceScheduler sourceScheduler;
 
         /**
          * Builder for {@link AWSCloudTrailProcessingExecutor}.
@@ -332,6 +551,142 @@ public class AWSCloudTrailProcessingExecutor {
             return this;
         }
 
+        /**
+         * Applies a {@link ProcessedLogCache} to this instance to suppress duplicate deliveries.
+         * <p>
+         * Before downloading, each log file is checked against the cache. A message whose log files were all
+         * recently processed is deleted immediately and reported as
+         * {@link com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressState#deleteDuplicateMessage}.
+         *
+         * @param processedLogCache The <code>ProcessedLogCache</code> remembering recently processed log files.
+         *
+         * @return This <code>Builder</code> instance, using the specified <code>ProcessedLogCache</code>.
+         */
+        public Builder withProcessedLogCache(ProcessedLogCache processedLogCache) {
+            this.processedLogCache = processedLogCache;
+            return this;
+        }
+
+        /**
+         * Applies an {@link EventDeduplicator} to this instance to drop events whose <code>eventID</code> was already
+         * emitted, i.e. when an organization trail and an account trail deliver the same event.
+         * <p>
+         * Events are deduplicated after the {@link interfaces.EventFilter} accepts them.
+         *
+         * @param eventDeduplicator The <code>EventDeduplicator</code> remembering emitted event IDs.
+         *
+         * @return This <code>Builder</code> instance, using the specified <code>EventDeduplicator</code>.
+         */
+        public Builder withEventDeduplicator(EventDeduplicator eventDeduplicator) {
+            this.eventDeduplicator = eventDeduplicator;
+            return this;
+        }
+
+        /**
+         * Process events on lanes chosen by a key, so that events with the same key reach the
+         * <code>EventsProcessor</code> one call at a time and in the order they are emitted.
+         * <p>
+         * Without lanes, the <code>EventsProcessor</code> is called concurrently from every thread of the main thread
+         * pool, and events with the same key from different log files may be processed at the same time. See
+         * {@link KeyedLaneEventsProcessor} for the ordering provided.
+         *
+         * @param keyExtractor The {@link EventKeyExtractor} providing the key of each event, such as an
+         *     {@link com.amazonaws.services.cloudtrail.processinglibrary.impl.EventKey}.
+         * @param laneCount The number of lanes, which is the number of threads calling the
+         *     <code>EventsProcessor</code>.
+         *
+         * @return This <code>Builder</code> instance, processing events on the specified lanes.
+         */
+        public Builder withEventLanes(EventKeyExtractor keyExtractor, int laneCount) {
+            this.eventLaneKey = keyExtractor;
+            this.eventLaneCount = laneCount;
+            return this;
+        }
+
+        /**
+         * Hand events to the <code>EventsProcessor</code> in <code>eventTime</code> order, across log files.
+         * <p>
+         * Events are held until no event older than them is expected, which is when an event newer by the allowed
+         * lateness has arrived, and the rest are released when the executor stops. Events arriving later than that
+         * are processed out of order. See {@link EventTimeOrderingEventsProcessor}, including the delivery guarantee
+         * of buffered events. With event lanes, events are ordered before they are assigned to lanes.
+         *
+         * @param allowedLatenessMillis How far, in milliseconds, an event may arrive behind a newer event and still
+         *     be put in order.
+         * @param maxBufferedEvents The maximum number of events to hold.
+         *
+         * @return This <code>Builder</code> instance, ordering events by event time.
+         */
+        public Builder withEventTimeOrdering(long allowedLatenessMillis, int maxBufferedEvents) {
+            this.eventOrderingLatenessMillis = allowedLatenessMillis;
+            this.eventOrderingMaxBufferedEvents = maxBufferedEvents;
+            return this;
+        }
+
+        /**
+         * Applies a {@link S3ClientRouter} to this instance to send the requests for each bucket to the bucket's region.
+         * <p>
+         * When no <code>AmazonS3Client</code> is applied, the library creates its client and a router for it, so this
+         * is only needed with a user-defined client.
+         *
+         * @param s3ClientRouter The <code>S3ClientRouter</code> choosing the client of each bucket.
+         *
+         * @return This <code>Builder</code> instance, using the specified <code>S3ClientRouter</code>.
+         */
+        public Builder withS3ClientRouter(S3ClientRouter s3ClientRouter) {
+            this.s3ClientRouter = s3ClientRouter;
+            return this;
+        }
+
+        /**
+         * Applies a {@link LogFileCache} to this instance to keep downloaded log files on local disk.
+         * <p>
+         * When a message is redelivered, the log file is read from disk after a conditional GET confirms that its ETag
+         * has not changed, instead of being downloaded again.
+         *
+         * @param logFileCache The <code>LogFileCache</code> storing downloaded log files.
+         *
+         * @return This <code>Builder</code> instance, using the specified <code>LogFileCache</code>.
+         */
+        public Builder withLogFileCache(LogFileCache logFileCache) {
+            this.logFileCache = logFileCache;
+            return this;
+        }
+
+        /**
+         * Applies a {@link LagMonitor} to this instance to measure how far behind real time processing is.
+         * <p>
+         * Each batch of events is recorded once the {@link interfaces.EventsProcessor} accepts it, with its lag from
+         * <code>eventTime</code>. Each source is recorded once it is processed, with its lag from the SQS
+         * <code>SentTimestamp</code> and <code>ApproximateFirstReceiveTimestamp</code>. Lags are kept per account.
+         *
+         * @param lagMonitor The <code>LagMonitor</code> recording ingestion lag.
+         *
+         * @return This <code>Builder</code> instance, using the specified <code>LagMonitor</code>.
+         */
+        public Builder withLagMonitor(LagMonitor lagMonitor) {
+            this.lagMonitor = lagMonitor;
+            return this;
+        }
+
+        /**
+         * Applies a {@link SourceScheduler} to this instance to choose the order in which received sources are
+         * processed, with a {@link interfaces.SourceSchedulingPolicy}.
+         * <p>
+         * Without a scheduler, sources are processed in the order they are received, so one account with many or
+         * large log files can delay every other account. The library provides
+         * {@link impl.WeightedFairSchedulingPolicy}, {@link impl.NewestFirstSchedulingPolicy},
+         * {@link impl.DeadlineAwareSchedulingPolicy} and {@link impl.FifoSchedulingPolicy}.
+         *
+         * @param sourceScheduler The <code>SourceScheduler</code> ordering sources.
+         *
+         * @return This <code>Builder</code> instance, using the specified <code>SourceScheduler</code>.
+         */
+        public Builder withSourceScheduler(SourceScheduler sourceScheduler) {
+            this.sourceScheduler = sourceScheduler;
+            return this;
+        }
+
         /**
          * Build an {@link AWSCloudTrailProcessingExecutor} using the classpath property file.
          *
@@ -362,6 +717,11 @@ public class AWSCloudTrailProcessingExecutor {
                 AmazonS3Client s3Client = new AmazonS3Client(this.config.getAwsCredentialsProvider(), clientConfiguration);
                 s3Client.setRegion(Region.getRegion(Regions.fromName(this.config.getS3Region())));
                 this.s3Client = s3Client;
+
+                if (this.s3ClientRouter == null) {
+                    this.s3ClientRouter = new S3ClientRouter(s3Client, this.config.getS3Region(),
+                            this.config.getAwsCredentialsProvider(), clientConfiguration);
+                }
             }
 
             if (this.sqsClient == null) {
@@ -373,22 +733,52 @@ public class AWSCloudTrailProcessingExecutor {
             LibraryUtils.checkArgumentNotNull(this.s3Client, "s3Client is null.");
             LibraryUtils.checkArgumentNotNull(this.sqsClient, "sqsClient is null.");
 
-            SqsManager sqsManager = new SqsManager(sqsClient, this.config, this.exceptionHandler, this.progressReporter);
-            S3Manager s3Manager= new S3Manager(s3Client, this.config, this.exceptionHandler, this.progressReporter);
+            ThreadPoolFactory threadFactory = new ThreadPoolFactory(this.config.getThreadCount(), this.exceptionHandler);
+            if (this.config instanceof RangedGetConfiguration
+                    && ((RangedGetConfiguration) this.config).getRangedGetPartSize() > 0) {
+                this.rangedGetThreadPool = threadFactory.createRangedGetThreadPool(
+                        ((RangedGetConfiguration) this.config).getRangedGetThreadCount());
+            }
+
+            S3Manager s3Manager= new S3Manager(s3Client, this.config, this.exceptionHandler, this.progressReporter,
+                    this.logFileCache, this.rangedGetThreadPool, this.s3ClientRouter);
 
-            this.readerFactory = new EventReaderFactory.Builder(this.config)
-                .withEventsProcessor(this.eventsProcessor)
-                .withSourceFilter(this.sourceFilter)
-                .withEventFilter(this.eventFilter)
-                .withProgressReporter(this.progressReporter)
-                .withExceptionHandler(this.exceptionHandler)
-                .withS3Manager(s3Manager)
-                .withSQSManager(sqsManager).build();
+            // one reader factory per queue, sharing the clients and everything downstream of polling
+            EventsProcessor eventsProcessor = this.eventsProcessor;
+            if (this.eventLaneKey != null) {
+                this.eventLanes = new KeyedLaneEventsProcessor(this.eventsProcessor, this.eventLaneKey, this.eventLaneCount);
+                eventsProcessor = this.eventLanes;
+            }
+            if (this.eventOrderingLatenessMillis != null) {
+                this.eventOrdering = new EventTimeOrderingEventsProcessor(eventsProcessor, this.eventOrderingLatenessMillis,
+                        this.config.getMaxEventsPerEmit(), this.eventOrderingMaxBufferedEvents);
+                eventsProcessor = this.eventOrdering;
+            }
 
-            LibraryUtils.checkArgumentNotNull(this.readerFactory, "readerFactory is null.");
+            this.readerFactories = new LinkedHashMap<String, EventReaderFactory>();
+            int pollerCount = 0;
+            for (String sqsUrl : getSqsUrls(this.config)) {
+                SqsManager sqsManager = new SqsManager(sqsClient, this.config, this.exceptionHandler,
+                        this.progressReporter, sqsUrl);
+
+                EventReaderFactory readerFactory = new EventReaderFactory.Builder(this.config)
+                    .withEventsProcessor(eventsProcessor)
+                    .withSourceFilter(this.sourceFilter)
+                    .withEventFilter(this.eventFilter)
+                    .withProgressReporter(this.progressReporter)
+                    .withExceptionHandler(this.exceptionHandler)
+                    .withS3Manager(s3Manager)
+                    .withSQSManager(sqsManager)
+                    .withProcessedLogCache(this.processedLogCache)
+                    .withEventDeduplicator(this.eventDeduplicator)
+                    .withLagMonitor(this.lagMonitor).build();
+
+                LibraryUtils.checkArgumentNotNull(readerFactory, "readerFactory is null.");
+                this.readerFactories.put(sqsUrl, readerFactory);
+                pollerCount += getSqsQueueWeight(this.config, sqsUrl);
+            }
 
-            ThreadPoolFactory threadFactory = new ThreadPoolFactory(this.config.getThreadCount(), this.exceptionHandler);
-            this.scheduledThreadPool = threadFactory.createScheduledThreadPool();
+            this.scheduledThreadPool = threadFactory.createScheduledThreadPool(pollerCount);
 
             if (this.mainThreadPool == null) {
                 this.mainThreadPool = threadFactory.createMainThreadPool();
@@ -397,6 +787,10 @@ public class AWSCloudTrailProcessingExecutor {
             LibraryUtils.checkArgumentNotNull(this.scheduledThreadPool, "scheduledThreadPoll is null.");
             LibraryUtils.checkArgumentNotNull(this.mainThreadPool, "mainThreadPool is null.");
 
+            if (this.sourceScheduler != null) {
+                this.sourceScheduler.setWorkerPool(this.mainThreadPool, this.config.getThreadCount());
+            }
+
             return new AWSCloudTrailProcessingExecutor(this);
         }
     }
@@ -416,6 +810,6 @@ public class AWSCloudTrailProcessingExecutor {
 
         LibraryUtils.checkArgumentNotNull(this.scheduledThreadPool, "scheduledThreadPool is null.");
         LibraryUtils.checkArgumentNotNull(this.mainThreadPool, "mainThreadPool is null.");
-        LibraryUtils.checkArgumentNotNull(this.readerFactory, "readerFactory is null.");
+        LibraryUtils.checkArgumentNotNull(this.readerFactories, "readerFactories is null.");
     }
 }
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.aggregation;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * A Count-Min sketch: approximate counts of keys in fixed memory.
+ * <p>
+ * Keys are added by their 64-bit hash. The sketch holds <code>depth</code> rows of <code>width</code> counters, and
+ * a key is counted in one counter of each row; its estimate is the smallest of those counters. Estimates never fall
+ * below the true count. With a width of <code>ceil(e / epsilon)</code> and a depth of
+ * <code>ceil(ln(1 / delta))</code>, an estimate exceeds the true count by more than <code>epsilon</code> times the
+ * total count with probability at most <code>delta</code>.
+ * <p>
+ * Sketches of the same dimensions can be merged by adding their counters. This class is not thread safe.
+ */
+public class CountMinSketch {
+    private final int width;
+    private final int depth;
+    private final long[] counters;
+    private long totalCount;
+
+    /**
+     * Initialize a new <code>CountMinSketch</code>.
+     *
+     * @param width the number of counters in each row.
+     * @param depth the number of rows.
+     */
+    public CountMinSketch(int width, int depth) {
+        LibraryUtils.checkCondition(width < 1, "Count-Min sketch width cannot be less than 1.");
+        LibraryUtils.checkCondition(depth < 1, "Count-Min sketch depth cannot be less than 1.");
+        LibraryUtils.checkCondition((long) width * depth > Integer.MAX_VALUE - 8, "Count-Min sketch is too large.");
+        this.width = width;
+        this.depth = depth;
+        this.counters = new long[width * depth];
+    }
+
+    /**
+     * Create a <code>CountMinSketch</code> sized for an error bound.
+     *
+     * @param epsilon the error of an estimate, as a fraction of the total count.
+     * @param delta the probability that an estimate exceeds the error bound.
+     * @return the <code>CountMinSketch</code>.
+     */
+    public static CountMinSketch withAccuracy(double epsilon, double delta) {
+        return new CountMinSketch(getWidth(epsilon), getDepth(delta));
+    }
+
+    /**
+     * @param epsilon the error of an estimate, as a fraction of the total count.
+     * @return the width that bounds the error by <code>epsilon</code>.
+     */
+    static int getWidth(double epsilon) {
+        LibraryUtils.checkCondition(!(epsilon > 0 && epsilon < 1), "Epsilon must be between 0 and 1.");
+        return (int) Math.ceil(Math.E / epsilon);
+    }
+
+    /**
+     * @param delta the probability that an estimate exceeds the error bound.
+     * @return the depth that bounds the probability by <code>delta</code>.
+     */
+    static int getDepth(double delta) {
+        LibraryUtils.checkCondition(!(delta > 0 && delta < 1), "Delta must be between 0 and 1.");
+        return (int) Math.ceil(Math.log(1 / delta));
+    }
+
+    /**
+     * Add to the count of a key.
+     *
+     * @param hash the 64-bit hash of the key.
+     * @param count the amount to add.
+     * @return the estimated count of the key afterwards.
+     */
+    public long add(long hash, long count) {
+        this.totalCount += count;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            int i = this.index(hash, row);
+            this.counters[i] += count;
+            estimate = Math.min(estimate, this.counters[i]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Estimate the count of a key.
+     *
+     * @param hash the 64-bit hash of the key.
+     * @return the estimated count, which is at least the true count.
+     */
+    public long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            estimate = Math.min(estimate, this.counters[this.index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Add the counts of another sketch to this one.
+     *
+     * @param other a sketch of the same width and depth.
+     */
+    public void merge(CountMinSketch other) {
+        LibraryUtils.checkCondition(other.width != this.width || other.depth != this.depth,
+                "Cannot merge Count-Min sketches of different dimensions.");
+        for (int i = 0; i < this.counters.length; i++) {
+            this.counters[i] += other.counters[i];
+        }
+        this.totalCount += other.totalCount;
+    }
+
+    /**
+     * @return the sum of all counts added.
+     */
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    /**
+     * @return the number of counters in each row.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * Get the counter of a key in a row. The row hashes are derived from the two halves of the key hash, so one hash
+     * of the key serves every row.
+     */
+    private int index(long hash, int row) {
+        int combined = (int) hash + row * (int) (hash >>> 32);
+        return row * this.width + (int) (((combined & 0xffffffffL) * this.width) >>> 32);
+    }
+}
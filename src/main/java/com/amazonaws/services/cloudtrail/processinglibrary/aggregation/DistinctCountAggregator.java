@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.aggregation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventKeyExtractor;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.Hashing;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * Estimates the number of distinct values of one key per value of another, such as distinct source IP addresses per
+ * principal or distinct principals per account, in windows of <code>eventTime</code>.
+ * <p>
+ * Each thread adds its events to a {@link HyperLogLog} per group; when a window closes, the sketches of every thread
+ * are merged per group. The result of a window maps each group to its merged sketch, whose
+ * {@link HyperLogLog#estimate()} is the distinct count and whose {@link HyperLogLog#toByteArray()} can be stored to
+ * merge windows or processes later. Sketches start sparse, so groups with few distinct values take a few dozen bytes,
+ * and never grow past <code>2^precision</code> bytes. Events missing either key value are not counted.
+ * <p>
+ * For example, to count distinct source IP addresses per principal every hour:
+ *
+ * <pre>
+ * DistinctCountAggregator aggregator =
+ *         new DistinctCountAggregator.Builder(EventKey.principalArn, EventKey.sourceIPAddress, listener)
+ *     .withWindow(WindowAssigner.tumbling(3600000))
+ *     .build();
+ * </pre>
+ */
+public class DistinctCountAggregator extends WindowedAggregator<Map<String, HyperLogLog>, Map<String, HyperLogLog>> {
+    public static final int DEFAULT_PRECISION = 12;
+    public static final long DEFAULT_WINDOW_SIZE_MILLIS = 60000;
+
+    private final EventKeyExtractor groupBy;
+    private final EventKeyExtractor distinctOn;
+    private final int precision;
+
+    private DistinctCountAggregator(Builder builder) {
+        super(builder.windowAssigner, builder.allowedLatenessMillis, builder.windowListener);
+        this.groupBy = builder.groupBy;
+        this.distinctOn = builder.distinctOn;
+        this.precision = builder.precision;
+    }
+
+    @Override
+    protected Map<String, HyperLogLog> createAccumulator() {
+        return new HashMap<String, HyperLogLog>();
+    }
+
+    @Override
+    protected void add(Map<String, HyperLogLog> sketches, CloudTrailEvent event) {
+        String group = this.groupBy.getKey(event);
+        String value = this.distinctOn.getKey(event);
+        if (group == null || value == null) {
+            return;
+        }
+        HyperLogLog sketch = sketches.get(group);
+        if (sketch == null) {
+            sketch = new HyperLogLog(this.precision);
+            sketches.put(group, sketch);
+        }
+        sketch.add(Hashing.hash64(value));
+    }
+
+    @Override
+    protected void merge(Map<String, HyperLogLog> into, Map<String, HyperLogLog> from) {
+        for (Map.Entry<String, HyperLogLog> group : from.entrySet()) {
+            HyperLogLog sketch = into.get(group.getKey());
+            if (sketch == null) {
+                into.put(group.getKey(), group.getValue());
+            } else {
+                sketch.merge(group.getValue());
+            }
+        }
+    }
+
+    @Override
+    protected Map<String, HyperLogLog> result(Map<String, HyperLogLog> sketches) {
+        return sketches;
+    }
+
+    public static class Builder {
+        private final EventKeyExtractor groupBy;
+        private final EventKeyExtractor distinctOn;
+        private final WindowListener<Map<String, HyperLogLog>> windowListener;
+        private int precision = DEFAULT_PRECISION;
+        private WindowAssigner windowAssigner = WindowAssigner.tumbling(DEFAULT_WINDOW_SIZE_MILLIS);
+        private long allowedLatenessMillis;
+
+        /**
+         * Builder for {@link DistinctCountAggregator}.
+         *
+         * @param groupBy the {@link EventKeyExtractor} of the key to count distinct values per.
+         * @param distinctOn the {@link EventKeyExtractor} of the key whose distinct values are counted.
+         * @param windowListener the {@link WindowListener} that receives the sketch of each group per window.
+         */
+        public Builder(EventKeyExtractor groupBy, EventKeyExtractor distinctOn,
+                WindowListener<Map<String, HyperLogLog>> windowListener) {
+            LibraryUtils.checkArgumentNotNull(groupBy, "Group-by key is null.");
+            LibraryUtils.checkArgumentNotNull(distinctOn, "Distinct key is null.");
+            this.groupBy = groupBy;
+            this.distinctOn = distinctOn;
+            this.windowListener = windowListener;
+        }
+
+        /**
+         * Applies the precision of the sketches; the default is {@value DistinctCountAggregator#DEFAULT_PRECISION},
+         * for a standard error of about 1.6% in at most 4 KB per group.
+         *
+         * @param precision the number of hash bits that select a register, from
+         *     {@value HyperLogLog#MIN_PRECISION} to {@value HyperLogLog#MAX_PRECISION}.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withPrecision(int precision) {
+            LibraryUtils.checkCondition(precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION,
+                    "HyperLogLog precision must be between " + HyperLogLog.MIN_PRECISION + " and "
+                    + HyperLogLog.MAX_PRECISION + ".");
+            this.precision = precision;
+            return this;
+        }
+
+        /**
+         * Applies the windows; the default is tumbling windows of
+         * {@value DistinctCountAggregator#DEFAULT_WINDOW_SIZE_MILLIS} milliseconds.
+         *
+         * @param windowAssigner the {@link WindowAssigner} that assigns events to windows.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withWindow(WindowAssigner windowAssigner) {
+            this.windowAssigner = windowAssigner;
+            return this;
+        }
+
+        /**
+         * Applies how far, in milliseconds, an event may arrive behind a newer event and still be counted; the
+         * default is <code>0</code>. Windows are reported this much later.
+         *
+         * @param allowedLatenessMillis the allowed lateness, in milliseconds.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withAllowedLateness(long allowedLatenessMillis) {
+            this.allowedLatenessMillis = allowedLatenessMillis;
+            return this;
+        }
+
+        /**
+         * Build a {@link DistinctCountAggregator}.
+         *
+         * @return the {@link DistinctCountAggregator}.
+         */
+        public DistinctCountAggregator build() {
+            return new DistinctCountAggregator(this);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.aggregation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.Hashing;
+
+/**
+ * Counts per group, using open addressing with linear probing over parallel arrays.
+ * <p>
+ * A group is identified by its 64-bit hash, compared first, and its key values, which are only compared on a hash
+ * match and only copied into the table when the group is first seen. Counts are unboxed, so counting an event in an
+ * existing group does not allocate. The hash <code>0</code> marks an empty slot; callers must remap it. This class is not thread safe.
+ */
+class GroupCountTable {
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+    private static final float GROWTH_FACTOR = 1.5f;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] hashes;
+    private long[] counts;
+    private String[][] keys;
+    private int size;
+    private int resizeThreshold;
+
+    private final String[] keyBuffer;
+
+    /**
+     * @param keyLength the number of key values of a group.
+     */
+    GroupCountTable(int keyLength) {
+        this.keyBuffer = new String[keyLength];
+        this.allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * @return a scratch array for building the key passed to {@link #add(long, String[], long)}, so that counting an
+     *     event does not allocate one.
+     */
+    String[] getKeyBuffer() {
+        return this.keyBuffer;
+    }
+
+    /**
+     * Add to the count of a group.
+     *
+     * @param hash the hash of the group key; must not be <code>0</code>.
+     * @param key the key values of the group; copied if the group is new, so callers may reuse the array.
+     * @param count the amount to add.
+     */
+    void add(long hash, String[] key, long count) {
+        this.add(hash, key, count, true);
+    }
+
+    private void add(long hash, String[] key, long count, boolean copyKey) {
+        int slot = this.findSlot(this.hashes, this.keys, hash, key);
+        if (this.hashes[slot] != 0) {
+            this.counts[slot] += count;
+            return;
+        }
+        this.hashes[slot] = hash;
+        this.keys[slot] = copyKey ? key.clone() : key;
+        this.counts[slot] = count;
+        if (++this.size > this.resizeThreshold) {
+            this.resize((int) Math.min(Integer.MAX_VALUE - 8, (long) (this.hashes.length * GROWTH_FACTOR)));
+        }
+    }
+
+    /**
+     * Add every count of another table to this one.
+     */
+    void addAll(GroupCountTable other) {
+        for (int i = 0; i < other.hashes.length; i++) {
+            if (other.hashes[i] != 0) {
+                // the key arrays of the other table are not used after a merge, so share them
+                this.add(other.hashes[i], other.keys[i], other.counts[i], false);
+            }
+        }
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Copy the counts into a map from the key values of each group to its count.
+     */
+    Map<List<String>, Long> toMap() {
+        Map<List<String>, Long> map = new HashMap<List<String>, Long>((int) Math.ceil(this.size / 0.75));
+        for (int i = 0; i < this.hashes.length; i++) {
+            if (this.hashes[i] != 0) {
+                map.put(Collections.unmodifiableList(Arrays.asList(this.keys[i])), this.counts[i]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Find the slot holding a group, or the empty slot where it would be inserted.
+     */
+    private int findSlot(long[] hashes, String[][] keys, long hash, String[] key) {
+        int slot = (int) (((Hashing.mix64(hash) >>> 32) * hashes.length) >>> 32);
+        while (hashes[slot] != 0 && (hashes[slot] != hash || !Arrays.equals(keys[slot], key))) {
+            slot = slot + 1 == hashes.length ? 0 : slot + 1;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        this.hashes = new long[capacity];
+        this.counts = new long[capacity];
+        this.keys = new String[capacity][];
+        this.resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+    }
+
+    private void resize(int capacity) {
+        long[] oldHashes = this.hashes;
+        long[] oldCounts = this.counts;
+        String[][] oldKeys = this.keys;
+        this.allocate(capacity);
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldHashes[i] != 0) {
+                int slot = this.findSlot(this.hashes, this.keys, oldHashes[i], oldKeys[i]);
+                this.hashes[slot] = oldHashes[i];
+                this.keys[slot] = oldKeys[i];
+                this.counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
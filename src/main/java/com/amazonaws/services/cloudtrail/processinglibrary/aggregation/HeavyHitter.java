@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.aggregation;
+
+/**
+ * A key reported by a {@link HeavyHitterAggregator}, with its estimated count in a window.
+ */
+public class HeavyHitter {
+    private final String key;
+    private final long estimatedCount;
+
+    /**
+     * Initialize a new <code>HeavyHitter</code>.
+     *
+     * @param key the key value.
+     * @param estimatedCount the estimated number of events with the key.
+     */
+    public HeavyHitter(String key, long estimatedCount) {
+        this.key = key;
+        this.estimatedCount = estimatedCount;
+    }
+
+    /**
+     * @return the key value.
+     */
+    public String getKey() {
+        return this.key;
+    }
+
+    /**
+     * @return the estimated number of events with the key; never less than the true number.
+     */
+    public long getEstimatedCount() {
+        return this.estimatedCount;
+    }
+
+    @Override
+    public String toString() {
+        return this.key + "=" + this.estimatedCount;
+    }
+}
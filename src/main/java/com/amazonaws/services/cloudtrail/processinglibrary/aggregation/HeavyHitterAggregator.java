@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.aggregation;
+
+import java.util.List;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventKeyExtractor;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.Hashing;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * Reports the <code>k</code> most frequent values of a key, such as principals, source IP addresses or event names,
+ * in windows of <code>eventTime</code>, in fixed memory.
+ * <p>
+ * Each thread counts its events in a {@link CountMinSketch} and keeps the <code>k</code> keys with the highest
+ * estimates in a small heap. When a window closes, the sketches of all threads are added together and their
+ * candidates are re-estimated against the merged sketch. Counting takes no lock shared with other threads, and memory
+ * per thread and open window is the sketch, <code>width * depth</code> longs, plus <code>k</code> candidates, however
+ * many distinct keys there are.
+ * <p>
+ * Estimates are at least the true counts, and exceed them by more than <code>epsilon</code> times the number of
+ * events in the window with probability at most <code>delta</code>. A key that is frequent overall but never among
+ * the top <code>k</code> of any single thread can be missed. Events without a key value are not counted.
+ * <p>
+ * For example, to report the ten busiest principals every five minutes:
+ *
+ * <pre>
+ * HeavyHitterAggregator aggregator = new HeavyHitterAggregator.Builder(EventKey.principalArn, listener)
+ *     .withTopK(10)
+ *     .withWindow(WindowAssigner.tumbling(300000))
+ *     .build();
+ * </pre>
+ */
+public class HeavyHitterAggregator extends WindowedAggregator<TopKAccumulator, List<HeavyHitter>> {
+    public static final int DEFAULT_TOP_K = 10;
+    public static final double DEFAULT_EPSILON = 0.001;
+    public static final double DEFAULT_DELTA = 0.01;
+    public static final long DEFAULT_WINDOW_SIZE_MILLIS = 60000;
+
+    private final EventKeyExtractor key;
+    private final int k;
+    private final int width;
+    private final int depth;
+
+    private HeavyHitterAggregator(Builder builder) {
+        super(builder.windowAssigner, builder.allowedLatenessMillis, builder.windowListener);
+        this.key = builder.key;
+        this.k = builder.k;
+        this.width = CountMinSketch.getWidth(builder.epsilon);
+        this.depth = CountMinSketch.getDepth(builder.delta);
+    }
+
+    @Override
+    protected TopKAccumulator createAccumulator() {
+        return new TopKAccumulator(this.k, this.width, this.depth);
+    }
+
+    @Override
+    protected void add(TopKAccumulator topK, CloudTrailEvent event) {
+        String value = this.key.getKey(event);
+        if (value != null) {
+            topK.add(value, Hashing.hash64(value));
+        }
+    }
+
+    @Override
+    protected void merge(TopKAccumulator into, TopKAccumulator from) {
+        into.merge(from);
+    }
+
+    @Override
+    protected List<HeavyHitter> result(TopKAccumulator topK) {
+        return topK.getTopK();
+    }
+
+    public static class Builder {
+        private final EventKeyExtractor key;
+        private final WindowListener<List<HeavyHitter>> windowListener;
+        private int k = DEFAULT_TOP_K;
+        private double epsilon = DEFAULT_EPSILON;
+        private double delta = DEFAULT_DELTA;
+        private WindowAssigner windowAssigner = WindowAssigner.tumbling(DEFAULT_WINDOW_SIZE_MILLIS);
+        private long allowedLatenessMillis;
+
+        /**
+         * Builder for {@link HeavyHitterAggregator}.
+         *
+         * @param key the {@link EventKeyExtractor} that extracts the key to rank.
+         * @param windowListener the {@link WindowListener} that receives the heavy hitters of each window, highest
+         *     estimate first.
+         */
+        public Builder(EventKeyExtractor key, WindowListener<List<HeavyHitter>> windowListener) {
+            LibraryUtils.checkArgumentNotNull(key, "Key is null.");
+            this.key = key;
+            this.windowListener = windowListener;
+        }
+
+        /**
+         * Applies the number of keys reported per window; the default is {@value HeavyHitterAggregator#DEFAULT_TOP_K}.
+         *
+         * @param k the number of keys to report.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withTopK(int k) {
+            LibraryUtils.checkCondition(k < 1, "Top K cannot be less than 1.");
+            this.k = k;
+            return this;
+        }
+
+        /**
+         * Applies the accuracy of the estimates; the defaults are an epsilon of
+         * {@value HeavyHitterAggregator#DEFAULT_EPSILON} and a delta of {@value HeavyHitterAggregator#DEFAULT_DELTA}.
+         * Halving epsilon doubles the memory of a sketch.
+         *
+         * @param epsilon the error of an estimate, as a fraction of the number of events in the window.
+         * @param delta the probability that an estimate exceeds the error bound.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withAccuracy(double epsilon, double delta) {
+            // validate now rather than in build()
+            CountMinSketch.getWidth(epsilon);
+            CountMinSketch.getDepth(delta);
+            this.epsilon = epsilon;
+            this.delta = delta;
+            return this;
+        }
+
+        /**
+         * Applies the windows; the default is tumbling windows of
+         * {@value HeavyHitterAggregator#DEFAULT_WINDOW_SIZE_MILLIS} milliseconds.
+         *
+         * @param windowAssigner the {@link WindowAssigner} that assigns events to windows.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withWindow(WindowAssigner windowAssigner) {
+            this.windowAssigner = windowAssigner;
+            return this;
+        }
+
+        /**
+         * Applies how far, in milliseconds, an event may arrive behind a newer event and still be counted; the
+         * default is <code>0</code>. Windows are reported this much later.
+         *
+         * @param allowedLatenessMillis the allowed lateness, in milliseconds.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withAllowedLateness(long allowedLatenessMillis) {
+            this.allowedLatenessMillis = allowedLatenessMillis;
+            return this;
+        }
+
+        /**
+         * Build a {@link HeavyHitterAggregator}.
+         *
+         * @return the {@link HeavyHitterAggregator}.
+         */
+        public HeavyHitterAggregator build() {
+            return new HeavyHitterAggregator(this);
+        }
+    }
+}
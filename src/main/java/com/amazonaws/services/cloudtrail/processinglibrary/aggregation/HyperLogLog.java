@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.aggregation;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * A HyperLogLog sketch: an estimate of the number of distinct keys added, in fixed memory.
+ * <p>
+ * Keys are added by their 64-bit hash. The top <code>precision</code> bits of the hash select one of
+ * <code>2^precision</code> registers, which keeps the highest rank, the position of the first set bit, of the
+ * remaining bits. The relative standard error of the estimate is about <code>1.04 / sqrt(2^precision)</code>: 1.6% at
+ * precision 12, 0.8% at precision 14.
+ * <p>
+ * A sketch starts sparse, storing only the registers that have been set, packed into a small hash table of ints, so
+ * the many keys that see few distinct values cost little. It becomes dense, one byte per register, once the sparse
+ * table would be larger. Sketches of the same precision can be merged, and exported with {@link #toByteArray()} to be
+ * stored or merged elsewhere. This class is not thread safe.
+ */
+public class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte SPARSE = 0;
+    private static final byte DENSE = 1;
+
+    private static final int MIN_SPARSE_CAPACITY = 8;
+    private static final int RANK_BITS = 6;
+    private static final int RANK_MASK = (1 << RANK_BITS) - 1;
+
+    private final int precision;
+    private final int registerCount;
+
+    /**
+     * The dense registers, or <code>null</code> while the sketch is sparse.
+     */
+    private byte[] registers;
+
+    /**
+     * The sparse registers, as <code>index &lt;&lt; 6 | rank</code> in an open addressing table with a power of two
+     * capacity. Ranks are at least 1, so <code>0</code> marks an empty slot.
+     */
+    private int[] sparse;
+    private int sparseSize;
+
+    /**
+     * Initialize a new, empty <code>HyperLogLog</code>.
+     *
+     * @param precision the number of hash bits that select a register, from {@value #MIN_PRECISION} to
+     *     {@value #MAX_PRECISION}.
+     */
+    public HyperLogLog(int precision) {
+        LibraryUtils.checkCondition(precision < MIN_PRECISION || precision > MAX_PRECISION,
+                "HyperLogLog precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ".");
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+        this.sparse = new int[MIN_SPARSE_CAPACITY];
+    }
+
+    /**
+     * Add a key.
+     *
+     * @param hash the 64-bit hash of the key.
+     */
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - this.precision));
+        // the guard bit caps the rank when the remaining bits are all zero
+        int rank = Long.numberOfLeadingZeros((hash << this.precision) | (1L << (this.precision - 1))) + 1;
+        this.update(index, rank);
+    }
+
+    /**
+     * Add the keys of another sketch to this one.
+     *
+     * @param other a sketch of the same precision.
+     */
+    public void merge(HyperLogLog other) {
+        LibraryUtils.checkCondition(other.precision != this.precision,
+                "Cannot merge HyperLogLog sketches of different precisions.");
+        if (other.registers != null) {
+            for (int index = 0; index < this.registerCount; index++) {
+                if (other.registers[index] != 0) {
+                    this.update(index, other.registers[index]);
+                }
+            }
+        } else {
+            for (int entry : other.sparse) {
+                if (entry != 0) {
+                    this.update(entry >>> RANK_BITS, entry & RANK_MASK);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct keys added.
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros;
+        if (this.registers != null) {
+            zeros = 0;
+            for (byte rank : this.registers) {
+                sum += 1.0 / (1L << rank);
+                if (rank == 0) {
+                    zeros++;
+                }
+            }
+        } else {
+            zeros = this.registerCount - this.sparseSize;
+            sum = zeros;
+            for (int entry : this.sparse) {
+                if (entry != 0) {
+                    sum += 1.0 / (1L << (entry & RANK_MASK));
+                }
+            }
+        }
+
+        double m = this.registerCount;
+        double estimate = alpha(this.registerCount) * m * m / sum;
+        // linear counting is more accurate while many registers are still empty
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log(m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return the number of hash bits that select a register.
+     */
+    public int getPrecision() {
+        return this.precision;
+    }
+
+    /**
+     * @return <code>true</code> while the sketch stores only the registers that have been set.
+     */
+    public boolean isSparse() {
+        return this.registers == null;
+    }
+
+    /**
+     * Export the sketch. The bytes are a format version, the precision and the representation, followed by the number
+     * of sparse registers and each as a big-endian <code>index &lt;&lt; 6 | rank</code> int in ascending order, or by
+     * one rank byte per dense register.
+     *
+     * @return the serialized sketch.
+     * @see #fromByteArray(byte[])
+     */
+    public byte[] toByteArray() {
+        if (this.registers != null) {
+            ByteBuffer buffer = ByteBuffer.allocate(3 + this.registerCount);
+            buffer.put(FORMAT_VERSION).put((byte) this.precision).put(DENSE).put(this.registers);
+            return buffer.array();
+        }
+
+        int[] entries = new int[this.sparseSize];
+        int i = 0;
+        for (int entry : this.sparse) {
+            if (entry != 0) {
+                entries[i++] = entry;
+            }
+        }
+        Arrays.sort(entries);
+        ByteBuffer buffer = ByteBuffer.allocate(7 + 4 * entries.length);
+        buffer.put(FORMAT_VERSION).put((byte) this.precision).put(SPARSE).putInt(entries.length);
+        for (int entry : entries) {
+            buffer.putInt(entry);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Import a sketch exported by {@link #toByteArray()}.
+     *
+     * @param bytes the serialized sketch.
+     * @return the <code>HyperLogLog</code>.
+     * @throws IllegalArgumentException if the bytes are not a serialized sketch.
+     */
+    public static HyperLogLog fromByteArray(byte[] bytes) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            byte version = buffer.get();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported HyperLogLog format version " + version + ".");
+            }
+            HyperLogLog sketch = new HyperLogLog(buffer.get());
+            byte representation = buffer.get();
+            if (representation == DENSE) {
+                byte[] registers = new byte[sketch.registerCount];
+                buffer.get(registers);
+                for (int index = 0; index < registers.length; index++) {
+                    if (registers[index] != 0) {
+                        sketch.update(index, registers[index]);
+                    }
+                }
+            } else if (representation == SPARSE) {
+                int count = buffer.getInt();
+                for (int i = 0; i < count; i++) {
+                    int entry = buffer.getInt();
+                    sketch.update(entry >>> RANK_BITS, entry & RANK_MASK);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown HyperLogLog representation " + representation + ".");
+            }
+            return sketch;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated HyperLogLog sketch.", e);
+        } catch (IllegalStateException e) {
+            throw new IllegalArgumentException("Invalid HyperLogLog sketch.", e);
+        }
+    }
+
+    /**
+     * Raise a register to <code>rank</code> if it is lower.
+     */
+    private void update(int index, int rank) {
+        if (index < 0 || index >= this.registerCount || rank < 1 || rank > 64 - this.precision + 1) {
+            throw new IllegalStateException("HyperLogLog register " + index + " cannot hold rank " + rank + ".");
+        }
+        if (this.registers != null) {
+            if (this.registers[index] < rank) {
+                this.registers[index] = (byte) rank;
+            }
+            return;
+        }
+
+        int slot = this.findSlot(this.sparse, index);
+        int entry = this.sparse[slot];
+        if (entry == 0) {
+            this.sparse[slot] = index << RANK_BITS | rank;
+            if (++this.sparseSize > this.sparse.length * 3 / 4) {
+                this.growSparse();
+            }
+        } else if ((entry & RANK_MASK) < rank) {
+            this.sparse[slot] = index << RANK_BITS | rank;
+        }
+    }
+
+    /**
+     * Double the sparse table, or switch to dense registers once the table would take more memory than they do.
+     */
+    private void growSparse() {
+        int[] oldSparse = this.sparse;
+        if (4L * oldSparse.length * 2 > this.registerCount) {
+            this.registers = new byte[this.registerCount];
+            for (int entry : oldSparse) {
+                if (entry != 0) {
+                    this.registers[entry >>> RANK_BITS] = (byte) (entry & RANK_MASK);
+                }
+            }
+            this.sparse = null;
+            this.sparseSize = 0;
+            return;
+        }
+
+        this.sparse = new int[oldSparse.length * 2];
+        for (int entry : oldSparse) {
+            if (entry != 0) {
+                this.sparse[this.findSlot(this.sparse, entry >>> RANK_BITS)] = entry;
+            }
+        }
+    }
+
+    /**
+     * Find the slot holding a register index, or the empty slot where it would be inserted.
+     */
+    private int findSlot(int[] table, int index) {
+        int mask = table.length - 1;
+        int slot = ((index * 0x9e3779b9) >>> 16) & mask;
+        while (table[slot] != 0 && table[slot] >>> RANK_BITS != index) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static double alpha(int registerCount) {
+        switch (registerCount) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / registerCount);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.aggregation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link CountMinSketch} and the <code>k</code> keys with the highest estimates seen so far.
+ * <p>
+ * The candidates are kept in a min-heap on their estimates, indexed by key, so the smallest candidate can be replaced
+ * when a key's estimate exceeds it. Memory is fixed by the sketch dimensions and <code>k</code>. This class is not
+ * thread safe.
+ */
+class TopKAccumulator {
+    private static final Comparator<Candidate> BY_COUNT_DESCENDING = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate c1, Candidate c2) {
+            return c1.count == c2.count ? c1.key.compareTo(c2.key) : (c1.count > c2.count ? -1 : 1);
+        }
+    };
+
+    private final int k;
+    private final CountMinSketch sketch;
+    private final Candidate[] heap;
+    private final Map<String, Candidate> candidates;
+    private int size;
+
+    TopKAccumulator(int k, int width, int depth) {
+        this.k = k;
+        this.sketch = new CountMinSketch(width, depth);
+        this.heap = new Candidate[k];
+        this.candidates = new HashMap<String, Candidate>((int) Math.ceil(k / 0.75));
+    }
+
+    /**
+     * Count one occurrence of a key.
+     *
+     * @param key the key value.
+     * @param hash the 64-bit hash of the key.
+     */
+    void add(String key, long hash) {
+        this.offer(key, hash, this.sketch.add(hash, 1));
+    }
+
+    /**
+     * Merge another accumulator into this one: add its sketch, then re-estimate the candidates of both against the
+     * merged sketch and keep the top <code>k</code>.
+     */
+    void merge(TopKAccumulator other) {
+        this.sketch.merge(other.sketch);
+        List<Candidate> all = new ArrayList<Candidate>(this.size + other.size);
+        for (int i = 0; i < this.size; i++) {
+            all.add(this.heap[i]);
+        }
+        for (int i = 0; i < other.size; i++) {
+            if (!this.candidates.containsKey(other.heap[i].key)) {
+                all.add(other.heap[i]);
+            }
+        }
+        this.candidates.clear();
+        this.size = 0;
+        for (Candidate candidate : all) {
+            this.offer(candidate.key, candidate.hash, this.sketch.estimate(candidate.hash));
+        }
+    }
+
+    /**
+     * @return the candidates, highest estimate first.
+     */
+    List<HeavyHitter> getTopK() {
+        List<Candidate> sorted = new ArrayList<Candidate>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            sorted.add(this.heap[i]);
+        }
+        Collections.sort(sorted, BY_COUNT_DESCENDING);
+        List<HeavyHitter> topK = new ArrayList<HeavyHitter>(sorted.size());
+        for (Candidate candidate : sorted) {
+            topK.add(new HeavyHitter(candidate.key, candidate.count));
+        }
+        return topK;
+    }
+
+    /**
+     * @return the number of events counted.
+     */
+    long getTotalCount() {
+        return this.sketch.getTotalCount();
+    }
+
+    /**
+     * Update the estimate of a key, making it a candidate if it is among the top <code>k</code>.
+     */
+    private void offer(String key, long hash, long estimate) {
+        Candidate candidate = this.candidates.get(key);
+        if (candidate != null) {
+            candidate.count = estimate;
+            this.siftDown(candidate.index);
+        } else if (this.size < this.k) {
+            candidate = new Candidate(key, hash, estimate);
+            this.candidates.put(key, candidate);
+            this.heap[this.size] = candidate;
+            candidate.index = this.size++;
+            this.siftUp(candidate.index);
+        } else if (estimate > this.heap[0].count) {
+            // reuse the evicted candidate, so a change in the top k does not allocate
+            candidate = this.heap[0];
+            this.candidates.remove(candidate.key);
+            candidate.key = key;
+            candidate.hash = hash;
+            candidate.count = estimate;
+            this.candidates.put(key, candidate);
+            this.siftDown(0);
+        }
+    }
+
+    private void siftUp(int i) {
+        Candidate candidate = this.heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (this.heap[parent].count <= candidate.count) {
+                break;
+            }
+            this.place(this.heap[parent], i);
+            i = parent;
+        }
+        this.place(candidate, i);
+    }
+
+    private void siftDown(int i) {
+        Candidate candidate = this.heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= this.size) {
+                break;
+            }
+            if (child + 1 < this.size && this.heap[child + 1].count < this.heap[child].count) {
+                child++;
+            }
+            if (candidate.count <= this.heap[child].count) {
+                break;
+            }
+            this.place(this.heap[child], i);
+            i = child;
+        }
+        this.place(candidate, i);
+    }
+
+    private void place(Candidate candidate, int i) {
+        this.heap[i] = candidate;
+        candidate.index = i;
+    }
+
+    private static class Candidate {
+        private String key;
+        private long hash;
+        private long count;
+        private int index;
+
+        Candidate(String key, long hash, long count) {
+            this.key = key;
+            this.hash = hash;
+            this.count = count;
+        }
+    }
+}
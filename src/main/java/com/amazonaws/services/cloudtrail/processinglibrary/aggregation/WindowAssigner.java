@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.aggregation;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * Assigns event times to the windows that contain them.
+ * <p>
+ * Windows are half-open intervals <code>[start, start + size)</code> in milliseconds since the epoch. Window starts
+ * are multiples of the slide, so windows line up across processes and restarts. Tumbling windows do not overlap, and
+ * each event time falls in exactly one of them. Sliding windows overlap when the slide is less than the size, and an
+ * event time falls in <code>size / slide</code> of them, rounded up or down.
+ */
+public class WindowAssigner {
+    private final long sizeMillis;
+    private final long slideMillis;
+
+    private WindowAssigner(long sizeMillis, long slideMillis) {
+        LibraryUtils.checkCondition(sizeMillis < 1, "Window size cannot be less than 1 millisecond.");
+        LibraryUtils.checkCondition(slideMillis < 1, "Window slide cannot be less than 1 millisecond.");
+        LibraryUtils.checkCondition(slideMillis > sizeMillis, "Window slide cannot be greater than the window size.");
+        this.sizeMillis = sizeMillis;
+        this.slideMillis = slideMillis;
+    }
+
+    /**
+     * Create an assigner of non-overlapping windows.
+     *
+     * @param sizeMillis the length of a window, in milliseconds.
+     * @return the <code>WindowAssigner</code>.
+     */
+    public static WindowAssigner tumbling(long sizeMillis) {
+        return new WindowAssigner(sizeMillis, sizeMillis);
+    }
+
+    /**
+     * Create an assigner of windows that start every <code>slideMillis</code>.
+     *
+     * @param sizeMillis the length of a window, in milliseconds.
+     * @param slideMillis the time between the starts of consecutive windows, in milliseconds; cannot be greater than
+     *     <code>sizeMillis</code>.
+     * @return the <code>WindowAssigner</code>.
+     */
+    public static WindowAssigner sliding(long sizeMillis, long slideMillis) {
+        return new WindowAssigner(sizeMillis, slideMillis);
+    }
+
+    /**
+     * @return the length of a window, in milliseconds.
+     */
+    public long getSizeMillis() {
+        return this.sizeMillis;
+    }
+
+    /**
+     * @return the time between the starts of consecutive windows, in milliseconds.
+     */
+    public long getSlideMillis() {
+        return this.slideMillis;
+    }
+
+    /**
+     * Get the start of the latest window containing a time. The other windows containing it start at multiples of the
+     * slide before this one, down to but excluding <code>time - size</code>.
+     *
+     * @param time the time, in milliseconds since the epoch.
+     * @return the start of the latest window containing <code>time</code>.
+     */
+    public long getLastWindowStart(long time) {
+        return floor(time, this.slideMillis);
+    }
+
+    /**
+     * Get the end of the latest window that ends at or before a time. Every window ending at or before
+     * <code>time</code> ends at or before the returned value.
+     *
+     * @param time the time, in milliseconds since the epoch.
+     * @return the end of the latest window ending at or before <code>time</code>.
+     */
+    public long getLastWindowEndAtOrBefore(long time) {
+        return floor(time - this.sizeMillis, this.slideMillis) + this.sizeMillis;
+    }
+
+    /**
+     * Round a time down to a multiple of <code>unit</code>, toward negative infinity.
+     */
+    private static long floor(long time, long unit) {
+        return time - (((time % unit) + unit) % unit);
+    }
+
+    @Override
+    public String toString() {
+        return this.sizeMillis == this.slideMillis
+                ? "tumbling(" + this.sizeMillis + "ms)"
+                : "sliding(" + this.sizeMillis + "ms, " + this.slideMillis + "ms)";
+    }
+}
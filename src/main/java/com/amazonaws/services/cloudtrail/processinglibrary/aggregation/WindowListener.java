@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.aggregation;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.CallbackException;
+
+/**
+ * Receives the result of each window of a {@link WindowedAggregator} when the window closes.
+ * <p>
+ * Windows are reported one at a time, in order of their start times.
+ *
+ * @param <R> the type of the window result.
+ */
+public interface WindowListener<R> {
+    /**
+     * A callback method that receives the result of a closed window.
+     *
+     * @param windowStart the start of the window, inclusive, in milliseconds since the epoch.
+     * @param windowEnd the end of the window, exclusive, in milliseconds since the epoch.
+     * @param result the aggregate of the events in the window.
+     * @throws CallbackException if an error occurs while handling the result.
+     */
+    public void windowClosed(long windowStart, long windowEnd, R result) throws CallbackException;
+}
@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.aggregation;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.CallbackException;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventsProcessor;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * Base class of EventsProcessors that aggregate events into windows of <code>eventTime</code> and report each window
+ * to a {@link WindowListener} when it closes.
+ * <p>
+ * Each thread that calls {@link #process(List)} adds its events to its own accumulators, one per open window, so
+ * threads do not contend on shared counters. A window closes when the watermark passes its end; the watermark trails
+ * the latest event time seen by the allowed lateness. The thread that moves the watermark past a window merges the
+ * accumulators of every thread for that window and hands the result to the listener. Events that arrive after all
+ * of their windows have closed are dropped and counted as late, as are events without an <code>eventTime</code>.
+ * <p>
+ * Windows still open when the executor stops are reported by {@link #flush()}, which callers should invoke after
+ * {@link com.amazonaws.services.cloudtrail.processinglibrary.AWSCloudTrailProcessingExecutor#stop()}. Every event
+ * processed after a flush is late.
+ * <p>
+ * This class is thread safe. Subclasses define the accumulator; an accumulator is only used by one thread at a time.
+ *
+ * @param <A> the type of the accumulator of a window.
+ * @param <R> the type of the window result.
+ */
+public abstract class WindowedAggregator<A, R> implements EventsProcessor {
+    private final WindowAssigner windowAssigner;
+    private final long allowedLatenessMillis;
+    private final WindowListener<R> windowListener;
+
+    private final List<Partials> partials = new CopyOnWriteArrayList<Partials>();
+    private final ThreadLocal<Partials> localPartials = new ThreadLocal<Partials>() {
+        @Override
+        protected Partials initialValue() {
+            Partials threadPartials = new Partials();
+            WindowedAggregator.this.partials.add(threadPartials);
+            return threadPartials;
+        }
+    };
+
+    private final AtomicLong maxEventTime = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong lateEventCount = new AtomicLong();
+
+    /**
+     * Windows ending at or before this time are closed. Only written under <code>closeLock</code>, and always before
+     * the partials are swept, so a thread holding the lock of its partials never adds to a swept window.
+     */
+    private volatile long closedBefore = Long.MIN_VALUE;
+    private final ReentrantLock closeLock = new ReentrantLock();
+
+    /**
+     * Initialize a new <code>WindowedAggregator</code>.
+     *
+     * @param windowAssigner the {@link WindowAssigner} that assigns events to windows.
+     * @param allowedLatenessMillis how far, in milliseconds, an event may arrive behind a newer event and still be
+     *     counted in its windows.
+     * @param windowListener the {@link WindowListener} that receives the result of each window.
+     */
+    protected WindowedAggregator(WindowAssigner windowAssigner, long allowedLatenessMillis,
+            WindowListener<R> windowListener) {
+        LibraryUtils.checkArgumentNotNull(windowAssigner, "Window assigner is null.");
+        LibraryUtils.checkCondition(allowedLatenessMillis < 0, "Allowed lateness cannot be negative.");
+        LibraryUtils.checkArgumentNotNull(windowListener, "Window listener is null.");
+        this.windowAssigner = windowAssigner;
+        this.allowedLatenessMillis = allowedLatenessMillis;
+        this.windowListener = windowListener;
+    }
+
+    /**
+     * Create an empty accumulator for a new window.
+     *
+     * @return the accumulator.
+     */
+    protected abstract A createAccumulator();
+
+    /**
+     * Add an event to an accumulator.
+     *
+     * @param accumulator the accumulator of a window containing the event.
+     * @param event the event to add.
+     */
+    protected abstract void add(A accumulator, CloudTrailEvent event);
+
+    /**
+     * Merge one accumulator of a window into another. <code>from</code> is not used afterwards.
+     *
+     * @param into the accumulator to merge into.
+     * @param from the accumulator to merge.
+     */
+    protected abstract void merge(A into, A from);
+
+    /**
+     * Compute the result of a closed window.
+     *
+     * @param accumulator the merged accumulator of the window.
+     * @return the result handed to the {@link WindowListener}.
+     */
+    protected abstract R result(A accumulator);
+
+    @Override
+    public void process(List<CloudTrailEvent> events) throws CallbackException {
+        Partials threadPartials = this.localPartials.get();
+        long size = this.windowAssigner.getSizeMillis();
+        long slide = this.windowAssigner.getSlideMillis();
+        long batchMaxEventTime = Long.MIN_VALUE;
+        long late = 0;
+
+        synchronized (threadPartials) {
+            for (CloudTrailEvent event : events) {
+                Date eventTime = event.getEventData().getEventTime();
+                if (eventTime == null) {
+                    late++;
+                    continue;
+                }
+                long time = eventTime.getTime();
+                long closed = this.closedBefore;
+                boolean added = false;
+                // windows are visited latest first, so the first closed window ends the search
+                for (long start = this.windowAssigner.getLastWindowStart(time); start > time - size; start -= slide) {
+                    if (start + size <= closed) {
+                        break;
+                    }
+                    this.add(threadPartials.getAccumulator(start), event);
+                    added = true;
+                }
+                if (!added) {
+                    late++;
+                }
+                batchMaxEventTime = Math.max(batchMaxEventTime, time);
+            }
+        }
+
+        if (late > 0) {
+            this.lateEventCount.addAndGet(late);
+        }
+        if (batchMaxEventTime != Long.MIN_VALUE) {
+            this.advance(batchMaxEventTime);
+        }
+    }
+
+    /**
+     * Close every open window and report it to the {@link WindowListener}, in order. Events processed afterwards are
+     * late.
+     *
+     * @throws CallbackException if the listener fails; windows after the failing one are not reported.
+     */
+    public void flush() throws CallbackException {
+        this.closeLock.lock();
+        try {
+            this.close(Long.MAX_VALUE);
+        } finally {
+            this.closeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of events dropped because every window containing them had closed, or because they have no
+     *     <code>eventTime</code>.
+     */
+    public long getLateEventCount() {
+        return this.lateEventCount.get();
+    }
+
+    /**
+     * @return the watermark, in milliseconds since the epoch, or <code>Long.MIN_VALUE</code> before the first event.
+     *     Windows ending at or before the watermark have closed.
+     */
+    public long getWatermark() {
+        long max = this.maxEventTime.get();
+        return max == Long.MIN_VALUE ? Long.MIN_VALUE : max - this.allowedLatenessMillis;
+    }
+
+    /**
+     * Move the watermark up to follow <code>eventTime</code>, and close the windows it passes. If another thread is
+     * already closing windows, it is left to close these as well on its next batch.
+     */
+    private void advance(long eventTime) throws CallbackException {
+        long max = this.maxEventTime.get();
+        while (eventTime > max && !this.maxEventTime.compareAndSet(max, eventTime)) {
+            max = this.maxEventTime.get();
+        }
+
+        long closeBefore = this.windowAssigner.getLastWindowEndAtOrBefore(this.getWatermark());
+        if (closeBefore > this.closedBefore && this.closeLock.tryLock()) {
+            try {
+                this.close(closeBefore);
+            } finally {
+                this.closeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Close the windows ending at or before <code>closeBefore</code>: merge the accumulators of every thread and
+     * report each window in start time order. Called under <code>closeLock</code>.
+     */
+    private void close(long closeBefore) throws CallbackException {
+        if (closeBefore <= this.closedBefore) {
+            return;
+        }
+        this.closedBefore = closeBefore;
+
+        long size = this.windowAssigner.getSizeMillis();
+        TreeMap<Long, A> closedWindows = new TreeMap<Long, A>();
+        for (Partials threadPartials : this.partials) {
+            synchronized (threadPartials) {
+                Iterator<Map.Entry<Long, A>> it = threadPartials.windows.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<Long, A> window = it.next();
+                    if (window.getKey() + size > closeBefore) {
+                        continue;
+                    }
+                    it.remove();
+                    A merged = closedWindows.get(window.getKey());
+                    if (merged == null) {
+                        closedWindows.put(window.getKey(), window.getValue());
+                    } else {
+                        this.merge(merged, window.getValue());
+                    }
+                }
+                threadPartials.clearCache();
+            }
+        }
+
+        for (Map.Entry<Long, A> window : closedWindows.entrySet()) {
+            long start = window.getKey();
+            this.windowListener.windowClosed(start, start + size, this.result(window.getValue()));
+        }
+    }
+
+    /**
+     * The open windows of one thread. Guarded by its own monitor, which only the closing thread contends for.
+     */
+    private class Partials {
+        private final Map<Long, A> windows = new HashMap<Long, A>();
+
+        // most events fall in the same window as the previous event, so skip the map lookup for them
+        private long lastStart;
+        private A lastAccumulator;
+
+        A getAccumulator(long start) {
+            if (this.lastAccumulator != null && this.lastStart == start) {
+                return this.lastAccumulator;
+            }
+            A accumulator = this.windows.get(start);
+            if (accumulator == null) {
+                accumulator = WindowedAggregator.this.createAccumulator();
+                this.windows.put(start, accumulator);
+            }
+            this.lastStart = start;
+            this.lastAccumulator = accumulator;
+            return accumulator;
+        }
+
+        void clearCache() {
+            this.lastAccumulator = null;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.aggregation;
+
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventKeyExtractor;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.Hashing;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * Counts events per group in windows of <code>eventTime</code>.
+ * <p>
+ * Groups are defined by one or more {@link EventKeyExtractor}s, such as the fields of
+ * {@link com.amazonaws.services.cloudtrail.processinglibrary.impl.EventKey}. The result of a window maps the key values
+ * of each group, in the order of the extractors, to the number of events in the group; a missing value is
+ * <code>null</code>. With no extractors, every event is in a single group with an empty key.
+ * <p>
+ * For example, to count API calls per principal and event source in one-minute windows:
+ *
+ * <pre>
+ * WindowedCountAggregator aggregator = new WindowedCountAggregator.Builder(listener)
+ *     .withGroupBy(EventKey.principalArn, EventKey.eventSource)
+ *     .withWindow(WindowAssigner.tumbling(60000))
+ *     .withAllowedLateness(300000)
+ *     .build();
+ * </pre>
+ *
+ * Counting an event in a group already seen by the same thread in the same window does not allocate.
+ */
+public class WindowedCountAggregator extends WindowedAggregator<GroupCountTable, Map<List<String>, Long>> {
+    public static final long DEFAULT_WINDOW_SIZE_MILLIS = 60000;
+
+    private static final long SEED = 0x6a09e667f3bcc908L;
+    private static final long NULL_HASH = 0x3c6ef372fe94f82bL;
+
+    private final EventKeyExtractor[] groupBy;
+
+    private WindowedCountAggregator(Builder builder) {
+        super(builder.windowAssigner, builder.allowedLatenessMillis, builder.windowListener);
+        this.groupBy = builder.groupBy;
+    }
+
+    @Override
+    protected GroupCountTable createAccumulator() {
+        return new GroupCountTable(this.groupBy.length);
+    }
+
+    @Override
+    protected void add(GroupCountTable counts, CloudTrailEvent event) {
+        String[] key = counts.getKeyBuffer();
+        long hash = SEED;
+        for (int i = 0; i < this.groupBy.length; i++) {
+            key[i] = this.groupBy[i].getKey(event);
+            hash = Hashing.hash64(hash, key[i] == null ? NULL_HASH : Hashing.hash64(key[i]));
+        }
+        counts.add(hash == 0 ? 1 : hash, key, 1);
+    }
+
+    @Override
+    protected void merge(GroupCountTable into, GroupCountTable from) {
+        into.addAll(from);
+    }
+
+    @Override
+    protected Map<List<String>, Long> result(GroupCountTable counts) {
+        return counts.toMap();
+    }
+
+    public static class Builder {
+        private final WindowListener<Map<List<String>, Long>> windowListener;
+        private EventKeyExtractor[] groupBy = new EventKeyExtractor[0];
+        private WindowAssigner windowAssigner = WindowAssigner.tumbling(DEFAULT_WINDOW_SIZE_MILLIS);
+        private long allowedLatenessMillis;
+
+        /**
+         * Builder for {@link WindowedCountAggregator}.
+         *
+         * @param windowListener the {@link WindowListener} that receives the counts of each window.
+         */
+        public Builder(WindowListener<Map<List<String>, Long>> windowListener) {
+            this.windowListener = windowListener;
+        }
+
+        /**
+         * Applies the group-by keys; events are counted per combination of their values.
+         *
+         * @param groupBy the {@link EventKeyExtractor}s that extract the key values.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withGroupBy(EventKeyExtractor... groupBy) {
+            LibraryUtils.checkArgumentNotNull(groupBy, "Group-by keys are null.");
+            for (EventKeyExtractor key : groupBy) {
+                LibraryUtils.checkArgumentNotNull(key, "Group-by key is null.");
+            }
+            this.groupBy = groupBy.clone();
+            return this;
+        }
+
+        /**
+         * Applies the windows; the default is tumbling windows of
+         * {@value WindowedCountAggregator#DEFAULT_WINDOW_SIZE_MILLIS} milliseconds.
+         *
+         * @param windowAssigner the {@link WindowAssigner} that assigns events to windows.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withWindow(WindowAssigner windowAssigner) {
+            this.windowAssigner = windowAssigner;
+            return this;
+        }
+
+        /**
+         * Applies how far, in milliseconds, an event may arrive behind a newer event and still be counted; the
+         * default is <code>0</code>. Windows are reported this much later.
+         *
+         * @param allowedLatenessMillis the allowed lateness, in milliseconds.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withAllowedLateness(long allowedLatenessMillis) {
+            this.allowedLatenessMillis = allowedLatenessMillis;
+            return this;
+        }
+
+        /**
+         * Build a {@link WindowedCountAggregator}.
+         *
+         * @return the {@link WindowedCountAggregator}.
+         */
+        public WindowedCountAggregator build() {
+            return new WindowedCountAggregator(this);
+        }
+    }
+}
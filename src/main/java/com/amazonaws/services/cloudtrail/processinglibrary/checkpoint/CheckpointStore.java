@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.checkpoint;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Records which CloudTrail log files have been completely processed, so that a restarted
+ * {@link com.amazonaws.services.cloudtrail.processinglibrary.AWSCloudTrailBackfillExecutor} can skip them.
+ * <p>
+ * Implementations must be thread safe; log files are checked and completed from every processing thread.
+ */
+public interface CheckpointStore extends Closeable {
+    /**
+     * Check whether a log file has already been processed.
+     *
+     * @param key the key of the log file, in the form <code>bucket/objectKey</code>.
+     * @return <code>true</code> if the log file was marked completed.
+     */
+    public boolean isCompleted(String key);
+
+    /**
+     * Mark a log file as processed.
+     *
+     * @param key the key of the log file, in the form <code>bucket/objectKey</code>.
+     * @throws IOException if the checkpoint could not be persisted.
+     */
+    public void markCompleted(String key) throws IOException;
+}
@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.checkpoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.Hashing;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LongHashSet;
+
+/**
+ * A {@link CheckpointStore} backed by files in a local directory.
+ * <p>
+ * Each completed key is reduced to a 64-bit hash. In memory the hashes are held in a {@link LongHashSet}, about
+ * 11 to 16 bytes per key, so tens of millions of keys fit in a few hundred megabytes and each lookup is O(1). On disk,
+ * new hashes are appended to a journal file as 8 byte records. Once the journal holds as many records as the snapshot,
+ * or at least <code>compactionThreshold</code>, it is compacted into a snapshot of sorted, delta and variable-length
+ * encoded hashes, written to a temporary file and atomically renamed.
+ * <p>
+ * Compaction only holds the store's lock to set the full journal aside and copy the hashes. The thread that crossed
+ * the threshold then sorts and writes the snapshot without the lock, so other threads keep checking and marking keys
+ * while it does. Keys marked meanwhile go to a new journal. The set-aside journal is deleted once the snapshot is in
+ * place, and read back on open if a compaction did not finish.
+ * <p>
+ * With 64-bit hashes the chance of two of 50 million keys colliding, and a log being wrongly skipped, is below one in
+ * ten thousand.
+ */
+public class FileCheckpointStore implements CheckpointStore {
+    private static final Log logger = LogFactory.getLog(FileCheckpointStore.class);
+
+    /**
+     * The default minimum number of journal records before compacting; {@value}.
+     */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 1000000;
+
+    private static final String SNAPSHOT_FILE_NAME = "checkpoint.snapshot";
+    private static final String JOURNAL_FILE_NAME = "checkpoint.journal";
+    private static final String COMPACTING_JOURNAL_FILE_NAME = "checkpoint.journal.compacting";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final int SNAPSHOT_MAGIC = 0x43545043;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int JOURNAL_RECORD_SIZE = 8;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final File compactingJournalFile;
+    private final int compactionThreshold;
+
+    /**
+     * Hashes of every completed key.
+     */
+    private final LongHashSet completedKeys;
+
+    private DataOutputStream journal;
+    private int journalRecordCount;
+    private int snapshotRecordCount;
+
+    /**
+     * Whether a snapshot is being written; guarded by this store's monitor, which is notified when it finishes.
+     */
+    private boolean compacting;
+
+    /**
+     * Open, or create, a checkpoint store in a directory using the default compaction threshold.
+     *
+     * @param directory the directory holding the checkpoint files.
+     * @throws IOException if existing checkpoint files cannot be read.
+     */
+    public FileCheckpointStore(File directory) throws IOException {
+        this(directory, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Open, or create, a checkpoint store in a directory.
+     *
+     * @param directory the directory holding the checkpoint files.
+     * @param compactionThreshold the minimum number of journal records before compacting.
+     * @throws IOException if existing checkpoint files cannot be read.
+     */
+    public FileCheckpointStore(File directory, int compactionThreshold) throws IOException {
+        LibraryUtils.checkArgumentNotNull(directory, "Checkpoint directory is null.");
+        LibraryUtils.checkCondition(compactionThreshold < 1, "Compaction threshold cannot be less than 1.");
+        LibraryUtils.checkCondition(!directory.isDirectory() && !directory.mkdirs(),
+                "Cannot create checkpoint directory " + directory);
+
+        this.snapshotFile = new File(directory, SNAPSHOT_FILE_NAME);
+        this.journalFile = new File(directory, JOURNAL_FILE_NAME);
+        this.compactingJournalFile = new File(directory, COMPACTING_JOURNAL_FILE_NAME);
+        this.compactionThreshold = compactionThreshold;
+        this.completedKeys = new LongHashSet(compactionThreshold);
+
+        this.snapshotRecordCount = this.readSnapshot();
+        this.journalRecordCount = this.readJournal(this.compactingJournalFile) + this.readJournal(this.journalFile);
+        this.journal = this.openJournal();
+        logger.info("Loaded " + this.completedKeys.size() + " checkpoints from " + directory);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isCompleted(String key) {
+        return this.completedKeys.contains(toHash(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void markCompleted(String key) throws IOException {
+        long[] hashes;
+        synchronized (this) {
+            long hash = toHash(key);
+            if (this.completedKeys.contains(hash)) {
+                return;
+            }
+
+            // a key is reported completed only once its record is written
+            this.journal.writeLong(hash);
+            this.journal.flush();
+            this.completedKeys.add(hash);
+            this.journalRecordCount++;
+
+            if (this.compacting
+                    || this.journalRecordCount < Math.max(this.compactionThreshold, this.snapshotRecordCount)) {
+                return;
+            }
+            hashes = this.startCompaction();
+        }
+        this.finishCompaction(hashes);
+    }
+
+    /**
+     * Rewrite the snapshot with every completed key and empty the journal, waiting for a compaction already in
+     * progress first.
+     *
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public void compact() throws IOException {
+        long[] hashes;
+        synchronized (this) {
+            this.awaitCompaction();
+            hashes = this.startCompaction();
+        }
+        this.finishCompaction(hashes);
+    }
+
+    /**
+     * Compact the journal and close the store.
+     *
+     * @throws IOException if the snapshot cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            this.awaitCompaction();
+            if (this.journalRecordCount == 0 && !this.compactingJournalFile.exists()) {
+                this.journal.close();
+                return;
+            }
+        }
+        this.compact();
+        synchronized (this) {
+            this.journal.close();
+        }
+    }
+
+    /**
+     * Set the journal aside for compaction, start a new one, and copy the hashes to write. Called holding the monitor.
+     *
+     * @return every completed hash, unsorted.
+     */
+    private long[] startCompaction() throws IOException {
+        try {
+            this.journal.close();
+            if (this.compactingJournalFile.exists()) {
+                // a previous compaction failed; its journal must survive until a snapshot holds its records
+                appendFile(this.journalFile, this.compactingJournalFile);
+                Files.delete(this.journalFile.toPath());
+            } else {
+                Files.move(this.journalFile.toPath(), this.compactingJournalFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            // after a failure the journal is appended to where it is, and its records at worst replay twice
+            this.journal = this.openJournal();
+        }
+
+        this.snapshotRecordCount = this.completedKeys.size();
+        this.journalRecordCount = 0;
+        this.compacting = true;
+        return this.completedKeys.toArray();
+    }
+
+    /**
+     * Write the snapshot of hashes copied by {@link #startCompaction()}, then delete the journal set aside. Called
+     * without the monitor.
+     */
+    private void finishCompaction(long[] hashes) throws IOException {
+        try {
+            Arrays.sort(hashes);
+            File tempFile = new File(this.snapshotFile.getPath() + TEMP_FILE_SUFFIX);
+
+            try (FileOutputStream fileOut = new FileOutputStream(tempFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(hashes.length);
+
+                long previous = 0;
+                for (long hash : hashes) {
+                    writeVarLong(out, hash - previous);
+                    previous = hash;
+                }
+                out.flush();
+                fileOut.getFD().sync();
+            }
+            Files.move(tempFile.toPath(), this.snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            // every record set aside is now in the snapshot; a crash before deleting only replays them again
+            Files.delete(this.compactingJournalFile.toPath());
+            logger.debug("Compacted " + hashes.length + " checkpoints into " + this.snapshotFile);
+        } finally {
+            synchronized (this) {
+                this.compacting = false;
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait until no snapshot is being written. Called holding the monitor.
+     */
+    private void awaitCompaction() throws IOException {
+        while (this.compacting) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for checkpoint compaction.");
+            }
+        }
+    }
+
+    /**
+     * Read the snapshot, if any, into memory.
+     *
+     * @return the number of records in the snapshot.
+     */
+    private int readSnapshot() throws IOException {
+        if (!this.snapshotFile.exists()) {
+            return 0;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.snapshotFile)))) {
+            LibraryUtils.checkCondition(in.readInt() != SNAPSHOT_MAGIC, "Not a checkpoint snapshot: " + this.snapshotFile);
+            LibraryUtils.checkCondition(in.readInt() != SNAPSHOT_VERSION, "Unsupported checkpoint snapshot version.");
+
+            int count = in.readInt();
+            long hash = 0;
+            for (int i = 0; i < count; i++) {
+                hash += readVarLong(in);
+                this.completedKeys.add(hash);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Read a journal, if any, into memory, dropping a partially written trailing record.
+     *
+     * @return the number of complete records in the journal.
+     */
+    private int readJournal(File journalFile) throws IOException {
+        if (!journalFile.exists()) {
+            return 0;
+        }
+
+        long validLength = journalFile.length() - journalFile.length() % JOURNAL_RECORD_SIZE;
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.setLength(validLength);
+        }
+
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (true) {
+                this.completedKeys.add(in.readLong());
+                count++;
+            }
+        } catch (EOFException e) {
+            return count;
+        }
+    }
+
+    private DataOutputStream openJournal() throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.journalFile, true)));
+    }
+
+    private static void appendFile(File from, File to) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(to, true)) {
+            Files.copy(from.toPath(), out);
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Hash a key, remapping the hash reserved by {@link LongHashSet} for empty slots.
+     */
+    private static long toHash(String key) {
+        long hash = Hashing.hash64(key);
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Write an unsigned variable-length long, 7 bits per byte, least significant group first.
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.configuration;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * Defines which CloudTrail log files an
+ * {@link com.amazonaws.services.cloudtrail.processinglibrary.AWSCloudTrailBackfillExecutor} lists from S3.
+ * <p>
+ * Log files are enumerated by the layout CloudTrail delivers to,
+ * <code>[s3KeyPrefix/]AWSLogs/[organizationId/]&lt;account&gt;/CloudTrail/&lt;region&gt;/&lt;yyyy&gt;/&lt;MM&gt;/&lt;dd&gt;/</code>. Each
+ * account, region and day is listed as a separate partition. If no account IDs or regions are set, they are
+ * discovered by listing the bucket.
+ */
+public class BackfillConfiguration {
+
+    /**
+     * The default number of threads used to list S3 prefixes in parallel; {@value}.
+     */
+    public static final int DEFAULT_LISTING_THREAD_COUNT = 4;
+
+    /**
+     * The S3 bucket CloudTrail delivers log files to.
+     */
+    public String s3Bucket;
+
+    /**
+     * The S3 key prefix configured on the trail, if any.
+     */
+    public String s3KeyPrefix = null;
+
+    /**
+     * The organization ID, if the bucket receives log files from an organization trail.
+     */
+    public String organizationId = null;
+
+    /**
+     * The account IDs to backfill. If empty, every account found under <code>AWSLogs/</code> is backfilled.
+     */
+    public List<String> accountIds = new ArrayList<String>();
+
+    /**
+     * The regions to backfill. If empty, every region found under each account is backfilled.
+     */
+    public List<String> regions = new ArrayList<String>();
+
+    /**
+     * The start of the time range to backfill, inclusive.
+     */
+    public Date startTime;
+
+    /**
+     * The end of the time range to backfill, inclusive.
+     */
+    public Date endTime;
+
+    /**
+     * The number of threads used to list S3 prefixes in parallel.
+     */
+    public int listingThreadCount = DEFAULT_LISTING_THREAD_COUNT;
+
+    /**
+     * The maximum number of listed log files waiting to be processed, or <code>0</code> for twice the
+     * <code>threadCount</code> of the {@link ProcessingConfiguration}.
+     */
+    public int maxPendingLogFiles = 0;
+
+    /**
+     * Initializes a new <code>BackfillConfiguration</code>.
+     *
+     * @param s3Bucket the S3 bucket CloudTrail delivers log files to.
+     * @param startTime the start of the time range to backfill, inclusive.
+     * @param endTime the end of the time range to backfill, inclusive.
+     */
+    public BackfillConfiguration(String s3Bucket, Date startTime, Date endTime) {
+        this.s3Bucket = s3Bucket;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    /**
+     * @return the S3 bucket CloudTrail delivers log files to.
+     */
+    public String getS3Bucket() {
+        return s3Bucket;
+    }
+
+    /**
+     * @return the S3 key prefix configured on the trail, or <code>null</code> if there is none.
+     */
+    public String getS3KeyPrefix() {
+        return s3KeyPrefix;
+    }
+
+    /**
+     * @return the organization ID of an organization trail, or <code>null</code> if there is none.
+     */
+    public String getOrganizationId() {
+        return organizationId;
+    }
+
+    /**
+     * @return the account IDs to backfill; empty to discover them.
+     */
+    public List<String> getAccountIds() {
+        return accountIds;
+    }
+
+    /**
+     * @return the regions to backfill; empty to discover them.
+     */
+    public List<String> getRegions() {
+        return regions;
+    }
+
+    /**
+     * @return the start of the time range to backfill.
+     */
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the end of the time range to backfill.
+     */
+    public Date getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * @return the number of threads used to list S3 prefixes in parallel.
+     */
+    public int getListingThreadCount() {
+        return listingThreadCount;
+    }
+
+    /**
+     * @return the maximum number of listed log files waiting to be processed, or <code>0</code> for twice the
+     *     processing thread count.
+     */
+    public int getMaxPendingLogFiles() {
+        return maxPendingLogFiles;
+    }
+
+    /**
+     * Get the maximum number of listed log files waiting to be processed, resolving the default.
+     *
+     * @param threadCount the number of threads processing log files.
+     * @return the configured maximum, or <code>2 * threadCount</code> if none is set.
+     */
+    public int getMaxPendingLogFiles(int threadCount) {
+        return maxPendingLogFiles > 0 ? maxPendingLogFiles : 2 * threadCount;
+    }
+
+    /**
+     * Set the S3 key prefix configured on the trail.
+     *
+     * @param s3KeyPrefix the key prefix, without a trailing slash.
+     */
+    public void setS3KeyPrefix(String s3KeyPrefix) {
+        this.s3KeyPrefix = s3KeyPrefix;
+    }
+
+    /**
+     * Set the organization ID of an organization trail.
+     *
+     * @param organizationId the organization ID, i.e. o-exampleorgid.
+     */
+    public void setOrganizationId(String organizationId) {
+        this.organizationId = organizationId;
+    }
+
+    /**
+     * Set the account IDs to backfill.
+     *
+     * @param accountIds the account IDs; empty to discover them.
+     */
+    public void setAccountIds(List<String> accountIds) {
+        this.accountIds = accountIds;
+    }
+
+    /**
+     * Set the regions to backfill.
+     *
+     * @param regions the regions; empty to discover them.
+     */
+    public void setRegions(List<String> regions) {
+        this.regions = regions;
+    }
+
+    /**
+     * Set the number of threads used to list S3 prefixes in parallel.
+     * <p>
+     * The number of threads downloading and processing log files is the <code>threadCount</code> of the
+     * {@link ProcessingConfiguration}.
+     *
+     * @param listingThreadCount the number of listing threads.
+     */
+    public void setListingThreadCount(int listingThreadCount) {
+        this.listingThreadCount = listingThreadCount;
+    }
+
+    /**
+     * Set the maximum number of listed log files waiting to be processed. Listing blocks while this many are waiting,
+     * which bounds memory and keeps listing from running far ahead of processing.
+     *
+     * @param maxPendingLogFiles the maximum, or <code>0</code> for twice the processing thread count.
+     */
+    public void setMaxPendingLogFiles(int maxPendingLogFiles) {
+        this.maxPendingLogFiles = maxPendingLogFiles;
+    }
+
+    /**
+     * Validate that all necessary parameters are set.
+     *
+     * @throws IllegalStateException if any parameters are <code>null</code> or out of range.
+     */
+    public void validate() {
+        LibraryUtils.checkArgumentNotNull(this.getS3Bucket(), "S3 Bucket is null.");
+        LibraryUtils.checkArgumentNotNull(this.getAccountIds(), "Account IDs is null.");
+        LibraryUtils.checkArgumentNotNull(this.getRegions(), "Regions is null.");
+        LibraryUtils.checkArgumentNotNull(this.getStartTime(), "Start Time is null.");
+        LibraryUtils.checkArgumentNotNull(this.getEndTime(), "End Time is null.");
+        LibraryUtils.checkCondition(this.getStartTime().after(this.getEndTime()), "Start Time is after End Time.");
+        LibraryUtils.checkCondition(this.getListingThreadCount() < 1, "Listing Thread Count cannot be less than 1.");
+        LibraryUtils.checkCondition(this.getMaxPendingLogFiles() < 0, "Max Pending Log Files cannot be negative.");
+    }
+}
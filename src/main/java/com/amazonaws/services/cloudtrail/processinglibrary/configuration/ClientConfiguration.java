@@ -15,6 +15,13 @@
 
 package com.amazonaws.services.cloudtrail.processinglibrary.configuration;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
 
@@ -25,7 +32,7 @@ import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
  * {@link com.amazonaws.services.cloudtrail.processinglibrary.AWSCloudTrailProcessingExecutor}
  * as an alternative to using a class path properties file.
  */
-public class ClientConfiguration implements ProcessingConfiguration{
+public class ClientConfiguration implements MultiQueueConfiguration, RangedGetConfiguration{
 
     private static final String ERROR_CREDENTIALS_PROVIDER_NULL = "CredentialsProvider is null. Either put your " +
             "access key and secret key in the configuration file in your class path, or spcify it in the " +
@@ -45,6 +52,18 @@ public class ClientConfiguration implements ProcessingConfiguration{
      */
     public String sqsUrl = null;
 
+    /**
+     * The URLs of further SQS queues used to receive events, polled by the same executor as {@link #sqsUrl}.
+     */
+    public List<String> additionalSqsUrls = new ArrayList<String>();
+
+    /**
+     * The weights of SQS queues, by queue URL.
+     * <p>
+     * Queues without a weight have weight {@value MultiQueueConfiguration#DEFAULT_SQS_QUEUE_WEIGHT}.
+     */
+    public Map<String, Integer> sqsQueueWeights = new HashMap<String, Integer>();
+
     /**
      * The SQS region to use.
      * <p>
@@ -93,6 +112,18 @@ public class ClientConfiguration implements ProcessingConfiguration{
      */
     public boolean enableRawEventInfo = DEFAULT_ENABLE_RAW_EVENT_INFO;
 
+    /**
+     * The size, in bytes, of the byte ranges used to download large log files.
+     * <p>
+     * A log file larger than this is downloaded as concurrent byte-range GETs of this size.
+     */
+    public int rangedGetPartSize = DEFAULT_RANGED_GET_PART_SIZE;
+
+    /**
+     * The number of threads used to download the byte ranges of large log files.
+     */
+    public int rangedGetThreadCount = DEFAULT_RANGED_GET_THREAD_COUNT;
+
     /**
      * Initializes a new <code>ClientConfiguration</code>.
      * <p>
@@ -124,6 +155,24 @@ public class ClientConfiguration implements ProcessingConfiguration{
         return sqsUrl;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public List<String> getSqsUrls() {
+        List<String> sqsUrls = new ArrayList<String>();
+        sqsUrls.add(sqsUrl);
+        sqsUrls.addAll(additionalSqsUrls);
+        return sqsUrls;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getSqsQueueWeight(String sqsUrl) {
+        Integer weight = sqsQueueWeights.get(sqsUrl);
+        return weight == null ? DEFAULT_SQS_QUEUE_WEIGHT : weight;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -174,6 +223,22 @@ public class ClientConfiguration implements ProcessingConfiguration{
         return enableRawEventInfo;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRangedGetPartSize() {
+        return rangedGetPartSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRangedGetThreadCount() {
+        return rangedGetThreadCount;
+    }
+
     /**
     * {@inheritDoc}
     */
@@ -181,6 +246,12 @@ public class ClientConfiguration implements ProcessingConfiguration{
     public void validate() {
         LibraryUtils.checkArgumentNotNull(this.getAwsCredentialsProvider(), ERROR_CREDENTIALS_PROVIDER_NULL);
         LibraryUtils.checkArgumentNotNull(this.getSqsUrl(), "SQS URL is null.");
+        Set<String> sqsUrls = new HashSet<String>();
+        for (String sqsUrl : this.getSqsUrls()) {
+            LibraryUtils.checkArgumentNotNull(sqsUrl, "SQS URL is null.");
+            LibraryUtils.checkCondition(!sqsUrls.add(sqsUrl), "SQS URL " + sqsUrl + " is listed more than once.");
+            LibraryUtils.checkCondition(this.getSqsQueueWeight(sqsUrl) < 1, "SQS Queue Weight cannot be less than 1.");
+        }
         LibraryUtils.checkArgumentNotNull(this.getSqsRegion(), "SQS Region is null.");
         LibraryUtils.checkArgumentNotNull(this.getVisibilityTimeout(), "Visibility Timeout is null.");
         LibraryUtils.checkArgumentNotNull(this.getS3Region(), "S3 Region is null.");
@@ -188,6 +259,8 @@ public class ClientConfiguration implements ProcessingConfiguration{
         LibraryUtils.checkArgumentNotNull(this.getThreadTerminationDelaySeconds(), "Thread Termination Delay Seconds is null.");
         LibraryUtils.checkArgumentNotNull(this.getMaxEventsPerEmit(), "Maximum Events Per Emit is null.");
         LibraryUtils.checkArgumentNotNull(this.isEnableRawEventInfo(), "Is Enable Raw Event Information is null.");
+        LibraryUtils.checkCondition(this.getRangedGetPartSize() > 0 && this.getRangedGetThreadCount() < 1,
+                "Ranged GET Thread Count cannot be less than 1.");
     }
 
     /**
@@ -201,6 +274,28 @@ public class ClientConfiguration implements ProcessingConfiguration{
         this.awsCredentialsProvider = awsCredentialsProvider;
     }
 
+    /**
+     * Adds an SQS queue to poll in addition to the one passed to the constructor.
+     * <p>
+     * The queue must be subscribed to AWS CloudTrail. Queues in other regions than {@link #sqsRegion} are supported;
+     * requests go to the region in the queue URL.
+     *
+     * @param sqsUrl the SQS URL to add.
+     */
+    public void addSqsUrl(String sqsUrl) {
+        this.additionalSqsUrls.add(sqsUrl);
+    }
+
+    /**
+     * Sets the weight of an SQS queue, which is the number of threads polling it.
+     *
+     * @param sqsUrl the SQS URL to weigh.
+     * @param weight the weight to set.
+     */
+    public void setSqsQueueWeight(String sqsUrl, int weight) {
+        this.sqsQueueWeights.put(sqsUrl, weight);
+    }
+
     /**
      * Sets the SQS Region to use to get CloudTrail logs.
      *
@@ -278,4 +373,25 @@ public class ClientConfiguration implements ProcessingConfiguration{
     public void setEnableRawEventInfo(boolean enableRawEventInfo) {
         this.enableRawEventInfo = enableRawEventInfo;
     }
+
+    /**
+     * Set the size of the byte ranges used to download large log files.
+     * <p>
+     * A log file larger than this is downloaded as concurrent byte-range GETs of this size. Set to 0 to download
+     * every log file with a single GET.
+     *
+     * @param rangedGetPartSize the part size, in bytes.
+     */
+    public void setRangedGetPartSize(int rangedGetPartSize) {
+        this.rangedGetPartSize = rangedGetPartSize;
+    }
+
+    /**
+     * Set the number of threads used to download the byte ranges of large log files.
+     *
+     * @param rangedGetThreadCount the number of threads to set.
+     */
+    public void setRangedGetThreadCount(int rangedGetThreadCount) {
+        this.rangedGetThreadCount = rangedGetThreadCount;
+    }
 }
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.configuration;
+
+import java.util.List;
+
+/**
+ * A {@link ProcessingConfiguration} that polls several SQS queues from one executor.
+ * <p>
+ * A configuration that does not implement this interface polls the single queue returned by {@link #getSqsUrl()} with
+ * weight {@value #DEFAULT_SQS_QUEUE_WEIGHT}. {@link ClientConfiguration} and {@link PropertiesFileConfiguration}
+ * implement it.
+ */
+public interface MultiQueueConfiguration extends ProcessingConfiguration {
+
+    /**
+     * The default weight of an SQS queue; {@value}.
+     */
+    public static final int DEFAULT_SQS_QUEUE_WEIGHT = 1;
+
+    /**
+     * Gets the URLs of all SQS queues used to obtain CloudTrail logs.
+     * <p>
+     * Every queue is polled by the same executor, and the sources received from all of them are processed by one
+     * worker pool.
+     *
+     * @return the configured SQS URLs, starting with the one returned by {@link #getSqsUrl()}.
+     */
+    public List<String> getSqsUrls();
+
+    /**
+     * Gets the weight of an SQS queue.
+     * <p>
+     * The weight is the number of threads polling the queue. While every worker is busy, each polling thread waits
+     * for a free worker, so a queue with weight 2 gets about twice as many sources processed as a queue with weight 1.
+     *
+     * @param sqsUrl one of the URLs returned by {@link #getSqsUrls()}.
+     * @return the weight of the queue, {@value #DEFAULT_SQS_QUEUE_WEIGHT} unless configured.
+     */
+    public int getSqsQueueWeight(String sqsUrl);
+}
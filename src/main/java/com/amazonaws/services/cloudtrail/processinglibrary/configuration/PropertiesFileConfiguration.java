@@ -17,7 +17,13 @@ package com.amazonaws.services.cloudtrail.processinglibrary.configuration;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.ClasspathPropertiesFileCredentialsProvider;
@@ -30,11 +36,13 @@ import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
  * In addition to this class, you can use {@link ClientConfiguration}
  * to manually set configuration options.
  */
-public class PropertiesFileConfiguration implements ProcessingConfiguration{
+public class PropertiesFileConfiguration implements MultiQueueConfiguration, RangedGetConfiguration{
     /* configuration file property names */
     public static final String ACCESS_KEY = "accessKey";
     public static final String SECRET_KEY = "secretKey";
     public static final String SQS_URL = "sqsUrl";
+    public static final String ADDITIONAL_SQS_URLS = "additionalSqsUrls";
+    public static final String SQS_QUEUE_WEIGHTS = "sqsQueueWeights";
     public static final String SQS_REGION = "sqsRegion";
     public static final String VISIBILITY_TIMEOUT = "visibilityTimeout";
     public static final String S3_REGION = "s3Region";
@@ -42,6 +50,8 @@ public class PropertiesFileConfiguration implements ProcessingConfiguration{
     public static final String THREAD_TERMINATION_DELAY_SECONDS = "threadTerminationDelaySeconds";
     public static final String MAX_EVENTS_PER_EMIT = "maxEventsPerEmit";
     public static final String ENABLE_RAW_EVENT_INFO = "enableRawEventInfo";
+    public static final String RANGED_GET_PART_SIZE = "rangedGetPartSize";
+    public static final String RANGED_GET_THREAD_COUNT = "rangedGetThreadCount";
 
     private static final String ERROR_CREDENTIALS_PROVIDER_NULL = "CredentialsProvider is null. Either put your " +
             "access key and secret key in the configuration file in your class path, or spcify it in the " +
@@ -61,6 +71,16 @@ public class PropertiesFileConfiguration implements ProcessingConfiguration{
      */
     private String sqsUrl = null;
 
+    /**
+     * The URLs of further SQS queues used to receive events, polled by the same executor as the SQS URL.
+     */
+    private List<String> additionalSqsUrls = new ArrayList<String>();
+
+    /**
+     * The weights of SQS queues, by queue URL.
+     */
+    private Map<String, Integer> sqsQueueWeights = new HashMap<String, Integer>();
+
     /**
      * The SQS region to use.
      * <p>
@@ -107,6 +127,18 @@ public class PropertiesFileConfiguration implements ProcessingConfiguration{
      */
     private boolean enableRawEventInfo = DEFAULT_ENABLE_RAW_EVENT_INFO;
 
+    /**
+     * The size, in bytes, of the byte ranges used to download large log files.
+     * <p>
+     * A log file larger than this is downloaded as concurrent byte-range GETs of this size.
+     */
+    private int rangedGetPartSize = DEFAULT_RANGED_GET_PART_SIZE;
+
+    /**
+     * The number of threads used to download the byte ranges of large log files.
+     */
+    private int rangedGetThreadCount = DEFAULT_RANGED_GET_THREAD_COUNT;
+
     /**
      * Creates a {@link PropertiesFileConfiguration} from values provided in a
      * classpath properties file.
@@ -120,6 +152,26 @@ public class PropertiesFileConfiguration implements ProcessingConfiguration{
         this.sqsUrl = prop.getProperty(SQS_URL);
         LibraryUtils.checkArgumentNotNull(this.sqsUrl, "Cannot find SQS URL in properties file.");
 
+        String additionalSqsUrls = prop.getProperty(ADDITIONAL_SQS_URLS);
+        if (additionalSqsUrls != null) {
+            for (String sqsUrl : additionalSqsUrls.split(",")) {
+                if (!sqsUrl.trim().isEmpty()) {
+                    this.additionalSqsUrls.add(sqsUrl.trim());
+                }
+            }
+        }
+
+        String sqsQueueWeights = prop.getProperty(SQS_QUEUE_WEIGHTS);
+        if (sqsQueueWeights != null) {
+            String[] weights = sqsQueueWeights.split(",");
+            List<String> sqsUrls = this.getSqsUrls();
+            LibraryUtils.checkCondition(weights.length != sqsUrls.size(),
+                    "SQS Queue Weights must list one weight for each SQS URL.");
+            for (int i = 0; i < weights.length; i++) {
+                this.sqsQueueWeights.put(sqsUrls.get(i), Integer.parseInt(weights[i].trim()));
+            }
+        }
+
         String accessKey = prop.getProperty(ACCESS_KEY);
         String secretKey = prop.getProperty(SECRET_KEY);
 
@@ -137,6 +189,9 @@ public class PropertiesFileConfiguration implements ProcessingConfiguration{
 
         this.maxEventsPerEmit = this.getIntProperty(prop, MAX_EVENTS_PER_EMIT);
         this.enableRawEventInfo = this.getBooleanProperty(prop, ENABLE_RAW_EVENT_INFO);
+
+        this.rangedGetPartSize = this.getIntProperty(prop, RANGED_GET_PART_SIZE, DEFAULT_RANGED_GET_PART_SIZE);
+        this.rangedGetThreadCount = this.getIntProperty(prop, RANGED_GET_THREAD_COUNT, DEFAULT_RANGED_GET_THREAD_COUNT);
     }
 
     /**
@@ -153,6 +208,24 @@ public class PropertiesFileConfiguration implements ProcessingConfiguration{
         return sqsUrl;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public List<String> getSqsUrls() {
+        List<String> sqsUrls = new ArrayList<String>();
+        sqsUrls.add(sqsUrl);
+        sqsUrls.addAll(additionalSqsUrls);
+        return sqsUrls;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getSqsQueueWeight(String sqsUrl) {
+        Integer weight = sqsQueueWeights.get(sqsUrl);
+        return weight == null ? DEFAULT_SQS_QUEUE_WEIGHT : weight;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -202,6 +275,22 @@ public class PropertiesFileConfiguration implements ProcessingConfiguration{
         return enableRawEventInfo;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRangedGetPartSize() {
+        return rangedGetPartSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRangedGetThreadCount() {
+        return rangedGetThreadCount;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -209,6 +298,12 @@ public class PropertiesFileConfiguration implements ProcessingConfiguration{
     public void validate() {
         LibraryUtils.checkArgumentNotNull(this.getAwsCredentialsProvider(), ERROR_CREDENTIALS_PROVIDER_NULL);
         LibraryUtils.checkArgumentNotNull(this.getSqsUrl(), "SQS URL is null.");
+        Set<String> sqsUrls = new HashSet<String>();
+        for (String sqsUrl : this.getSqsUrls()) {
+            LibraryUtils.checkArgumentNotNull(sqsUrl, "SQS URL is null.");
+            LibraryUtils.checkCondition(!sqsUrls.add(sqsUrl), "SQS URL " + sqsUrl + " is listed more than once.");
+            LibraryUtils.checkCondition(this.getSqsQueueWeight(sqsUrl) < 1, "SQS Queue Weight cannot be less than 1.");
+        }
         LibraryUtils.checkArgumentNotNull(this.getSqsRegion(), "SQS Region is null.");
         LibraryUtils.checkArgumentNotNull(this.getVisibilityTimeout(), "Visibility Timeout is null.");
         LibraryUtils.checkArgumentNotNull(this.getS3Region(), "S3 Region is null.");
@@ -216,6 +311,8 @@ public class PropertiesFileConfiguration implements ProcessingConfiguration{
         LibraryUtils.checkArgumentNotNull(this.getThreadTerminationDelaySeconds(), "Thread Termination Delay Seconds is null.");
         LibraryUtils.checkArgumentNotNull(this.getMaxEventsPerEmit(), "Maximum Events Per Emit is null.");
         LibraryUtils.checkArgumentNotNull(this.isEnableRawEventInfo(), "Is Enable Raw Event Information is null.");
+        LibraryUtils.checkCondition(this.getRangedGetPartSize() > 0 && this.getRangedGetThreadCount() < 1,
+                "Ranged GET Thread Count cannot be less than 1.");
     }
 
     /**
@@ -249,6 +346,19 @@ public class PropertiesFileConfiguration implements ProcessingConfiguration{
         return Integer.parseInt(propertyValue);
     }
 
+    /**
+     * Convert a string representation of an optional property to an integer type.
+     *
+     * @param prop the property class
+     * @param name a name to evaluate in the property file.
+     * @param defaultValue the value to use when the property is not set.
+     * @return an integer representation of the value associated with the property name.
+     */
+    private int getIntProperty(Properties prop, String name, int defaultValue) {
+        String propertyValue = prop.getProperty(name);
+        return propertyValue == null ? defaultValue : Integer.parseInt(propertyValue.trim());
+    }
+
     /**
      * Convert a string representation of a property to a boolean type.
      *
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.configuration;
+
+/**
+ * A {@link ProcessingConfiguration} that downloads large log files as concurrent byte-range GETs.
+ * <p>
+ * A configuration that does not implement this interface downloads every log file with a single GET.
+ * {@link ClientConfiguration} and {@link PropertiesFileConfiguration} implement it.
+ */
+public interface RangedGetConfiguration extends ProcessingConfiguration {
+
+    /**
+     * The default size, in bytes, of the byte ranges used to download large log files; {@value}.
+     */
+    public static final int DEFAULT_RANGED_GET_PART_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The default number of threads used to download the byte ranges of large log files; {@value}.
+     */
+    public static final int DEFAULT_RANGED_GET_THREAD_COUNT = 4;
+
+    /**
+     * Get the size of the byte ranges used to download large log files.
+     * <p>
+     * A log file larger than this is downloaded as concurrent byte-range GETs of this size. A value less than 1
+     * downloads every log file with a single GET.
+     *
+     * @return the part size, in bytes.
+     */
+    public int getRangedGetPartSize();
+
+    /**
+     * Get the number of threads used to download the byte ranges of large log files.
+     *
+     * @return the number of threads.
+     */
+    public int getRangedGetThreadCount();
+}
@@ -24,7 +24,10 @@ import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.SourceFilt
 import com.amazonaws.services.cloudtrail.processinglibrary.manager.S3Manager;
 import com.amazonaws.services.cloudtrail.processinglibrary.manager.SqsManager;
 import com.amazonaws.services.cloudtrail.processinglibrary.reader.EventReader;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.EventDeduplicator;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LagMonitor;
 import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.ProcessedLogCache;
 
 
 /**
@@ -49,6 +52,15 @@ public class EventReaderFactory {
     /* The class responsible for S3-related operations. */
     private S3Manager s3Manager;
 
+    /* Recently processed log files shared by every reader; null when duplicate suppression is disabled. */
+    private ProcessedLogCache processedLogCache;
+
+    /* Emitted event IDs shared by every reader; null when event deduplication is disabled. */
+    private EventDeduplicator eventDeduplicator;
+
+    /* Ingestion lag shared by every reader; null when lag is not measured. */
+    private LagMonitor lagMonitor;
+
     /**
      * EventReaderFactory constructor.
      * <p>
@@ -65,6 +77,9 @@ public class EventReaderFactory {
         this.exceptionHandler = builder.exceptionHandler;
         this.sqsManager = builder.sqsManager;
         this.s3Manager = builder.s3Manager;
+        this.processedLogCache = builder.processedLogCache;
+        this.eventDeduplicator = builder.eventDeduplicator;
+        this.lagMonitor = builder.lagMonitor;
 
         this.validate();
     }
@@ -78,6 +93,9 @@ public class EventReaderFactory {
         private ExceptionHandler exceptionHandler;
         private S3Manager s3Manager;
         private SqsManager sqsManager;
+        private ProcessedLogCache processedLogCache;
+        private EventDeduplicator eventDeduplicator;
+        private LagMonitor lagMonitor;
 
         public Builder(ProcessingConfiguration config) {
             this.config = config;
@@ -118,6 +136,21 @@ public class EventReaderFactory {
             return this;
         }
 
+        public Builder withProcessedLogCache(ProcessedLogCache processedLogCache) {
+            this.processedLogCache = processedLogCache;
+            return this;
+        }
+
+        public Builder withEventDeduplicator(EventDeduplicator eventDeduplicator) {
+            this.eventDeduplicator = eventDeduplicator;
+            return this;
+        }
+
+        public Builder withLagMonitor(LagMonitor lagMonitor) {
+            this.lagMonitor = lagMonitor;
+            return this;
+        }
+
         public EventReaderFactory build() {
             return new EventReaderFactory(this);
         }
@@ -131,7 +164,8 @@ public class EventReaderFactory {
     public EventReader createReader() {
         EventReader reader = new EventReader(
                 this.eventsProcessor, this.sourceFilter, this.eventFilter, this.progressReporter, this.exceptionHandler,
-                this.sqsManager, this.s3Manager, this.config);
+                this.sqsManager, this.s3Manager, this.config, this.processedLogCache,
+                this.eventDeduplicator, this.lagMonitor);
         return reader;
     }
 
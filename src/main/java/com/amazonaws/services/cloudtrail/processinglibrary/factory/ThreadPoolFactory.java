@@ -19,6 +19,7 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -67,7 +68,19 @@ public class ThreadPoolFactory {
      * @return ScheduledExecutorService continuous poll messages from SQS queue.
      */
     public ScheduledExecutorService createScheduledThreadPool() {
-        return Executors.newScheduledThreadPool(1);
+        return this.createScheduledThreadPool(1);
+    }
+
+    /**
+     * Create an instance of ScheduledExecutorService with one thread for each poller, used when several SQS queues
+     * are polled or a queue is polled by several threads.
+     *
+     * @param pollerCount number of threads polling SQS queues
+     * @return ScheduledExecutorService continuous poll messages from SQS queues.
+     */
+    public ScheduledExecutorService createScheduledThreadPool(int pollerCount) {
+        LibraryUtils.checkCondition(pollerCount < 1, "Poller Count cannot be less than 1.");
+        return Executors.newScheduledThreadPool(pollerCount);
     }
 
     /**
@@ -83,6 +96,33 @@ public class ThreadPoolFactory {
 
     }
 
+    /**
+     * Create an instance of ExecutorService used to list S3 prefixes in parallel when backfilling. Listing jobs are
+     * small and bounded by the number of partitions to list, so the queue is unbounded.
+     *
+     * @param listingThreadCount number of threads listing S3 prefixes
+     * @return ExecutorService that lists S3 prefixes
+     */
+    public ExecutorService createListingThreadPool(int listingThreadCount) {
+        LibraryUtils.checkCondition(listingThreadCount < 1, "Listing Thread Count cannot be less than 1.");
+        return new ProcessingLibraryThreadPoolExecutor(listingThreadCount, listingThreadCount, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadPoolExecutor.AbortPolicy(), this.exceptionHandler);
+    }
+
+    /**
+     * Create an instance of ExecutorService used to download the byte ranges of large log files in parallel. The queue
+     * is bounded and full submissions are rejected, so the downloading thread fetches the range itself instead.
+     *
+     * @param rangedGetThreadCount number of threads downloading byte ranges
+     * @return ExecutorService that downloads byte ranges
+     */
+    public ExecutorService createRangedGetThreadPool(int rangedGetThreadCount) {
+        LibraryUtils.checkCondition(rangedGetThreadCount < 1, "Ranged GET Thread Count cannot be less than 1.");
+        return new ProcessingLibraryThreadPoolExecutor(rangedGetThreadCount, rangedGetThreadCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(rangedGetThreadCount), new ThreadPoolExecutor.AbortPolicy(),
+                this.exceptionHandler);
+    }
+
     /**
      * Helper function to create an instance of ExecutorService with bounded queue size.
      *
@@ -0,0 +1,363 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.filter;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventKeyExtractor;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+
+/**
+ * A compiled filter expression, or part of one.
+ * <p>
+ * Each operator compiles to its own subclass, bound to the extractor of its field and to its literal values, so
+ * evaluating an expression is a tree of direct calls with no lookups by name. {@link #toString()} gives the expression
+ * back in canonical form.
+ */
+abstract class Condition {
+    /**
+     * Evaluate the condition against an event.
+     *
+     * @param event the event.
+     * @return <code>true</code> if the event satisfies the condition.
+     */
+    abstract boolean test(CloudTrailEvent event);
+
+    /**
+     * A condition with a constant result, such as <code>true</code>.
+     */
+    static final class Constant extends Condition {
+        static final Constant TRUE = new Constant(true);
+        static final Constant FALSE = new Constant(false);
+
+        private final boolean value;
+
+        private Constant(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean test(CloudTrailEvent event) {
+            return this.value;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(this.value);
+        }
+    }
+
+    /**
+     * Base class of the conditions on a single field.
+     */
+    abstract static class FieldCondition extends Condition {
+        final String fieldName;
+        final EventKeyExtractor field;
+
+        FieldCondition(String fieldName, EventKeyExtractor field) {
+            this.fieldName = fieldName;
+            this.field = field;
+        }
+    }
+
+    /**
+     * <code>field == "value"</code>, or <code>field != "value"</code> when negated.
+     */
+    static final class Equals extends FieldCondition {
+        private final String value;
+        private final boolean negated;
+
+        Equals(String fieldName, EventKeyExtractor field, String value, boolean negated) {
+            super(fieldName, field);
+            this.value = value;
+            this.negated = negated;
+        }
+
+        @Override
+        boolean test(CloudTrailEvent event) {
+            return this.value.equals(this.field.getKey(event)) != this.negated;
+        }
+
+        @Override
+        public String toString() {
+            return this.fieldName + (this.negated ? " != " : " == ") + quote(this.value);
+        }
+    }
+
+    /**
+     * <code>field == null</code>, or <code>field != null</code> when negated.
+     */
+    static final class IsNull extends FieldCondition {
+        private final boolean negated;
+
+        IsNull(String fieldName, EventKeyExtractor field, boolean negated) {
+            super(fieldName, field);
+            this.negated = negated;
+        }
+
+        @Override
+        boolean test(CloudTrailEvent event) {
+            return (this.field.getKey(event) == null) != this.negated;
+        }
+
+        @Override
+        public String toString() {
+            return this.fieldName + (this.negated ? " != null" : " == null");
+        }
+    }
+
+    /**
+     * <code>field in ("a", "b", ...)</code> over a few values, compared one by one.
+     */
+    static final class InArray extends FieldCondition {
+        private final String[] values;
+
+        InArray(String fieldName, EventKeyExtractor field, String[] values) {
+            super(fieldName, field);
+            this.values = values;
+        }
+
+        @Override
+        boolean test(CloudTrailEvent event) {
+            String value = this.field.getKey(event);
+            if (value != null) {
+                for (String candidate : this.values) {
+                    if (candidate.equals(value)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return this.fieldName + " in " + quoteAll(this.values);
+        }
+    }
+
+    /**
+     * <code>field in ("a", "b", ...)</code> over many values, looked up in a hash set.
+     */
+    static final class InSet extends FieldCondition {
+        private final String[] values;
+        private final Set<String> valueSet;
+
+        InSet(String fieldName, EventKeyExtractor field, String[] values) {
+            super(fieldName, field);
+            this.values = values;
+            this.valueSet = new HashSet<String>(Arrays.asList(values));
+        }
+
+        @Override
+        boolean test(CloudTrailEvent event) {
+            String value = this.field.getKey(event);
+            return value != null && this.valueSet.contains(value);
+        }
+
+        @Override
+        public String toString() {
+            return this.fieldName + " in " + quoteAll(this.values);
+        }
+    }
+
+    /**
+     * <code>field startsWith "prefix"</code>.
+     */
+    static final class StartsWith extends FieldCondition {
+        private final String prefix;
+
+        StartsWith(String fieldName, EventKeyExtractor field, String prefix) {
+            super(fieldName, field);
+            this.prefix = prefix;
+        }
+
+        @Override
+        boolean test(CloudTrailEvent event) {
+            String value = this.field.getKey(event);
+            return value != null && value.startsWith(this.prefix);
+        }
+
+        @Override
+        public String toString() {
+            return this.fieldName + " startsWith " + quote(this.prefix);
+        }
+    }
+
+    /**
+     * <code>field endsWith "suffix"</code>.
+     */
+    static final class EndsWith extends FieldCondition {
+        private final String suffix;
+
+        EndsWith(String fieldName, EventKeyExtractor field, String suffix) {
+            super(fieldName, field);
+            this.suffix = suffix;
+        }
+
+        @Override
+        boolean test(CloudTrailEvent event) {
+            String value = this.field.getKey(event);
+            return value != null && value.endsWith(this.suffix);
+        }
+
+        @Override
+        public String toString() {
+            return this.fieldName + " endsWith " + quote(this.suffix);
+        }
+    }
+
+    /**
+     * <code>field contains "text"</code>.
+     */
+    static final class Contains extends FieldCondition {
+        private final String text;
+
+        Contains(String fieldName, EventKeyExtractor field, String text) {
+            super(fieldName, field);
+            this.text = text;
+        }
+
+        @Override
+        boolean test(CloudTrailEvent event) {
+            String value = this.field.getKey(event);
+            return value != null && value.contains(this.text);
+        }
+
+        @Override
+        public String toString() {
+            return this.fieldName + " contains " + quote(this.text);
+        }
+    }
+
+    /**
+     * <code>!condition</code>.
+     */
+    static final class Not extends Condition {
+        private final Condition condition;
+
+        Not(Condition condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        boolean test(CloudTrailEvent event) {
+            return !this.condition.test(event);
+        }
+
+        @Override
+        public String toString() {
+            return "!(" + this.condition + ")";
+        }
+    }
+
+    /**
+     * <code>a &amp;&amp; b</code>, the most common shape of expression, without a loop.
+     */
+    static final class And2 extends Condition {
+        private final Condition left;
+        private final Condition right;
+
+        And2(Condition left, Condition right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean test(CloudTrailEvent event) {
+            return this.left.test(event) && this.right.test(event);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + this.left + " && " + this.right + ")";
+        }
+    }
+
+    /**
+     * <code>a &amp;&amp; b &amp;&amp; ...</code>, evaluated left to right until a condition fails.
+     */
+    static final class And extends Condition {
+        private final Condition[] conditions;
+
+        And(Condition[] conditions) {
+            this.conditions = conditions;
+        }
+
+        @Override
+        boolean test(CloudTrailEvent event) {
+            for (Condition condition : this.conditions) {
+                if (!condition.test(event)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return join(this.conditions, " && ");
+        }
+    }
+
+    /**
+     * <code>a || b || ...</code>, evaluated left to right until a condition holds.
+     */
+    static final class Or extends Condition {
+        private final Condition[] conditions;
+
+        Or(Condition[] conditions) {
+            this.conditions = conditions;
+        }
+
+        @Override
+        boolean test(CloudTrailEvent event) {
+            for (Condition condition : this.conditions) {
+                if (condition.test(event)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return join(this.conditions, " || ");
+        }
+    }
+
+    static String quote(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static String quoteAll(String[] values) {
+        StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < values.length; i++) {
+            builder.append(i == 0 ? "" : ", ").append(quote(values[i]));
+        }
+        return builder.append(')').toString();
+    }
+
+    private static String join(Condition[] conditions, String operator) {
+        StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < conditions.length; i++) {
+            builder.append(i == 0 ? "" : operator).append(conditions[i]);
+        }
+        return builder.append(')').toString();
+    }
+}
@@ -0,0 +1,439 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.impl.EventKey;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventKeyExtractor;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.internal.UserIdentity;
+
+/**
+ * Recursive descent parser of filter expressions, producing a compiled {@link Condition}.
+ * <p>
+ * Fields are resolved to their {@link EventKeyExtractor}s and constant subexpressions are folded while parsing, so
+ * nothing is looked up by name when the condition is evaluated. This class is not thread safe; use one instance per
+ * expression.
+ */
+class ExpressionParser {
+    /**
+     * The largest <code>in</code> list compared value by value; longer lists are looked up in a hash set.
+     */
+    static final int MAX_LINEAR_IN_VALUES = 4;
+
+    static final Map<String, EventKeyExtractor> FIELDS = Collections.unmodifiableMap(createFields());
+
+    private enum TokenType {
+        IDENTIFIER, STRING, LEFT_PAREN, RIGHT_PAREN, COMMA, EQUALS, NOT_EQUALS, AND, OR, NOT, END
+    }
+
+    private final String expression;
+    private int position;
+
+    private TokenType tokenType;
+    private String tokenText;
+    private int tokenStart;
+
+    ExpressionParser(String expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * Parse the whole expression.
+     *
+     * @return the compiled condition.
+     * @throws IllegalArgumentException if the expression is not valid.
+     */
+    Condition parse() {
+        this.nextToken();
+        Condition condition = this.parseOr();
+        if (this.tokenType != TokenType.END) {
+            throw this.error("Expected && or || but found " + this.describeToken());
+        }
+        return condition;
+    }
+
+    private Condition parseOr() {
+        List<Condition> conditions = new ArrayList<Condition>();
+        conditions.add(this.parseAnd());
+        while (this.tokenType == TokenType.OR) {
+            this.nextToken();
+            conditions.add(this.parseAnd());
+        }
+        return or(conditions);
+    }
+
+    private Condition parseAnd() {
+        List<Condition> conditions = new ArrayList<Condition>();
+        conditions.add(this.parseUnary());
+        while (this.tokenType == TokenType.AND) {
+            this.nextToken();
+            conditions.add(this.parseUnary());
+        }
+        return and(conditions);
+    }
+
+    private Condition parseUnary() {
+        switch (this.tokenType) {
+            case NOT:
+                this.nextToken();
+                return not(this.parseUnary());
+            case LEFT_PAREN:
+                this.nextToken();
+                Condition condition = this.parseOr();
+                this.expect(TokenType.RIGHT_PAREN, ")");
+                return condition;
+            case IDENTIFIER:
+                if ("true".equals(this.tokenText)) {
+                    this.nextToken();
+                    return Condition.Constant.TRUE;
+                }
+                if ("false".equals(this.tokenText)) {
+                    this.nextToken();
+                    return Condition.Constant.FALSE;
+                }
+                return this.parseComparison();
+            default:
+                throw this.error("Expected a field, !, ( or a boolean but found " + this.describeToken());
+        }
+    }
+
+    private Condition parseComparison() {
+        String fieldName = this.tokenText;
+        EventKeyExtractor field = FIELDS.get(fieldName);
+        if (field == null) {
+            throw this.error("Unknown field " + fieldName + "; known fields are " + FIELDS.keySet());
+        }
+        this.nextToken();
+
+        if (this.tokenType == TokenType.EQUALS || this.tokenType == TokenType.NOT_EQUALS) {
+            boolean negated = this.tokenType == TokenType.NOT_EQUALS;
+            this.nextToken();
+            if (this.tokenType == TokenType.IDENTIFIER && "null".equals(this.tokenText)) {
+                this.nextToken();
+                return new Condition.IsNull(fieldName, field, negated);
+            }
+            return new Condition.Equals(fieldName, field, this.parseString(), negated);
+        }
+
+        String operator = this.tokenType == TokenType.IDENTIFIER ? this.tokenText : null;
+        if ("in".equals(operator)) {
+            this.nextToken();
+            return in(fieldName, field, this.parseList());
+        }
+        if ("not".equals(operator)) {
+            this.nextToken();
+            if (this.tokenType != TokenType.IDENTIFIER || !"in".equals(this.tokenText)) {
+                throw this.error("Expected in but found " + this.describeToken());
+            }
+            this.nextToken();
+            return not(in(fieldName, field, this.parseList()));
+        }
+        if ("startsWith".equals(operator)) {
+            this.nextToken();
+            return new Condition.StartsWith(fieldName, field, this.parseString());
+        }
+        if ("endsWith".equals(operator)) {
+            this.nextToken();
+            return new Condition.EndsWith(fieldName, field, this.parseString());
+        }
+        if ("contains".equals(operator)) {
+            this.nextToken();
+            return new Condition.Contains(fieldName, field, this.parseString());
+        }
+        throw this.error("Expected ==, !=, in, not in, startsWith, endsWith or contains after " + fieldName
+                + " but found " + this.describeToken());
+    }
+
+    private Set<String> parseList() {
+        this.expect(TokenType.LEFT_PAREN, "(");
+        Set<String> values = new LinkedHashSet<String>();
+        values.add(this.parseString());
+        while (this.tokenType == TokenType.COMMA) {
+            this.nextToken();
+            values.add(this.parseString());
+        }
+        this.expect(TokenType.RIGHT_PAREN, ")");
+        return values;
+    }
+
+    private String parseString() {
+        if (this.tokenType != TokenType.STRING) {
+            throw this.error("Expected a string but found " + this.describeToken());
+        }
+        String value = this.tokenText;
+        this.nextToken();
+        return value;
+    }
+
+    private void expect(TokenType type, String text) {
+        if (this.tokenType != type) {
+            throw this.error("Expected " + text + " but found " + this.describeToken());
+        }
+        this.nextToken();
+    }
+
+    /**
+     * Read the next token into <code>tokenType</code>, <code>tokenText</code> and <code>tokenStart</code>.
+     */
+    private void nextToken() {
+        String s = this.expression;
+        while (this.position < s.length() && Character.isWhitespace(s.charAt(this.position))) {
+            this.position++;
+        }
+        this.tokenStart = this.position;
+        this.tokenText = null;
+        if (this.position == s.length()) {
+            this.tokenType = TokenType.END;
+            return;
+        }
+
+        char c = s.charAt(this.position++);
+        switch (c) {
+            case '(':
+                this.tokenType = TokenType.LEFT_PAREN;
+                return;
+            case ')':
+                this.tokenType = TokenType.RIGHT_PAREN;
+                return;
+            case ',':
+                this.tokenType = TokenType.COMMA;
+                return;
+            case '=':
+                this.tokenType = this.expectChar('=', TokenType.EQUALS);
+                return;
+            case '&':
+                this.tokenType = this.expectChar('&', TokenType.AND);
+                return;
+            case '|':
+                this.tokenType = this.expectChar('|', TokenType.OR);
+                return;
+            case '!':
+                if (this.position < s.length() && s.charAt(this.position) == '=') {
+                    this.position++;
+                    this.tokenType = TokenType.NOT_EQUALS;
+                } else {
+                    this.tokenType = TokenType.NOT;
+                }
+                return;
+            case '"':
+                this.tokenType = TokenType.STRING;
+                this.tokenText = this.readString();
+                return;
+            default:
+                if (Character.isLetter(c) || c == '_') {
+                    while (this.position < s.length() && isIdentifierPart(s.charAt(this.position))) {
+                        this.position++;
+                    }
+                    this.tokenType = TokenType.IDENTIFIER;
+                    this.tokenText = s.substring(this.tokenStart, this.position);
+                    return;
+                }
+                throw this.error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private TokenType expectChar(char expected, TokenType type) {
+        if (this.position == this.expression.length() || this.expression.charAt(this.position) != expected) {
+            throw this.error("Expected " + this.expression.charAt(this.tokenStart) + expected);
+        }
+        this.position++;
+        return type;
+    }
+
+    /**
+     * Read a string literal after its opening quote. Only <code>\"</code> and <code>\\</code> are escapes.
+     */
+    private String readString() {
+        StringBuilder value = new StringBuilder();
+        while (this.position < this.expression.length()) {
+            char c = this.expression.charAt(this.position++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c == '\\') {
+                if (this.position == this.expression.length()) {
+                    break;
+                }
+                c = this.expression.charAt(this.position++);
+                if (c != '"' && c != '\\') {
+                    throw this.error("Unknown escape \\" + c + " in string");
+                }
+            }
+            value.append(c);
+        }
+        throw this.error("Unterminated string");
+    }
+
+    private String describeToken() {
+        switch (this.tokenType) {
+            case END:
+                return "the end of the expression";
+            case STRING:
+                return Condition.quote(this.tokenText);
+            case IDENTIFIER:
+                return this.tokenText;
+            default:
+                return this.expression.substring(this.tokenStart, this.position);
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + this.tokenStart + " of filter expression: "
+                + this.expression);
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+
+    private static Condition in(String fieldName, EventKeyExtractor field, Set<String> values) {
+        String[] valueArray = values.toArray(new String[values.size()]);
+        if (valueArray.length == 1) {
+            return new Condition.Equals(fieldName, field, valueArray[0], false);
+        }
+        return valueArray.length <= MAX_LINEAR_IN_VALUES
+                ? new Condition.InArray(fieldName, field, valueArray)
+                : new Condition.InSet(fieldName, field, valueArray);
+    }
+
+    private static Condition not(Condition condition) {
+        if (condition == Condition.Constant.TRUE) {
+            return Condition.Constant.FALSE;
+        }
+        if (condition == Condition.Constant.FALSE) {
+            return Condition.Constant.TRUE;
+        }
+        return new Condition.Not(condition);
+    }
+
+    /**
+     * Combine conditions with &amp;&amp;, dropping those that are always true.
+     */
+    private static Condition and(List<Condition> conditions) {
+        List<Condition> remaining = new ArrayList<Condition>(conditions.size());
+        for (Condition condition : conditions) {
+            if (condition == Condition.Constant.FALSE) {
+                return Condition.Constant.FALSE;
+            }
+            if (condition != Condition.Constant.TRUE) {
+                remaining.add(condition);
+            }
+        }
+        switch (remaining.size()) {
+            case 0:
+                return Condition.Constant.TRUE;
+            case 1:
+                return remaining.get(0);
+            case 2:
+                return new Condition.And2(remaining.get(0), remaining.get(1));
+            default:
+                return new Condition.And(remaining.toArray(new Condition[remaining.size()]));
+        }
+    }
+
+    /**
+     * Combine conditions with ||, dropping those that are always false.
+     */
+    private static Condition or(List<Condition> conditions) {
+        List<Condition> remaining = new ArrayList<Condition>(conditions.size());
+        for (Condition condition : conditions) {
+            if (condition == Condition.Constant.TRUE) {
+                return Condition.Constant.TRUE;
+            }
+            if (condition != Condition.Constant.FALSE) {
+                remaining.add(condition);
+            }
+        }
+        switch (remaining.size()) {
+            case 0:
+                return Condition.Constant.FALSE;
+            case 1:
+                return remaining.get(0);
+            default:
+                return new Condition.Or(remaining.toArray(new Condition[remaining.size()]));
+        }
+    }
+
+    private static Map<String, EventKeyExtractor> createFields() {
+        Map<String, EventKeyExtractor> fields = new LinkedHashMap<String, EventKeyExtractor>();
+        fields.put("eventVersion", new EventKeyExtractor() {
+            @Override
+            public String getKey(CloudTrailEvent event) {
+                return event.getEventData().getEventVersion();
+            }
+        });
+        fields.put("eventSource", EventKey.eventSource);
+        fields.put("eventName", EventKey.eventName);
+        fields.put("eventType", EventKey.eventType);
+        fields.put("awsRegion", EventKey.awsRegion);
+        fields.put("sourceIPAddress", EventKey.sourceIPAddress);
+        fields.put("userAgent", EventKey.userAgent);
+        fields.put("requestId", new EventKeyExtractor() {
+            @Override
+            public String getKey(CloudTrailEvent event) {
+                return event.getEventData().getRequestId();
+            }
+        });
+        fields.put("errorCode", EventKey.errorCode);
+        fields.put("errorMessage", new EventKeyExtractor() {
+            @Override
+            public String getKey(CloudTrailEvent event) {
+                return event.getEventData().getErrorMessage();
+            }
+        });
+        fields.put("apiVersion", new EventKeyExtractor() {
+            @Override
+            public String getKey(CloudTrailEvent event) {
+                return event.getEventData().getApiVersion();
+            }
+        });
+        fields.put("accountId", new EventKeyExtractor() {
+            @Override
+            public String getKey(CloudTrailEvent event) {
+                return event.getEventData().getAccountId();
+            }
+        });
+        fields.put("recipientAccountId", EventKey.recipientAccountId);
+        fields.put("userIdentity.type", EventKey.identityType);
+        fields.put("userIdentity.principalId", EventKey.principalId);
+        fields.put("userIdentity.arn", EventKey.principalArn);
+        fields.put("userIdentity.accountId", new EventKeyExtractor() {
+            @Override
+            public String getKey(CloudTrailEvent event) {
+                UserIdentity userIdentity = event.getEventData().getUserIdentity();
+                return userIdentity == null ? null : userIdentity.getAccountId();
+            }
+        });
+        fields.put("userIdentity.accessKeyId", EventKey.accessKeyId);
+        fields.put("userIdentity.userName", EventKey.userName);
+        fields.put("userIdentity.invokedBy", new EventKeyExtractor() {
+            @Override
+            public String getKey(CloudTrailEvent event) {
+                UserIdentity userIdentity = event.getEventData().getUserIdentity();
+                return userIdentity == null ? null : userIdentity.getInvokedBy();
+            }
+        });
+        return fields;
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.filter;
+
+import java.util.Set;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventFilter;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * Creates {@link EventFilter}s from filter expressions.
+ * <p>
+ * An expression combines conditions on event fields with <code>&amp;&amp;</code>, <code>||</code>, <code>!</code>
+ * and parentheses; <code>&amp;&amp;</code> binds tighter than <code>||</code>. For example:
+ *
+ * <pre>
+ * eventSource == "s3.amazonaws.com" &amp;&amp; eventName in ("PutBucketPolicy", "DeleteBucketPolicy")
+ *     &amp;&amp; userIdentity.type == "Root"
+ * </pre>
+ *
+ * The conditions are:
+ * <ul>
+ * <li><code>field == "value"</code> and <code>field != "value"</code></li>
+ * <li><code>field == null</code> and <code>field != null</code>, such as <code>errorCode != null</code> for failed
+ * requests</li>
+ * <li><code>field in ("a", "b")</code> and <code>field not in ("a", "b")</code></li>
+ * <li><code>field startsWith "prefix"</code>, <code>field endsWith "suffix"</code> and
+ * <code>field contains "text"</code></li>
+ * <li><code>true</code> and <code>false</code></li>
+ * </ul>
+ * Strings are double quoted, with <code>\"</code> and <code>\\</code> as the only escapes. Comparisons are case
+ * sensitive, and every condition except <code>!=</code> and <code>not in</code> is false for a missing field. The
+ * fields are listed by {@link #getFieldNames()}.
+ * <p>
+ * An expression is parsed once, into a tree of evaluators specialized for each operator and bound to the getter of
+ * each field, so filtering an event involves no parsing, reflection or lookups by field name. The filters are thread
+ * safe.
+ */
+public class FilterExpressions {
+
+    /**
+     * Compile a filter expression.
+     *
+     * @param expression the filter expression.
+     * @return an {@link EventFilter} that accepts the events matching the expression.
+     * @throws IllegalArgumentException if the expression is not valid; the message gives the position of the error.
+     */
+    public static EventFilter compile(String expression) {
+        LibraryUtils.checkArgumentNotNull(expression, "Filter expression is null.");
+        return new CompiledEventFilter(new ExpressionParser(expression).parse());
+    }
+
+    /**
+     * @return the names of the fields that expressions can refer to.
+     */
+    public static Set<String> getFieldNames() {
+        return ExpressionParser.FIELDS.keySet();
+    }
+
+    /**
+     * The EventFilter of a compiled expression. {@link #toString()} gives the expression in canonical form.
+     */
+    private static class CompiledEventFilter implements EventFilter {
+        private final Condition condition;
+
+        private CompiledEventFilter(Condition condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        public boolean filterEvent(CloudTrailEvent event) {
+            return this.condition.test(event);
+        }
+
+        @Override
+        public String toString() {
+            return this.condition.toString();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.impl;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.SourceSchedulingPolicy;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.ScheduledSource;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * Implementation of SourceSchedulingPolicy that processes the source whose SQS visibility timeout ends first, so that
+ * messages are deleted before SQS redelivers them.
+ * <p>
+ * A source's deadline is its receive time plus the visibility timeout. Sources run earliest deadline first; among
+ * equal deadlines, the one received more often (<code>ApproximateReceiveCount</code>) runs first, as it is closer to a
+ * dead-letter queue. The policy tracks the average source duration, and a source that can no longer finish before its
+ * deadline is set aside behind every source that still can: its message will be redelivered anyway, and running it
+ * first would make the others late too. Sources set aside run, earliest deadline first, when nothing else is waiting.
+ */
+public class DeadlineAwareSchedulingPolicy implements SourceSchedulingPolicy {
+    /**
+     * The weight of the latest duration in the average source duration.
+     */
+    private static final double DURATION_SMOOTHING = 0.2;
+
+    private final long visibilityTimeoutMillis;
+
+    private final PriorityQueue<ScheduledSource> onTime = new PriorityQueue<ScheduledSource>(16, new Comparator<ScheduledSource>() {
+        @Override
+        public int compare(ScheduledSource first, ScheduledSource second) {
+            int order = Long.compare(first.getReceiveTime(), second.getReceiveTime());
+            return order != 0 ? order : Integer.compare(second.getReceiveCount(), first.getReceiveCount());
+        }
+    });
+
+    /**
+     * Sources that cannot finish before their deadline, in deadline order.
+     */
+    private final Queue<ScheduledSource> late = new ArrayDeque<ScheduledSource>();
+
+    private long averageDurationMillis;
+
+    /**
+     * Initialize a new <code>DeadlineAwareSchedulingPolicy</code>.
+     *
+     * @param visibilityTimeoutSeconds the visibility timeout of received messages, in seconds; the
+     *     <code>visibilityTimeout</code> of the
+     *     {@link com.amazonaws.services.cloudtrail.processinglibrary.configuration.ProcessingConfiguration}.
+     */
+    public DeadlineAwareSchedulingPolicy(int visibilityTimeoutSeconds) {
+        LibraryUtils.checkCondition(visibilityTimeoutSeconds < 0, "Visibility timeout cannot be negative.");
+        this.visibilityTimeoutMillis = TimeUnit.SECONDS.toMillis(visibilityTimeoutSeconds);
+    }
+
+    @Override
+    public void offer(ScheduledSource source) {
+        this.onTime.add(source);
+    }
+
+    @Override
+    public ScheduledSource poll() {
+        long now = System.currentTimeMillis();
+        while (!this.onTime.isEmpty()) {
+            ScheduledSource next = this.onTime.poll();
+            if (next.getReceiveTime() + this.visibilityTimeoutMillis - now >= this.averageDurationMillis) {
+                return next;
+            }
+            this.late.add(next);
+        }
+        return this.late.poll();
+    }
+
+    @Override
+    public void complete(ScheduledSource source, long durationNanos) {
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        this.averageDurationMillis = (long) (this.averageDurationMillis + DURATION_SMOOTHING * (durationMillis - this.averageDurationMillis));
+    }
+
+    @Override
+    public int size() {
+        return this.onTime.size() + this.late.size();
+    }
+}
@@ -18,15 +18,23 @@ package com.amazonaws.services.cloudtrail.processinglibrary.impl;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ProgressReporter;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.SelectiveProgressReporter;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressState;
 import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressStatus;
 
 /**
  * Default implementation of ProgressReporter that simply log the progress status.
+ * <p>
+ * Progress is only reported while info logging is enabled.
  */
-public class DefaultProgressReporter implements ProgressReporter{
+public class DefaultProgressReporter implements SelectiveProgressReporter{
     private static final Log logger = LogFactory.getLog(DefaultProgressReporter.class);
 
+    @Override
+    public boolean isInterestedIn(ProgressState state) {
+        return logger.isInfoEnabled();
+    }
+
     @Override
     public Object reportStart(ProgressStatus status) {
         logger.info(status.getProgressState().toString());
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.impl;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventKeyExtractor;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEventData;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.internal.UserIdentity;
+
+/**
+ * Keys of {@link CloudTrailEvent}s, used to assign events to lanes in {@link KeyedLaneEventsProcessor} and to group
+ * events in the aggregators of the
+ * {@link com.amazonaws.services.cloudtrail.processinglibrary.aggregation aggregation} package.
+ */
+public enum EventKey implements EventKeyExtractor {
+    /**
+     * The account of the identity that made the request, or the account that received the event if the identity has
+     * no account.
+     */
+    accountId {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            CloudTrailEventData eventData = event.getEventData();
+            UserIdentity userIdentity = eventData.getUserIdentity();
+            String accountId = userIdentity == null ? null : userIdentity.getAccountId();
+            return accountId != null ? accountId : eventData.getRecipientAccountId();
+        }
+    },
+
+    /**
+     * The access key that signed the request.
+     */
+    accessKeyId {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            UserIdentity userIdentity = event.getEventData().getUserIdentity();
+            return userIdentity == null ? null : userIdentity.getAccessKeyId();
+        }
+    },
+
+    /**
+     * The ARN of the principal that made the request.
+     */
+    principalArn {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            UserIdentity userIdentity = event.getEventData().getUserIdentity();
+            return userIdentity == null ? null : userIdentity.getARN();
+        }
+    },
+
+    /**
+     * The unique identifier of the principal that made the request.
+     */
+    principalId {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            UserIdentity userIdentity = event.getEventData().getUserIdentity();
+            return userIdentity == null ? null : userIdentity.getPrincipalId();
+        }
+    },
+
+    /**
+     * The type of the identity that made the request, such as <code>IAMUser</code> or <code>Root</code>.
+     */
+    identityType {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            UserIdentity userIdentity = event.getEventData().getUserIdentity();
+            return userIdentity == null ? null : userIdentity.getIdentityType();
+        }
+    },
+
+    /**
+     * The user name of the identity that made the request.
+     */
+    userName {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            UserIdentity userIdentity = event.getEventData().getUserIdentity();
+            return userIdentity == null ? null : userIdentity.getUserName();
+        }
+    },
+
+    /**
+     * The account that received the event.
+     */
+    recipientAccountId {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            return event.getEventData().getRecipientAccountId();
+        }
+    },
+
+    /**
+     * The service the request was made to, such as <code>s3.amazonaws.com</code>.
+     */
+    eventSource {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            return event.getEventData().getEventSource();
+        }
+    },
+
+    /**
+     * The requested action.
+     */
+    eventName {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            return event.getEventData().getEventName();
+        }
+    },
+
+    /**
+     * The region the request was made to.
+     */
+    awsRegion {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            return event.getEventData().getAwsRegion();
+        }
+    },
+
+    /**
+     * The IP address the request was made from.
+     */
+    sourceIPAddress {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            return event.getEventData().getSourceIPAddress();
+        }
+    },
+
+    /**
+     * The agent through which the request was made.
+     */
+    userAgent {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            return event.getEventData().getUserAgent();
+        }
+    },
+
+    /**
+     * The error code of a failed request; <code>null</code> for successful requests.
+     */
+    errorCode {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            return event.getEventData().getErrorCode();
+        }
+    },
+
+    /**
+     * The type of event, such as <code>AwsApiCall</code> or <code>AwsConsoleSignIn</code>.
+     */
+    eventType {
+        @Override
+        public String getKey(CloudTrailEvent event) {
+            return event.getEventData().getEventType();
+        }
+    }
+}
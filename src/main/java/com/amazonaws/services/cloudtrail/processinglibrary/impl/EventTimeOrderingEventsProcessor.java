@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.CallbackException;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventsProcessor;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * Implementation of EventsProcessor that hands events to another EventsProcessor in <code>eventTime</code> order.
+ * <p>
+ * CloudTrail delivers log files out of order, and events within a log file are not strictly sorted. This class
+ * buffers events and releases them in event time order once the watermark passes them. The watermark trails the
+ * latest event time seen by the allowed lateness, so an event is put in order if it arrives no later than that after
+ * a newer event. An event older than the watermark is late: it is passed on right away, out of order, and counted.
+ * <p>
+ * Memory is bounded by the lateness window and by a cap on buffered events. When the cap is reached, the oldest events
+ * are released early and the watermark moves up to them. A call whose events cannot be released leaves none of them
+ * in the buffer, so the cap holds while the wrapped processor keeps failing. Buffered events are released when newer events move the
+ * watermark, or on {@link #flush()}, which the
+ * {@link com.amazonaws.services.cloudtrail.processinglibrary.AWSCloudTrailProcessingExecutor} calls when it stops.
+ * <p>
+ * A buffered event outlives the SQS message it came from, which is deleted once the event is buffered. Events still
+ * buffered when the process exits without stopping the executor are lost.
+ * <p>
+ * When the wrapped processor throws, the older buffered events of the failed call are put back in the buffer and
+ * handed to it again before the next call buffers anything; while they still fail, new events are rejected with the
+ * same exception. The events of the failing call itself are removed from the buffer and the exception is rethrown, so
+ * their message is not deleted and SQS redelivers them. Delivery is at least
+ * once: events of that call that were already handed on are handed on again after the redelivery.
+ * <p>
+ * Calls to the wrapped processor are serialized, since they must be in order. This class is thread safe.
+ */
+public class EventTimeOrderingEventsProcessor implements EventsProcessor {
+    private static final Log logger = LogFactory.getLog(EventTimeOrderingEventsProcessor.class);
+
+    public static final int DEFAULT_MAX_BUFFERED_EVENTS = 100000;
+
+    private final EventsProcessor eventsProcessor;
+    private final long allowedLatenessMillis;
+    private final int maxBufferedEvents;
+    private final int maxEventsPerEmit;
+
+    /**
+     * The buffered events, oldest first; events with equal times keep their arrival order.
+     */
+    private final PriorityQueue<BufferedEvent> buffer = new PriorityQueue<BufferedEvent>();
+    private long sequence;
+
+    private long maxEventTime = Long.MIN_VALUE;
+    private long watermark = Long.MIN_VALUE;
+    private long lateEventCount;
+
+    /**
+     * Initialize a new <code>EventTimeOrderingEventsProcessor</code> buffering up to
+     * {@value #DEFAULT_MAX_BUFFERED_EVENTS} events.
+     *
+     * @param eventsProcessor the {@link EventsProcessor} that processes the ordered events.
+     * @param allowedLatenessMillis how far, in milliseconds, an event may arrive behind a newer event and still be put
+     *     in order.
+     * @param maxEventsPerEmit the maximum number of events per call to <code>eventsProcessor</code>.
+     */
+    public EventTimeOrderingEventsProcessor(EventsProcessor eventsProcessor, long allowedLatenessMillis,
+            int maxEventsPerEmit) {
+        this(eventsProcessor, allowedLatenessMillis, maxEventsPerEmit, DEFAULT_MAX_BUFFERED_EVENTS);
+    }
+
+    /**
+     * Initialize a new <code>EventTimeOrderingEventsProcessor</code>.
+     *
+     * @param eventsProcessor the {@link EventsProcessor} that processes the ordered events.
+     * @param allowedLatenessMillis how far, in milliseconds, an event may arrive behind a newer event and still be put
+     *     in order.
+     * @param maxEventsPerEmit the maximum number of events per call to <code>eventsProcessor</code>.
+     * @param maxBufferedEvents the maximum number of events to buffer.
+     */
+    public EventTimeOrderingEventsProcessor(EventsProcessor eventsProcessor, long allowedLatenessMillis,
+            int maxEventsPerEmit, int maxBufferedEvents) {
+        LibraryUtils.checkArgumentNotNull(eventsProcessor, "Events processor is null.");
+        LibraryUtils.checkCondition(allowedLatenessMillis < 0, "Allowed lateness cannot be negative.");
+        LibraryUtils.checkCondition(maxEventsPerEmit < 1, "Maximum events per emit cannot be less than 1.");
+        LibraryUtils.checkCondition(maxBufferedEvents < 1, "Maximum buffered events cannot be less than 1.");
+        this.eventsProcessor = eventsProcessor;
+        this.allowedLatenessMillis = allowedLatenessMillis;
+        this.maxEventsPerEmit = maxEventsPerEmit;
+        this.maxBufferedEvents = maxBufferedEvents;
+    }
+
+    @Override
+    public synchronized void process(List<CloudTrailEvent> events) throws CallbackException {
+        // retry the events put back by a failed call, which are all behind the watermark; while that fails, the new
+        // events are rejected before any of them is buffered
+        this.release(this.watermark);
+
+        List<CloudTrailEvent> lateEvents = Collections.emptyList();
+        List<BufferedEvent> newEvents = new ArrayList<BufferedEvent>(events.size());
+        long maxEventTime = this.maxEventTime;
+        for (CloudTrailEvent event : events) {
+            Date eventTime = event.getEventData().getEventTime();
+            if (eventTime == null || eventTime.getTime() < this.watermark) {
+                if (lateEvents.isEmpty()) {
+                    lateEvents = new ArrayList<CloudTrailEvent>();
+                }
+                lateEvents.add(event);
+                continue;
+            }
+            newEvents.add(new BufferedEvent(event, eventTime.getTime(), this.sequence++));
+            maxEventTime = Math.max(maxEventTime, eventTime.getTime());
+        }
+
+        if (!lateEvents.isEmpty()) {
+            this.lateEventCount += lateEvents.size();
+            logger.debug("Passing on " + lateEvents.size() + " events older than the watermark " + new Date(this.watermark));
+            this.emit(lateEvents);
+        }
+
+        this.buffer.addAll(newEvents);
+        this.maxEventTime = maxEventTime;
+        try {
+            this.releaseBuffered();
+        } catch (CallbackException | RuntimeException e) {
+            // the message of these events is not deleted, so they come back with its redelivery
+            if (!newEvents.isEmpty()) {
+                this.buffer.removeAll(new HashSet<BufferedEvent>(newEvents));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Release the buffered events behind the watermark, and the oldest events beyond the cap.
+     */
+    private void releaseBuffered() throws CallbackException {
+        if (this.maxEventTime != Long.MIN_VALUE) {
+            this.watermark = Math.max(this.watermark, this.maxEventTime - this.allowedLatenessMillis);
+            this.release(this.watermark);
+        }
+
+        // release the oldest events early rather than buffer without bound
+        if (this.buffer.size() > this.maxBufferedEvents) {
+            List<BufferedEvent> batch = new ArrayList<BufferedEvent>();
+            while (this.buffer.size() > this.maxBufferedEvents) {
+                BufferedEvent oldest = this.buffer.poll();
+                this.watermark = Math.max(this.watermark, oldest.eventTime);
+                batch.add(oldest);
+                if (batch.size() == this.maxEventsPerEmit) {
+                    this.emitBuffered(batch);
+                    batch = new ArrayList<BufferedEvent>();
+                }
+            }
+            this.emitBuffered(batch);
+        }
+    }
+
+    /**
+     * Release every buffered event, in event time order.
+     *
+     * @throws CallbackException if the wrapped processor fails.
+     */
+    public synchronized void flush() throws CallbackException {
+        if (!this.buffer.isEmpty()) {
+            this.watermark = Math.max(this.watermark, this.maxEventTime);
+            this.release(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * @return the number of events passed on out of order because they arrived after the watermark passed them.
+     */
+    public synchronized long getLateEventCount() {
+        return this.lateEventCount;
+    }
+
+    /**
+     * @return the number of events waiting for the watermark.
+     */
+    public synchronized int getBufferedEventCount() {
+        return this.buffer.size();
+    }
+
+    /**
+     * @return the watermark, in milliseconds since the epoch, or <code>Long.MIN_VALUE</code> before the first event.
+     *     Events older than the watermark have been released.
+     */
+    public synchronized long getWatermark() {
+        return this.watermark;
+    }
+
+    /**
+     * Hand the buffered events older than <code>time</code> to the wrapped processor, oldest first.
+     */
+    private void release(long time) throws CallbackException {
+        List<BufferedEvent> batch = new ArrayList<BufferedEvent>();
+        while (!this.buffer.isEmpty() && this.buffer.peek().eventTime <= time) {
+            batch.add(this.buffer.poll());
+            if (batch.size() == this.maxEventsPerEmit) {
+                this.emitBuffered(batch);
+                batch = new ArrayList<BufferedEvent>();
+            }
+        }
+        this.emitBuffered(batch);
+    }
+
+    /**
+     * Hand events taken from the buffer to the wrapped processor, and put them back if it fails. Their messages are
+     * already deleted, so they would be lost otherwise.
+     */
+    private void emitBuffered(List<BufferedEvent> batch) throws CallbackException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<CloudTrailEvent> events = new ArrayList<CloudTrailEvent>(batch.size());
+        for (BufferedEvent bufferedEvent : batch) {
+            events.add(bufferedEvent.event);
+        }
+
+        try {
+            this.emit(events);
+        } catch (CallbackException | RuntimeException e) {
+            this.buffer.addAll(batch);
+            throw e;
+        }
+    }
+
+    private void emit(List<CloudTrailEvent> batch) throws CallbackException {
+        if (!batch.isEmpty()) {
+            this.eventsProcessor.process(batch);
+        }
+    }
+
+    private static class BufferedEvent implements Comparable<BufferedEvent> {
+        final CloudTrailEvent event;
+        final long eventTime;
+        final long sequence;
+
+        BufferedEvent(CloudTrailEvent event, long eventTime, long sequence) {
+            this.event = event;
+            this.eventTime = eventTime;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(BufferedEvent other) {
+            if (this.eventTime != other.eventTime) {
+                return this.eventTime < other.eventTime ? -1 : 1;
+            }
+            return this.sequence < other.sequence ? -1 : this.sequence == other.sequence ? 0 : 1;
+        }
+    }
+}
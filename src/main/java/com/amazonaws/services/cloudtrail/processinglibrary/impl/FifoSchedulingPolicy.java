@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.impl;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.SourceSchedulingPolicy;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.ScheduledSource;
+
+/**
+ * Implementation of SourceSchedulingPolicy that processes sources in the order they were received, as the AWS
+ * CloudTrail Processing Library does without a scheduler.
+ */
+public class FifoSchedulingPolicy implements SourceSchedulingPolicy {
+    private final Queue<ScheduledSource> sources = new ArrayDeque<ScheduledSource>();
+
+    @Override
+    public void offer(ScheduledSource source) {
+        this.sources.add(source);
+    }
+
+    @Override
+    public ScheduledSource poll() {
+        return this.sources.poll();
+    }
+
+    @Override
+    public void complete(ScheduledSource source, long durationNanos) {
+    }
+
+    @Override
+    public int size() {
+        return this.sources.size();
+    }
+}
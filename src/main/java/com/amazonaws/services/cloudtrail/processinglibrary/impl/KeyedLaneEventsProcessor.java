@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.CallbackException;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventKeyExtractor;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventsProcessor;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressState;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressStatus;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.Hashing;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * Implementation of EventsProcessor that hands events to another EventsProcessor on single-threaded lanes, so that
+ * events with the same key never reach it concurrently and arrive in the order they were emitted.
+ * <p>
+ * Each event goes to the lane chosen by the hash of its key, so different keys still run in parallel while the wrapped
+ * processor can keep per-key state without locking. Events without a key are spread over all lanes. A call returns
+ * once every one of its events is processed, so an SQS message is still deleted only after its events are processed,
+ * and an exception thrown by the wrapped processor fails the call.
+ * <p>
+ * Events are ordered as they are emitted: in file order within a log file, and in processing order across log files
+ * processed one after another. Log files processed at the same time interleave one batch at a time.
+ * <p>
+ * Call {@link #shutdown()} to stop the lane threads. The
+ * {@link com.amazonaws.services.cloudtrail.processinglibrary.AWSCloudTrailProcessingExecutor} stops the lanes it
+ * creates itself.
+ */
+public class KeyedLaneEventsProcessor implements EventsProcessor {
+    private final EventsProcessor eventsProcessor;
+    private final EventKeyExtractor keyExtractor;
+    private final ExecutorService[] lanes;
+
+    /**
+     * Initialize a new <code>KeyedLaneEventsProcessor</code>.
+     *
+     * @param eventsProcessor the {@link EventsProcessor} that processes the events of each lane.
+     * @param keyExtractor the {@link EventKeyExtractor} providing the key of each event.
+     * @param laneCount the number of lanes, which is the number of threads calling <code>eventsProcessor</code>.
+     */
+    public KeyedLaneEventsProcessor(EventsProcessor eventsProcessor, EventKeyExtractor keyExtractor, int laneCount) {
+        LibraryUtils.checkArgumentNotNull(eventsProcessor, "Events processor is null.");
+        LibraryUtils.checkArgumentNotNull(keyExtractor, "Event key extractor is null.");
+        LibraryUtils.checkCondition(laneCount < 1, "Lane count cannot be less than 1.");
+        this.eventsProcessor = eventsProcessor;
+        this.keyExtractor = keyExtractor;
+
+        this.lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            this.lanes[i] = Executors.newSingleThreadExecutor(new LaneThreadFactory(i));
+        }
+    }
+
+    @Override
+    public void process(List<CloudTrailEvent> events) throws CallbackException {
+        List<List<CloudTrailEvent>> laneEvents = new ArrayList<List<CloudTrailEvent>>(this.lanes.length);
+        for (int i = 0; i < this.lanes.length; i++) {
+            laneEvents.add(null);
+        }
+        for (int i = 0; i < events.size(); i++) {
+            CloudTrailEvent event = events.get(i);
+            String key = this.keyExtractor.getKey(event);
+            int lane = key == null ? i % this.lanes.length : (int) ((Hashing.hash64(key) >>> 1) % this.lanes.length);
+            if (laneEvents.get(lane) == null) {
+                laneEvents.set(lane, new ArrayList<CloudTrailEvent>());
+            }
+            laneEvents.get(lane).add(event);
+        }
+
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (int i = 0; i < this.lanes.length; i++) {
+            final List<CloudTrailEvent> batch = laneEvents.get(i);
+            if (batch != null) {
+                results.add(this.lanes[i].submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws CallbackException {
+                        KeyedLaneEventsProcessor.this.eventsProcessor.process(batch);
+                        return null;
+                    }
+                }));
+            }
+        }
+
+        // wait for every lane, so that no event of this call is still being processed when it fails
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Future<Void> result : results) {
+            while (true) {
+                try {
+                    result.get();
+                    break;
+                } catch (ExecutionException e) {
+                    failure = failure == null ? e.getCause() : failure;
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure instanceof CallbackException) {
+            throw (CallbackException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new CallbackException("Failed to process events.", (Exception) failure,
+                    new ProgressStatus(ProgressState.processLog, null));
+        }
+    }
+
+    /**
+     * Stop the lane threads once the events handed to them are processed.
+     */
+    public void shutdown() {
+        for (ExecutorService lane : this.lanes) {
+            lane.shutdown();
+        }
+    }
+
+    private static class LaneThreadFactory implements ThreadFactory {
+        private final int lane;
+
+        LaneThreadFactory(int lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "EventLane-" + this.lane);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.impl;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ProgressReporter;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.BasicProcessLogInfo;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressInfo;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressLogInfo;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressState;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressStatus;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LatencyHistogram;
+
+/**
+ * Implementation of ProgressReporter that records metrics about the AWS CloudTrail Processing Library.
+ * <p>
+ * For each {@link ProgressState}, the reporter keeps a {@link LatencyHistogram} of the time between
+ * <code>reportStart()</code> and <code>reportEnd()</code>, and counts successes and failures. It also counts the events
+ * emitted, the log file bytes downloaded and the sources processed, from which {@link Snapshot} derives throughput.
+ * <p>
+ * Recording takes a clock read and a few atomic increments, and allocates nothing, so the reporter can stay enabled
+ * in production. The start time of each state is kept in a per-thread slot, so <code>reportEnd()</code> must be called
+ * on the thread that called <code>reportStart()</code>; otherwise no latency is recorded. Call {@link #snapshot()} to
+ * read the metrics. This class is thread safe.
+ */
+public class MetricsProgressReporter implements ProgressReporter {
+    private static final ProgressState[] STATES = ProgressState.values();
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[STATES.length];
+    private final AtomicLongArray failures = new AtomicLongArray(STATES.length);
+
+    private final AtomicLong eventCount = new AtomicLong();
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong sourceCount = new AtomicLong();
+
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * The start time of each state on the current thread, indexed by ordinal. The array itself is the object returned
+     * by <code>reportStart()</code>.
+     */
+    private final ThreadLocal<long[]> threadStartNanos = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[STATES.length];
+        }
+    };
+
+    public MetricsProgressReporter() {
+        for (int i = 0; i < STATES.length; i++) {
+            this.latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @return the holder of the start time to pass to <code>reportEnd()</code>, reused by every call on this thread.
+     */
+    @Override
+    public Object reportStart(ProgressStatus status) {
+        ProgressState state = status.getProgressState();
+        if (state == null) {
+            return null;
+        }
+        long[] starts = this.threadStartNanos.get();
+        starts[state.ordinal()] = System.nanoTime();
+        return starts;
+    }
+
+    @Override
+    public void reportEnd(ProgressStatus status, Object object) {
+        ProgressState state = status.getProgressState();
+        ProgressInfo info = status.getProgressInfo();
+        if (state == null) {
+            return;
+        }
+
+        if (object != null && object == this.threadStartNanos.get()) {
+            this.latencies[state.ordinal()].record(System.nanoTime() - ((long[]) object)[state.ordinal()]);
+        }
+
+        if (info == null || !info.isSuccess()) {
+            this.failures.incrementAndGet(state.ordinal());
+            return;
+        }
+
+        switch (state) {
+            case processLog:
+                if (info instanceof BasicProcessLogInfo) {
+                    this.eventCount.addAndGet(((BasicProcessLogInfo) info).getEventCount());
+                }
+                break;
+            case downloadLog:
+                if (info instanceof ProgressLogInfo) {
+                    this.byteCount.addAndGet(((ProgressLogInfo) info).getLog().getLogFileSize());
+                }
+                break;
+            case processSource:
+                this.sourceCount.incrementAndGet();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Copy the current metrics.
+     *
+     * @return a {@link Snapshot} of the metrics recorded so far.
+     */
+    public Snapshot snapshot() {
+        Map<ProgressState, LatencyHistogram.Snapshot> latencySnapshots =
+                new EnumMap<ProgressState, LatencyHistogram.Snapshot>(ProgressState.class);
+        Map<ProgressState, Long> failureCounts = new EnumMap<ProgressState, Long>(ProgressState.class);
+        for (int i = 0; i < STATES.length; i++) {
+            latencySnapshots.put(STATES[i], this.latencies[i].snapshot());
+            failureCounts.put(STATES[i], this.failures.get(i));
+        }
+
+        return new Snapshot(System.nanoTime() - this.startNanos, latencySnapshots, failureCounts,
+                this.eventCount.get(), this.byteCount.get(), this.sourceCount.get());
+    }
+
+    /**
+     * An immutable copy of the metrics of a {@link MetricsProgressReporter}.
+     * <p>
+     * Counters are cumulative since the reporter was created. Use {@link #getEventsPerSecond(Snapshot)} and its
+     * siblings to get the throughput between two snapshots.
+     */
+    public static class Snapshot {
+        private final long elapsedNanos;
+        private final Map<ProgressState, LatencyHistogram.Snapshot> latencies;
+        private final Map<ProgressState, Long> failures;
+        private final long eventCount;
+        private final long byteCount;
+        private final long sourceCount;
+
+        private Snapshot(long elapsedNanos, Map<ProgressState, LatencyHistogram.Snapshot> latencies,
+                Map<ProgressState, Long> failures, long eventCount, long byteCount, long sourceCount) {
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+            this.failures = failures;
+            this.eventCount = eventCount;
+            this.byteCount = byteCount;
+            this.sourceCount = sourceCount;
+        }
+
+        /**
+         * @param state the {@link ProgressState} to look up.
+         * @return the latencies of the given state.
+         */
+        public LatencyHistogram.Snapshot getLatency(ProgressState state) {
+            return this.latencies.get(state);
+        }
+
+        /**
+         * @param state the {@link ProgressState} to look up.
+         * @return the number of times the given state ended without success.
+         */
+        public long getFailureCount(ProgressState state) {
+            return this.failures.get(state);
+        }
+
+        /**
+         * @return the number of events emitted.
+         */
+        public long getEventCount() {
+            return this.eventCount;
+        }
+
+        /**
+         * @return the number of log file bytes downloaded.
+         */
+        public long getByteCount() {
+            return this.byteCount;
+        }
+
+        /**
+         * @return the number of sources processed.
+         */
+        public long getSourceCount() {
+            return this.sourceCount;
+        }
+
+        /**
+         * @param previous an earlier snapshot of the same reporter, or <code>null</code> to measure since it was
+         *     created.
+         * @return the events emitted per second since <code>previous</code>.
+         */
+        public double getEventsPerSecond(Snapshot previous) {
+            return this.rate(this.eventCount, previous == null ? 0 : previous.eventCount, previous);
+        }
+
+        /**
+         * @param previous an earlier snapshot of the same reporter, or <code>null</code> to measure since it was
+         *     created.
+         * @return the log file bytes downloaded per second since <code>previous</code>.
+         */
+        public double getBytesPerSecond(Snapshot previous) {
+            return this.rate(this.byteCount, previous == null ? 0 : previous.byteCount, previous);
+        }
+
+        /**
+         * @param previous an earlier snapshot of the same reporter, or <code>null</code> to measure since it was
+         *     created.
+         * @return the sources processed per second since <code>previous</code>.
+         */
+        public double getSourcesPerSecond(Snapshot previous) {
+            return this.rate(this.sourceCount, previous == null ? 0 : previous.sourceCount, previous);
+        }
+
+        private double rate(long count, long previousCount, Snapshot previous) {
+            long nanos = this.elapsedNanos - (previous == null ? 0 : previous.elapsedNanos);
+            return nanos <= 0 ? 0 : (double) (count - previousCount) * TimeUnit.SECONDS.toNanos(1) / nanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("{eventCount: ").append(this.eventCount);
+            builder.append(", byteCount: ").append(this.byteCount);
+            builder.append(", sourceCount: ").append(this.sourceCount);
+            for (Map.Entry<ProgressState, LatencyHistogram.Snapshot> entry : this.latencies.entrySet()) {
+                if (entry.getValue().getCount() > 0) {
+                    builder.append(", ").append(entry.getKey()).append(": ").append(entry.getValue());
+                }
+            }
+            builder.append("}");
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.impl;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.SourceSchedulingPolicy;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.ScheduledSource;
+
+/**
+ * Implementation of SourceSchedulingPolicy that processes the most recently sent notification first, by SQS
+ * <code>SentTimestamp</code>, so that new events stay fresh while a backlog is worked off.
+ * <p>
+ * Older sources wait as long as newer ones keep arriving. If they wait longer than the visibility timeout, SQS
+ * redelivers their messages and they are processed twice, so use this policy with a visibility timeout long enough to
+ * cover the backlog, or with {@link DeadlineAwareSchedulingPolicy} during catch-up.
+ */
+public class NewestFirstSchedulingPolicy implements SourceSchedulingPolicy {
+    private final PriorityQueue<ScheduledSource> sources = new PriorityQueue<ScheduledSource>(16, new Comparator<ScheduledSource>() {
+        @Override
+        public int compare(ScheduledSource first, ScheduledSource second) {
+            int order = Long.compare(second.getSentTimestamp(), first.getSentTimestamp());
+            return order != 0 ? order : Long.compare(second.getReceiveTime(), first.getReceiveTime());
+        }
+    });
+
+    @Override
+    public void offer(ScheduledSource source) {
+        this.sources.add(source);
+    }
+
+    @Override
+    public ScheduledSource poll() {
+        return this.sources.poll();
+    }
+
+    @Override
+    public void complete(ScheduledSource source, long durationNanos) {
+    }
+
+    @Override
+    public int size() {
+        return this.sources.size();
+    }
+}
@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.impl;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.SourceSchedulingPolicy;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailLog;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailSource;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.S3BasedSource;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.SQSBasedSource;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.ScheduledSource;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.SourceAttributeKeys;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * Implementation of SourceSchedulingPolicy that shares workers fairly between accounts, so that one account with
+ * large or many log files cannot starve the others.
+ * <p>
+ * Sources are queued in lanes, one per account, or per account and region when region lanes are enabled. The next
+ * source comes from the eligible lane that has received the least worker time relative to its weight: a lane with
+ * weight 2 gets twice the processing time of a lane with weight 1 while both have work queued. A lane is eligible
+ * while its account runs fewer sources than the account's concurrency cap, counted across all lanes of the account. Worker time is charged with the lane's average source
+ * duration when a source starts and corrected with the real duration when it ends, so a lane of slow sources gets
+ * fewer starts. A lane that was idle starts level with the busiest lanes instead of using up credit saved while idle.
+ * Within a lane, sources run in the order they were received.
+ * <p>
+ * A cap lower than the thread count leaves workers idle when a single account has work. Account IDs come from the
+ * <code>accountId</code> source attribute, or else from the object key of the first log file.
+ */
+public class WeightedFairSchedulingPolicy implements SourceSchedulingPolicy {
+    public static final double DEFAULT_WEIGHT = 1.0;
+
+    /**
+     * The lane of sources whose account ID cannot be determined.
+     */
+    public static final String UNKNOWN_ACCOUNT = "unknown";
+
+    /**
+     * The cost charged to a lane for a source before any of its sources has ended.
+     */
+    private static final long INITIAL_COST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * The weight of the latest duration in the average source duration of a lane.
+     */
+    private static final double COST_SMOOTHING = 0.2;
+
+    private final Map<String, Double> accountWeights;
+    private final double defaultWeight;
+    private final Map<String, Integer> accountMaxConcurrency;
+    private final int defaultMaxConcurrency;
+    private final boolean regionLanes;
+
+    private final Map<String, Lane> lanes = new HashMap<String, Lane>();
+    private final Map<String, Account> accounts = new HashMap<String, Account>();
+    private final Map<ScheduledSource, Running> running = new IdentityHashMap<ScheduledSource, Running>();
+    private int size;
+
+    /**
+     * The charged worker time of the lane that started a source last; lanes becoming active start from here.
+     */
+    private double virtualTime;
+
+    private WeightedFairSchedulingPolicy(Builder builder) {
+        this.accountWeights = new HashMap<String, Double>(builder.accountWeights);
+        this.defaultWeight = builder.defaultWeight;
+        this.accountMaxConcurrency = new HashMap<String, Integer>(builder.accountMaxConcurrency);
+        this.defaultMaxConcurrency = builder.defaultMaxConcurrency;
+        this.regionLanes = builder.regionLanes;
+    }
+
+    @Override
+    public void offer(ScheduledSource source) {
+        String accountId = getAccountId(source.getSource());
+        String laneKey = this.getLaneKey(source.getSource(), accountId);
+
+        Lane lane = this.lanes.get(laneKey);
+        if (lane == null) {
+            Account account = this.accounts.get(accountId);
+            if (account == null) {
+                Integer maxConcurrency = this.accountMaxConcurrency.get(accountId);
+                account = new Account(accountId, maxConcurrency == null ? this.defaultMaxConcurrency : maxConcurrency);
+                this.accounts.put(accountId, account);
+            }
+            Double weight = this.accountWeights.get(accountId);
+            lane = new Lane(account, weight == null ? this.defaultWeight : weight);
+            account.laneCount++;
+            this.lanes.put(laneKey, lane);
+        }
+        if (lane.isIdle()) {
+            lane.pass = Math.max(lane.pass, this.virtualTime);
+        }
+        lane.pending.add(source);
+        this.size++;
+    }
+
+    @Override
+    public ScheduledSource poll() {
+        Lane next = null;
+        for (Lane lane : this.lanes.values()) {
+            if (!lane.pending.isEmpty() && lane.account.running < lane.account.maxConcurrency
+                    && (next == null || lane.pass < next.pass)) {
+                next = lane;
+            }
+        }
+        if (next == null) {
+            return null;
+        }
+
+        this.virtualTime = next.pass;
+        long estimatedCost = next.averageCost;
+        next.pass += estimatedCost / next.weight;
+        next.running++;
+        next.account.running++;
+        this.size--;
+
+        ScheduledSource source = next.pending.poll();
+        this.running.put(source, new Running(next, estimatedCost));
+        return source;
+    }
+
+    @Override
+    public void complete(ScheduledSource source, long durationNanos) {
+        Running running = this.running.remove(source);
+        if (running == null) {
+            return;
+        }
+        Lane lane = running.lane;
+        lane.running--;
+        lane.account.running--;
+        lane.pass += (durationNanos - running.estimatedCost) / lane.weight;
+        lane.averageCost = (long) (lane.averageCost + COST_SMOOTHING * (durationNanos - lane.averageCost));
+
+        this.removeIdleLanes();
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Forget idle lanes that have no charge left to carry, since they would start from the virtual time anyway.
+     */
+    private void removeIdleLanes() {
+        Iterator<Lane> lanes = this.lanes.values().iterator();
+        while (lanes.hasNext()) {
+            Lane lane = lanes.next();
+            if (lane.isIdle() && lane.pass <= this.virtualTime) {
+                lanes.remove();
+                if (--lane.account.laneCount == 0) {
+                    this.accounts.remove(lane.account.accountId);
+                }
+            }
+        }
+    }
+
+    private String getLaneKey(CloudTrailSource source, String accountId) {
+        if (!this.regionLanes) {
+            return accountId;
+        }
+        CloudTrailLog log = getFirstLog(source);
+        String region = log == null ? null : LibraryUtils.extractRegionFromObjectKey(log.getS3ObjectKey());
+        return region == null ? accountId : accountId + "/" + region;
+    }
+
+    private static String getAccountId(CloudTrailSource source) {
+        Map<String, String> attributes = source.getSourceAttributes();
+        String accountId = attributes == null ? null : attributes.get(SourceAttributeKeys.ACCOUNT_ID.getAttributeKey());
+        if (accountId == null) {
+            CloudTrailLog log = getFirstLog(source);
+            accountId = log == null ? null : LibraryUtils.extractAccountIdFromObjectKey(log.getS3ObjectKey());
+        }
+        return accountId == null ? UNKNOWN_ACCOUNT : accountId;
+    }
+
+    private static CloudTrailLog getFirstLog(CloudTrailSource source) {
+        List<CloudTrailLog> logs = null;
+        if (source instanceof SQSBasedSource) {
+            logs = ((SQSBasedSource) source).getLogs();
+        } else if (source instanceof S3BasedSource) {
+            logs = ((S3BasedSource) source).getLogs();
+        }
+        return logs == null || logs.isEmpty() ? null : logs.get(0);
+    }
+
+    private static class Account {
+        final String accountId;
+        final int maxConcurrency;
+
+        /**
+         * The sources of the account being processed, in all of its lanes.
+         */
+        int running;
+        int laneCount;
+
+        Account(String accountId, int maxConcurrency) {
+            this.accountId = accountId;
+            this.maxConcurrency = maxConcurrency;
+        }
+    }
+
+    private static class Lane {
+        final Account account;
+        final double weight;
+        final Queue<ScheduledSource> pending = new ArrayDeque<ScheduledSource>();
+        int running;
+
+        /**
+         * The worker time charged to this lane, divided by its weight.
+         */
+        double pass;
+
+        long averageCost = INITIAL_COST_NANOS;
+
+        Lane(Account account, double weight) {
+            this.account = account;
+            this.weight = weight;
+        }
+
+        boolean isIdle() {
+            return this.pending.isEmpty() && this.running == 0;
+        }
+    }
+
+    private static class Running {
+        final Lane lane;
+        final long estimatedCost;
+
+        Running(Lane lane, long estimatedCost) {
+            this.lane = lane;
+            this.estimatedCost = estimatedCost;
+        }
+    }
+
+    /**
+     * Builds a {@link WeightedFairSchedulingPolicy}.
+     */
+    public static class Builder {
+        private final Map<String, Double> accountWeights = new HashMap<String, Double>();
+        private double defaultWeight = DEFAULT_WEIGHT;
+        private final Map<String, Integer> accountMaxConcurrency = new HashMap<String, Integer>();
+        private int defaultMaxConcurrency = Integer.MAX_VALUE;
+        private boolean regionLanes = false;
+
+        /**
+         * @param accountId the account to weigh.
+         * @param weight the share of worker time of the account relative to other accounts.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withAccountWeight(String accountId, double weight) {
+            LibraryUtils.checkArgumentNotNull(accountId, "Account ID is null.");
+            LibraryUtils.checkCondition(weight <= 0, "Weight must be greater than 0.");
+            this.accountWeights.put(accountId, weight);
+            return this;
+        }
+
+        /**
+         * @param weight the weight of accounts without their own weight, {@value #DEFAULT_WEIGHT} by default.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withDefaultWeight(double weight) {
+            LibraryUtils.checkCondition(weight <= 0, "Weight must be greater than 0.");
+            this.defaultWeight = weight;
+            return this;
+        }
+
+        /**
+         * @param accountId the account to cap.
+         * @param maxConcurrency the maximum number of sources of the account processed at once, across all of its
+         *     lanes.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withAccountMaxConcurrency(String accountId, int maxConcurrency) {
+            LibraryUtils.checkArgumentNotNull(accountId, "Account ID is null.");
+            LibraryUtils.checkCondition(maxConcurrency < 1, "Maximum concurrency cannot be less than 1.");
+            this.accountMaxConcurrency.put(accountId, maxConcurrency);
+            return this;
+        }
+
+        /**
+         * @param maxConcurrency the cap of accounts without their own cap; uncapped by default.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withDefaultMaxConcurrency(int maxConcurrency) {
+            LibraryUtils.checkCondition(maxConcurrency < 1, "Maximum concurrency cannot be less than 1.");
+            this.defaultMaxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * @param regionLanes <code>true</code> to queue each region of an account in its own lane, using the region in
+         *     the log file name. Each region lane has the account's weight, while the concurrency cap still applies to
+         *     the account as a whole.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withRegionLanes(boolean regionLanes) {
+            this.regionLanes = regionLanes;
+            return this;
+        }
+
+        /**
+         * @return a new {@link WeightedFairSchedulingPolicy}.
+         */
+        public WeightedFairSchedulingPolicy build() {
+            return new WeightedFairSchedulingPolicy(this);
+        }
+    }
+}
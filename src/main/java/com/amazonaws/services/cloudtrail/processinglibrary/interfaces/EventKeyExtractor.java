@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.interfaces;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+
+/**
+ * Provides the key that orders events in
+ * {@link com.amazonaws.services.cloudtrail.processinglibrary.impl.KeyedLaneEventsProcessor}: events with the same key
+ * are processed one at a time, in the order they are emitted.
+ * <p>
+ * {@link com.amazonaws.services.cloudtrail.processinglibrary.impl.EventKey} provides keys for the account, access key
+ * and principal of an event.
+ */
+public interface EventKeyExtractor {
+    /**
+     * Get the key of an event.
+     *
+     * @param event a {@link CloudTrailEvent}.
+     * @return the key of the event, or <code>null</code> if the event has no key and may be processed in any order.
+     */
+    public String getKey(CloudTrailEvent event);
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.interfaces;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressState;
+
+/**
+ * A {@link ProgressReporter} that declares which {@link ProgressState}s it wants to receive.
+ * <p>
+ * Reporting a stage allocates a {@link com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressStatus}
+ * and its progress information twice, once for <code>reportStart()</code> and once for <code>reportEnd()</code>. For a
+ * state this reporter is not interested in, the AWS CloudTrail Processing Library skips both calls and builds no
+ * status objects at all.
+ * <p>
+ * A plain <code>ProgressReporter</code> receives every state.
+ */
+public interface SelectiveProgressReporter extends ProgressReporter {
+    /**
+     * Check whether this reporter wants to receive a state.
+     * <p>
+     * This method is called twice per reported stage, so it should be cheap. It may change its answer over time, for
+     * example when a log level changes; a stage whose start was skipped is never reported as ended.
+     *
+     * @param state the {@link ProgressState} about to be reported.
+     * @return <code>true</code> if <code>reportStart()</code> and <code>reportEnd()</code> should be called for the
+     *     state.
+     */
+    public boolean isInterestedIn(ProgressState state);
+}
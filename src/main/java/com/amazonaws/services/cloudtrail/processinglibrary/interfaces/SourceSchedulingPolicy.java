@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.interfaces;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.model.ScheduledSource;
+
+/**
+ * SourceSchedulingPolicy decides the order in which received sources are processed. It sits between
+ * <code>SqsManager.parseMessage()</code> and the main thread pool, inside a
+ * {@link com.amazonaws.services.cloudtrail.processinglibrary.utils.SourceScheduler}.
+ * <p>
+ * The scheduler calls the policy under its own lock, so implementations need not be thread safe, but must be quick:
+ * every method runs while other threads wait to submit or start sources.
+ */
+public interface SourceSchedulingPolicy {
+
+    /**
+     * Add a received source.
+     *
+     * @param source the {@link ScheduledSource} to schedule.
+     */
+    public void offer(ScheduledSource source);
+
+    /**
+     * Remove the source to start next.
+     *
+     * @return the source to start now, or <code>null</code> if no waiting source may start until another one
+     *     completes, or none is waiting.
+     */
+    public ScheduledSource poll();
+
+    /**
+     * Notify the policy that a source returned by {@link #poll()} ended.
+     *
+     * @param source the {@link ScheduledSource} that ended.
+     * @param durationNanos how long the source took to process, in nanoseconds.
+     */
+    public void complete(ScheduledSource source, long durationNanos);
+
+    /**
+     * @return the number of sources offered and not yet polled.
+     */
+    public int size();
+}
@@ -15,23 +15,41 @@
 
 package com.amazonaws.services.cloudtrail.processinglibrary.manager;
 
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.cloudtrail.processinglibrary.configuration.ProcessingConfiguration;
+import com.amazonaws.services.cloudtrail.processinglibrary.configuration.RangedGetConfiguration;
 import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.ProcessingLibraryException;
 import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ExceptionHandler;
 import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ProgressReporter;
 import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailLog;
 import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailSource;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.BasicListLogsInfo;
 import com.amazonaws.services.cloudtrail.processinglibrary.progress.BasicProcessLogInfo;
 import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressState;
 import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressStatus;
 import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LogFileCache;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.S3ClientRouter;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 
@@ -41,10 +59,15 @@ import com.amazonaws.services.s3.model.S3ObjectInputStream;
 public class S3Manager {
     private static final Log logger = LogFactory.getLog(SqsManager.class);
 
+    private static final int REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
     private AmazonS3Client s3Client;
     private ProcessingConfiguration config;
     private ExceptionHandler exceptionHandler;
     private ProgressReporter progressReporter;
+    private LogFileCache logFileCache;
+    private ExecutorService rangedGetThreadPool;
+    private S3ClientRouter s3ClientRouter;
 
     /**
      * S3Manager constructor
@@ -58,6 +81,67 @@ public class S3Manager {
      *     {@link com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ProgressReporter}, used to report progress.
      */
     public S3Manager(AmazonS3Client s3Client, ProcessingConfiguration configuration, ExceptionHandler exceptionHandler, ProgressReporter progressReporter) {
+        this(s3Client, configuration, exceptionHandler, progressReporter, null);
+    }
+
+    /**
+     * S3Manager constructor
+     *
+     * @param s3Client the S3 client to use.
+     * @param configuration a
+     *     {@link com.amazonaws.services.cloudtrail.processinglibrary.configuration.ProcessingConfiguration}.
+     * @param exceptionHandler an implementation of
+     *     {@link com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ExceptionHandler}, used to handle errors.
+     * @param progressReporter an implementation of
+     *     {@link com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ProgressReporter}, used to report progress.
+     * @param logFileCache a {@link LogFileCache} of downloaded log files, or <code>null</code> to always download.
+     */
+    public S3Manager(AmazonS3Client s3Client, ProcessingConfiguration configuration, ExceptionHandler exceptionHandler,
+            ProgressReporter progressReporter, LogFileCache logFileCache) {
+        this(s3Client, configuration, exceptionHandler, progressReporter, logFileCache, null);
+    }
+
+    /**
+     * S3Manager constructor
+     *
+     * @param s3Client the S3 client to use.
+     * @param configuration a
+     *     {@link com.amazonaws.services.cloudtrail.processinglibrary.configuration.ProcessingConfiguration}.
+     * @param exceptionHandler an implementation of
+     *     {@link com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ExceptionHandler}, used to handle errors.
+     * @param progressReporter an implementation of
+     *     {@link com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ProgressReporter}, used to report progress.
+     * @param logFileCache a {@link LogFileCache} of downloaded log files, or <code>null</code> to always download.
+     * @param rangedGetThreadPool the thread pool that downloads the byte ranges of large log files, or
+     *     <code>null</code> to download them on the calling thread.
+     */
+    public S3Manager(AmazonS3Client s3Client, ProcessingConfiguration configuration, ExceptionHandler exceptionHandler,
+            ProgressReporter progressReporter, LogFileCache logFileCache, ExecutorService rangedGetThreadPool) {
+        this(s3Client, configuration, exceptionHandler, progressReporter, logFileCache, rangedGetThreadPool, null);
+    }
+
+    /**
+     * S3Manager constructor
+     *
+     * @param s3Client the S3 client to use.
+     * @param configuration a
+     *     {@link com.amazonaws.services.cloudtrail.processinglibrary.configuration.ProcessingConfiguration}.
+     * @param exceptionHandler an implementation of
+     *     {@link com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ExceptionHandler}, used to handle errors.
+     * @param progressReporter an implementation of
+     *     {@link com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ProgressReporter}, used to report progress.
+     * @param logFileCache a {@link LogFileCache} of downloaded log files, or <code>null</code> to always download.
+     * @param rangedGetThreadPool the thread pool that downloads the byte ranges of large log files, or
+     *     <code>null</code> to download them on the calling thread.
+     * @param s3ClientRouter a {@link S3ClientRouter} that sends the requests for each bucket to its region, or
+     *     <code>null</code> to send every request with <code>s3Client</code>.
+     */
+    public S3Manager(AmazonS3Client s3Client, ProcessingConfiguration configuration, ExceptionHandler exceptionHandler,
+            ProgressReporter progressReporter, LogFileCache logFileCache, ExecutorService rangedGetThreadPool,
+            S3ClientRouter s3ClientRouter) {
+        this.logFileCache = logFileCache;
+        this.s3ClientRouter = s3ClientRouter;
+        this.rangedGetThreadPool = rangedGetThreadPool;
         this.config = configuration;
         this.exceptionHandler = exceptionHandler;
         this.progressReporter = progressReporter;
@@ -75,29 +159,50 @@ public class S3Manager {
      */
     public byte[] downloadLog(CloudTrailLog ctLog, CloudTrailSource source) {
         boolean success = false;
-        ProgressStatus startStatus = new ProgressStatus(ProgressState.downloadLog, new BasicProcessLogInfo(source, ctLog, success));
-        final Object downloadSourceReportObject = this.progressReporter.reportStart(startStatus);
+        boolean reportProgress = LibraryUtils.isReportEnabled(this.progressReporter, ProgressState.downloadLog);
+        ProgressStatus startStatus = reportProgress ? new ProgressStatus(ProgressState.downloadLog, new BasicProcessLogInfo(source, ctLog, success)) : null;
+        final Object downloadSourceReportObject = reportProgress ? this.progressReporter.reportStart(startStatus) : null;
 
         byte[] s3ObjectBytes = null;
 
         // start to download CloudTrail log
         try {
-            S3Object s3Object = this.getObject(ctLog.getS3Bucket(), ctLog.getS3ObjectKey());
-            try (S3ObjectInputStream s3InputStream = s3Object.getObjectContent()){
-                s3ObjectBytes = LibraryUtils.toByteArray(s3InputStream);
+            String bucketName = ctLog.getS3Bucket();
+            String objectKey = ctLog.getS3ObjectKey();
+            String cachedETag = this.logFileCache == null ? null : this.logFileCache.getETag(bucketName, objectKey);
+
+            // a conditional GET returns null when the cached copy is still current
+            S3Object s3Object = this.getObject(bucketName, objectKey, cachedETag);
+            if (s3Object == null) {
+                s3ObjectBytes = this.logFileCache.get(bucketName, objectKey, cachedETag);
+                if (s3ObjectBytes == null) {
+                    s3Object = this.getObject(bucketName, objectKey, null);
+                } else {
+                    logger.info("Read log file " + objectKey + " from " + bucketName + " from the log file cache");
+                }
             }
-            ctLog.setLogFileSize(s3Object.getObjectMetadata().getContentLength());
+
+            if (s3Object != null) {
+                s3ObjectBytes = this.readObject(bucketName, objectKey, s3Object);
+                if (this.logFileCache != null) {
+                    this.logFileCache.put(bucketName, objectKey, s3Object.getObjectMetadata().getETag(), s3ObjectBytes);
+                }
+                logger.info("Downloaded log file " + objectKey + " from " + bucketName);
+            }
+            ctLog.setLogFileSize(s3ObjectBytes.length);
             success = true;
-            logger.info("Downloaded log file " + ctLog.getS3ObjectKey() + " from " + ctLog.getS3Bucket());
 
         } catch (AmazonServiceException | IOException e) {
 
-            ProcessingLibraryException exception = new ProcessingLibraryException("Fail to download log file.", e, startStatus);
+            ProgressStatus status = startStatus != null ? startStatus : new ProgressStatus(ProgressState.downloadLog, new BasicProcessLogInfo(source, ctLog, success));
+            ProcessingLibraryException exception = new ProcessingLibraryException("Fail to download log file.", e, status);
             this.exceptionHandler.handleException(exception);
 
         } finally {
-            ProgressStatus endStatus = new ProgressStatus(ProgressState.downloadLog, new BasicProcessLogInfo(source, ctLog, success));
-            this.progressReporter.reportEnd(endStatus, downloadSourceReportObject);
+            if (reportProgress) {
+                ProgressStatus endStatus = new ProgressStatus(ProgressState.downloadLog, new BasicProcessLogInfo(source, ctLog, success));
+                this.progressReporter.reportEnd(endStatus, downloadSourceReportObject);
+            }
         }
 
         return s3ObjectBytes;
@@ -113,13 +218,232 @@ public class S3Manager {
      */
     public S3Object getObject(String bucketName, String objectKey) {
         try {
-            return this.s3Client.getObject(bucketName, objectKey);
+            return this.getObjectInBucketRegion(new GetObjectRequest(bucketName, objectKey));
         } catch (AmazonServiceException e) {
             logger.error("Failed to get object " + objectKey + " from s3 bucket " + bucketName);
             throw e;
         }
     }
 
+    /**
+     * Download an S3 object, or only its first byte range when ranged GETs are enabled, unless its ETag matches the
+     * given one.
+     *
+     * @param bucketName the S3 bucket name from which to download the object.
+     * @param objectKey the S3 key name of the object to download.
+     * @param eTag the ETag of a local copy of the object, or <code>null</code> to download unconditionally.
+     * @return the downloaded S3Object, or <code>null</code> if the object still has the given ETag.
+     */
+    private S3Object getObject(String bucketName, String objectKey, String eTag) {
+        GetObjectRequest request = new GetObjectRequest(bucketName, objectKey);
+        if (eTag != null) {
+            request.setNonmatchingETagConstraints(Collections.singletonList(eTag));
+        }
+        int partSize = this.getRangedGetPartSize();
+        if (partSize <= 0) {
+            return this.getObject(request);
+        }
+
+        try {
+            return this.getObjectInBucketRegion(request.withRange(0, partSize - 1));
+        } catch (AmazonServiceException e) {
+            if (e.getStatusCode() != REQUESTED_RANGE_NOT_SATISFIABLE) {
+                logger.error("Failed to get object " + objectKey + " from s3 bucket " + bucketName);
+                throw e;
+            }
+        }
+
+        // an empty object has no first byte range
+        GetObjectRequest wholeObjectRequest = new GetObjectRequest(bucketName, objectKey);
+        wholeObjectRequest.setNonmatchingETagConstraints(request.getNonmatchingETagConstraints());
+        return this.getObject(wholeObjectRequest);
+    }
+
+    /**
+     * @return the size of the byte ranges to download, or <code>0</code> if the configuration does not enable ranged
+     *     GETs.
+     */
+    private int getRangedGetPartSize() {
+        return this.config instanceof RangedGetConfiguration ? ((RangedGetConfiguration) this.config).getRangedGetPartSize() : 0;
+    }
+
+    private S3Object getObject(GetObjectRequest request) {
+        try {
+            return this.getObjectInBucketRegion(request);
+        } catch (AmazonServiceException e) {
+            logger.error("Failed to get object " + request.getKey() + " from s3 bucket " + request.getBucketName());
+            throw e;
+        }
+    }
+
+    /**
+     * Send a GET with the client of the bucket's region, and retry it once in the region named by S3 if the bucket is
+     * elsewhere.
+     */
+    private S3Object getObjectInBucketRegion(GetObjectRequest request) {
+        String bucketName = request.getBucketName();
+        try {
+            return this.getClient(bucketName).getObject(request);
+        } catch (AmazonServiceException e) {
+            if (this.s3ClientRouter == null || !this.s3ClientRouter.updateRegion(bucketName, e)) {
+                throw e;
+            }
+            return this.getClient(bucketName).getObject(request);
+        }
+    }
+
+    private AmazonS3Client getClient(String bucketName) {
+        return this.s3ClientRouter == null ? this.s3Client : this.s3ClientRouter.getClient(bucketName);
+    }
+
+    /**
+     * Read the content of a downloaded S3 object. When only the first byte range was downloaded, the remaining ranges
+     * are downloaded in parallel on the ranged GET thread pool and written in place.
+     *
+     * @param bucketName the S3 bucket name of the object.
+     * @param objectKey the S3 key name of the object.
+     * @param s3Object the downloaded object, or its first byte range.
+     * @return the object content.
+     * @throws IOException if the content cannot be read, or the object changes during the download.
+     */
+    private byte[] readObject(final String bucketName, final String objectKey, S3Object s3Object) throws IOException {
+        ObjectMetadata metadata = s3Object.getObjectMetadata();
+        long instanceLength = metadata.getInstanceLength();
+        if (instanceLength > Integer.MAX_VALUE) {
+            s3Object.close();
+            throw new IOException("Log file " + objectKey + " is too large to download.");
+        }
+
+        final byte[] bytes = new byte[(int) instanceLength];
+        int firstPartLength = (int) metadata.getContentLength();
+        try (S3ObjectInputStream s3InputStream = s3Object.getObjectContent()) {
+            new DataInputStream(s3InputStream).readFully(bytes, 0, firstPartLength);
+        }
+        if (firstPartLength == bytes.length) {
+            return bytes;
+        }
+
+        // later ranges must come from the same version of the object as the first one
+        final String eTag = metadata.getETag();
+        int partSize = this.getRangedGetPartSize();
+        List<Future<Void>> parts = new ArrayList<Future<Void>>();
+        try {
+            for (int offset = firstPartLength; offset < bytes.length; offset += partSize) {
+                final int start = offset;
+                final int end = (int) Math.min((long) offset + partSize, bytes.length);
+                Callable<Void> part = new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        S3Manager.this.readRange(bucketName, objectKey, eTag, bytes, start, end);
+                        return null;
+                    }
+                };
+
+                // the calling thread downloads the last range, and any range the thread pool has no room for
+                if (end == bytes.length || this.rangedGetThreadPool == null) {
+                    this.readRange(bucketName, objectKey, eTag, bytes, start, end);
+                } else {
+                    try {
+                        parts.add(this.rangedGetThreadPool.submit(part));
+                    } catch (RejectedExecutionException e) {
+                        this.readRange(bucketName, objectKey, eTag, bytes, start, end);
+                    }
+                }
+            }
+
+            for (Future<Void> future : parts) {
+                future.get();
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading log file " + objectKey);
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof AmazonServiceException) {
+                throw (AmazonServiceException) cause;
+            }
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+
+        } finally {
+            for (Future<Void> future : parts) {
+                future.cancel(true);
+            }
+        }
+
+        int rangeCount = 1 + (bytes.length - firstPartLength + partSize - 1) / partSize;
+        logger.debug("Downloaded log file " + objectKey + " from " + bucketName + " in " + rangeCount + " byte ranges");
+        return bytes;
+    }
+
+    /**
+     * Download a byte range of an S3 object into <code>bytes</code>.
+     */
+    private void readRange(String bucketName, String objectKey, String eTag, byte[] bytes, int start, int end)
+            throws IOException {
+        GetObjectRequest request = new GetObjectRequest(bucketName, objectKey).withRange(start, end - 1)
+                .withMatchingETagConstraint(eTag);
+
+        S3Object s3Object = this.getObject(request);
+        if (s3Object == null) {
+            throw new IOException("Log file " + objectKey + " changed during download.");
+        }
+        try (S3ObjectInputStream s3InputStream = s3Object.getObjectContent()) {
+            new DataInputStream(s3InputStream).readFully(bytes, start, end - start);
+        }
+    }
+
+    /**
+     * Lists one page of objects under an S3 prefix.
+     * <p>
+     * Pass the previous page to continue a truncated listing. When a delimiter is given, keys that contain it after the
+     * prefix are rolled up into the listing's common prefixes.
+     *
+     * @param bucketName the S3 bucket name to list.
+     * @param prefix the S3 key prefix to list.
+     * @param delimiter the delimiter used to roll up keys, or <code>null</code> to list every key under the prefix.
+     * @param previousListing the previous page of a truncated listing, or <code>null</code> to list the first page.
+     * @return the
+     *     <a href="http://docs.aws.amazon.com/AWSJavaSDK/latest/javadoc/com/amazonaws/services/s3/model/ObjectListing.html">ObjectListing</a>,
+     *     or <code>null</code> if the listing failed.
+     */
+    public ObjectListing listLogs(String bucketName, String prefix, String delimiter, ObjectListing previousListing) {
+        boolean success = false;
+        boolean reportProgress = LibraryUtils.isReportEnabled(this.progressReporter, ProgressState.listLogs);
+        ProgressStatus startStatus = reportProgress ? new ProgressStatus(ProgressState.listLogs, new BasicListLogsInfo(bucketName, prefix, 0, success)) : null;
+        final Object listLogsReportObject = reportProgress ? this.progressReporter.reportStart(startStatus) : null;
+
+        ObjectListing objectListing = null;
+
+        try {
+            if (previousListing == null) {
+                ListObjectsRequest request = new ListObjectsRequest().withBucketName(bucketName).withPrefix(prefix)
+                        .withDelimiter(delimiter);
+                objectListing = this.getClient(bucketName).listObjects(request);
+            } else {
+                objectListing = this.getClient(bucketName).listNextBatchOfObjects(previousListing);
+            }
+            success = true;
+            logger.debug("Listed " + objectListing.getObjectSummaries().size() + " objects under " + prefix + " from " + bucketName);
+
+        } catch (AmazonServiceException e) {
+
+            ProgressStatus status = startStatus != null ? startStatus : new ProgressStatus(ProgressState.listLogs, new BasicListLogsInfo(bucketName, prefix, 0, success));
+            ProcessingLibraryException exception = new ProcessingLibraryException("Fail to list log files.", e, status);
+            this.exceptionHandler.handleException(exception);
+
+        } finally {
+            int listedObjectCount = objectListing == null ? 0 : objectListing.getObjectSummaries().size();
+            if (reportProgress) {
+                ProgressStatus endStatus = new ProgressStatus(ProgressState.listLogs, new BasicListLogsInfo(bucketName, prefix, listedObjectCount, success));
+                this.progressReporter.reportEnd(endStatus, listLogsReportObject);
+            }
+        }
+
+        return objectListing;
+    }
+
     /**
      * Validates input parameters.
      */
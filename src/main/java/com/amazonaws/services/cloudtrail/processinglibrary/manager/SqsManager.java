@@ -38,6 +38,7 @@ import com.amazonaws.services.cloudtrail.processinglibrary.serializer.SourceSeri
 import com.amazonaws.services.cloudtrail.processinglibrary.serializer.DefaultSourceSerializer;
 import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
 import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
 import com.amazonaws.services.sqs.model.DeleteMessageRequest;
 import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
@@ -67,6 +68,11 @@ public class SqsManager {
      */
     private ProcessingConfiguration config;
 
+    /**
+     * The URL of the SQS queue to poll.
+     */
+    private String sqsUrl;
+
     /**
      * An instance of AmazonSQSClient.
      */
@@ -87,7 +93,7 @@ public class SqsManager {
     private ProgressReporter progressReporter;
 
     /**
-     * SqsManager constructor.
+     * SqsManager constructor, polling the SQS queue set up in configuration.
      *
      * @param sqsClient used to poll message from SQS.
      * @param config user provided ProcessingConfiguration.
@@ -95,7 +101,22 @@ public class SqsManager {
      * @param progressReporter user provided progressReporter.
      */
     public SqsManager(AmazonSQSClient sqsClient, ProcessingConfiguration config, ExceptionHandler exceptionHandler, ProgressReporter progressReporter) {
+        this(sqsClient, config, exceptionHandler, progressReporter, config == null ? null : config.getSqsUrl());
+    }
+
+    /**
+     * SqsManager constructor.
+     *
+     * @param sqsClient used to poll message from SQS.
+     * @param config user provided ProcessingConfiguration.
+     * @param exceptionHandler user provided exceptionHandler.
+     * @param progressReporter user provided progressReporter.
+     * @param sqsUrl the URL of the SQS queue to poll, one of the queues in configuration.
+     */
+    public SqsManager(AmazonSQSClient sqsClient, ProcessingConfiguration config, ExceptionHandler exceptionHandler,
+            ProgressReporter progressReporter, String sqsUrl) {
         this.config = config;
+        this.sqsUrl = sqsUrl;
         this.exceptionHandler = exceptionHandler;
         this.progressReporter = progressReporter;
         this.sqsClient = sqsClient;
@@ -111,11 +132,12 @@ public class SqsManager {
      */
     public List<Message> pollQueue() {
         boolean success = false;
-        ProgressStatus startStatus = new ProgressStatus(ProgressState.pollQueue, new BasicPollQueueInfo(0, success));
-        final Object reportObject = this.progressReporter.reportStart(startStatus);
+        boolean reportProgress = LibraryUtils.isReportEnabled(this.progressReporter, ProgressState.pollQueue);
+        ProgressStatus startStatus = reportProgress ? new ProgressStatus(ProgressState.pollQueue, new BasicPollQueueInfo(0, success)) : null;
+        final Object reportObject = reportProgress ? this.progressReporter.reportStart(startStatus) : null;
 
         ReceiveMessageRequest request = new ReceiveMessageRequest().withAttributeNames(ALL_ATTRIBUTES);
-        request.setQueueUrl(this.config.getSqsUrl());
+        request.setQueueUrl(this.sqsUrl);
         request.setVisibilityTimeout(this.config.getVisibilityTimeout());
         request.setMaxNumberOfMessages(DEFAULT_SQS_MESSAGE_SIZE_LIMIT);
         request.setWaitTimeSeconds(DEFAULT_WAIT_TIME_SECONDS);
@@ -125,17 +147,20 @@ public class SqsManager {
 
             ReceiveMessageResult result = sqsClient.receiveMessage(request);
             sqsMessages = result.getMessages();
-            logger.info("Polled " + sqsMessages.size() + " sqs messages from " + this.config.getSqsUrl());
+            logger.info("Polled " + sqsMessages.size() + " sqs messages from " + this.sqsUrl);
 
             success = true;
         } catch (AmazonServiceException e) {
             // delegate exception to ExceptionHandler
-            ProcessingLibraryException exception = new ProcessingLibraryException("Failed to poll sqs message.", e, startStatus);
+            ProgressStatus status = startStatus != null ? startStatus : new ProgressStatus(ProgressState.pollQueue, new BasicPollQueueInfo(0, success));
+            ProcessingLibraryException exception = new ProcessingLibraryException("Failed to poll sqs message.", e, status);
             this.exceptionHandler.handleException(exception);
 
         } finally {
-            ProgressStatus endStatus = new ProgressStatus(ProgressState.pollQueue, new BasicPollQueueInfo(sqsMessages.size(), success));
-            this.progressReporter.reportEnd(endStatus, reportObject);
+            if (reportProgress) {
+                ProgressStatus endStatus = new ProgressStatus(ProgressState.pollQueue, new BasicPollQueueInfo(sqsMessages.size(), success));
+                this.progressReporter.reportEnd(endStatus, reportObject);
+            }
         }
         return sqsMessages;
 
@@ -153,8 +178,9 @@ public class SqsManager {
 
         for (Message sqsMessage : sqsMessages) {
             boolean success = false;
-            ProgressStatus startStatus = new ProgressStatus(ProgressState.parseMessage, new BasicParseMessageInfo(sqsMessage, success));
-            final Object reportObject = this.progressReporter.reportStart(startStatus);
+            boolean reportProgress = LibraryUtils.isReportEnabled(this.progressReporter, ProgressState.parseMessage);
+            ProgressStatus startStatus = reportProgress ? new ProgressStatus(ProgressState.parseMessage, new BasicParseMessageInfo(sqsMessage, success)) : null;
+            final Object reportObject = reportProgress ? this.progressReporter.reportStart(startStatus) : null;
 
             try {
                 CloudTrailSource source = this.serializer.getSource(sqsMessage);
@@ -164,41 +190,80 @@ public class SqsManager {
             } catch (IOException e) {
 
                 // delegate exception to ExceptionHandler
-                ProcessingLibraryException exception = new ProcessingLibraryException("Failed to parse sqs message", e, startStatus);
+                ProgressStatus status = startStatus != null ? startStatus : new ProgressStatus(ProgressState.parseMessage, new BasicParseMessageInfo(sqsMessage, success));
+                ProcessingLibraryException exception = new ProcessingLibraryException("Failed to parse sqs message", e, status);
                 this.exceptionHandler.handleException(exception);
 
             } finally {
-                ProgressStatus endStatus = new ProgressStatus(ProgressState.parseMessage, new BasicParseMessageInfo(sqsMessage, success));
-                this.progressReporter.reportEnd(endStatus, reportObject);
+                if (reportProgress) {
+                    ProgressStatus endStatus = new ProgressStatus(ProgressState.parseMessage, new BasicParseMessageInfo(sqsMessage, success));
+                    this.progressReporter.reportEnd(endStatus, reportObject);
+                }
             }
         }
         return sources;
     }
 
     /**
-     * Delete a message from SQS queue, assume the message is coming from the queueName setup in configuration.
+     * Delete a message from SQS queue, assume the message is coming from the queue this manager polls.
      *
      * @param source CloudTrailSource (SQSBasedSource) contains SQS message that need to be deleted.
      * @param state current running state.
      */
     public void deleteMessageFromQueue(CloudTrailSource source, ProgressState state) {
         boolean success = false;
-        ProgressStatus startStatus = new ProgressStatus(state, new BasicProcessSourceInfo(source, success));
-        final Object reportObject = this.progressReporter.reportStart(startStatus);
+        boolean reportProgress = LibraryUtils.isReportEnabled(this.progressReporter, state);
+        ProgressStatus startStatus = reportProgress ? new ProgressStatus(state, new BasicProcessSourceInfo(source, success)) : null;
+        final Object reportObject = reportProgress ? this.progressReporter.reportStart(startStatus) : null;
 
         try{
-            this.sqsClient.deleteMessage(new DeleteMessageRequest(config.getSqsUrl(), ((SQSBasedSource)source).getSqsMessage().getReceiptHandle()));
+            this.sqsClient.deleteMessage(new DeleteMessageRequest(this.sqsUrl, ((SQSBasedSource)source).getSqsMessage().getReceiptHandle()));
 
             success = true;
         } catch (AmazonServiceException e){
 
             // delegate exception to ExceptionHandler
-            ProcessingLibraryException exception = new ProcessingLibraryException("Failed to delete sqs message", e, startStatus);
+            ProgressStatus status = startStatus != null ? startStatus : new ProgressStatus(state, new BasicProcessSourceInfo(source, success));
+            ProcessingLibraryException exception = new ProcessingLibraryException("Failed to delete sqs message", e, status);
+            this.exceptionHandler.handleException(exception);
+
+        } finally {
+            if (reportProgress) {
+                ProgressStatus endStatus = new ProgressStatus(state, new BasicProcessSourceInfo(source, success));
+                this.progressReporter.reportEnd(endStatus, reportObject);
+            }
+        }
+    }
+
+    /**
+     * Make the message of a source visible in the SQS queue again right away, so that it can be received before its
+     * visibility timeout ends. Used for received messages that will not be processed.
+     *
+     * @param source CloudTrailSource (SQSBasedSource) contains SQS message that need to be released.
+     */
+    public void releaseMessage(CloudTrailSource source) {
+        boolean success = false;
+        boolean reportProgress = LibraryUtils.isReportEnabled(this.progressReporter, ProgressState.releaseMessage);
+        ProgressStatus startStatus = reportProgress ? new ProgressStatus(ProgressState.releaseMessage, new BasicProcessSourceInfo(source, success)) : null;
+        final Object reportObject = reportProgress ? this.progressReporter.reportStart(startStatus) : null;
+
+        try {
+            this.sqsClient.changeMessageVisibility(new ChangeMessageVisibilityRequest(this.sqsUrl,
+                    ((SQSBasedSource)source).getSqsMessage().getReceiptHandle(), 0));
+
+            success = true;
+        } catch (AmazonServiceException e) {
+
+            // delegate exception to ExceptionHandler
+            ProgressStatus status = startStatus != null ? startStatus : new ProgressStatus(ProgressState.releaseMessage, new BasicProcessSourceInfo(source, success));
+            ProcessingLibraryException exception = new ProcessingLibraryException("Failed to release sqs message", e, status);
             this.exceptionHandler.handleException(exception);
 
         } finally {
-            ProgressStatus endStatus = new ProgressStatus(state, new BasicProcessSourceInfo(source, success));
-            this.progressReporter.reportEnd(endStatus, reportObject);
+            if (reportProgress) {
+                ProgressStatus endStatus = new ProgressStatus(ProgressState.releaseMessage, new BasicProcessSourceInfo(source, success));
+                this.progressReporter.reportEnd(endStatus, reportObject);
+            }
         }
     }
 
@@ -207,6 +272,7 @@ public class SqsManager {
      */
     private void validate() {
         LibraryUtils.checkArgumentNotNull(this.config, "configuration is null");
+        LibraryUtils.checkArgumentNotNull(this.sqsUrl, "sqs url is null");
         LibraryUtils.checkArgumentNotNull(this.exceptionHandler, "exception handler is null");
         LibraryUtils.checkArgumentNotNull(this.progressReporter, "progress reporter is null");
         LibraryUtils.checkArgumentNotNull(this.sqsClient, "sqs client is null");
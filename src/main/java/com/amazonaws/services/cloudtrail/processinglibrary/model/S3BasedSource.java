@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link CloudTrailSource} built by listing CloudTrail log files directly from an S3 bucket rather than from an SQS
+ * notification. It is used to backfill history that is no longer in the queue.
+ */
+public class S3BasedSource implements CloudTrailSource {
+    /**
+     * List of CloudTrailLogs inside this source
+     */
+    private final List<CloudTrailLog> logs;
+
+    /**
+     * The attributes of this source, i.e. accountId.
+     */
+    private final Map<String, String> sourceAttributes;
+
+    /**
+     * @param sourceAttributes attributes describing where the logs were listed from.
+     * @param logs the CloudTrail logs listed from S3.
+     */
+    public S3BasedSource(Map<String, String> sourceAttributes, List<CloudTrailLog> logs) {
+        this.sourceAttributes = sourceAttributes;
+        this.logs = logs;
+    }
+
+    /**
+     * Retrieve the CloudTrailSource attributes
+     */
+    @Override
+    public Map<String, String> getSourceAttributes() {
+        return this.sourceAttributes;
+    }
+
+    /**
+     * @return the list of CloudTrailLog retrieved from the source
+     */
+    public List<CloudTrailLog> getLogs() {
+        return logs;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{");
+        if (logs != null) {
+            builder.append("logs: ");
+            builder.append(logs);
+            builder.append(", ");
+        }
+        if (sourceAttributes != null) {
+            builder.append("sourceAttributes: ");
+            builder.append(sourceAttributes);
+        }
+        builder.append("}");
+        return builder.toString();
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ((logs == null) ? 0 : logs.hashCode());
+        result = prime * result + ((sourceAttributes == null) ? 0 : sourceAttributes.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        S3BasedSource other = (S3BasedSource) obj;
+        if (logs == null) {
+            if (other.logs != null)
+                return false;
+        } else if (!logs.equals(other.logs))
+            return false;
+        if (sourceAttributes == null) {
+            if (other.sourceAttributes != null)
+                return false;
+        } else if (!sourceAttributes.equals(other.sourceAttributes))
+            return false;
+        return true;
+    }
+}
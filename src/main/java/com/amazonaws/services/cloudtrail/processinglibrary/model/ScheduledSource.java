@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.model;
+
+import java.util.Map;
+
+/**
+ * A {@link CloudTrailSource} waiting in a
+ * {@link com.amazonaws.services.cloudtrail.processinglibrary.utils.SourceScheduler}, with the delivery details that
+ * scheduling policies order by.
+ */
+public class ScheduledSource {
+    private final CloudTrailSource source;
+    private final long receiveTime;
+    private final long sentTimestamp;
+    private final int receiveCount;
+
+    /**
+     * Constructs a new ScheduledSource, reading the SQS attributes of the source.
+     *
+     * @param source the source to schedule.
+     * @param receiveTime when the source was received, in milliseconds since the epoch.
+     */
+    public ScheduledSource(CloudTrailSource source, long receiveTime) {
+        this.source = source;
+        this.receiveTime = receiveTime;
+
+        Map<String, String> attributes = source.getSourceAttributes();
+        long sentTimestamp = attributes == null ? 0 : parseLong(attributes.get(SourceAttributeKeys.SEND_TIMESTAMP.getAttributeKey()));
+        long receiveCount = attributes == null ? 0 : parseLong(attributes.get(SourceAttributeKeys.APPROXIMATE_RECEIVE_COUNT.getAttributeKey()));
+        this.sentTimestamp = sentTimestamp > 0 ? sentTimestamp : receiveTime;
+        this.receiveCount = receiveCount > 0 ? (int) receiveCount : 1;
+    }
+
+    /**
+     * @return the source to process.
+     */
+    public CloudTrailSource getSource() {
+        return this.source;
+    }
+
+    /**
+     * @return when the source was received, in milliseconds since the epoch.
+     */
+    public long getReceiveTime() {
+        return this.receiveTime;
+    }
+
+    /**
+     * @return the SQS <code>SentTimestamp</code> of the source, in milliseconds since the epoch, or the receive time
+     *     if the source has none.
+     */
+    public long getSentTimestamp() {
+        return this.sentTimestamp;
+    }
+
+    /**
+     * @return the SQS <code>ApproximateReceiveCount</code> of the source, <code>1</code> if the source has none.
+     */
+    public int getReceiveCount() {
+        return this.receiveCount;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
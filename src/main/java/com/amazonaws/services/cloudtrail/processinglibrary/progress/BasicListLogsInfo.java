@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.progress;
+
+/**
+ * Provide basic information about listing log files under an S3 prefix.
+ */
+public class BasicListLogsInfo implements ProgressInfo {
+    private boolean isSuccess;
+    private String bucketName;
+    private String prefix;
+    private int listedObjectCount;
+
+    /**
+     * @param bucketName the S3 bucket being listed
+     * @param prefix the S3 key prefix being listed
+     * @param listedObjectCount number of objects returned by the listing
+     * @param isSuccess whether successfully listed the prefix
+     */
+    public BasicListLogsInfo(String bucketName, String prefix, int listedObjectCount, boolean isSuccess) {
+        super();
+        this.isSuccess = isSuccess;
+        this.bucketName = bucketName;
+        this.prefix = prefix;
+        this.listedObjectCount = listedObjectCount;
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return this.isSuccess;
+    }
+
+    /**
+     * @return the S3 bucket name
+     */
+    public String getBucketName() {
+        return this.bucketName;
+    }
+
+    /**
+     * @return the S3 key prefix
+     */
+    public String getPrefix() {
+        return this.prefix;
+    }
+
+    /**
+     * @return the number of objects returned by the listing
+     */
+    public int getListedObjectCount() {
+        return this.listedObjectCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{isSuccess: ");
+        builder.append(isSuccess);
+        builder.append(", bucketName: ");
+        builder.append(bucketName);
+        builder.append(", prefix: ");
+        builder.append(prefix);
+        builder.append(", listedObjectCount: ");
+        builder.append(listedObjectCount);
+        builder.append("}");
+        return builder.toString();
+    }
+}
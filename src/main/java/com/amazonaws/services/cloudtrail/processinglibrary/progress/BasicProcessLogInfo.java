@@ -23,11 +23,17 @@ public class BasicProcessLogInfo implements ProgressLogInfo, ProgressSourceInfo
     private boolean isSuccess;
     private CloudTrailLog log;
     private CloudTrailSource source;
+    private int eventCount;
 
     public BasicProcessLogInfo(CloudTrailSource source, CloudTrailLog log, boolean isSuccess) {
+        this(source, log, isSuccess, 0);
+    }
+
+    public BasicProcessLogInfo(CloudTrailSource source, CloudTrailLog log, boolean isSuccess, int eventCount) {
         this.source = source;
         this.log = log;
         this.isSuccess = isSuccess;
+        this.eventCount = eventCount;
     }
 
     @Override
@@ -45,12 +51,24 @@ public class BasicProcessLogInfo implements ProgressLogInfo, ProgressSourceInfo
         return this.source;
     }
 
+    /**
+     * @return the number of events emitted from the log file; 0 until the log file has been processed.
+     */
+    public int getEventCount() {
+        return this.eventCount;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append("{isSuccess: ");
         builder.append(isSuccess);
         builder.append(", ");
+        if (eventCount > 0) {
+            builder.append("eventCount: ");
+            builder.append(eventCount);
+            builder.append(", ");
+        }
         if (log != null) {
             builder.append("log: ");
             builder.append(log);
@@ -39,6 +39,16 @@ public enum ProgressState {
      */
     deleteFilteredMessage,
 
+    /**
+     * Report progress when deleting a message whose log files were all recently processed.
+     */
+    deleteDuplicateMessage,
+
+    /**
+     * Report progress when releasing an unprocessed message back to SQS queue.
+     */
+    releaseMessage,
+
     /**
      * Report progress when processing source
      */
@@ -54,6 +64,11 @@ public enum ProgressState {
      */
     processLog,
 
+    /**
+     * Report progress when listing log files from S3 bucket
+     */
+    listLogs,
+
     /**
      * Report progress when uncaught exception happened
      */
@@ -15,11 +15,10 @@
 
 package com.amazonaws.services.cloudtrail.processinglibrary.reader;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,6 +36,7 @@ import com.amazonaws.services.cloudtrail.processinglibrary.manager.SqsManager;
 import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
 import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailLog;
 import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailSource;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.S3BasedSource;
 import com.amazonaws.services.cloudtrail.processinglibrary.model.SQSBasedSource;
 import com.amazonaws.services.cloudtrail.processinglibrary.progress.BasicProcessLogInfo;
 import com.amazonaws.services.cloudtrail.processinglibrary.progress.BasicProcessSourceInfo;
@@ -47,6 +47,10 @@ import com.amazonaws.services.cloudtrail.processinglibrary.serializer.DefaultEve
 import com.amazonaws.services.cloudtrail.processinglibrary.serializer.RawLogDeliveryEventSerializer;
 import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
 import com.amazonaws.services.cloudtrail.processinglibrary.utils.EventBuffer;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.EventDeduplicator;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LagMonitor;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.PooledGzipInputStream;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.ProcessedLogCache;
 import com.amazonaws.services.sqs.model.Message;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -69,6 +73,21 @@ public class EventReader {
     private SqsManager sqsManager;
     private S3Manager s3Manager;
 
+    /**
+     * Recently processed log files, used to skip duplicate deliveries; <code>null</code> when disabled.
+     */
+    private ProcessedLogCache processedLogCache;
+
+    /**
+     * Remembers emitted event IDs, used to drop duplicate events; <code>null</code> when disabled.
+     */
+    private EventDeduplicator eventDeduplicator;
+
+    /**
+     * Records ingestion lag when events are emitted; <code>null</code> when disabled.
+     */
+    private LagMonitor lagMonitor;
+
     /**
      * Jackson parser to parse CloudTrail log files.
      */
@@ -77,20 +96,46 @@ public class EventReader {
     /**
      * Internal use only.
      *
-     * This constructor creates an instance of EventReader object.
+     * This constructor creates an instance of EventReader object that processes every delivery and event, and does
+     * not measure lag.
      *
      * @param eventsProcesor user's implementation of eventsProcesor
      * @param sourceFilter user's implementation of sourceFilter
      * @param eventFilter user's implementation of eventFilter
      * @param progressReporter user's implementation of progressReporter
      * @param exceptionHandler user's implementation of exceptionHandler
-     * @param sqsManager that poll message from SQS queue
+     * @param sqsManager that poll message from SQS queue, <code>null</code> when only processing sources listed from S3
      * @param s3Manager that download CloudTrail log files from S3
      * @param configuration user provided ProcessingConfiguration
      */
     public EventReader(EventsProcessor eventsProcesor, SourceFilter sourceFilter, EventFilter eventFilter,
             ProgressReporter progressReporter, ExceptionHandler exceptionHandler, SqsManager sqsManager,
             S3Manager s3Manager, ProcessingConfiguration configuration) {
+        this(eventsProcesor, sourceFilter, eventFilter, progressReporter, exceptionHandler, sqsManager, s3Manager,
+                configuration, null, null, null);
+    }
+
+    /**
+     * Internal use only.
+     *
+     * This constructor creates an instance of EventReader object.
+     *
+     * @param eventsProcesor user's implementation of eventsProcesor
+     * @param sourceFilter user's implementation of sourceFilter
+     * @param eventFilter user's implementation of eventFilter
+     * @param progressReporter user's implementation of progressReporter
+     * @param exceptionHandler user's implementation of exceptionHandler
+     * @param sqsManager that poll message from SQS queue, <code>null</code> when only processing sources listed from S3
+     * @param s3Manager that download CloudTrail log files from S3
+     * @param configuration user provided ProcessingConfiguration
+     * @param processedLogCache recently processed log files, <code>null</code> to process duplicate deliveries
+     * @param eventDeduplicator emitted event IDs, <code>null</code> to emit duplicate events
+     * @param lagMonitor ingestion lag of emitted events, <code>null</code> to not measure lag
+     */
+    public EventReader(EventsProcessor eventsProcesor, SourceFilter sourceFilter, EventFilter eventFilter,
+            ProgressReporter progressReporter, ExceptionHandler exceptionHandler, SqsManager sqsManager,
+            S3Manager s3Manager, ProcessingConfiguration configuration, ProcessedLogCache processedLogCache,
+            EventDeduplicator eventDeduplicator, LagMonitor lagMonitor) {
 
         this.eventsProcessor = eventsProcesor;
         this.sourceFilter = sourceFilter;
@@ -101,6 +146,9 @@ public class EventReader {
 
         this.sqsManager = sqsManager;
         this.s3Manager = s3Manager;
+        this.processedLogCache = processedLogCache;
+        this.eventDeduplicator = eventDeduplicator;
+        this.lagMonitor = lagMonitor;
 
         this.mapper = new ObjectMapper();
     }
@@ -116,33 +164,61 @@ public class EventReader {
         return sources;
     }
 
+    /**
+     * Give up a source polled from SQS without processing it: its message becomes visible in the queue again right
+     * away instead of after the visibility timeout. Sources listed from S3 have no message to release.
+     *
+     * @param source {@link CloudTrailSource} to release
+     */
+    public void releaseSource(CloudTrailSource source) {
+        if (source instanceof SQSBasedSource) {
+            this.sqsManager.releaseMessage(source);
+        }
+    }
+
     /**
      * Retrieve S3 object URL from source then downloads the object processes each event through
      * call back functions.
      *
      * @param source {@link CloudTrailSource} to process
+     * @return <code>true</code> if the source was filtered out or all of its log files were processed successfully
      */
-    public void processSource (CloudTrailSource source) {
+    public boolean processSource (CloudTrailSource source) {
         // Start to process the source
         boolean processSourceSuccess = false;
-        ProgressStatus startProcessSource = new ProgressStatus(ProgressState.processSource, new BasicProcessSourceInfo(source, processSourceSuccess));
-        final Object processSourceReportObject = this.progressReporter.reportStart(startProcessSource);
+        boolean reportProcessSource = LibraryUtils.isReportEnabled(this.progressReporter, ProgressState.processSource);
+        ProgressStatus startProcessSource = reportProcessSource ? new ProgressStatus(ProgressState.processSource, new BasicProcessSourceInfo(source, processSourceSuccess)) : null;
+        final Object processSourceReportObject = reportProcessSource ? this.progressReporter.reportStart(startProcessSource) : null;
 
         try {
             // Apply source filter first. If source filtered out then delete source immediately and return.
             if (!sourceFilter.filterSource(source)) {
-                this.sqsManager.deleteMessageFromQueue(source, ProgressState.deleteFilteredMessage);
+                this.deleteSource(source, ProgressState.deleteFilteredMessage);
                 logger.debug("AWSCloudTrailSource " + source + " has filtered.");
                 processSourceSuccess = true;
 
+            } else if (this.isDuplicate(source)) {
+                // Every log file was recently processed, so delete the duplicate without downloading it.
+                this.deleteSource(source, ProgressState.deleteDuplicateMessage);
+                logger.debug("AWSCloudTrailSource " + source + " is a duplicate.");
+                processSourceSuccess = true;
+
             } else {
-                int nLogFilesToProcess = ((SQSBasedSource)source).getLogs().size();
+                List<CloudTrailLog> ctLogs = this.getLogs(source);
+                int nLogFilesToProcess = ctLogs.size();
+
+                for (CloudTrailLog ctLog : ctLogs) {
+                    if (this.processedLogCache != null && this.processedLogCache.isProcessed(ctLog)) {
+                        nLogFilesToProcess --;
+                        continue;
+                    }
 
-                for (CloudTrailLog ctLog : ((SQSBasedSource)source).getLogs()) {
                     //start to process the log
                     boolean processLogSuccess = false;
-                    ProgressStatus startProcessLog = new ProgressStatus(ProgressState.processLog, new BasicProcessLogInfo(source, ctLog, processLogSuccess));
-                    final Object processLogReportObject = this.progressReporter.reportStart(startProcessLog);
+                    int eventCount = 0;
+                    boolean reportProcessLog = LibraryUtils.isReportEnabled(this.progressReporter, ProgressState.processLog);
+                    ProgressStatus startProcessLog = reportProcessLog ? new ProgressStatus(ProgressState.processLog, new BasicProcessLogInfo(source, ctLog, processLogSuccess)) : null;
+                    final Object processLogReportObject = reportProcessLog ? this.progressReporter.reportStart(startProcessLog) : null;
 
                     try {
                         byte[] s3ObjectBytes = this.s3Manager.downloadLog(ctLog, source);
@@ -150,30 +226,41 @@ public class EventReader {
                             continue; //Failure downloading log file. Skip it.
                         }
 
-                        try (GZIPInputStream gzippedInputStream = new GZIPInputStream(new ByteArrayInputStream(s3ObjectBytes));
-                            EventSerializer serializer = this.getEventSerializer(gzippedInputStream, ctLog);) {
+                        try (PooledGzipInputStream gzippedInputStream = new PooledGzipInputStream(s3ObjectBytes);
+                            EventSerializer serializer = this.getEventSerializer(gzippedInputStream, s3ObjectBytes, ctLog);) {
 
-                            this.emitEvents(serializer);
+                            eventCount = this.emitEvents(source, serializer);
 
                             //decrement this value upon successfully processed a log
                             nLogFilesToProcess --;
                             processLogSuccess = true;
 
+                            if (this.processedLogCache != null) {
+                                this.processedLogCache.markProcessed(ctLog);
+                            }
+
                         } catch (IllegalArgumentException | IOException e) {
-                            ProcessingLibraryException exception = new ProcessingLibraryException("Fail to parse log file.", e, startProcessLog);
+                            ProgressStatus status = startProcessLog != null ? startProcessLog : new ProgressStatus(ProgressState.processLog, new BasicProcessLogInfo(source, ctLog, processLogSuccess));
+                            ProcessingLibraryException exception = new ProcessingLibraryException("Fail to parse log file.", e, status);
                             this.exceptionHandler.handleException(exception);
                         }
                     } finally {
                         //end to process the log
-                        ProgressStatus endProcessLog = new ProgressStatus(ProgressState.processLog, new BasicProcessLogInfo(source, ctLog, processLogSuccess));
-                        this.progressReporter.reportEnd(endProcessLog, processLogReportObject);
+                        if (reportProcessLog) {
+                            ProgressStatus endProcessLog = new ProgressStatus(ProgressState.processLog, new BasicProcessLogInfo(source, ctLog, processLogSuccess, eventCount));
+                            this.progressReporter.reportEnd(endProcessLog, processLogReportObject);
+                        }
                     }
                 }
 
                 // Delete source after all log files processed successfully
                 if (nLogFilesToProcess == 0) {
-                    this.sqsManager.deleteMessageFromQueue(source, ProgressState.deleteMessage);
+                    this.deleteSource(source, ProgressState.deleteMessage);
                     processSourceSuccess = true;
+
+                    if (this.lagMonitor != null) {
+                        this.lagMonitor.recordSource(source);
+                    }
                 }
             }
 
@@ -181,8 +268,54 @@ public class EventReader {
             this.exceptionHandler.handleException(ex);
         } finally {
             // end to process the source
-            ProgressStatus endProcessSource = new ProgressStatus(ProgressState.processSource, new BasicProcessSourceInfo(source, processSourceSuccess));
-            this.progressReporter.reportEnd(endProcessSource, processSourceReportObject);
+            if (reportProcessSource) {
+                ProgressStatus endProcessSource = new ProgressStatus(ProgressState.processSource, new BasicProcessSourceInfo(source, processSourceSuccess));
+                this.progressReporter.reportEnd(endProcessSource, processSourceReportObject);
+            }
+        }
+        return processSourceSuccess;
+    }
+
+    /**
+     * Get the CloudTrail logs held by a source.
+     *
+     * @param source {@link CloudTrailSource} polled from SQS or listed from S3
+     * @return the logs to process
+     */
+    private List<CloudTrailLog> getLogs(CloudTrailSource source) {
+        if (source instanceof S3BasedSource) {
+            return ((S3BasedSource)source).getLogs();
+        }
+        return ((SQSBasedSource)source).getLogs();
+    }
+
+    /**
+     * Check whether every log file of a source was recently processed.
+     *
+     * @param source {@link CloudTrailSource} to check
+     * @return <code>true</code> if the source can be deleted without processing
+     */
+    private boolean isDuplicate(CloudTrailSource source) {
+        if (this.processedLogCache == null) {
+            return false;
+        }
+        for (CloudTrailLog ctLog : this.getLogs(source)) {
+            if (!this.processedLogCache.isProcessed(ctLog)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Delete the SQS message a source came from. Sources listed from S3 have no message to delete.
+     *
+     * @param source {@link CloudTrailSource} to delete
+     * @param state current running state
+     */
+    private void deleteSource(CloudTrailSource source, ProgressState state) {
+        if (source instanceof SQSBasedSource) {
+            this.sqsManager.deleteMessageFromQueue(source, state);
         }
     }
 
@@ -190,15 +323,18 @@ public class EventReader {
      * Get the EventSerializer based on user's configuration.
      *
      * @param inputStream the Gzipped content from CloudTrail log file
+     * @param s3ObjectBytes the compressed CloudTrail log file, used to presize the raw log file content
      * @param ctLog CloudTrail log file
      * @return parser that parses CloudTrail log file
      * @throws IOException
      */
-    private EventSerializer getEventSerializer(GZIPInputStream inputStream, CloudTrailLog ctLog) throws IOException {
+    private EventSerializer getEventSerializer(InputStream inputStream, byte[] s3ObjectBytes, CloudTrailLog ctLog) throws IOException {
         EventSerializer serializer;
 
         if (this.config.isEnableRawEventInfo()) {
-            String logFileContent = new String(LibraryUtils.toByteArray(inputStream), StandardCharsets.UTF_8);
+            int expectedSize = PooledGzipInputStream.getUncompressedSizeHint(s3ObjectBytes);
+            byte[] logFileBytes = LibraryUtils.toByteArray(inputStream, expectedSize);
+            String logFileContent = new String(logFileBytes, StandardCharsets.UTF_8);
             JsonParser jsonParser = this.mapper.getFactory().createParser(logFileContent);
             serializer = new RawLogDeliveryEventSerializer(logFileContent, ctLog, jsonParser);
         } else {
@@ -209,35 +345,60 @@ public class EventReader {
     }
 
     /**
-     * Filter, buffer, and emit CloudTrailEvents.
+     * Filter, deduplicate, buffer, and emit CloudTrailEvents.
      *
+     * @param source the {@link CloudTrailSource} the log file belongs to
      * @param serializer {@link EventSerializer} that parses CloudTrail log file
+     * @return the number of events emitted
      *
      * @throws IOException
      * @throws CallbackException
      */
-    private void emitEvents(EventSerializer serializer) throws IOException, CallbackException {
+    private int emitEvents(CloudTrailSource source, EventSerializer serializer) throws IOException, CallbackException {
         EventBuffer<CloudTrailEvent> eventBuffer = new EventBuffer<>(this.config.getMaxEventsPerEmit());
+        int eventCount = 0;
         while (serializer.hasNextEvent()) {
 
             CloudTrailEvent event = serializer.getNextEvent();
 
-            if (this.eventFilter.filterEvent(event)) {
+            if (!this.eventFilter.filterEvent(event)) {
+                logger.debug("AWSCloudTrailEvent " + event + " has filtered.");
+
+            } else if (this.eventDeduplicator != null && this.eventDeduplicator.isDuplicate(event)) {
+                logger.debug("AWSCloudTrailEvent " + event + " is a duplicate.");
+
+            } else {
                 eventBuffer.addEvent(event);
+                eventCount++;
 
                 if (eventBuffer.isBufferFull()) {
-                    this.eventsProcessor.process(eventBuffer.getEvents());
+                    this.emit(source, eventBuffer.getEvents());
                 }
-
-            } else {
-                logger.debug("AWSCloudTrailEvent " + event + " has filtered.");
             }
         }
 
         //emit whatever in the buffer as last batch
         List<CloudTrailEvent> events = eventBuffer.getEvents();
         if (!events.isEmpty()) {
-            this.eventsProcessor.process(events);
+            this.emit(source, events);
+        }
+        return eventCount;
+    }
+
+    /**
+     * Hand a batch of events to the <code>EventsProcessor</code>, and record their IDs and lag once it accepted them.
+     *
+     * @param source the source the events were read from.
+     * @param events the events to emit.
+     * @throws CallbackException if the <code>EventsProcessor</code> failed.
+     */
+    private void emit(CloudTrailSource source, List<CloudTrailEvent> events) throws CallbackException {
+        this.eventsProcessor.process(events);
+        if (this.eventDeduplicator != null) {
+            this.eventDeduplicator.recordEmitted(events);
+        }
+        if (this.lagMonitor != null) {
+            this.lagMonitor.recordEmit(source, events);
         }
     }
 }
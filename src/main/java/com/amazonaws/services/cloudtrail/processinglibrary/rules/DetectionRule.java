@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.rules;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.CallbackException;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventFilter;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEventData;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * A rule that matches CloudTrail events.
+ * <p>
+ * A rule matches an event when the event's <code>eventSource</code> and <code>eventName</code> are among the rule's,
+ * its <code>errorCode</code> is present or absent as required, and the rule's condition, if any, accepts it. An empty
+ * set of event sources or event names matches any value. The event sources, event names and error code requirement
+ * are what a {@link RuleEngine} indexes rules by, so rules should state them whenever they can, and leave only the
+ * remaining checks to the condition.
+ * <p>
+ * For example, a rule for failed console sign-ins:
+ *
+ * <pre>
+ * DetectionRule rule = new DetectionRule.Builder("console-signin-failure")
+ *     .withEventSource("signin.amazonaws.com")
+ *     .withEventName("ConsoleLogin")
+ *     .withErrorCode(ErrorCodeCondition.PRESENT)
+ *     .build();
+ * </pre>
+ */
+public class DetectionRule {
+    /**
+     * Whether a rule requires an event to have an <code>errorCode</code>.
+     */
+    public enum ErrorCodeCondition {
+        /**
+         * Match events with or without an error code.
+         */
+        ANY,
+
+        /**
+         * Match only failed requests, which have an error code.
+         */
+        PRESENT,
+
+        /**
+         * Match only successful requests, which have no error code.
+         */
+        ABSENT
+    }
+
+    private final String id;
+    private final Set<String> eventSources;
+    private final Set<String> eventNames;
+    private final ErrorCodeCondition errorCode;
+    private final EventFilter condition;
+
+    private DetectionRule(Builder builder) {
+        this.id = builder.id;
+        this.eventSources = Collections.unmodifiableSet(new LinkedHashSet<String>(builder.eventSources));
+        this.eventNames = Collections.unmodifiableSet(new LinkedHashSet<String>(builder.eventNames));
+        this.errorCode = builder.errorCode;
+        this.condition = builder.condition;
+    }
+
+    /**
+     * @return the identifier of the rule.
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * @return the event sources the rule matches; empty to match any.
+     */
+    public Set<String> getEventSources() {
+        return this.eventSources;
+    }
+
+    /**
+     * @return the event names the rule matches; empty to match any.
+     */
+    public Set<String> getEventNames() {
+        return this.eventNames;
+    }
+
+    /**
+     * @return whether the rule requires an error code.
+     */
+    public ErrorCodeCondition getErrorCode() {
+        return this.errorCode;
+    }
+
+    /**
+     * @return the condition checked after the indexed fields, or <code>null</code> if there is none.
+     */
+    public EventFilter getCondition() {
+        return this.condition;
+    }
+
+    /**
+     * Check every part of the rule against an event, without an index.
+     *
+     * @param event the event to check.
+     * @return <code>true</code> if the rule matches the event.
+     * @throws CallbackException if the condition fails.
+     */
+    public boolean matches(CloudTrailEvent event) throws CallbackException {
+        CloudTrailEventData eventData = event.getEventData();
+        if (!this.eventSources.isEmpty() && !this.eventSources.contains(eventData.getEventSource())) {
+            return false;
+        }
+        if (!this.eventNames.isEmpty() && !this.eventNames.contains(eventData.getEventName())) {
+            return false;
+        }
+        if (this.errorCode != ErrorCodeCondition.ANY
+                && (eventData.getErrorCode() != null) != (this.errorCode == ErrorCodeCondition.PRESENT)) {
+            return false;
+        }
+        return this.matchesCondition(event);
+    }
+
+    /**
+     * Check only the condition of the rule, for events already known to match the indexed fields.
+     */
+    boolean matchesCondition(CloudTrailEvent event) throws CallbackException {
+        return this.condition == null || this.condition.filterEvent(event);
+    }
+
+    @Override
+    public String toString() {
+        return "DetectionRule(" + this.id + ")";
+    }
+
+    public static class Builder {
+        private final String id;
+        private final Set<String> eventSources = new LinkedHashSet<String>();
+        private final Set<String> eventNames = new LinkedHashSet<String>();
+        private ErrorCodeCondition errorCode = ErrorCodeCondition.ANY;
+        private EventFilter condition;
+
+        /**
+         * Builder for {@link DetectionRule}.
+         *
+         * @param id the identifier of the rule, reported with its matches.
+         */
+        public Builder(String id) {
+            LibraryUtils.checkArgumentNotNull(id, "Rule id is null.");
+            this.id = id;
+        }
+
+        /**
+         * Adds event sources the rule matches, such as <code>iam.amazonaws.com</code>.
+         *
+         * @param eventSources the event sources.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withEventSource(String... eventSources) {
+            this.addAll(this.eventSources, eventSources, "Event source is null.");
+            return this;
+        }
+
+        /**
+         * Adds event names the rule matches, such as <code>CreateAccessKey</code>.
+         *
+         * @param eventNames the event names.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withEventName(String... eventNames) {
+            this.addAll(this.eventNames, eventNames, "Event name is null.");
+            return this;
+        }
+
+        /**
+         * Applies whether the rule requires an error code; the default is {@link ErrorCodeCondition#ANY}.
+         *
+         * @param errorCode the error code requirement.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withErrorCode(ErrorCodeCondition errorCode) {
+            LibraryUtils.checkArgumentNotNull(errorCode, "Error code condition is null.");
+            this.errorCode = errorCode;
+            return this;
+        }
+
+        /**
+         * Applies a condition checked after the indexed fields match. The condition must be thread safe.
+         *
+         * @param condition the {@link EventFilter} that accepts matching events.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder withCondition(EventFilter condition) {
+            this.condition = condition;
+            return this;
+        }
+
+        /**
+         * Build a {@link DetectionRule}.
+         *
+         * @return the {@link DetectionRule}.
+         */
+        public DetectionRule build() {
+            return new DetectionRule(this);
+        }
+
+        private void addAll(Set<String> set, String[] values, String message) {
+            LibraryUtils.checkArgumentNotNull(values, message);
+            for (String value : values) {
+                LibraryUtils.checkArgumentNotNull(value, message);
+            }
+            set.addAll(Arrays.asList(values));
+        }
+    }
+}
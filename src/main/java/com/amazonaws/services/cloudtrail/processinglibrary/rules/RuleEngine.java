@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.CallbackException;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEventData;
+import com.amazonaws.services.cloudtrail.processinglibrary.rules.DetectionRule.ErrorCodeCondition;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * Matches events against a set of {@link DetectionRule}s, checking each event only against the rules that can match
+ * it.
+ * <p>
+ * Rules are indexed by event source, then event name, with a slot at each level for rules that match any value. Each
+ * slot holds two arrays of rules: those that accept events with an error code and those that accept events without
+ * one. An event therefore looks up at most four slots, and only evaluates the conditions of rules that already match
+ * its <code>eventSource</code>, <code>eventName</code> and <code>errorCode</code>. The cost of an event depends on how
+ * many rules share its fields rather than on the total number of rules.
+ * <p>
+ * The index is built once and never changes, so this class is thread safe as long as the rule conditions are.
+ */
+public class RuleEngine {
+    private static final DetectionRule[] NO_RULES = new DetectionRule[0];
+
+    private final List<DetectionRule> rules;
+    private final Map<String, SourceIndex> bySource = new HashMap<String, SourceIndex>();
+    private final SourceIndex anySource = new SourceIndex();
+
+    /**
+     * Initialize a new <code>RuleEngine</code>.
+     *
+     * @param rules the rules to match events against; identifiers must be unique.
+     */
+    public RuleEngine(Collection<DetectionRule> rules) {
+        LibraryUtils.checkArgumentNotNull(rules, "Rules are null.");
+        this.rules = Collections.unmodifiableList(new ArrayList<DetectionRule>(rules));
+
+        Set<String> ids = new HashSet<String>();
+        for (DetectionRule rule : this.rules) {
+            LibraryUtils.checkArgumentNotNull(rule, "Rule is null.");
+            LibraryUtils.checkCondition(!ids.add(rule.getId()), "Duplicate rule id " + rule.getId() + ".");
+            for (SourceIndex sourceIndex : this.sourceIndexes(rule)) {
+                for (Slot slot : sourceIndex.slots(rule)) {
+                    slot.add(rule);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the rules, in the order they were given.
+     */
+    public List<DetectionRule> getRules() {
+        return this.rules;
+    }
+
+    /**
+     * Find the rules that match an event.
+     *
+     * @param event the event to match.
+     * @param matches the list to add a {@link RuleMatch} to for each matching rule.
+     * @return the number of matching rules.
+     * @throws CallbackException if a rule condition fails.
+     */
+    public int match(CloudTrailEvent event, List<RuleMatch> matches) throws CallbackException {
+        CloudTrailEventData eventData = event.getEventData();
+        String eventSource = eventData.getEventSource();
+        String eventName = eventData.getEventName();
+        boolean hasErrorCode = eventData.getErrorCode() != null;
+
+        int count = 0;
+        if (eventSource != null) {
+            SourceIndex sourceIndex = this.bySource.get(eventSource);
+            if (sourceIndex != null) {
+                count += sourceIndex.match(event, eventName, hasErrorCode, matches);
+            }
+        }
+        count += this.anySource.match(event, eventName, hasErrorCode, matches);
+        return count;
+    }
+
+    /**
+     * Find the indexes of the event sources of a rule, creating them as needed.
+     */
+    private List<SourceIndex> sourceIndexes(DetectionRule rule) {
+        if (rule.getEventSources().isEmpty()) {
+            return Collections.singletonList(this.anySource);
+        }
+        List<SourceIndex> sourceIndexes = new ArrayList<SourceIndex>();
+        for (String eventSource : rule.getEventSources()) {
+            SourceIndex sourceIndex = this.bySource.get(eventSource);
+            if (sourceIndex == null) {
+                sourceIndex = new SourceIndex();
+                this.bySource.put(eventSource, sourceIndex);
+            }
+            sourceIndexes.add(sourceIndex);
+        }
+        return sourceIndexes;
+    }
+
+    /**
+     * The rules of one event source, or of any event source, by event name.
+     */
+    private static class SourceIndex {
+        private final Map<String, Slot> byName = new HashMap<String, Slot>();
+        private final Slot anyName = new Slot();
+
+        List<Slot> slots(DetectionRule rule) {
+            if (rule.getEventNames().isEmpty()) {
+                return Collections.singletonList(this.anyName);
+            }
+            List<Slot> slots = new ArrayList<Slot>();
+            for (String eventName : rule.getEventNames()) {
+                Slot slot = this.byName.get(eventName);
+                if (slot == null) {
+                    slot = new Slot();
+                    this.byName.put(eventName, slot);
+                }
+                slots.add(slot);
+            }
+            return slots;
+        }
+
+        int match(CloudTrailEvent event, String eventName, boolean hasErrorCode, List<RuleMatch> matches)
+                throws CallbackException {
+            int count = 0;
+            if (eventName != null) {
+                Slot slot = this.byName.get(eventName);
+                if (slot != null) {
+                    count += slot.match(event, hasErrorCode, matches);
+                }
+            }
+            return count + this.anyName.match(event, hasErrorCode, matches);
+        }
+    }
+
+    /**
+     * The rules of one event source and event name, split by whether they accept events with an error code. Arrays
+     * rather than lists keep the per-event loop free of iterators.
+     */
+    private static class Slot {
+        private DetectionRule[] withErrorCode = NO_RULES;
+        private DetectionRule[] withoutErrorCode = NO_RULES;
+
+        void add(DetectionRule rule) {
+            if (rule.getErrorCode() != ErrorCodeCondition.ABSENT) {
+                this.withErrorCode = append(this.withErrorCode, rule);
+            }
+            if (rule.getErrorCode() != ErrorCodeCondition.PRESENT) {
+                this.withoutErrorCode = append(this.withoutErrorCode, rule);
+            }
+        }
+
+        private static DetectionRule[] append(DetectionRule[] rules, DetectionRule rule) {
+            DetectionRule[] appended = Arrays.copyOf(rules, rules.length + 1);
+            appended[rules.length] = rule;
+            return appended;
+        }
+
+        int match(CloudTrailEvent event, boolean hasErrorCode, List<RuleMatch> matches) throws CallbackException {
+            int count = 0;
+            for (DetectionRule rule : hasErrorCode ? this.withErrorCode : this.withoutErrorCode) {
+                if (rule.matchesCondition(event)) {
+                    matches.add(new RuleMatch(rule, event));
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.CallbackException;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.EventsProcessor;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.utils.LibraryUtils;
+
+/**
+ * Implementation of EventsProcessor that matches events against a {@link RuleEngine} and hands the matches of each
+ * batch to a {@link RuleMatchListener} in a single call.
+ * <p>
+ * Batches without matches do not call the listener. This class is thread safe as long as the listener and the rule
+ * conditions are.
+ */
+public class RuleEngineEventsProcessor implements EventsProcessor {
+    private final RuleEngine ruleEngine;
+    private final RuleMatchListener listener;
+
+    /**
+     * Initialize a new <code>RuleEngineEventsProcessor</code>.
+     *
+     * @param ruleEngine the {@link RuleEngine} to match events against.
+     * @param listener the {@link RuleMatchListener} that receives the matches.
+     */
+    public RuleEngineEventsProcessor(RuleEngine ruleEngine, RuleMatchListener listener) {
+        LibraryUtils.checkArgumentNotNull(ruleEngine, "Rule engine is null.");
+        LibraryUtils.checkArgumentNotNull(listener, "Rule match listener is null.");
+        this.ruleEngine = ruleEngine;
+        this.listener = listener;
+    }
+
+    @Override
+    public void process(List<CloudTrailEvent> events) throws CallbackException {
+        List<RuleMatch> matches = new ArrayList<RuleMatch>();
+        for (CloudTrailEvent event : events) {
+            this.ruleEngine.match(event, matches);
+        }
+        if (!matches.isEmpty()) {
+            this.listener.matched(matches);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.rules;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+
+/**
+ * An event matched by a {@link DetectionRule}.
+ */
+public class RuleMatch {
+    private final DetectionRule rule;
+    private final CloudTrailEvent event;
+
+    /**
+     * Initialize a new <code>RuleMatch</code>.
+     *
+     * @param rule the rule that matched.
+     * @param event the event it matched.
+     */
+    public RuleMatch(DetectionRule rule, CloudTrailEvent event) {
+        this.rule = rule;
+        this.event = event;
+    }
+
+    /**
+     * @return the rule that matched.
+     */
+    public DetectionRule getRule() {
+        return this.rule;
+    }
+
+    /**
+     * @return the event it matched.
+     */
+    public CloudTrailEvent getEvent() {
+        return this.event;
+    }
+
+    @Override
+    public String toString() {
+        return "RuleMatch(" + this.rule.getId() + ")";
+    }
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.rules;
+
+import java.util.List;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.exceptions.CallbackException;
+
+/**
+ * Receives the matches of a {@link RuleEngineEventsProcessor}.
+ */
+public interface RuleMatchListener {
+    /**
+     * A callback method that receives the matches found in one batch of events.
+     * <p>
+     * Matches are in event order. Matches of one event are grouped together, in no particular order of rules.
+     *
+     * @param matches the matches; never empty.
+     * @throws CallbackException if an error occurs while handling the matches.
+     */
+    public void matched(List<RuleMatch> matches) throws CallbackException;
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter over 64-bit hashes.
+ * <p>
+ * The filter is sized from the expected number of insertions and the desired false-positive rate, so its memory does
+ * not grow with the number of values added. Bits are held either on the heap in an <code>AtomicLongArray</code>, and
+ * set with compare-and-swap, or off the heap in a direct <code>ByteBuffer</code> guarded by striped locks.
+ */
+public class BloomFilter {
+    private static final int LOCK_STRIPES = 64;
+    private static final double LN2 = Math.log(2);
+
+    private final long bitCount;
+    private final int hashCount;
+    private final int wordCount;
+
+    /* exactly one of the two bit stores is used */
+    private final AtomicLongArray heapWords;
+    private final ByteBuffer offHeapWords;
+    private final Object[] locks;
+
+    /**
+     * Initialize a new <code>BloomFilter</code>.
+     *
+     * @param expectedInsertions the number of values expected to be added.
+     * @param falsePositiveRate the desired probability that an absent value is reported present, between 0 and 1.
+     * @param offHeap <code>true</code> to allocate the bits outside the Java heap.
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate, boolean offHeap) {
+        LibraryUtils.checkCondition(expectedInsertions < 1, "Expected insertions cannot be less than 1.");
+        LibraryUtils.checkCondition(falsePositiveRate <= 0 || falsePositiveRate >= 1,
+                "False positive rate must be between 0 and 1.");
+
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (LN2 * LN2));
+        long words = (bits + Long.SIZE - 1) / Long.SIZE;
+        LibraryUtils.checkCondition(words > Integer.MAX_VALUE / Long.SIZE, "Bloom filter is too large.");
+
+        this.wordCount = (int) words;
+        this.bitCount = words * Long.SIZE;
+        this.hashCount = Math.max(1, (int) Math.round((double) this.bitCount / expectedInsertions * LN2));
+
+        if (offHeap) {
+            this.heapWords = null;
+            this.offHeapWords = ByteBuffer.allocateDirect(this.wordCount * (Long.SIZE / Byte.SIZE));
+            this.locks = new Object[LOCK_STRIPES];
+            for (int i = 0; i < LOCK_STRIPES; i++) {
+                this.locks[i] = new Object();
+            }
+        } else {
+            this.heapWords = new AtomicLongArray(this.wordCount);
+            this.offHeapWords = null;
+            this.locks = null;
+        }
+    }
+
+    /**
+     * Add a value to the filter.
+     *
+     * @param hash a well-distributed 64-bit hash of the value, see {@link Hashing}.
+     * @return <code>true</code> if the filter changed, meaning the value was definitely not present before.
+     */
+    public boolean put(long hash) {
+        boolean changed = false;
+        for (int i = 0; i < this.hashCount; i++) {
+            changed |= this.setBit(this.bitIndex(hash, i));
+        }
+        return changed;
+    }
+
+    /**
+     * Check whether a value might have been added to the filter.
+     *
+     * @param hash a well-distributed 64-bit hash of the value, see {@link Hashing}.
+     * @return <code>false</code> if the value was definitely never added.
+     */
+    public boolean mightContain(long hash) {
+        for (int i = 0; i < this.hashCount; i++) {
+            if (!this.getBit(this.bitIndex(hash, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove every value from the filter.
+     */
+    public void clear() {
+        for (int i = 0; i < this.wordCount; i++) {
+            if (this.heapWords != null) {
+                this.heapWords.set(i, 0L);
+            } else {
+                synchronized (this.locks[i % LOCK_STRIPES]) {
+                    this.offHeapWords.putLong(i * (Long.SIZE / Byte.SIZE), 0L);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the size of the filter, in bits.
+     */
+    public long getBitCount() {
+        return this.bitCount;
+    }
+
+    /**
+     * @return the number of bits set per value.
+     */
+    public int getHashCount() {
+        return this.hashCount;
+    }
+
+    /**
+     * Derive the i-th bit index by double hashing the two halves of the hash.
+     */
+    private long bitIndex(long hash, int i) {
+        long combined = (hash >>> 32) + i * (hash & 0xffffffffL | 1L);
+        return (combined & Long.MAX_VALUE) % this.bitCount;
+    }
+
+    private boolean setBit(long bitIndex) {
+        int word = (int) (bitIndex >>> 6);
+        long mask = 1L << bitIndex;
+
+        if (this.heapWords != null) {
+            while (true) {
+                long current = this.heapWords.get(word);
+                if ((current & mask) != 0) {
+                    return false;
+                }
+                if (this.heapWords.compareAndSet(word, current, current | mask)) {
+                    return true;
+                }
+            }
+        }
+
+        synchronized (this.locks[word % LOCK_STRIPES]) {
+            int offset = word * (Long.SIZE / Byte.SIZE);
+            long current = this.offHeapWords.getLong(offset);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            this.offHeapWords.putLong(offset, current | mask);
+            return true;
+        }
+    }
+
+    private boolean getBit(long bitIndex) {
+        int word = (int) (bitIndex >>> 6);
+        long mask = 1L << bitIndex;
+
+        if (this.heapWords != null) {
+            return (this.heapWords.get(word) & mask) != 0;
+        }
+        synchronized (this.locks[word % LOCK_STRIPES]) {
+            return (this.offHeapWords.getLong(word * (Long.SIZE / Byte.SIZE)) & mask) != 0;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.utils;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+
+/**
+ * Detects CloudTrail events that were already emitted, by <code>eventID</code>.
+ * <p>
+ * An organization trail and an account trail deliver the same event in different log files. This class remembers the
+ * event IDs emitted within a time window, one set of {@link BloomFilter}s per time bucket. Each event is checked
+ * against every live bucket with {@link #isDuplicate(CloudTrailEvent)}, and added to the current one with
+ * {@link #recordEmitted(List)} only once the <code>EventsProcessor</code> has accepted it, so the events of a failed
+ * batch are not dropped when their message is redelivered. When time moves into a new bucket, the oldest bucket is
+ * cleared and reused.
+ * <p>
+ * A false positive drops an event that was not a duplicate, so the false-positive rate is bounded rather than the
+ * memory. Each bucket starts with one filter sized for the expected events per bucket. When that filter holds as
+ * many IDs as it was sized for, a filter twice as large with half the false-positive rate is added to the bucket,
+ * and a warning is logged the first time a bucket grows. The rates of a bucket's filters add up to at most the
+ * configured rate divided by the number of buckets, so the rate across the whole window stays below the configured
+ * rate however many events arrive. Memory grows with the events emitted beyond the expected count, and is released
+ * when the bucket leaves the window.
+ * <p>
+ * Only copies that arrive after the first copy was processed are detected. The first copy is remembered once the batch
+ * holding it is accepted, which is after its whole log file was read when a log file fits in one batch. Copies read
+ * concurrently, such as the organization trail and account trail log files of the same period when they are delivered
+ * together, are often both emitted.
+ * <p>
+ * This class is thread safe.
+ */
+public class EventDeduplicator {
+    private static final Log logger = LogFactory.getLog(EventDeduplicator.class);
+
+    private final Bucket[] buckets;
+    private final long bucketMillis;
+
+    /**
+     * The time bucket the newest filter covers, as a multiple of <code>bucketMillis</code>.
+     */
+    private volatile long currentBucket;
+
+    private final AtomicLong duplicateCount = new AtomicLong();
+
+    /**
+     * Initialize a new <code>EventDeduplicator</code>.
+     *
+     * @param windowSeconds how long, in seconds, an emitted event ID is remembered.
+     * @param bucketCount the number of time buckets the window is split into.
+     * @param expectedEventsPerBucket the number of events expected to be emitted per bucket; more are handled by
+     *     adding filters.
+     * @param falsePositiveRate the accepted probability of dropping an event that is not a duplicate.
+     * @param offHeap <code>true</code> to allocate the filters outside the Java heap.
+     */
+    public EventDeduplicator(int windowSeconds, int bucketCount, long expectedEventsPerBucket,
+            double falsePositiveRate, boolean offHeap) {
+        LibraryUtils.checkCondition(windowSeconds < 1, "Deduplication window cannot be less than 1 second.");
+        LibraryUtils.checkCondition(bucketCount < 1, "Deduplication bucket count cannot be less than 1.");
+        LibraryUtils.checkCondition(expectedEventsPerBucket < 1, "Expected events per bucket cannot be less than 1.");
+        LibraryUtils.checkCondition(falsePositiveRate <= 0 || falsePositiveRate >= 1,
+                "False positive rate must be between 0 and 1.");
+
+        this.bucketMillis = Math.max(1, TimeUnit.SECONDS.toMillis(windowSeconds) / bucketCount);
+
+        // one extra bucket holds the partially filled current one, so a full window is always covered
+        this.buckets = new Bucket[bucketCount + 1];
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new Bucket(expectedEventsPerBucket, falsePositiveRate / this.buckets.length, offHeap);
+        }
+        this.currentBucket = System.currentTimeMillis() / this.bucketMillis;
+    }
+
+    /**
+     * Check whether an event was already emitted within the window. The event is not remembered; call
+     * {@link #recordEmitted(List)} once it has been processed.
+     *
+     * @param event the {@link CloudTrailEvent} to check.
+     * @return <code>true</code> if the event is a duplicate and should be dropped.
+     */
+    public boolean isDuplicate(CloudTrailEvent event) {
+        UUID eventId = event.getEventData().getEventId();
+        if (eventId == null) {
+            return false;
+        }
+
+        long hash = hash(eventId);
+        this.rotate(System.currentTimeMillis() / this.bucketMillis);
+
+        boolean duplicate = false;
+        for (int i = 0; i < this.buckets.length && !duplicate; i++) {
+            duplicate = this.buckets[i].mightContain(hash);
+        }
+
+        if (duplicate) {
+            this.duplicateCount.incrementAndGet();
+        }
+        return duplicate;
+    }
+
+    /**
+     * Remember the event IDs of events that were processed, so later copies are detected as duplicates.
+     *
+     * @param events the events accepted by the <code>EventsProcessor</code>.
+     */
+    public void recordEmitted(List<CloudTrailEvent> events) {
+        Bucket current = this.buckets[this.slot(this.rotate(System.currentTimeMillis() / this.bucketMillis))];
+        for (CloudTrailEvent event : events) {
+            UUID eventId = event.getEventData().getEventId();
+            if (eventId != null) {
+                current.put(hash(eventId));
+            }
+        }
+    }
+
+    /**
+     * @return the number of duplicate events detected.
+     */
+    public long getDuplicateCount() {
+        return this.duplicateCount.get();
+    }
+
+    /**
+     * Advance to a new time bucket, clearing the buckets that fell out of the window.
+     *
+     * @param bucket the time bucket of the current time.
+     * @return the current time bucket.
+     */
+    private long rotate(long bucket) {
+        if (bucket <= this.currentBucket) {
+            return this.currentBucket;
+        }
+        synchronized (this) {
+            long previous = this.currentBucket;
+            if (bucket > previous) {
+                long stale = Math.min(bucket - previous, this.buckets.length);
+                for (long b = bucket - stale + 1; b <= bucket; b++) {
+                    this.buckets[this.slot(b)].clear();
+                }
+                this.currentBucket = bucket;
+            }
+            return this.currentBucket;
+        }
+    }
+
+    private static long hash(UUID eventId) {
+        return Hashing.hash64(eventId.getMostSignificantBits(), eventId.getLeastSignificantBits());
+    }
+
+    private int slot(long bucket) {
+        return (int) (bucket % this.buckets.length);
+    }
+
+    /**
+     * The filters of one time bucket, which grow when more IDs arrive than the first filter was sized for.
+     */
+    private static class Bucket {
+        private final long expectedInsertions;
+        private final double falsePositiveRate;
+        private final boolean offHeap;
+
+        /**
+         * The filters, oldest first; only the last one is added to. Replaced, never modified, when a filter is added.
+         */
+        private volatile BloomFilter[] filters;
+
+        /**
+         * The number of IDs added to the last filter, and the number it was sized for.
+         */
+        private final AtomicLong insertions = new AtomicLong();
+        private volatile long capacity;
+
+        Bucket(long expectedInsertions, double falsePositiveRate, boolean offHeap) {
+            this.expectedInsertions = expectedInsertions;
+            // the rates of the filters halve, so they add up to at most twice the rate of the first one
+            this.falsePositiveRate = falsePositiveRate / 2;
+            this.offHeap = offHeap;
+            this.filters = new BloomFilter[] {new BloomFilter(expectedInsertions, this.falsePositiveRate, offHeap)};
+            this.capacity = expectedInsertions;
+        }
+
+        boolean mightContain(long hash) {
+            for (BloomFilter filter : this.filters) {
+                if (filter.mightContain(hash)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void put(long hash) {
+            BloomFilter[] filters = this.filters;
+            if (filters[filters.length - 1].put(hash) && this.insertions.incrementAndGet() >= this.capacity) {
+                this.grow(filters);
+            }
+        }
+
+        private synchronized void grow(BloomFilter[] full) {
+            if (this.filters != full) {
+                return;
+            }
+            if (full.length == 1) {
+                logger.warn(this.expectedInsertions + " event IDs were emitted in one deduplication "
+                        + "bucket; adding Bloom filters to keep the false-positive rate.");
+            }
+            long capacity = this.capacity * 2;
+            double rate = this.falsePositiveRate / (1L << Math.min(full.length, 62));
+
+            BloomFilter[] grown = new BloomFilter[full.length + 1];
+            System.arraycopy(full, 0, grown, 0, full.length);
+            grown[full.length] = new BloomFilter(capacity, rate, this.offHeap);
+
+            this.capacity = capacity;
+            this.insertions.set(0);
+            this.filters = grown;
+        }
+
+        /**
+         * Remove every ID, dropping the filters added since the bucket was last cleared.
+         */
+        synchronized void clear() {
+            BloomFilter first = this.filters[0];
+            first.clear();
+            this.capacity = this.expectedInsertions;
+            this.insertions.set(0);
+            this.filters = new BloomFilter[] {first};
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.utils;
+
+/**
+ * Non-cryptographic hash functions used by the AWS CloudTrail Processing Library's compact in-memory structures.
+ */
+public class Hashing {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Compute a well-distributed 64-bit hash of a string.
+     * <p>
+     * Each character is folded in with FNV-1a and the result is finalized with the MurmurHash3 64-bit mix, so every
+     * bit of the result depends on every character.
+     *
+     * @param value the string to hash.
+     * @return the 64-bit hash.
+     */
+    public static long hash64(CharSequence value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash ^= (c & 0xff);
+            hash *= FNV_PRIME;
+            hash ^= (c >>> 8);
+            hash *= FNV_PRIME;
+        }
+        return mix64(hash);
+    }
+
+    /**
+     * Compute a well-distributed 64-bit hash of two longs, i.e. the halves of a UUID.
+     *
+     * @param high the most significant bits.
+     * @param low the least significant bits.
+     * @return the 64-bit hash.
+     */
+    public static long hash64(long high, long low) {
+        return mix64(mix64(high) ^ low);
+    }
+
+    /**
+     * The MurmurHash3 64-bit finalizer.
+     *
+     * @param value the value to mix.
+     * @return the mixed value.
+     */
+    public static long mix64(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
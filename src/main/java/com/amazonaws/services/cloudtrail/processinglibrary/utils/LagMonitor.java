@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.utils;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailEvent;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailSource;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.SourceAttributeKeys;
+
+/**
+ * Measures how far behind real time the AWS CloudTrail Processing Library is, per account.
+ * <p>
+ * The monitor records three lags, each as a {@link LatencyHistogram}:
+ * <ul>
+ *   <li><i>event lag</i>, from the <code>eventTime</code> of each event to its emission, covering CloudTrail delivery
+ *   and processing, recorded per event by {@link #recordEmit(CloudTrailSource, List)};</li>
+ *   <li><i>queue lag</i>, from the SQS <code>SentTimestamp</code> of a source until it is processed;</li>
+ *   <li><i>receive lag</i>, from the SQS <code>ApproximateFirstReceiveTimestamp</code> of a source until it is
+ *   processed, which grows when messages are redelivered.</li>
+ * </ul>
+ * The queue and receive lags belong to the source, so {@link #recordSource(CloudTrailSource)} records them once per
+ * source, no matter how many events it holds.
+ * It also keeps a watermark per account, the latest <code>eventTime</code> emitted. The age of the watermark keeps
+ * growing while an account's events are not emitted, so alert on it rather than on the histograms alone.
+ * <p>
+ * Events are attributed to the <code>accountId</code> attribute of their source, or to the account of the event when
+ * the source has none. Source lags of a source without an <code>accountId</code> are attributed to
+ * {@link #UNKNOWN_ACCOUNT}. Lags are measured with the wall clock, so clock skew between CloudTrail and this host shifts
+ * them; negative lags are recorded as zero. This class is thread safe.
+ */
+public class LagMonitor {
+    /**
+     * The account of events whose source and event carry no account ID.
+     */
+    public static final String UNKNOWN_ACCOUNT = "unknown";
+
+    private final ConcurrentMap<String, AccountLag> accounts = new ConcurrentHashMap<String, AccountLag>();
+
+    /**
+     * Record the event lags of a batch of events at emit time.
+     *
+     * @param source the {@link CloudTrailSource} the events were read from.
+     * @param events the emitted {@link CloudTrailEvent}s.
+     */
+    public void recordEmit(CloudTrailSource source, List<CloudTrailEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Map<String, String> attributes = source.getSourceAttributes();
+        if (attributes == null) {
+            attributes = Collections.emptyMap();
+        }
+
+        String sourceAccountId = attributes.get(SourceAttributeKeys.ACCOUNT_ID.getAttributeKey());
+        AccountLag lag = sourceAccountId == null ? null : this.getAccountLag(sourceAccountId);
+
+        for (CloudTrailEvent event : events) {
+            AccountLag eventLag = lag;
+            if (eventLag == null) {
+                String accountId = event.getEventData().getRecipientAccountId();
+                eventLag = this.getAccountLag(accountId == null ? UNKNOWN_ACCOUNT : accountId);
+            }
+
+            Date eventTime = event.getEventData().getEventTime();
+            if (eventTime != null) {
+                eventLag.eventLag.record(toNanos(now - eventTime.getTime()));
+                eventLag.advanceWatermark(eventTime.getTime());
+            }
+        }
+    }
+
+    /**
+     * Record the queue and receive lags of a source once it is processed.
+     *
+     * @param source the processed {@link CloudTrailSource}.
+     */
+    public void recordSource(CloudTrailSource source) {
+        Map<String, String> attributes = source.getSourceAttributes();
+        if (attributes == null) {
+            return;
+        }
+
+        long sentTimestamp = parseTimestamp(attributes.get(SourceAttributeKeys.SEND_TIMESTAMP.getAttributeKey()));
+        long firstReceiveTimestamp = parseTimestamp(attributes.get(SourceAttributeKeys.APPROXIMATE_FIRST_RECEIVE_TIMESTAMP.getAttributeKey()));
+        if (sentTimestamp <= 0 && firstReceiveTimestamp <= 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        String accountId = attributes.get(SourceAttributeKeys.ACCOUNT_ID.getAttributeKey());
+        AccountLag lag = this.getAccountLag(accountId == null ? UNKNOWN_ACCOUNT : accountId);
+        if (sentTimestamp > 0) {
+            lag.queueLag.record(toNanos(now - sentTimestamp));
+        }
+        if (firstReceiveTimestamp > 0) {
+            lag.receiveLag.record(toNanos(now - firstReceiveTimestamp));
+        }
+    }
+
+    /**
+     * Get the watermark of an account.
+     *
+     * @param accountId the account to look up.
+     * @return the latest <code>eventTime</code> emitted for the account, in milliseconds since the epoch, or
+     *     <code>0</code> if none was emitted.
+     */
+    public long getWatermark(String accountId) {
+        AccountLag lag = this.accounts.get(accountId);
+        return lag == null ? 0 : lag.watermark.get();
+    }
+
+    /**
+     * Get the age of the watermark of an account, the gauge to alert on when processing falls behind.
+     *
+     * @param accountId the account to look up.
+     * @return the milliseconds between the watermark of the account and now, or <code>-1</code> if no event was
+     *     emitted for the account.
+     */
+    public long getWatermarkAge(String accountId) {
+        long watermark = this.getWatermark(accountId);
+        return watermark == 0 ? -1 : Math.max(0, System.currentTimeMillis() - watermark);
+    }
+
+    /**
+     * Copy the current lags of every account.
+     *
+     * @return a {@link Snapshot} per account ID, sorted by account ID.
+     */
+    public Map<String, Snapshot> snapshot() {
+        long now = System.currentTimeMillis();
+        Map<String, Snapshot> snapshots = new TreeMap<String, Snapshot>();
+        for (Map.Entry<String, AccountLag> entry : this.accounts.entrySet()) {
+            AccountLag lag = entry.getValue();
+            long watermark = lag.watermark.get();
+            snapshots.put(entry.getKey(), new Snapshot(lag.eventLag.snapshot(), lag.queueLag.snapshot(),
+                    lag.receiveLag.snapshot(), watermark, watermark == 0 ? -1 : Math.max(0, now - watermark)));
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    private AccountLag getAccountLag(String accountId) {
+        AccountLag lag = this.accounts.get(accountId);
+        if (lag == null) {
+            AccountLag newLag = new AccountLag();
+            lag = this.accounts.putIfAbsent(accountId, newLag);
+            if (lag == null) {
+                lag = newLag;
+            }
+        }
+        return lag;
+    }
+
+    private static long parseTimestamp(String timestamp) {
+        if (timestamp == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long toNanos(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+    }
+
+    private static class AccountLag {
+        final LatencyHistogram eventLag = new LatencyHistogram();
+        final LatencyHistogram queueLag = new LatencyHistogram();
+        final LatencyHistogram receiveLag = new LatencyHistogram();
+        final AtomicLong watermark = new AtomicLong();
+
+        void advanceWatermark(long eventTime) {
+            long current = this.watermark.get();
+            while (eventTime > current && !this.watermark.compareAndSet(current, eventTime)) {
+                current = this.watermark.get();
+            }
+        }
+    }
+
+    /**
+     * An immutable copy of the lags of one account. Histogram values are in nanoseconds.
+     */
+    public static class Snapshot {
+        private final LatencyHistogram.Snapshot eventLag;
+        private final LatencyHistogram.Snapshot queueLag;
+        private final LatencyHistogram.Snapshot receiveLag;
+        private final long watermark;
+        private final long watermarkAge;
+
+        private Snapshot(LatencyHistogram.Snapshot eventLag, LatencyHistogram.Snapshot queueLag,
+                LatencyHistogram.Snapshot receiveLag, long watermark, long watermarkAge) {
+            this.eventLag = eventLag;
+            this.queueLag = queueLag;
+            this.receiveLag = receiveLag;
+            this.watermark = watermark;
+            this.watermarkAge = watermarkAge;
+        }
+
+        /**
+         * @return the lags from <code>eventTime</code> to emission.
+         */
+        public LatencyHistogram.Snapshot getEventLag() {
+            return this.eventLag;
+        }
+
+        /**
+         * @return the lags from the SQS <code>SentTimestamp</code> until the source was processed, one per source.
+         */
+        public LatencyHistogram.Snapshot getQueueLag() {
+            return this.queueLag;
+        }
+
+        /**
+         * @return the lags from the SQS <code>ApproximateFirstReceiveTimestamp</code> until the source was processed,
+         *     one per source.
+         */
+        public LatencyHistogram.Snapshot getReceiveLag() {
+            return this.receiveLag;
+        }
+
+        /**
+         * @return the latest <code>eventTime</code> emitted, in milliseconds since the epoch, or <code>0</code>.
+         */
+        public long getWatermark() {
+            return this.watermark;
+        }
+
+        /**
+         * @return the milliseconds between the watermark and the snapshot, or <code>-1</code> without a watermark.
+         */
+        public long getWatermarkAge() {
+            return this.watermarkAge;
+        }
+
+        @Override
+        public String toString() {
+            return "{eventLag: " + this.eventLag + ", queueLag: " + this.queueLag + ", receiveLag: " + this.receiveLag
+                    + ", watermark: " + this.watermark + ", watermarkAge: " + this.watermarkAge + "}";
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies, in nanoseconds, with bounded relative error.
+ * <p>
+ * Values below 64 are counted exactly. Larger values fall into buckets that split every power of two into 32 equal
+ * parts, so any recorded value is reported within about 3% of its true value. Recording is a bucket lookup with a few
+ * bit operations and one atomic increment; there is no lock and no allocation.
+ * <p>
+ * This class is thread safe.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values below this are counted in their own bucket.
+     */
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKET_COUNT;
+
+    private static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos the latency, in nanoseconds; negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        this.buckets.incrementAndGet(bucketIndex(nanos));
+        this.totalNanos.addAndGet(nanos);
+
+        long max = this.maxNanos.get();
+        while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+            max = this.maxNanos.get();
+        }
+    }
+
+    /**
+     * Take a consistent-enough copy of the histogram for reporting. Values recorded while the copy is taken may or may
+     * not be included.
+     *
+     * @return a {@link Snapshot} of the recorded latencies.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = this.buckets.get(i);
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, this.totalNanos.get(), this.maxNanos.get());
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the largest value that falls into the bucket.
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of a {@link LatencyHistogram}.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * @return the number of recorded latencies.
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return the mean latency, in nanoseconds, or 0 if nothing was recorded.
+         */
+        public long getMean() {
+            return this.count == 0 ? 0 : this.totalNanos / this.count;
+        }
+
+        /**
+         * @return the largest recorded latency, in nanoseconds.
+         */
+        public long getMax() {
+            return this.maxNanos;
+        }
+
+        /**
+         * Get the latency at a percentile.
+         *
+         * @param percentile the percentile, from 0 to 100.
+         * @return the latency, in nanoseconds, that the given percentage of recorded latencies do not exceed, or 0 if
+         *     nothing was recorded.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (this.count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * this.count);
+            rank = Math.max(rank, 1);
+
+            long seen = 0;
+            for (int i = 0; i < this.counts.length; i++) {
+                seen += this.counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), this.maxNanos);
+                }
+            }
+            return this.maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("{count: ").append(this.count);
+            builder.append(", meanMillis: ").append(toMillis(this.getMean()));
+            builder.append(", p50Millis: ").append(toMillis(this.getValueAtPercentile(50)));
+            builder.append(", p99Millis: ").append(toMillis(this.getValueAtPercentile(99)));
+            builder.append(", maxMillis: ").append(toMillis(this.maxNanos));
+            builder.append("}");
+            return builder.toString();
+        }
+
+        private static double toMillis(long nanos) {
+            return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
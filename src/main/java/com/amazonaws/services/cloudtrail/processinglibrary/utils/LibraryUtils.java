@@ -15,13 +15,19 @@
 
 package com.amazonaws.services.cloudtrail.processinglibrary.utils;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
 
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.ProgressReporter;
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.SelectiveProgressReporter;
+import com.amazonaws.services.cloudtrail.processinglibrary.progress.ProgressState;
+
 /**
  * Utility methods used by the AWS CloudTrail Processing Library.
  */
@@ -31,7 +37,11 @@ public class LibraryUtils {
     private static final String FORWARD_SLASH = "/";
     private static final String AMAZONAWS_COM = ".amazonaws.com/";
     private static final String UTC_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+    private static final String LOG_FILE_TIMESTAMP_FORMAT = "yyyyMMdd'T'HHmm'Z'";
+    private static final int LOG_FILE_REGION_INDEX = 2;
+    private static final int LOG_FILE_TIMESTAMP_INDEX = 3;
     private static final String UTC_TIME_ZONE = "UTC";
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
 
     /**
      * Check that an object is not <code>null</code>; throw an exception if it
@@ -61,6 +71,19 @@ public class LibraryUtils {
         }
     }
 
+    /**
+     * Check whether a stage should be reported to a {@link ProgressReporter}.
+     *
+     * @param progressReporter the reporter to check.
+     * @param state the {@link ProgressState} about to be reported.
+     * @return <code>false</code> if the reporter is a {@link SelectiveProgressReporter} that is not interested in the
+     *     state; <code>true</code> otherwise.
+     */
+    public static boolean isReportEnabled(ProgressReporter progressReporter, ProgressState state) {
+        return !(progressReporter instanceof SelectiveProgressReporter)
+                || ((SelectiveProgressReporter) progressReporter).isInterestedIn(state);
+    }
+
     /**
      * Convert an
      * <a href="http://docs.oracle.com/javase/7/docs/api/java/io/InputStream.html">InputSteam</a> to a byte array.
@@ -70,13 +93,42 @@ public class LibraryUtils {
      * @throws IOException if the <code>InputStream</code> could not be converted.
      */
     public static byte[] toByteArray(InputStream inputStream) throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        int nRead = 0;
-        byte[] bytes = new byte[1024];
-        while ((nRead = inputStream.read(bytes, 0, 1024)) != -1) {
-            buffer.write(bytes, 0, nRead);
+        return toByteArray(inputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Convert an
+     * <a href="http://docs.oracle.com/javase/7/docs/api/java/io/InputStream.html">InputSteam</a> to a byte array,
+     * reading straight into an array of the expected size.
+     * <p>
+     * When the stream holds exactly the expected number of bytes, they are copied only once. A wrong estimate still
+     * returns the whole stream, at the cost of growing or trimming the array.
+     *
+     * @param inputStream the <code>InputStream</code> to convert.
+     * @param expectedSize the expected number of bytes in the stream.
+     * @return a byte array containing the data from the input stream.
+     * @throws IOException if the <code>InputStream</code> could not be converted.
+     */
+    public static byte[] toByteArray(InputStream inputStream, int expectedSize) throws IOException {
+        byte[] bytes = new byte[Math.max(expectedSize, 1)];
+        int count = 0;
+        while (true) {
+            int nRead = inputStream.read(bytes, count, bytes.length - count);
+            if (nRead == -1) {
+                break;
+            }
+            count += nRead;
+
+            if (count == bytes.length) {
+                int next = inputStream.read();
+                if (next == -1) {
+                    return bytes;
+                }
+                bytes = Arrays.copyOf(bytes, (int) Math.min(Integer.MAX_VALUE - 8, 2L * bytes.length));
+                bytes[count++] = (byte) next;
+            }
         }
-        return buffer.toByteArray();
+        return count == bytes.length ? bytes : Arrays.copyOf(bytes, count);
     }
 
     /**
@@ -137,6 +189,58 @@ public class LibraryUtils {
         return null;
     }
 
+    /**
+     * Extract the region a log file was delivered from, from the file name of an S3 object key.
+     * <p>
+     * For example:
+     * <pre>
+     * input: AWSLogs/123456789012/CloudTrail/us-east-1/2014/02/14/123456789012_CloudTrail_us-east-1_20140214T2230Z_K0UsfksWvF8TBJZy.json.gz
+     * output: us-east-1
+     * </pre>
+     *
+     * @param objectKey The object key to query.
+     * @return the region in the log file name, or <code>null</code> if the file name is not in CloudTrail format.
+     */
+    public static String extractRegionFromObjectKey(String objectKey) {
+        if (objectKey == null) {
+            return null;
+        }
+
+        String fileName = objectKey.substring(objectKey.lastIndexOf(FORWARD_SLASH) + FORWARD_SLASH.length());
+        String[] fileNameParts = fileName.split(UNDER_SCORE);
+        return fileNameParts.length > LOG_FILE_TIMESTAMP_INDEX ? fileNameParts[LOG_FILE_REGION_INDEX] : null;
+    }
+
+    /**
+     * Extract the delivery timestamp from the file name of an S3 object key.
+     * <p>
+     * For example:
+     * <pre>
+     * input: AWSLogs/123456789012/CloudTrail/us-east-1/2014/02/14/123456789012_CloudTrail_us-east-1_20140214T2230Z_K0UsfksWvF8TBJZy.json.gz
+     * output: 2014-02-14T22:30:00Z
+     * </pre>
+     *
+     * @param objectKey The object key to query.
+     * @return the timestamp in the log file name, or <code>null</code> if the file name is not in CloudTrail format.
+     */
+    public static Date extractTimestampFromObjectKey(String objectKey) {
+        if (objectKey == null) {
+            return null;
+        }
+
+        String fileName = objectKey.substring(objectKey.lastIndexOf(FORWARD_SLASH) + FORWARD_SLASH.length());
+        String[] fileNameParts = fileName.split(UNDER_SCORE);
+
+        if (fileNameParts.length > LOG_FILE_TIMESTAMP_INDEX) {
+            try {
+                return logFileSdf.get().parse(fileNameParts[LOG_FILE_TIMESTAMP_INDEX]);
+            } catch (ParseException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
     /**
      * SimpleDateFormat is not thread safe. Defining it as a static ThreadLocal to synchronize is less expensive than
      * creating a SimpleDateFormat object each time.
@@ -150,6 +254,18 @@ public class LibraryUtils {
         }
     };
 
+    /**
+     * Parses the timestamp embedded in CloudTrail log file names.
+     */
+    private static ThreadLocal<SimpleDateFormat> logFileSdf = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            SimpleDateFormat sdf = new SimpleDateFormat(LOG_FILE_TIMESTAMP_FORMAT, Locale.US); // $NON_NLS_L$
+            sdf.setTimeZone(TimeZone.getTimeZone(UTC_TIME_ZONE));
+            return sdf;
+        }
+    };
+
     /**
      * Get a timestamp in
      * <a href="http://docs.oracle.com/javase/7/docs/api/java/text/SimpleDateFormat.html">SimpleDateFormat</a>.
@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A size-bounded, least recently used cache of downloaded CloudTrail log files on local disk.
+ * <p>
+ * When a message is redelivered after a processing failure, the same log file would be downloaded again. This cache
+ * keeps the compressed bytes of each downloaded log file, keyed by bucket, object key and ETag, so a retry only needs
+ * a conditional GET to confirm that the cached ETag is still current. Once the cached bytes exceed the configured
+ * size, the least recently used files are deleted.
+ * <p>
+ * Each file records its bucket, object key and ETag in a header, so the cache index is rebuilt from the directory on
+ * startup and replays after a restart are still served from disk.
+ * <p>
+ * This class is thread safe.
+ */
+public class LogFileCache {
+    private static final Log logger = LogFactory.getLog(LogFileCache.class);
+
+    private static final int MAGIC = 0x43544c43; // "CTLC"
+    private static final String FORWARD_SLASH = "/";
+    private static final String FILE_SUFFIX = ".log";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxBytes;
+
+    /**
+     * Cached log files by <code>bucket/objectKey</code>, least recently used first.
+     */
+    private final LinkedHashMap<String, Entry> entries;
+    private long totalBytes;
+
+    /**
+     * Initialize a new <code>LogFileCache</code>, loading the log files already cached in the directory.
+     *
+     * @param directory the directory in which to store cached log files.
+     * @param maxBytes the maximum number of log file bytes to keep on disk.
+     * @throws IOException if the directory cannot be created.
+     */
+    public LogFileCache(File directory, long maxBytes) throws IOException {
+        LibraryUtils.checkArgumentNotNull(directory, "Log file cache directory is null.");
+        LibraryUtils.checkCondition(maxBytes < 1, "Log file cache size cannot be less than 1 byte.");
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create log file cache directory " + directory);
+        }
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+        this.load();
+    }
+
+    /**
+     * Get the ETag of the cached copy of a log file.
+     *
+     * @param bucketName the S3 bucket of the log file.
+     * @param objectKey the S3 object key of the log file.
+     * @return the ETag of the cached copy, or <code>null</code> if the log file is not cached.
+     */
+    public synchronized String getETag(String bucketName, String objectKey) {
+        Entry entry = this.entries.get(toKey(bucketName, objectKey));
+        return entry == null ? null : entry.eTag;
+    }
+
+    /**
+     * Read the cached copy of a log file.
+     *
+     * @param bucketName the S3 bucket of the log file.
+     * @param objectKey the S3 object key of the log file.
+     * @param eTag the ETag the cached copy must have.
+     * @return the cached log file bytes, or <code>null</code> if no copy with that ETag is cached or it cannot be read.
+     */
+    public byte[] get(String bucketName, String objectKey, String eTag) {
+        String key = toKey(bucketName, objectKey);
+        Entry entry;
+        synchronized (this) {
+            entry = this.entries.get(key);
+        }
+        if (entry == null || !entry.eTag.equals(eTag)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry.file)))) {
+            Entry header = readHeader(in, entry.file);
+            if (header == null || !header.key.equals(key) || !header.eTag.equals(eTag)) {
+                return null;
+            }
+            byte[] bytes = new byte[(int) header.length];
+            in.readFully(bytes);
+            return bytes;
+
+        } catch (IOException e) {
+            // the file was evicted or damaged since the lookup, so the caller downloads the log file again
+            logger.debug("Cannot read cached log file " + entry.file, e);
+            this.remove(key, entry);
+            return null;
+        }
+    }
+
+    /**
+     * Cache a downloaded log file, replacing any cached copy with a different ETag.
+     * <p>
+     * Log files larger than the cache size are not cached. A failure to write the file is logged and otherwise
+     * ignored; the cache is only an optimization.
+     *
+     * @param bucketName the S3 bucket of the log file.
+     * @param objectKey the S3 object key of the log file.
+     * @param eTag the ETag of the downloaded log file.
+     * @param bytes the log file bytes, as stored in S3.
+     */
+    public void put(String bucketName, String objectKey, String eTag, byte[] bytes) {
+        if (eTag == null || bytes.length > this.maxBytes) {
+            return;
+        }
+
+        String key = toKey(bucketName, objectKey);
+        String fileName = Long.toHexString(Hashing.hash64(key + FORWARD_SLASH + eTag));
+        File file = new File(this.directory, fileName + FILE_SUFFIX);
+        File tempFile = new File(this.directory, fileName + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(bucketName);
+                out.writeUTF(objectKey);
+                out.writeUTF(eTag);
+                out.writeLong(bytes.length);
+                out.write(bytes);
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + tempFile + " to " + file);
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot cache log file " + key, e);
+            tempFile.delete();
+            return;
+        }
+
+        List<File> evicted = new ArrayList<File>();
+        synchronized (this) {
+            Entry previous = this.entries.put(key, new Entry(key, eTag, file, bytes.length));
+            if (previous != null) {
+                this.totalBytes -= previous.length;
+                if (!previous.file.equals(file)) {
+                    evicted.add(previous.file);
+                }
+            }
+            this.totalBytes += bytes.length;
+
+            Iterator<Entry> it = this.entries.values().iterator();
+            while (this.totalBytes > this.maxBytes && it.hasNext()) {
+                Entry eldest = it.next();
+                it.remove();
+                this.totalBytes -= eldest.length;
+                evicted.add(eldest.file);
+            }
+        }
+
+        for (File evictedFile : evicted) {
+            evictedFile.delete();
+        }
+    }
+
+    /**
+     * @return the number of log file bytes currently cached.
+     */
+    public synchronized long getSize() {
+        return this.totalBytes;
+    }
+
+    /**
+     * @return the number of log files currently cached.
+     */
+    public synchronized int getFileCount() {
+        return this.entries.size();
+    }
+
+    private synchronized void remove(String key, Entry entry) {
+        if (this.entries.get(key) == entry) {
+            this.entries.remove(key);
+            this.totalBytes -= entry.length;
+        }
+    }
+
+    /**
+     * Rebuild the index from the files in the cache directory, oldest first, deleting leftovers and damaged files.
+     */
+    private void load() {
+        File[] files = this.directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        List<Entry> loaded = new ArrayList<Entry>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+
+            } else if (name.endsWith(FILE_SUFFIX)) {
+                Entry entry = null;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                    entry = readHeader(in, file);
+                } catch (IOException e) {
+                    logger.debug("Cannot read cached log file " + file, e);
+                }
+
+                if (entry == null) {
+                    file.delete();
+                } else {
+                    loaded.add(entry);
+                }
+            }
+        }
+
+        Collections.sort(loaded, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2) {
+                long m1 = e1.file.lastModified();
+                long m2 = e2.file.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+
+        for (Entry entry : loaded) {
+            Entry previous = this.entries.put(entry.key, entry);
+            if (previous != null) {
+                this.totalBytes -= previous.length;
+                previous.file.delete();
+            }
+            this.totalBytes += entry.length;
+        }
+
+        Iterator<Entry> it = this.entries.values().iterator();
+        while (this.totalBytes > this.maxBytes && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            this.totalBytes -= eldest.length;
+            eldest.file.delete();
+        }
+        logger.info("Loaded " + this.entries.size() + " cached log files from " + this.directory);
+    }
+
+    /**
+     * Read a cache file header.
+     *
+     * @return the entry described by the header, or <code>null</code> if the file is not a complete cache file.
+     */
+    private static Entry readHeader(DataInputStream in, File file) throws IOException {
+        if (in.readInt() != MAGIC) {
+            return null;
+        }
+        String bucketName = in.readUTF();
+        String objectKey = in.readUTF();
+        String eTag = in.readUTF();
+        long length = in.readLong();
+
+        // files are written under a temporary name and renamed, so a damaged body only shows up as EOF on read
+        if (length < 0 || length > Integer.MAX_VALUE || length > file.length()) {
+            return null;
+        }
+        return new Entry(toKey(bucketName, objectKey), eTag, file, length);
+    }
+
+    private static String toKey(String bucketName, String objectKey) {
+        return bucketName + FORWARD_SLASH + objectKey;
+    }
+
+    private static class Entry {
+        private final String key;
+        private final String eTag;
+        private final File file;
+        private final long length;
+
+        private Entry(String key, String eTag, File file, long length) {
+            this.key = key;
+            this.eTag = eTag;
+            this.file = file;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.utils;
+
+/**
+ * A set of primitive longs using open addressing with linear probing.
+ * <p>
+ * Values are stored unboxed in a single array, so each value costs 8 bytes divided by the load factor. The value
+ * <code>0</code> marks an empty slot and cannot be stored; callers storing hashes should remap it. This class is not
+ * thread safe.
+ */
+public class LongHashSet {
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+    private static final float GROWTH_FACTOR = 1.5f;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] table;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * Initialize a new <code>LongHashSet</code>.
+     *
+     * @param expectedSize the number of values expected to be stored without resizing.
+     */
+    public LongHashSet(int expectedSize) {
+        this.allocate(Math.max(MIN_CAPACITY, (int) Math.ceil(expectedSize / MAX_LOAD_FACTOR)));
+    }
+
+    /**
+     * Add a value to the set.
+     *
+     * @param value the value to add; must not be <code>0</code>.
+     * @return <code>true</code> if the value was not already in the set.
+     */
+    public boolean add(long value) {
+        LibraryUtils.checkCondition(value == 0, "LongHashSet cannot store 0.");
+        int slot = this.findSlot(this.table, value);
+        if (this.table[slot] == value) {
+            return false;
+        }
+        this.table[slot] = value;
+        if (++this.size > this.resizeThreshold) {
+            this.resize((int) Math.min(Integer.MAX_VALUE - 8, (long) (this.table.length * GROWTH_FACTOR)));
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a value is in the set.
+     *
+     * @param value the value to look up.
+     * @return <code>true</code> if the value is in the set.
+     */
+    public boolean contains(long value) {
+        return value != 0 && this.table[this.findSlot(this.table, value)] == value;
+    }
+
+    /**
+     * @return the number of values in the set.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Copy the values of the set into a new array, in no particular order. Copying is linear in the capacity, so
+     * callers holding a lock can copy under it and sort afterwards.
+     *
+     * @return the values.
+     */
+    public long[] toArray() {
+        long[] values = new long[this.size];
+        int i = 0;
+        for (long value : this.table) {
+            if (value != 0) {
+                values[i++] = value;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Find the slot holding a value, or the empty slot where it would be inserted. The starting slot is chosen by
+     * multiplying the high bits of the value by the capacity, so the capacity need not be a power of two.
+     */
+    private int findSlot(long[] table, long value) {
+        int slot = (int) (((Hashing.mix64(value) >>> 32) * table.length) >>> 32);
+        while (table[slot] != 0 && table[slot] != value) {
+            slot = slot + 1 == table.length ? 0 : slot + 1;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        this.table = new long[capacity];
+        this.resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+    }
+
+    private void resize(int capacity) {
+        long[] oldTable = this.table;
+        this.allocate(capacity);
+        for (long value : oldTable) {
+            if (value != 0) {
+                this.table[this.findSlot(this.table, value)] = value;
+            }
+        }
+    }
+}
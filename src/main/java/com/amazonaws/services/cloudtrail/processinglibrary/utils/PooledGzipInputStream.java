@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * An <code>InputStream</code> that decompresses an in-memory gzip file using a pooled
+ * <a href="http://docs.oracle.com/javase/7/docs/api/java/util/zip/Inflater.html">Inflater</a>.
+ * <p>
+ * <code>GZIPInputStream</code> allocates a native <code>Inflater</code> and copies its input through a small buffer
+ * for every log file. Since a downloaded log file is already a byte array, this stream hands the whole array to the
+ * <code>Inflater</code> and inflates straight into the caller's buffer. Each thread keeps one idle
+ * <code>Inflater</code>, which is reset and reused by the next stream it opens.
+ * <p>
+ * Like <code>GZIPInputStream</code>, the stream reads concatenated gzip members, verifies each member's CRC-32 and
+ * size, and ignores anything after the last member. An instance must be closed, and is not thread safe.
+ */
+public class PooledGzipInputStream extends InputStream {
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int TRAILER_SIZE = 8;
+
+    /**
+     * Deflate cannot expand data by more than about 1032:1, so a larger trailer size is corrupt or forged.
+     */
+    private static final long MAX_COMPRESSION_RATIO = 1032;
+
+    /**
+     * The compression ratio assumed when the trailer cannot be used.
+     */
+    private static final long DEFAULT_COMPRESSION_RATIO = 10;
+
+    /**
+     * The largest size hint returned; larger files grow their buffer as they are read.
+     */
+    private static final long MAX_SIZE_HINT = 32 * 1024 * 1024;
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    /**
+     * The idle <code>Inflater</code> of each thread; the slot is empty while a stream on that thread uses it.
+     */
+    private static final ThreadLocal<Inflater[]> IDLE_INFLATER = new ThreadLocal<Inflater[]>() {
+        @Override
+        protected Inflater[] initialValue() {
+            return new Inflater[1];
+        }
+    };
+
+    private final byte[] buf;
+    private final int end;
+
+    private final CRC32 crc = new CRC32();
+    private Inflater inflater;
+    private boolean eof;
+
+    private final byte[] singleByte = new byte[1];
+
+    /**
+     * Initialize a new <code>PooledGzipInputStream</code>.
+     *
+     * @param buf the gzip file to decompress.
+     * @throws IOException if the gzip header is invalid.
+     */
+    public PooledGzipInputStream(byte[] buf) throws IOException {
+        this.buf = buf;
+        this.end = buf.length;
+
+        this.inflater = acquireInflater();
+        try {
+            this.readHeader(0);
+        } catch (IOException e) {
+            this.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get a hint for the uncompressed size of a gzip file, for sizing buffers.
+     * <p>
+     * The size recorded in the trailer of the last member is stored modulo 2<sup>32</sup>, only covers that member and
+     * comes from the file itself, so it is used only when deflate could have produced it from the compressed length.
+     * Otherwise the hint is a typical multiple of the compressed length. Either way it is capped at 32 MB.
+     *
+     * @param buf the gzip file.
+     * @return the expected uncompressed size, at least <code>1</code>.
+     */
+    public static int getUncompressedSizeHint(byte[] buf) {
+        long length = buf.length;
+        long size = length >= TRAILER_SIZE ? readIntLE(buf, buf.length - 4) : 0;
+        if (size <= 0 || size > length * MAX_COMPRESSION_RATIO) {
+            size = length * DEFAULT_COMPRESSION_RATIO;
+        }
+        return (int) Math.max(1, Math.min(size, MAX_SIZE_HINT));
+    }
+
+    @Override
+    public int read() throws IOException {
+        return this.read(this.singleByte, 0, 1) == -1 ? -1 : this.singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (this.inflater == null) {
+            throw new IOException("Stream closed");
+        }
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (this.eof) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        while (true) {
+            int n;
+            try {
+                n = this.inflater.inflate(b, off, len);
+            } catch (DataFormatException e) {
+                String message = e.getMessage();
+                throw new ZipException(message != null ? message : "Invalid ZLIB data format");
+            }
+
+            if (n > 0) {
+                this.crc.update(b, off, n);
+                return n;
+            }
+            if (this.inflater.finished()) {
+                if (!this.readTrailer()) {
+                    this.eof = true;
+                    return -1;
+                }
+            } else if (this.inflater.needsDictionary()) {
+                throw new ZipException("Unexpected preset dictionary in gzip data");
+            } else if (this.inflater.needsInput()) {
+                throw new EOFException("Unexpected end of gzip input stream");
+            }
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return this.eof ? 0 : 1;
+    }
+
+    /**
+     * Return the <code>Inflater</code> to the pool of the closing thread.
+     */
+    @Override
+    public void close() {
+        if (this.inflater != null) {
+            releaseInflater(this.inflater);
+            this.inflater = null;
+        }
+    }
+
+    /**
+     * Parse the gzip member header at <code>pos</code> and point the <code>Inflater</code> at the member's data.
+     */
+    private void readHeader(int pos) throws IOException {
+        this.require(pos, 10);
+        if (readShortLE(this.buf, pos) != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if ((this.buf[pos + 2] & 0xff) != Deflater.DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = this.buf[pos + 3] & 0xff;
+        int headerStart = pos;
+        pos += 10; // magic, method, flags, modification time, extra flags, operating system
+
+        if ((flags & FEXTRA) != 0) {
+            this.require(pos, 2);
+            pos += 2 + readShortLE(this.buf, pos);
+        }
+        if ((flags & FNAME) != 0) {
+            pos = this.skipZeroTerminated(pos);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            pos = this.skipZeroTerminated(pos);
+        }
+        if ((flags & FHCRC) != 0) {
+            this.require(pos, 2);
+            this.crc.reset();
+            this.crc.update(this.buf, headerStart, pos - headerStart);
+            if (readShortLE(this.buf, pos) != ((int) this.crc.getValue() & 0xffff)) {
+                throw new ZipException("Corrupt GZIP header");
+            }
+            pos += 2;
+        }
+        this.require(pos, 0);
+
+        this.crc.reset();
+        this.inflater.reset();
+        this.inflater.setInput(this.buf, pos, this.end - pos);
+    }
+
+    /**
+     * Verify the trailer of the finished member and start the next member, if any.
+     *
+     * @return <code>true</code> if another member follows.
+     */
+    private boolean readTrailer() throws IOException {
+        int pos = this.end - this.inflater.getRemaining();
+        this.require(pos, TRAILER_SIZE);
+
+        if (readIntLE(this.buf, pos) != this.crc.getValue()
+                || readIntLE(this.buf, pos + 4) != (this.inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+        pos += TRAILER_SIZE;
+
+        if (this.end - pos < 2 || readShortLE(this.buf, pos) != GZIP_MAGIC) {
+            return false;
+        }
+        this.readHeader(pos);
+        return true;
+    }
+
+    private int skipZeroTerminated(int pos) throws IOException {
+        while (pos < this.end && this.buf[pos] != 0) {
+            pos++;
+        }
+        this.require(pos, 1);
+        return pos + 1;
+    }
+
+    private void require(int pos, int length) throws EOFException {
+        if (pos > this.end - length) {
+            throw new EOFException("Unexpected end of gzip input stream");
+        }
+    }
+
+    private static int readShortLE(byte[] b, int pos) {
+        return (b[pos] & 0xff) | (b[pos + 1] & 0xff) << 8;
+    }
+
+    private static long readIntLE(byte[] b, int pos) {
+        return ((long) readShortLE(b, pos + 2) << 16) | readShortLE(b, pos);
+    }
+
+    private static Inflater acquireInflater() {
+        Inflater[] slot = IDLE_INFLATER.get();
+        Inflater inflater = slot[0];
+        if (inflater == null) {
+            return new Inflater(true);
+        }
+        slot[0] = null;
+        return inflater;
+    }
+
+    private static void releaseInflater(Inflater inflater) {
+        Inflater[] slot = IDLE_INFLATER.get();
+        if (slot[0] == null) {
+            inflater.reset();
+            slot[0] = inflater;
+        } else {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailLog;
+
+/**
+ * A bounded, time-windowed set of CloudTrail log files that were recently processed.
+ * <p>
+ * SQS delivers messages at least once and several notifications can point at the same log file. Checking this cache
+ * before downloading lets a duplicate be deleted without downloading and parsing the log file again. Entries are keyed
+ * by <code>bucket/objectKey</code>; CloudTrail never overwrites a delivered log file, so the key identifies its
+ * content. An entry expires after the configured window, and the oldest entries are evicted once the cache holds the
+ * configured maximum.
+ * <p>
+ * This class is thread safe.
+ */
+public class ProcessedLogCache {
+    private static final String FORWARD_SLASH = "/";
+
+    private final int maxEntries;
+    private final long windowMillis;
+
+    /**
+     * Processing time of each log file, oldest first.
+     */
+    private final LinkedHashMap<String, Long> processedLogs;
+
+    /**
+     * Initialize a new <code>ProcessedLogCache</code>.
+     *
+     * @param maxEntries the maximum number of log files to remember.
+     * @param windowSeconds how long, in seconds, a processed log file is remembered.
+     */
+    public ProcessedLogCache(int maxEntries, int windowSeconds) {
+        LibraryUtils.checkCondition(maxEntries < 1, "Processed log cache size cannot be less than 1.");
+        LibraryUtils.checkCondition(windowSeconds < 1, "Processed log cache window cannot be less than 1 second.");
+
+        this.maxEntries = maxEntries;
+        this.windowMillis = TimeUnit.SECONDS.toMillis(windowSeconds);
+        this.processedLogs = new LinkedHashMap<String, Long>();
+    }
+
+    /**
+     * Check whether a log file was processed within the window.
+     *
+     * @param ctLog the {@link CloudTrailLog} to check.
+     * @return <code>true</code> if the log file was recently processed.
+     */
+    public synchronized boolean isProcessed(CloudTrailLog ctLog) {
+        Long processedTime = this.processedLogs.get(toKey(ctLog));
+        return processedTime != null && System.currentTimeMillis() - processedTime < this.windowMillis;
+    }
+
+    /**
+     * Remember that a log file was processed.
+     *
+     * @param ctLog the processed {@link CloudTrailLog}.
+     */
+    public synchronized void markProcessed(CloudTrailLog ctLog) {
+        long now = System.currentTimeMillis();
+        String key = toKey(ctLog);
+
+        // re-insert so the entry moves to the newest end of the map
+        this.processedLogs.remove(key);
+        this.processedLogs.put(key, now);
+
+        Iterator<Map.Entry<String, Long>> it = this.processedLogs.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (this.processedLogs.size() > this.maxEntries || now - eldest.getValue() >= this.windowMillis) {
+                it.remove();
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the number of log files currently remembered.
+     */
+    public synchronized int size() {
+        return this.processedLogs.size();
+    }
+
+    private static String toKey(CloudTrailLog ctLog) {
+        return ctLog.getS3Bucket() + FORWARD_SLASH + ctLog.getS3ObjectKey();
+    }
+}
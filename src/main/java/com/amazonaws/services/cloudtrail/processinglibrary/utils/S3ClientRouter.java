@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.RegionUtils;
+import com.amazonaws.services.s3.AmazonS3Client;
+
+/**
+ * Routes S3 requests for each bucket to a client in the bucket's region.
+ * <p>
+ * A client configured for one region pays a redirect round trip, or fails, for every request to a bucket in another
+ * region, which is common with organization and cross-region trails. This class looks up the region of each bucket
+ * once with <code>GetBucketLocation</code> and keeps one client per region, so requests for every bucket go straight
+ * to its region. When the lookup is denied, the region named by S3 in the error is used, and failing that the
+ * default client. When a bucket turns out to be in another region later, S3 names the region in the redirect and
+ * {@link #updateRegion(String, AmazonServiceException)} moves the bucket to it.
+ * <p>
+ * This class is thread safe.
+ */
+public class S3ClientRouter {
+    private static final Log logger = LogFactory.getLog(S3ClientRouter.class);
+
+    /**
+     * The response header in which S3 names the region of a bucket.
+     */
+    private static final String BUCKET_REGION_HEADER = "x-amz-bucket-region";
+
+    private final AmazonS3Client defaultClient;
+    private final String defaultRegion;
+    private final AWSCredentialsProvider credentialsProvider;
+    private final ClientConfiguration clientConfiguration;
+
+    /**
+     * The region of each bucket, resolved or named by S3.
+     */
+    private final ConcurrentMap<String, String> bucketRegions = new ConcurrentHashMap<String, String>();
+
+    /**
+     * The clients created for regions other than the default one, guarded by <code>this</code>.
+     */
+    private final Map<String, AmazonS3Client> regionClients = new HashMap<String, AmazonS3Client>();
+
+    /**
+     * Initialize a new <code>S3ClientRouter</code>.
+     *
+     * @param defaultClient the client used for buckets in <code>defaultRegion</code>, for bucket location lookups, and
+     *     for buckets whose region cannot be determined.
+     * @param defaultRegion the region of <code>defaultClient</code>.
+     * @param credentialsProvider the credentials of the clients created for other regions.
+     * @param clientConfiguration the configuration of the clients created for other regions.
+     */
+    public S3ClientRouter(AmazonS3Client defaultClient, String defaultRegion, AWSCredentialsProvider credentialsProvider,
+            ClientConfiguration clientConfiguration) {
+        LibraryUtils.checkArgumentNotNull(defaultClient, "Default S3 client is null.");
+        LibraryUtils.checkArgumentNotNull(defaultRegion, "Default S3 region is null.");
+        LibraryUtils.checkArgumentNotNull(credentialsProvider, "Credentials provider is null.");
+        LibraryUtils.checkArgumentNotNull(clientConfiguration, "Client configuration is null.");
+        this.defaultClient = defaultClient;
+        this.defaultRegion = defaultRegion;
+        this.credentialsProvider = credentialsProvider;
+        this.clientConfiguration = clientConfiguration;
+    }
+
+    /**
+     * Get the client for a bucket, looking up the region of the bucket the first time.
+     *
+     * @param bucketName the bucket to send requests to.
+     * @return the client in the region of the bucket.
+     */
+    public AmazonS3Client getClient(String bucketName) {
+        return this.getRegionClient(this.getRegion(bucketName));
+    }
+
+    /**
+     * Get the region of a bucket, looking it up the first time.
+     *
+     * @param bucketName the bucket.
+     * @return the region of the bucket, or the default region if it cannot be determined.
+     */
+    public String getRegion(String bucketName) {
+        String region = this.bucketRegions.get(bucketName);
+        if (region == null) {
+            region = this.lookUpRegion(bucketName);
+            String existing = this.bucketRegions.putIfAbsent(bucketName, region);
+            region = existing == null ? region : existing;
+        }
+        return region;
+    }
+
+    /**
+     * Move a bucket to the region named by S3 in an error response, such as a <code>301 PermanentRedirect</code>.
+     *
+     * @param bucketName the bucket of the failed request.
+     * @param e the error of the failed request.
+     * @return <code>true</code> if the error names a region other than the one used for the request, in which case
+     *     the request may be retried with {@link #getClient(String)}.
+     */
+    public boolean updateRegion(String bucketName, AmazonServiceException e) {
+        String region = getRegionHeader(e);
+        if (region == null) {
+            return false;
+        }
+        String previous = this.bucketRegions.put(bucketName, region);
+        if (region.equals(previous)) {
+            return false;
+        }
+        logger.info("S3 bucket " + bucketName + " is in region " + region + ", not " + previous);
+        return true;
+    }
+
+    /**
+     * Create the client for a region other than the default one.
+     * <p>
+     * Override to customize the clients, for example to use another endpoint.
+     *
+     * @param region the region of the client.
+     * @return a new client in <code>region</code>, or <code>null</code> to use the default client.
+     */
+    protected AmazonS3Client createClient(String region) {
+        Region awsRegion = RegionUtils.getRegion(region);
+        if (awsRegion == null) {
+            logger.warn("Unknown S3 region " + region + ", using the " + this.defaultRegion + " S3 client.");
+            return null;
+        }
+        AmazonS3Client client = new AmazonS3Client(this.credentialsProvider, this.clientConfiguration);
+        client.setRegion(awsRegion);
+        return client;
+    }
+
+    private synchronized AmazonS3Client getRegionClient(String region) {
+        if (region.equals(this.defaultRegion)) {
+            return this.defaultClient;
+        }
+        AmazonS3Client client = this.regionClients.get(region);
+        if (client == null && !this.regionClients.containsKey(region)) {
+            client = this.createClient(region);
+            this.regionClients.put(region, client);
+        }
+        return client == null ? this.defaultClient : client;
+    }
+
+    private String lookUpRegion(String bucketName) {
+        try {
+            String location = this.defaultClient.getBucketLocation(bucketName);
+            String region = toRegionName(location);
+            logger.debug("S3 bucket " + bucketName + " is in region " + region);
+            return region;
+
+        } catch (AmazonServiceException e) {
+            String region = getRegionHeader(e);
+            if (region != null) {
+                return region;
+            }
+            logger.warn("Cannot look up the region of S3 bucket " + bucketName + ", using the " + this.defaultRegion
+                    + " S3 client. " + e.getMessage());
+            return this.defaultRegion;
+        }
+    }
+
+    /**
+     * Convert a bucket location, which is empty for US East (N. Virginia) and <code>EU</code> for some buckets in EU
+     * (Ireland), to a region name.
+     */
+    private static String toRegionName(String location) {
+        try {
+            Region region = com.amazonaws.services.s3.model.Region.fromValue(location).toAWSRegion();
+            return region == null ? location : region.getName();
+        } catch (IllegalArgumentException e) {
+            // a region newer than this SDK, whose location is its name
+            return location;
+        }
+    }
+
+    private static String getRegionHeader(AmazonServiceException e) {
+        Map<String, String> headers = e.getHttpHeaders();
+        return headers == null ? null : headers.get(BUCKET_REGION_HEADER);
+    }
+}
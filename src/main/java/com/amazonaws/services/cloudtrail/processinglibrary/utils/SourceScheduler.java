@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ ******************************************************************************/
+
+package com.amazonaws.services.cloudtrail.processinglibrary.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.services.cloudtrail.processinglibrary.interfaces.SourceSchedulingPolicy;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.CloudTrailSource;
+import com.amazonaws.services.cloudtrail.processinglibrary.model.ScheduledSource;
+
+/**
+ * Holds received sources between <code>SqsManager.parseMessage()</code> and the main thread pool, and starts them in
+ * the order chosen by a {@link SourceSchedulingPolicy}.
+ * <p>
+ * A source starts as soon as a worker is free and the policy picks it, so at most one source per worker is running
+ * and the rest wait here, where the policy can still reorder them. At most <code>capacity</code> sources wait;
+ * {@link #submit(CloudTrailSource, Runnable)} blocks while the scheduler is full, which stops polling SQS. Policies
+ * therefore only reorder sources already received.
+ * <p>
+ * This class is thread safe.
+ */
+public class SourceScheduler {
+    private static final Log logger = LogFactory.getLog(SourceScheduler.class);
+
+    public static final int DEFAULT_CAPACITY = 100;
+
+    private final SourceSchedulingPolicy policy;
+    private final int capacity;
+
+    /**
+     * The work of each source offered to the policy.
+     */
+    private final Map<ScheduledSource, Runnable> tasks = new IdentityHashMap<ScheduledSource, Runnable>();
+    private int runningCount;
+
+    private Executor workerPool;
+    private int workerCount;
+
+    /**
+     * Initialize a new <code>SourceScheduler</code> holding up to {@value #DEFAULT_CAPACITY} waiting sources.
+     *
+     * @param policy the {@link SourceSchedulingPolicy} ordering sources.
+     */
+    public SourceScheduler(SourceSchedulingPolicy policy) {
+        this(policy, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initialize a new <code>SourceScheduler</code>.
+     *
+     * @param policy the {@link SourceSchedulingPolicy} ordering sources.
+     * @param capacity the number of sources that may wait before polling blocks.
+     */
+    public SourceScheduler(SourceSchedulingPolicy policy, int capacity) {
+        LibraryUtils.checkArgumentNotNull(policy, "Source scheduling policy is null.");
+        LibraryUtils.checkCondition(capacity < 1, "Capacity cannot be less than 1.");
+        this.policy = policy;
+        this.capacity = capacity;
+    }
+
+    /**
+     * <i>Internal use only</i>.
+     * <p>
+     * Set the pool that runs sources, and how many sources may run at once.
+     *
+     * @param workerPool the thread pool that processes sources.
+     * @param workerCount the number of threads in <code>workerPool</code>.
+     */
+    public synchronized void setWorkerPool(Executor workerPool, int workerCount) {
+        LibraryUtils.checkArgumentNotNull(workerPool, "Worker pool is null.");
+        LibraryUtils.checkCondition(workerCount < 1, "Worker count cannot be less than 1.");
+        this.workerPool = workerPool;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Queue a source, and start it once the policy picks it and a worker is free.
+     *
+     * @param source the {@link CloudTrailSource} to process.
+     * @param task the work that processes <code>source</code>.
+     * @throws InterruptedException if interrupted while waiting for room in the scheduler.
+     */
+    public void submit(CloudTrailSource source, Runnable task) throws InterruptedException {
+        List<Dispatch> dispatches;
+        synchronized (this) {
+            LibraryUtils.checkCondition(this.workerPool == null, "SourceScheduler has no worker pool.");
+            while (this.policy.size() >= this.capacity) {
+                this.wait();
+            }
+
+            ScheduledSource scheduledSource = new ScheduledSource(source, System.currentTimeMillis());
+            this.tasks.put(scheduledSource, task);
+            this.policy.offer(scheduledSource);
+
+            dispatches = this.selectDispatches();
+        }
+        this.execute(dispatches);
+    }
+
+    /**
+     * @return the number of sources waiting to start.
+     */
+    public synchronized int getPendingCount() {
+        return this.policy.size();
+    }
+
+    /**
+     * @return the number of sources running.
+     */
+    public synchronized int getRunningCount() {
+        return this.runningCount;
+    }
+
+    /**
+     * Ask the policy for sources to start while workers are free. Must hold the lock.
+     */
+    private List<Dispatch> selectDispatches() {
+        List<Dispatch> dispatches = Collections.emptyList();
+        while (this.runningCount < this.workerCount) {
+            ScheduledSource next = this.policy.poll();
+            if (next == null) {
+                break;
+            }
+            this.runningCount++;
+
+            if (dispatches.isEmpty()) {
+                dispatches = new ArrayList<Dispatch>();
+            }
+            dispatches.add(new Dispatch(next, this.tasks.remove(next)));
+        }
+
+        if (!dispatches.isEmpty()) {
+            this.notifyAll();
+        }
+        return dispatches;
+    }
+
+    private void execute(List<Dispatch> dispatches) {
+        for (Dispatch dispatch : dispatches) {
+            try {
+                this.workerPool.execute(dispatch);
+            } catch (RejectedExecutionException e) {
+                // the pool is shutting down; the message becomes visible again when its visibility timeout ends
+                logger.debug("Worker pool rejected source " + dispatch.source.getSource() + ".");
+                this.complete(dispatch.source, 0);
+            }
+        }
+    }
+
+    private void complete(ScheduledSource source, long durationNanos) {
+        List<Dispatch> dispatches;
+        synchronized (this) {
+            this.runningCount--;
+            this.policy.complete(source, durationNanos);
+            dispatches = this.selectDispatches();
+        }
+        this.execute(dispatches);
+    }
+
+    private class Dispatch implements Runnable {
+        final ScheduledSource source;
+        final Runnable task;
+
+        Dispatch(ScheduledSource source, Runnable task) {
+            this.source = source;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                this.task.run();
+            } finally {
+                SourceScheduler.this.complete(this.source, System.nanoTime() - start);
+            }
+        }
+    }
+}